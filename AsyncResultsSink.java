@@ -0,0 +1,248 @@
+package general.results;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import general.results.ResultsFormat.ResultsWriter;
+
+/**
+ * A {@link ResultsSink} that writes rows to a file from a background thread. Rows are copied
+ * into a preallocated, bounded ring buffer by the simulation thread and written to a
+ * {@link FileChannel} by a dedicated writer thread, so the replication loop never waits for
+ * the disk as long as the disk keeps up on average. Only when the ring buffer is completely
+ * full, the simulation thread waits until the writer has made room; the number of times this
+ * happened is reported by {@link #getStalls()}.
+ *
+ * The writer flushes the file whenever the ring buffer has been empty for a short while and at
+ * the end of every scenario, so the file can be read while the simulation is still running.
+ *
+ * This sink supports a single producing thread: all of {@link #beginScenario(String, List)},
+ * {@link #accept(long, double[])}, {@link #endScenario()} and {@link #close()} must be called
+ * from the same thread.
+ *
+ */
+public class AsyncResultsSink implements ResultsSink {
+
+	public static final int DEFAULT_CAPACITY = 4096;
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private static final byte BEGIN = 0;
+	private static final byte ROW = 1;
+	private static final byte END = 2;
+	private static final long FLUSH_DELAY = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private final FileChannel channel;
+	private final ResultsWriter writer;
+	private final Thread thread;
+
+	private final int capacity;
+	private final byte[] kinds;
+	private final long[] replications;
+	private final double[][] values;
+	private final Object[] headers;
+
+	// head is only written by the producer, tail only by the writer thread
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private volatile boolean producerWaiting;
+	private volatile boolean writerWaiting;
+	private volatile boolean closed;
+	private volatile Throwable failure;
+	private Thread producer;
+	private long stalls;
+
+	public AsyncResultsSink(Path file, ResultsFormat format) {
+		this(file, format, DEFAULT_CAPACITY, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param file			The file to write to. An existing file is overwritten.
+	 * @param format		The format of the file
+	 * @param capacity		The number of rows that fit in the ring buffer
+	 * @param bufferSize	The size in bytes of the buffer used to write to the file
+	 */
+	public AsyncResultsSink(Path file, ResultsFormat format, int capacity, int bufferSize) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity of the ring buffer must be >= 1");
+		}
+		try {
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to open " + file + " for writing", ex);
+		}
+		this.writer = format.createWriter(channel, bufferSize);
+		this.capacity = capacity;
+		this.kinds = new byte[capacity];
+		this.replications = new long[capacity];
+		this.values = new double[capacity][];
+		this.headers = new Object[capacity];
+		this.thread = new Thread(this::drain, "results-writer-" + file.getFileName());
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	@Override
+	public void beginScenario(String scenario, List<String> measures) {
+		int slot = claim();
+		kinds[slot] = BEGIN;
+		headers[slot] = new Header(scenario, new ArrayList<>(measures));
+		publish();
+	}
+
+	@Override
+	public void accept(long replication, double[] row) {
+		int slot = claim();
+		kinds[slot] = ROW;
+		replications[slot] = replication;
+		double[] copy = values[slot];
+		if (copy == null || copy.length != row.length) {
+			copy = new double[row.length];
+			values[slot] = copy;
+		}
+		System.arraycopy(row, 0, copy, 0, row.length);
+		publish();
+	}
+
+	@Override
+	public void endScenario() {
+		int slot = claim();
+		kinds[slot] = END;
+		publish();
+	}
+
+	/**
+	 * @return	The number of times the simulation thread had to wait because the ring buffer was full
+	 */
+	public long getStalls() {
+		return stalls;
+	}
+
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			LockSupport.unpark(thread);
+			try {
+				thread.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			try {
+				channel.close();
+			} catch (IOException ex) {
+				throw new UncheckedIOException("Unable to close the results file", ex);
+			}
+		}
+		checkFailure();
+	}
+
+	private int claim() {
+		checkFailure();
+		if (closed) {
+			throw new IllegalStateException("This results sink has already been closed");
+		}
+		long h = head.get();
+		if (h - tail.get() == capacity) {
+			stalls++;
+			producer = Thread.currentThread();
+			producerWaiting = true;
+			while (h - tail.get() == capacity) {
+				LockSupport.park(this);
+				checkFailure();
+			}
+			producerWaiting = false;
+		}
+		return (int) (h % capacity);
+	}
+
+	private void publish() {
+		head.set(head.get() + 1);
+		if (writerWaiting) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	private void checkFailure() {
+		Throwable t = failure;
+		if (t != null) {
+			throw new IllegalStateException("The results writer thread failed", t);
+		}
+	}
+
+	private void drain() {
+		boolean dirty = false;
+		try {
+			while (true) {
+				long t = tail.get();
+				if (t == head.get()) {
+					if (closed && t == head.get()) {
+						writer.flush();
+						return;
+					}
+					writerWaiting = true;
+					if (t == head.get() && !closed) {
+						if (dirty) {
+							LockSupport.parkNanos(this, FLUSH_DELAY);
+							if (t == head.get()) {
+								writer.flush();
+								dirty = false;
+							}
+						}
+						else {
+							LockSupport.park(this);
+						}
+					}
+					writerWaiting = false;
+					continue;
+				}
+				int slot = (int) (t % capacity);
+				switch (kinds[slot]) {
+				case BEGIN:
+					Header h = (Header) headers[slot];
+					headers[slot] = null;
+					writer.beginScenario(h.scenario, h.measures);
+					break;
+				case ROW:
+					writer.row(replications[slot], values[slot]);
+					dirty = true;
+					break;
+				case END:
+					writer.endScenario();
+					dirty = false;
+					break;
+				default:
+					throw new IllegalStateException("Unknown entry in ring buffer");
+				}
+				tail.set(t + 1);
+				if (producerWaiting) {
+					LockSupport.unpark(producer);
+				}
+			}
+		} catch (Throwable ex) {
+			failure = ex;
+			Thread p = producer;
+			if (p != null) {
+				LockSupport.unpark(p);
+			}
+		}
+	}
+
+	private static class Header {
+		private final String scenario;
+		private final List<String> measures;
+
+		private Header(String scenario, List<String> measures) {
+			this.scenario = scenario;
+			this.measures = measures;
+		}
+	}
+}
@@ -1,10 +1,12 @@
 package general.automagic;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 
+import general.Counter;
 import general.Replication;
 import general.SystemState;
 import general.annotations.Initialize;
@@ -15,7 +17,8 @@ import general.annotations.StopCriterium;
  * methods in a certain subclass of SystemState serve as initialization
  * methods, and which ones serve as termination criteria, based on 
  * annotations. This circumvents the need to write your own subclass of
- * Replication
+ * Replication. If all termination criteria declare their dependencies, see
+ * {@link StopCriterium}, they are only checked when one of these changes.
  * 
  * @author Paul Bouman
  *
@@ -24,16 +27,21 @@ import general.annotations.StopCriterium;
 
 public class AutoReplication<S extends SystemState<S>> extends Replication<S> {
 
+	private static final Object[] NO_ARGS = new Object[0];
+	
 	private List<Method> initMethods;
 	private List<Method> terminateMethodsWithArg;
 	private List<Method> terminateMethods;
+	private final Object[] stateArgs;
 	
 	public AutoReplication(S state) {
 		super(state);
+		this.stateArgs = new Object[] { state };
 		
 		this.terminateMethods = new ArrayList<>();
 		this.terminateMethodsWithArg = new ArrayList<>();
 		this.initMethods = new ArrayList<>();
+		boolean polled = false;
 		for (Method m : state.getClass().getMethods()) {
 			if (m.isAnnotationPresent(Initialize.class)) {
 				if (m.getParameterCount() != 0) {
@@ -57,9 +65,24 @@ public class AutoReplication<S extends SystemState<S>> extends Replication<S> {
 				else {
 					this.terminateMethods.add(m);
 				}
+				StopCriterium sc = m.getAnnotation(StopCriterium.class);
+				if (sc.counters().length == 0 && sc.handlers().length == 0 && !sc.requested()) {
+					polled = true;
+				}
 			}
 		}
 		
+		if (!polled) {
+			// every criterion declared its dependencies, so only check them when these change
+			for (Method m : terminateMethods) {
+				addDependencies(state, m);
+			}
+			for (Method m : terminateMethodsWithArg) {
+				addDependencies(state, m);
+			}
+			setTerminationTracking(true);
+		}
+		
 		if (initMethods.isEmpty()) {
 			throw new IllegalArgumentException("The provided state must have at least one method "
 					+ "with the @Initialize annotation that is used to initialize the state and "
@@ -67,6 +90,45 @@ public class AutoReplication<S extends SystemState<S>> extends Replication<S> {
 		}
 	}
 	
+	private static void addDependencies(SystemState<?> state, Method m) {
+		StopCriterium sc = m.getAnnotation(StopCriterium.class);
+		for (String name : sc.counters()) {
+			Counter counter = getCounter(state, name);
+			if (counter == null) {
+				throw new IllegalArgumentException("Method "+m+" has a "
+						+ "@StopCriterium annotation that depends on counter '"+name+"', but the state has no such Counter field.");
+			}
+			state.addTerminationDependency(counter);
+		}
+		List<String> handlerNames = state.getHandlerNames();
+		for (String name : sc.handlers()) {
+			int handler = handlerNames.indexOf(name);
+			if (handler < 0) {
+				throw new IllegalArgumentException("Method "+m+" has a "
+						+ "@StopCriterium annotation that depends on handler '"+name+"', but no such handler was registered.");
+			}
+			state.addTerminationDependency(handler);
+		}
+	}
+	
+	private static Counter getCounter(SystemState<?> state, String name) {
+		for (Class<?> clz = state.getClass(); clz != SystemState.class; clz = clz.getSuperclass()) {
+			try {
+				Field f = clz.getDeclaredField(name);
+				if (!Counter.class.isAssignableFrom(f.getType())) {
+					return null;
+				}
+				f.setAccessible(true);
+				return (Counter) f.get(state);
+			} catch (NoSuchFieldException ex) {
+				// try the superclass
+			} catch (IllegalAccessException ex) {
+				throw new RuntimeException("Unexpected error while reading Counter field '"+name+"'", ex);
+			}
+		}
+		return null;
+	}
+	
 	public static boolean isBoolean(Class<?> cls) {
 		return Boolean.class.isAssignableFrom(cls)
 			|| boolean.class.isAssignableFrom(cls);
@@ -75,9 +137,10 @@ public class AutoReplication<S extends SystemState<S>> extends Replication<S> {
 	@Override
 	public void initialize() {
 		S state = getSystemState();
-		for (Method m : initMethods) {
+		for (int i = 0; i < initMethods.size(); i++) {
+			Method m = initMethods.get(i);
 			try {
-				m.invoke(state);
+				m.invoke(state, NO_ARGS);
 			} catch (IllegalAccessException | IllegalArgumentException ex) {
 				throw new RuntimeException("Unexpected exception while executing replication initializers", ex);
 			} catch (InvocationTargetException ex) {
@@ -91,14 +154,16 @@ public class AutoReplication<S extends SystemState<S>> extends Replication<S> {
 	public boolean shouldTerminate(S state) {
 		
 			try {
-				for (Method m : terminateMethods) {
-					Boolean b = (Boolean) m.invoke(state);
+				// this can be called before every event, so avoid the iterators and varargs arrays
+				for (int i = 0; i < terminateMethods.size(); i++) {
+					Boolean b = (Boolean) terminateMethods.get(i).invoke(state, NO_ARGS);
 					if (b) {
 						return true;
 					}
 				}
-				for (Method m : terminateMethodsWithArg) {
-					Boolean b = (Boolean) m.invoke(state,state);
+				Object[] args = state == getSystemState() ? stateArgs : new Object[] { state };
+				for (int i = 0; i < terminateMethodsWithArg.size(); i++) {
+					Boolean b = (Boolean) terminateMethodsWithArg.get(i).invoke(state, args);
 					if (b) {
 						return true;
 					}
@@ -0,0 +1,192 @@
+package general.results;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads files written in the {@link ResultsFormat#BINARY} format. The file may still be growing
+ * while it is read: {@link #next()} returns <code>null</code> when no complete block is available
+ * yet, and can be called again later to pick up blocks that were written in the meantime.
+ *
+ */
+public class BinaryResultsReader implements AutoCloseable {
+
+	private final FileChannel channel;
+	private long position;
+
+	public BinaryResultsReader(Path file) {
+		try {
+			this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to open " + file + " for reading", ex);
+		}
+	}
+
+	/**
+	 * @return	The next complete block of rows, or <code>null</code> if no complete block has been written yet
+	 */
+	public ResultsBlock next() {
+		try {
+			if (position == 0) {
+				ByteBuffer header = read(0, 6);
+				if (header == null) {
+					return null;
+				}
+				if (header.getInt() != BinaryResultsWriter.MAGIC) {
+					throw new IllegalStateException("This is not a file with simulation results");
+				}
+				short version = header.getShort();
+				if (version != BinaryResultsWriter.VERSION) {
+					throw new IllegalStateException("Unsupported version " + version + " of the results format");
+				}
+				position = 6;
+			}
+			ByteBuffer length = read(position, 4);
+			if (length == null) {
+				return null;
+			}
+			int size = length.getInt();
+			ByteBuffer block = read(position + 4, size);
+			if (block == null) {
+				return null;
+			}
+			position += 4 + size;
+			return decode(block);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to read simulation results", ex);
+		}
+	}
+
+	/**
+	 * Reads all blocks that are currently complete.
+	 *
+	 * @return	The blocks in the order they were written
+	 */
+	public List<ResultsBlock> readAvailable() {
+		List<ResultsBlock> result = new ArrayList<>();
+		ResultsBlock b;
+		while ((b = next()) != null) {
+			result.add(b);
+		}
+		return result;
+	}
+
+	@Override
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to close the results file", ex);
+		}
+	}
+
+	private ByteBuffer read(long from, int bytes) throws IOException {
+		if (channel.size() < from + bytes) {
+			return null;
+		}
+		ByteBuffer buf = ByteBuffer.allocate(bytes);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, from + buf.position()) < 0) {
+				return null;
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	private static ResultsBlock decode(ByteBuffer buf) {
+		String scenario = getUtf(buf);
+		int nrMeasures = buf.getInt();
+		List<String> names = new ArrayList<>();
+		for (int j = 0; j < nrMeasures; j++) {
+			names.add(getUtf(buf));
+		}
+		int rows = buf.getInt();
+		long[] replications = new long[rows];
+		for (int i = 0; i < rows; i++) {
+			replications[i] = buf.getLong();
+		}
+		double[][] columns = new double[nrMeasures][rows];
+		for (int j = 0; j < nrMeasures; j++) {
+			for (int i = 0; i < rows; i++) {
+				columns[j][i] = buf.getDouble();
+			}
+		}
+		return new ResultsBlock(scenario, names, replications, columns);
+	}
+
+	private static String getUtf(ByteBuffer buf) {
+		byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * A number of consecutive replications of a single scenario, stored per measure.
+	 */
+	public static class ResultsBlock {
+
+		private final String scenario;
+		private final List<String> measures;
+		private final long[] replications;
+		private final double[][] columns;
+
+		private ResultsBlock(String scenario, List<String> measures, long[] replications, double[][] columns) {
+			this.scenario = scenario;
+			this.measures = Collections.unmodifiableList(measures);
+			this.replications = replications;
+			this.columns = columns;
+		}
+
+		public String getScenario() {
+			return scenario;
+		}
+
+		public List<String> getMeasures() {
+			return measures;
+		}
+
+		/**
+		 * @return	The number of replications in this block
+		 */
+		public int size() {
+			return replications.length;
+		}
+
+		/**
+		 * @param i	Row within this block
+		 * @return	The index of the replication in row <code>i</code>
+		 */
+		public long getReplication(int i) {
+			return replications[i];
+		}
+
+		/**
+		 * @param measure	Name of the performance measure
+		 * @return			The values of this measure for all rows in this block
+		 */
+		public double[] getColumn(String measure) {
+			int j = measures.indexOf(measure);
+			if (j < 0) {
+				throw new IllegalArgumentException("Unknown performance measure " + measure);
+			}
+			return columns[j];
+		}
+
+		/**
+		 * @param j	Index of the performance measure
+		 * @return	The values of this measure for all rows in this block
+		 */
+		public double[] getColumn(int j) {
+			return columns[j];
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package general.results;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import general.results.ResultsFormat.ResultsWriter;
+
+/**
+ * Writes rows in the columnar binary format of {@link ResultsFormat#BINARY}.
+ *
+ * The file starts with the magic number {@link #MAGIC} and the format {@link #VERSION}.
+ * It is followed by blocks, each of which is laid out as follows:
+ * <pre>
+ * int      length of the rest of the block in bytes
+ * utf      scenario
+ * int      number of measures m
+ * utf[m]   names of the measures
+ * int      number of rows r
+ * long[r]  replication indices
+ * double[r] values of the first measure, followed by the values of the other m-1 measures
+ * </pre>
+ * where <code>utf</code> is an unsigned short length followed by UTF-8 bytes. Because a block is
+ * only written once it is complete and starts with its length, a reader can safely read the file
+ * while it is still being written by ignoring an incomplete block at the end.
+ *
+ */
+class BinaryResultsWriter implements ResultsWriter {
+
+	static final int MAGIC = 0x53494D52;
+	static final short VERSION = 1;
+	static final int BLOCK_ROWS = 1024;
+
+	private final WritableByteChannel channel;
+	private ByteBuffer buffer;
+
+	private byte[] scenario;
+	private List<byte[]> names;
+	private int nrMeasures;
+	private long[] replications;
+	private double[][] columns;
+	private int rows;
+
+	BinaryResultsWriter(WritableByteChannel channel, int bufferSize) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, 64));
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		drain();
+	}
+
+	@Override
+	public void beginScenario(String scenario, List<String> measures) {
+		this.scenario = scenario.getBytes(StandardCharsets.UTF_8);
+		this.names = new ArrayList<>();
+		for (String name : measures) {
+			names.add(name.getBytes(StandardCharsets.UTF_8));
+		}
+		this.nrMeasures = measures.size();
+		this.replications = new long[BLOCK_ROWS];
+		this.columns = new double[nrMeasures][BLOCK_ROWS];
+		this.rows = 0;
+	}
+
+	@Override
+	public void row(long replication, double[] values) {
+		if (values.length != nrMeasures) {
+			throw new IllegalArgumentException("Expected " + nrMeasures + " values, but got " + values.length);
+		}
+		replications[rows] = replication;
+		for (int j = 0; j < nrMeasures; j++) {
+			columns[j][rows] = values[j];
+		}
+		rows++;
+		if (rows == BLOCK_ROWS) {
+			writeBlock();
+		}
+	}
+
+	@Override
+	public void endScenario() {
+		flush();
+		scenario = null;
+	}
+
+	@Override
+	public void flush() {
+		if (rows > 0) {
+			writeBlock();
+		}
+		drain();
+	}
+
+	private void writeBlock() {
+		int length = 2 + scenario.length + 4 + 4 + rows * 8 * (1 + nrMeasures);
+		for (byte[] name : names) {
+			length += 2 + name.length;
+		}
+		ensureRemaining(4 + length);
+		buffer.putInt(length);
+		putUtf(scenario);
+		buffer.putInt(nrMeasures);
+		for (byte[] name : names) {
+			putUtf(name);
+		}
+		buffer.putInt(rows);
+		for (int i = 0; i < rows; i++) {
+			buffer.putLong(replications[i]);
+		}
+		for (int j = 0; j < nrMeasures; j++) {
+			double[] column = columns[j];
+			for (int i = 0; i < rows; i++) {
+				buffer.putDouble(column[i]);
+			}
+		}
+		rows = 0;
+	}
+
+	private void putUtf(byte[] bytes) {
+		if (bytes.length > 0xFFFF) {
+			throw new IllegalArgumentException("Names can be at most 65535 bytes long");
+		}
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+	private void ensureRemaining(int bytes) {
+		if (buffer.remaining() >= bytes) {
+			return;
+		}
+		drain();
+		if (buffer.capacity() < bytes) {
+			buffer = ByteBuffer.allocateDirect(bytes);
+		}
+	}
+
+	private void drain() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to write simulation results", ex);
+		}
+		buffer.clear();
+	}
+}
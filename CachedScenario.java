@@ -0,0 +1,53 @@
+package general.cache;
+
+import java.util.Collections;
+import java.util.List;
+
+import general.checkpoint.StateSnapshot;
+
+/**
+ * The results of a scenario that were stored in a {@link ScenarioCache}: the values of the
+ * performance measures of every replication, and a snapshot of the system state after the last
+ * replication, from which more replications can be simulated.
+ *
+ */
+public class CachedScenario {
+
+	private final List<String> measures;
+	private final List<List<Double>> rows;
+	private final StateSnapshot state;
+
+	CachedScenario(List<String> measures, List<List<Double>> rows, StateSnapshot state) {
+		this.measures = Collections.unmodifiableList(measures);
+		this.rows = Collections.unmodifiableList(rows);
+		this.state = state;
+	}
+
+	/**
+	 * @return the names of the performance measures, in the order of the rows
+	 */
+	public List<String> getMeasures() {
+		return measures;
+	}
+
+	/**
+	 * @return the values of the performance measures of every replication
+	 */
+	public List<List<Double>> getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return the number of replications
+	 */
+	public int size() {
+		return rows.size();
+	}
+
+	/**
+	 * @return the state after the last replication
+	 */
+	public StateSnapshot getState() {
+		return state;
+	}
+}
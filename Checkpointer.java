@@ -0,0 +1,247 @@
+package general.checkpoint;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import general.SystemState;
+
+/**
+ * Writes checkpoints of a {@link general.Simulation} to disk. A checkpoint consists of two files
+ * next to each other:
+ * <ul>
+ * <li><code>base.rows</code>, an append-only file with the performance measures of every completed
+ *     replication. Every checkpoint only appends the replications completed since the previous one.</li>
+ * <li><code>base.state</code>, which contains the progress of the simulation and a snapshot of the
+ *     system state, and is replaced atomically by every checkpoint.</li>
+ * </ul>
+ * The snapshot is taken on the simulation thread, as the state keeps changing afterwards, but all
+ * disk I/O happens on a background thread so the simulation can continue immediately. The rows are
+ * forced to disk before the state file that refers to them is replaced, so the files on disk always
+ * form a consistent checkpoint.
+ *
+ */
+public class Checkpointer implements AutoCloseable {
+
+	private static final int MAGIC = 0x53494D43;
+	private static final short VERSION = 1;
+
+	private final Path stateFile;
+	private final Path tempFile;
+	private final FileChannel rowsChannel;
+	private final int nrMeasures;
+	private final ExecutorService writer;
+	private long rowsWritten;
+	private volatile Throwable failure;
+
+	/**
+	 * Starts a new series of checkpoints, overwriting existing checkpoint files.
+	 *
+	 * @param base			the path of the checkpoint files, without extension
+	 * @param nrMeasures	the number of performance measures of the simulation
+	 */
+	public Checkpointer(Path base, int nrMeasures) {
+		this(base, nrMeasures, 0);
+	}
+
+	/**
+	 * Continues a series of checkpoints that was loaded with {@link #load(Path)} from the same files.
+	 *
+	 * @param base			the path of the checkpoint files, without extension
+	 * @param checkpoint	the checkpoint that was loaded
+	 */
+	public Checkpointer(Path base, SimulationCheckpoint checkpoint) {
+		this(base, checkpoint.getMeasures().size(), checkpoint.getCompleted());
+	}
+
+	private Checkpointer(Path base, int nrMeasures, long rows) {
+		this.stateFile = sibling(base, ".state");
+		this.tempFile = sibling(base, ".state.tmp");
+		this.nrMeasures = nrMeasures;
+		this.rowsWritten = rows;
+		try {
+			Path rowsFile = sibling(base, ".rows");
+			if (rows == 0) {
+				this.rowsChannel = FileChannel.open(rowsFile, StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				ByteBuffer header = ByteBuffer.allocate(10);
+				header.putInt(MAGIC).putShort(VERSION).putInt(nrMeasures).flip();
+				writeFully(rowsChannel, header);
+			}
+			else {
+				// drop rows that were written after the last complete checkpoint
+				this.rowsChannel = FileChannel.open(rowsFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				long size = 10 + rows * 8 * nrMeasures;
+				if (rowsChannel.size() < size) {
+					rowsChannel.close();
+					throw new IllegalStateException(rowsFile + " does not hold the " + rows + " rows of the checkpoint");
+				}
+				rowsChannel.truncate(size);
+				rowsChannel.position(rowsChannel.size());
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to open checkpoint files at " + base, ex);
+		}
+		this.writer = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "checkpoint-writer-" + base.getFileName());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	private static Path sibling(Path base, String extension) {
+		return base.resolveSibling(base.getFileName() + extension);
+	}
+
+	/**
+	 * Takes a snapshot of the simulation and writes it in the background.
+	 *
+	 * @param scenario		the scenario of the simulation
+	 * @param target		the number of replications the simulation should run
+	 * @param measures		the names of the performance measures
+	 * @param rows			the performance measures of all completed replications
+	 * @param inReplication	whether a replication is running
+	 * @param eventCount	the number of events processed by the running replication
+	 * @param state			the system state
+	 */
+	public void save(String scenario, long target, List<String> measures, List<List<Double>> rows,
+			boolean inReplication, long eventCount, SystemState<?> state) {
+		checkFailure();
+		int newRows = (int) (rows.size() - rowsWritten);
+		ByteBuffer rowBytes = ByteBuffer.allocate(newRows * 8 * nrMeasures);
+		for (int i = (int) rowsWritten; i < rows.size(); i++) {
+			for (double d : rows.get(i)) {
+				rowBytes.putDouble(d);
+			}
+		}
+		rowBytes.flip();
+		rowsWritten = rows.size();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeBoolean(scenario != null);
+			if (scenario != null) {
+				out.writeUTF(scenario);
+			}
+			out.writeLong(target);
+			out.writeLong(rowsWritten);
+			out.writeInt(measures.size());
+			for (String m : measures) {
+				out.writeUTF(m);
+			}
+			out.writeBoolean(inReplication);
+			out.writeLong(eventCount);
+			StateSnapshot.of(state).writeTo(out);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to create checkpoint", ex);
+		}
+
+		writer.execute(() -> {
+			if (failure != null) {
+				return;
+			}
+			try {
+				writeFully(rowsChannel, rowBytes);
+				rowsChannel.force(false);
+				Files.write(tempFile, bytes.toByteArray());
+				Files.move(tempFile, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException | RuntimeException ex) {
+				failure = ex;
+			}
+		});
+	}
+
+	/**
+	 * Waits until all checkpoints have been written and closes the files.
+	 */
+	@Override
+	public void close() {
+		writer.shutdown();
+		try {
+			while (!writer.awaitTermination(1, TimeUnit.MINUTES)) {
+				// keep waiting for the last checkpoint to be written
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			rowsChannel.close();
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to close checkpoint file", ex);
+		}
+		checkFailure();
+	}
+
+	private void checkFailure() {
+		Throwable t = failure;
+		if (t != null) {
+			throw new IllegalStateException("Writing a checkpoint failed", t);
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Reads the last complete checkpoint.
+	 *
+	 * @param base	the path of the checkpoint files, without extension
+	 * @return		the checkpoint
+	 */
+	public static SimulationCheckpoint load(Path base) {
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(sibling(base, ".state")))) {
+			if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+				throw new IllegalStateException(base + ".state is not a supported checkpoint file");
+			}
+			String scenario = in.readBoolean() ? in.readUTF() : null;
+			long target = in.readLong();
+			long completed = in.readLong();
+			int nrMeasures = in.readInt();
+			List<String> measures = new ArrayList<>();
+			for (int j = 0; j < nrMeasures; j++) {
+				measures.add(in.readUTF());
+			}
+			boolean inReplication = in.readBoolean();
+			long eventCount = in.readLong();
+			byte[] state = in.readAllBytes();
+
+			List<List<Double>> rows = new ArrayList<>();
+			try (DataInputStream rin = new DataInputStream(new BufferedInputStream(
+					Files.newInputStream(sibling(base, ".rows"))))) {
+				if (rin.readInt() != MAGIC || rin.readShort() != VERSION || rin.readInt() != nrMeasures) {
+					throw new IllegalStateException(base + ".rows does not belong to this checkpoint");
+				}
+				for (long i = 0; i < completed; i++) {
+					List<Double> row = new ArrayList<>(nrMeasures);
+					for (int j = 0; j < nrMeasures; j++) {
+						row.add(rin.readDouble());
+					}
+					rows.add(row);
+				}
+			}
+			return new SimulationCheckpoint(scenario, target, measures, rows, inReplication, eventCount,
+					StateSnapshot.fromByteArray(state));
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to read checkpoint " + base, ex);
+		}
+	}
+}
@@ -0,0 +1,455 @@
+package general.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the replications of a scenario in worker processes. The coordinator splits the replications
+ * into ranges, each of which is simulated from its own seed, derived from the seed of the scenario
+ * and the index of the range. {@link Worker}s connect to the coordinator over a socket, take ranges
+ * one at a time and send back a {@link Welford} state per performance measure. The coordinator
+ * merges these states in the order of the ranges, so the estimates only depend on the seed and the
+ * size of the ranges, not on the number of workers or on which worker ran which range.
+ *
+ * A range that fails, because its worker died, lost its connection, did not answer within the
+ * task timeout or threw an exception, is handed to another worker, up to a maximum number of
+ * attempts. So a bad model run takes down at most one worker, not the whole sweep.
+ *
+ * The coordinator can start workers on the same machine with {@link #startLocalWorkers(int)}.
+ * Workers on other machines can connect at any time, also while a scenario is running, if the
+ * coordinator listens on an address they can reach.
+ *
+ */
+public class Coordinator implements AutoCloseable {
+
+	static final int MAGIC = 0x53494D57;
+	static final short VERSION = 1;
+	// messages from the coordinator
+	static final byte TASK = 1;
+	static final byte SHUTDOWN = 2;
+	// messages from a worker
+	static final byte RESULT = 1;
+	static final byte FAILURE = 2;
+
+	private final ServerSocket server;
+	private final BlockingQueue<Task> pending;
+	private final List<Connection> connections;
+	private final List<Process> processes;
+	private volatile boolean closed;
+	private volatile int maxAttempts;
+	private volatile long taskTimeout;
+
+	/**
+	 * Starts a coordinator that only accepts workers on the same machine.
+	 *
+	 * @param port	The port to listen on, or 0 for any free port
+	 * @throws IOException if the port cannot be opened
+	 */
+	public Coordinator(int port) throws IOException {
+		this(InetAddress.getLoopbackAddress(), port);
+	}
+
+	/**
+	 * @param address	The address to listen on
+	 * @param port		The port to listen on, or 0 for any free port
+	 * @throws IOException if the port cannot be opened
+	 */
+	public Coordinator(InetAddress address, int port) throws IOException {
+		this.server = new ServerSocket(port, 50, address);
+		this.pending = new LinkedBlockingQueue<>();
+		this.connections = new CopyOnWriteArrayList<>();
+		this.processes = new ArrayList<>();
+		this.maxAttempts = 3;
+		Thread acceptor = new Thread(this::accept, "coordinator-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Sets how many times a range of replications is tried before the scenario fails.
+	 *
+	 * @param maxAttempts	The maximum number of attempts, must be >= 1
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("The maximum number of attempts must be >= 1");
+		}
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Sets how long a worker may take to run a range of replications, after which it is considered
+	 * dead and the range is handed to another worker.
+	 *
+	 * @param millis	The timeout in milliseconds, or 0 to wait indefinitely
+	 */
+	public void setTaskTimeout(long millis) {
+		if (millis < 0 || millis > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The task timeout must be between 0 and "+Integer.MAX_VALUE);
+		}
+		this.taskTimeout = millis;
+	}
+
+	/**
+	 *
+	 * @return Returns the port the coordinator listens on
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 *
+	 * @return Returns the number of workers that are connected
+	 */
+	public int getWorkerCount() {
+		return connections.size();
+	}
+
+	/**
+	 * Starts worker processes on this machine, with the same Java installation and class path as
+	 * this process. The processes are stopped when the coordinator is closed.
+	 *
+	 * @param n	The number of workers to start
+	 */
+	public void startLocalWorkers(int n) {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		for (int i = 0; i < n; i++) {
+			ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					Worker.class.getName(), InetAddress.getLoopbackAddress().getHostAddress(), String.valueOf(getPort()));
+			builder.inheritIO();
+			try {
+				synchronized (processes) {
+					processes.add(builder.start());
+				}
+			} catch (IOException ex) {
+				throw new UncheckedIOException("Could not start a worker", ex);
+			}
+		}
+	}
+
+	/**
+	 * Runs the replications of a scenario on the workers, and waits until all have completed. If no
+	 * workers are connected, this waits until one connects.
+	 *
+	 * @param factory		The factory of the simulation, which must be on the class path of the workers
+	 * @param scenario		The description of the scenario, which is passed to the factory
+	 * @param seed			The seed of the scenario, from which the seeds of the ranges are derived
+	 * @param replications	The number of replications
+	 * @param rangeSize		The number of replications per range
+	 * @return				The merged states of all performance measures, by name in the order of the simulation
+	 */
+	public synchronized Map<String,Welford> run(Class<? extends SimulationFactory> factory, String scenario,
+			long seed, long replications, long rangeSize) {
+		if (replications < 1 || rangeSize < 1) {
+			throw new IllegalArgumentException("The number of replications and the range size must be >= 1");
+		}
+		if (closed) {
+			throw new IllegalStateException("The coordinator is closed");
+		}
+		long ranges = (replications + rangeSize - 1) / rangeSize;
+		if (ranges > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many ranges, use a larger range size");
+		}
+		Job job = new Job(factory.getName(), scenario, (int) ranges);
+		for (int r = 0; r < ranges; r++) {
+			long size = Math.min(rangeSize, replications - r * rangeSize);
+			pending.add(new Task(job, r, rangeSeed(seed, r), size));
+		}
+
+		try {
+			while (!job.remaining.await(100, TimeUnit.MILLISECONDS)) {
+				if (job.failure != null || closed) {
+					break;
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			job.fail(new IllegalStateException("Interrupted while waiting for the workers"));
+		}
+		if (job.failure == null && job.remaining.getCount() > 0) {
+			job.fail(new IllegalStateException("The coordinator was closed"));
+		}
+		if (job.failure != null) {
+			pending.removeIf(t -> t.job == job);
+			throw job.failure;
+		}
+
+		Map<String,Welford> merged = new LinkedHashMap<>();
+		for (String measure : job.measures) {
+			merged.put(measure, new Welford());
+		}
+		for (int r = 0; r < ranges; r++) {
+			for (int j = 0; j < job.measures.size(); j++) {
+				merged.get(job.measures.get(j)).merge(job.states[r][j]);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Derives the seed of a range of replications from the seed of the scenario, by mixing them with
+	 * the finalizer of SplitMix64, such that the seeds of neighbouring ranges are unrelated.
+	 *
+	 * @param seed	The seed of the scenario
+	 * @param range	The index of the range
+	 * @return		The seed of the range
+	 */
+	public static long rangeSeed(long seed, long range) {
+		long z = seed + (range + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Tells all workers to stop, stops listening for new ones and stops the local worker processes.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			server.close();
+		} catch (IOException ex) {
+			// nothing to do, no more workers can connect
+		}
+		synchronized (processes) {
+			for (Process p : processes) {
+				try {
+					if (!p.waitFor(5, TimeUnit.SECONDS)) {
+						p.destroyForcibly();
+					}
+				} catch (InterruptedException ex) {
+					p.destroyForcibly();
+					Thread.currentThread().interrupt();
+				}
+			}
+			processes.clear();
+		}
+	}
+
+	private void accept() {
+		while (!closed) {
+			Socket socket;
+			try {
+				socket = server.accept();
+			} catch (IOException ex) {
+				// the server socket was closed
+				return;
+			}
+			Connection connection = new Connection(socket);
+			Thread thread = new Thread(connection, "coordinator-" + socket.getRemoteSocketAddress());
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private void retry(Task task, String reason) {
+		task.attempts++;
+		if (task.attempts >= maxAttempts) {
+			task.job.fail(new IllegalStateException("Range " + task.range + " of scenario " + task.job.scenario
+					+ " failed " + task.attempts + " times, the last time because " + reason));
+		}
+		else if (task.job.failure == null) {
+			pending.add(task);
+		}
+	}
+
+	/**
+	 * The replications of a scenario, and the states of the ranges that have completed.
+	 */
+	private static class Job {
+
+		private final String factory;
+		private final String scenario;
+		private final Welford[][] states;
+		private final CountDownLatch remaining;
+		private List<String> measures;
+		private volatile RuntimeException failure;
+
+		Job(String factory, String scenario, int ranges) {
+			this.factory = factory;
+			this.scenario = scenario;
+			this.states = new Welford[ranges][];
+			this.remaining = new CountDownLatch(ranges);
+		}
+
+		synchronized void complete(Task task, List<String> measures, Welford[] states) {
+			if (this.measures == null) {
+				this.measures = measures;
+			}
+			else if (!this.measures.equals(measures)) {
+				fail(new IllegalStateException("Range " + task.range + " has measures " + measures
+						+ ", but other ranges have " + this.measures));
+				return;
+			}
+			if (this.states[task.range] == null) {
+				this.states[task.range] = states;
+				remaining.countDown();
+			}
+		}
+
+		synchronized void fail(RuntimeException ex) {
+			if (failure == null) {
+				failure = ex;
+			}
+		}
+	}
+
+	/**
+	 * A range of replications of a job.
+	 */
+	private static class Task {
+
+		private final Job job;
+		private final int range;
+		private final long seed;
+		private final long replications;
+		private int attempts;
+
+		Task(Job job, int range, long seed, long replications) {
+			this.job = job;
+			this.range = range;
+			this.seed = seed;
+			this.replications = replications;
+		}
+	}
+
+	/**
+	 * The connection with a single worker, which hands it one task at a time.
+	 */
+	private class Connection implements Runnable {
+
+		private final Socket socket;
+
+		Connection(Socket socket) {
+			this.socket = socket;
+		}
+
+		@Override
+		public void run() {
+			Task task = null;
+			try (Socket s = socket) {
+				s.setTcpNoDelay(true);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+				if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+					return;
+				}
+				connections.add(this);
+				while (!closed) {
+					task = pending.poll(100, TimeUnit.MILLISECONDS);
+					if (task == null || task.job.failure != null) {
+						task = null;
+						continue;
+					}
+					s.setSoTimeout((int) taskTimeout);
+					out.writeByte(TASK);
+					out.writeInt(task.range);
+					out.writeUTF(task.job.factory);
+					out.writeUTF(task.job.scenario);
+					out.writeLong(task.seed);
+					out.writeLong(task.replications);
+					out.flush();
+
+					byte tag = in.readByte();
+					if (in.readInt() != task.range) {
+						throw new IOException("The worker answered for another range");
+					}
+					if (tag == RESULT) {
+						int m = in.readInt();
+						List<String> measures = new ArrayList<>(m);
+						Welford[] states = new Welford[m];
+						for (int j = 0; j < m; j++) {
+							measures.add(in.readUTF());
+							states[j] = Welford.read(in);
+						}
+						task.job.complete(task, measures, states);
+					}
+					else {
+						retry(task, "the model threw " + in.readUTF());
+					}
+					task = null;
+				}
+				out.writeByte(SHUTDOWN);
+				out.flush();
+			} catch (IOException | InterruptedException ex) {
+				if (task != null) {
+					retry(task, "the connection with the worker was lost: " + ex);
+				}
+			} finally {
+				connections.remove(this);
+			}
+		}
+	}
+
+	/**
+	 * Runs a scenario on local workers and prints the estimates. For example
+	 * <pre>
+	 * java -cp target/classes general.distributed.Coordinator --factory Assignment1.MainLitterCollection$Factory
+	 *      --scenario 900 --replications 1000 --range 50 --workers 4
+	 * </pre>
+	 * With <code>--workers 0</code> and <code>--bind 0.0.0.0</code>, the coordinator waits for workers
+	 * on other machines to connect to <code>--port</code>.
+	 *
+	 * @param args	the options
+	 * @throws Exception if the factory cannot be found or the coordinator cannot be started
+	 */
+	public static void main(String[] args) throws Exception {
+		String factory = null;
+		String scenario = "";
+		long seed = 0;
+		long replications = 1000;
+		long range = 100;
+		int workers = Runtime.getRuntime().availableProcessors();
+		int port = 0;
+		InetAddress bind = InetAddress.getLoopbackAddress();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--factory": factory = args[++i]; break;
+			case "--scenario": scenario = args[++i]; break;
+			case "--seed": seed = Long.parseLong(args[++i]); break;
+			case "--replications": replications = Long.parseLong(args[++i]); break;
+			case "--range": range = Long.parseLong(args[++i]); break;
+			case "--workers": workers = Integer.parseInt(args[++i]); break;
+			case "--port": port = Integer.parseInt(args[++i]); break;
+			case "--bind": bind = InetAddress.getByName(args[++i]); break;
+			default:
+				System.err.println("Unknown option " + args[i]);
+				System.exit(2);
+			}
+		}
+		if (factory == null) {
+			System.err.println("Usage: Coordinator --factory <class> [--scenario s] [--seed n] [--replications n] "
+					+ "[--range n] [--workers n] [--port n] [--bind address]");
+			System.exit(2);
+		}
+		Class<? extends SimulationFactory> cls = Class.forName(factory).asSubclass(SimulationFactory.class);
+		try (Coordinator coordinator = new Coordinator(bind, port)) {
+			System.err.println("Coordinator listening on port " + coordinator.getPort());
+			coordinator.startLocalWorkers(workers);
+			Map<String,Welford> estimates = coordinator.run(cls, scenario, seed, replications, range);
+			for (Entry<String,Welford> e : estimates.entrySet()) {
+				System.out.println(e.getKey() + ": " + e.getValue());
+			}
+		}
+	}
+}
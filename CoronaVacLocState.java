@@ -1,13 +1,20 @@
 package Assignment1;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import general.Counter;
+import general.PerformanceMeasure;
 import general.SystemState;
 import general.annotations.AutoCounter;
 import general.annotations.AutoMeasure;
 import general.annotations.Initialize;
 import general.annotations.StopCriterium;
-
-import java.util.Random;
+import general.process.ProcessScheduler;
+import general.process.Script;
+import general.resources.EntityStore;
+import general.resources.Resource;
 
 public class CoronaVacLocState extends SystemState<CoronaVacLocState>
 {
@@ -20,21 +27,33 @@ public class CoronaVacLocState extends SystemState<CoronaVacLocState>
 	private boolean lastPerson;
 
 	private final int nServers;
-	private int nServersBusy;
-	private int nServerQueue;
+	private final Resource servers;
 
 	private final int mu;
 
 	private final int nChairs;
-	private int nChairsBusy;
-	private int nChairQueue;
+	private final Resource chairs;
+
+	private final EntityStore persons;
+	private final int arrivedColumn;
 
 	private final double chairSittingTime;
 
+	// Shadow chair stages, one per capacity, which see the same persons as the real chairs
+	private int[] shadowCapacities = new int[0];
+	private Resource[] shadowChairs = new Resource[0];
+	private double[] shadowNoAvailableChair = new double[0];
+	private double[] shadowQueueChair = new double[0];
+
 	private double lastPersonLeftTime;
 	private double lastPersonArrivedTime;
 
-	private final Random random;
+	// Event handlers
+	private final int arrivalEvent;
+
+	// Processes
+	private final ProcessScheduler<CoronaVacLocState> processes;
+	private final int personProcess;
 
 	// Counter variables
 	@AutoCounter("Cumulated time spend in chair queue")
@@ -49,6 +68,9 @@ public class CoronaVacLocState extends SystemState<CoronaVacLocState>
 	@AutoCounter("Total departures")
 	private Counter departures;
 
+	@AutoCounter("Cumulated time spent at the location")
+	private Counter cumSojourn;
+
 	public CoronaVacLocState(double timeHorizon, long seed,
 							 int nServers,
 							 int nChairs,
@@ -58,7 +80,6 @@ public class CoronaVacLocState extends SystemState<CoronaVacLocState>
 							 int maxArrivals,
 							 double rejectionHour) {
 		super(timeHorizon, seed);
-		this.random = new Random(seed);
 		this.nServers = nServers;
 		this.nChairs = nChairs;
 		this.lambda = lambda;
@@ -66,49 +87,136 @@ public class CoronaVacLocState extends SystemState<CoronaVacLocState>
 		this.chairSittingTime = chairSittingTime;
 		this.maxArrivals = maxArrivals;
 		this.rejectionHour = rejectionHour;
+		this.persons = new EntityStore(maxArrivals + 1);
+		this.servers = new Resource("servers", nServers, this.persons.getCapacity());
+		this.chairs = new Resource("chairs", nChairs, this.persons.getCapacity());
+		this.arrivedColumn = this.persons.addColumn("arrived");
+
+		this.arrivalEvent = registerHandler("doArrival", this::doArrival);
+
+		// a person is served at a booth, and then sits on a chair for a fixed time, or stands if no chair is free
+		this.processes = new ProcessScheduler<>(this, this.persons.getCapacity());
+		this.personProcess = this.processes.define("person", new Script()
+				.request(this.servers)
+				.hold((time, person) -> UtilsCoronaVacLoc.nextServiceTime(getRandom(), this.mu))
+				.run("doServerDeparture", this::doServerDeparture)
+				.release(this.servers)
+				.hold(this.chairSittingTime)
+				.run("doChairDeparture", this::doChairDeparture));
 
 		reset();
 	}
 
+	/**
+	 * Adds shadow chair stages with the given numbers of chairs, replacing those added before, which must
+	 * be done before a replication is initialized. The number of chairs does not change anything before a
+	 * person leaves the booth, and persons leave the chairs after a fixed time whether they found one or
+	 * not, so the chair stage is not needed for the rest of the model. Every shadow stage receives the same
+	 * persons at the same times as the real chairs, and records its own standing persons and chair queue
+	 * time, which are exactly those of a replication with that number of chairs. So a single replication
+	 * gives the whole curve of {@link #getP()} and {@link #getChairQueueTime()} against the number of
+	 * chairs, see {@link #getShadowMeasures()}.
+	 *
+	 * @param capacities	the numbers of chairs, each must be >= 0
+	 */
+	public void setShadowChairs(int... capacities) {
+		Resource[] resources = new Resource[capacities.length];
+		for (int i = 0; i < capacities.length; i++) {
+			if (capacities[i] < 0) {
+				throw new IllegalArgumentException("The number of chairs must be >= 0");
+			}
+			resources[i] = new Resource("chairs" + capacities[i], capacities[i], this.persons.getCapacity());
+		}
+		this.shadowCapacities = capacities.clone();
+		this.shadowChairs = resources;
+		this.shadowNoAvailableChair = new double[capacities.length];
+		this.shadowQueueChair = new double[capacities.length];
+	}
+
+	/**
+	 * @return the numbers of chairs of the shadow chair stages
+	 */
+	public int[] getShadowCapacities() {
+		return this.shadowCapacities.clone();
+	}
+
+	/**
+	 * @param stage	the index of a shadow chair stage
+	 * @return		the fraction of persons that found no free chair at the stage, like {@link #getP()}
+	 */
+	public double getShadowP(int stage) {
+		return this.shadowNoAvailableChair[stage]/getAdmitted();
+	}
+
+	/**
+	 * @param stage	the index of a shadow chair stage
+	 * @return		the chair queue time per person that found no free chair at the stage, like {@link #getChairQueueTime()}
+	 */
+	public double getShadowChairQueueTime(int stage) {
+		if (this.shadowNoAvailableChair[stage] == 0) {
+			return 0.0;
+		} else {
+			return this.shadowQueueChair[stage] / this.shadowNoAvailableChair[stage];
+		}
+	}
+
+	/**
+	 * Creates the performance measures of the shadow chair stages, which are named like the measures
+	 * {@link #getP()} and {@link #getChairQueueTime()}, followed by the number of chairs.
+	 *
+	 * @return the measures of all shadow chair stages
+	 */
+	public List<PerformanceMeasure<CoronaVacLocState>> getShadowMeasures() {
+		List<PerformanceMeasure<CoronaVacLocState>> result = new ArrayList<>();
+		for (int i = 0; i < this.shadowCapacities.length; i++) {
+			int stage = i;
+			result.add(new PerformanceMeasure<CoronaVacLocState>("p with " + this.shadowCapacities[i] + " chairs") {
+				@Override
+				public double compute(CoronaVacLocState state) {
+					return state.getShadowP(stage);
+				}
+			});
+			result.add(new PerformanceMeasure<CoronaVacLocState>("if no chair time is with " + this.shadowCapacities[i] + " chairs") {
+				@Override
+				public double compute(CoronaVacLocState state) {
+					return state.getShadowChairQueueTime(stage);
+				}
+			});
+		}
+		return result;
+	}
+
 	@Initialize
 	public void initReplication() {
-		double nextArrivalTime = UtilsCoronaVacLoc.nextInterArrivalTime(this.random, this.lambda);
-		addEvent(nextArrivalTime, this::doArrival);
+		double nextArrivalTime = UtilsCoronaVacLoc.nextInterArrivalTime(getRandom(), this.lambda);
+		addEvent(nextArrivalTime, this.arrivalEvent);
 	}
 
-	@StopCriterium
+	// lastPerson is only set in an arrival, which also increments the arrivals
+	@StopCriterium(counters = { "arrivals", "departures" })
 	public boolean shouldTerminate() {
 		return this.departures.getValue() == this.arrivals.getValue() && this.lastPerson;
 	}
 
 	public void doArrival(double eventTime) {
 
-		// update counter for chair queue time
-		this.cumQueueChair.incrementBy((eventTime - getCurrentTime()) * this.nChairQueue);
+		updateChairQueueTime(eventTime);
 
 		this.arrivals.increment();
 
-		if (this.nServersBusy == this.nServers) {
-			this.nServerQueue++;
-		} else {
-			this.nServersBusy++;
-			// generate next departure
-			double serviceDuration = UtilsCoronaVacLoc.nextServiceTime(random, mu);
-			double departureTime = eventTime + serviceDuration;
-			addEvent(departureTime, this::doServerDeparture);
-		}
+		admit(eventTime);
 
 		// generate next arrival
 		if (this.maxArrivals == this.arrivals.getValue()) {
-			addEvent(Double.POSITIVE_INFINITY, this::doArrival);
+			addEvent(Double.POSITIVE_INFINITY, this.arrivalEvent);
 			this.lastPerson = true;
 		} else {
-			double nextInterArrivalTime = UtilsCoronaVacLoc.nextInterArrivalTime(random, lambda);
+			double nextInterArrivalTime = UtilsCoronaVacLoc.nextInterArrivalTime(getRandom(), lambda);
 			double nextArrivalTime = eventTime + nextInterArrivalTime;
 			if (nextArrivalTime <= this.rejectionHour) {
-				addEvent(nextArrivalTime, this::doArrival);
+				addEvent(nextArrivalTime, this.arrivalEvent);
 			} else {
-				addEvent(Double.POSITIVE_INFINITY, this::doArrival);
+				addEvent(Double.POSITIVE_INFINITY, this.arrivalEvent);
 				this.lastPerson = true;
 			}
 		}
@@ -117,53 +225,77 @@ public class CoronaVacLocState extends SystemState<CoronaVacLocState>
 
 	}
 
-	public void doServerDeparture(double eventTime) {
+	/**
+	 * Lets a person that arrived join the queue for the booths.
+	 *
+	 * @param eventTime	the time of arrival
+	 */
+	protected void admit(double eventTime) {
+		int person = this.persons.allocate();
+		this.persons.set(this.arrivedColumn, person, eventTime);
+		this.processes.start(this.personProcess, person, eventTime);
+	}
 
-		// update counter for chair queue time
-		this.cumQueueChair.incrementBy((eventTime - getCurrentTime()) * this.nChairQueue);
+	/**
+	 * Updates the counter for the chair queue time, which every event has to do before it changes the state.
+	 *
+	 * @param eventTime	the time of the event
+	 */
+	protected void updateChairQueueTime(double eventTime) {
+		this.cumQueueChair.incrementBy((eventTime - getCurrentTime()) * this.chairs.getQueueLength());
+		for (int i = 0; i < this.shadowChairs.length; i++) {
+			this.shadowQueueChair[i] += (eventTime - getCurrentTime()) * this.shadowChairs[i].getQueueLength();
+		}
+	}
+
+	public void doServerDeparture(double eventTime, int person) {
 
-		this.nServersBusy--;
-		addEvent(eventTime + this.chairSittingTime, this::doChairDeparture);
-		if (this.nChairsBusy == this.nChairs) {
-			this.nChairQueue++;
+		updateChairQueueTime(eventTime);
+
+		// the sitting time is fixed, so persons leave the chairs in the order they requested one,
+		// and the person leaving is always the one that holds a chair the longest, which is why
+		// persons that have to stand do not wait for a chair, unless there are no chairs at all,
+		// in which case every person stands until it leaves the queue
+		if (!this.chairs.request(person, eventTime)) {
 			this.cumNoAvailableChair.increment();
-		} else {
-			this.nChairsBusy++;
 		}
-
-		if (this.nServerQueue > 0) {
-			this.nServerQueue--;
-			this.nServersBusy++;
-			// generate next departure
-			double serviceDuration = UtilsCoronaVacLoc.nextServiceTime(random, mu);
-			double departureTime = eventTime + serviceDuration;
-			addEvent(departureTime, this::doServerDeparture);
+		for (int i = 0; i < this.shadowChairs.length; i++) {
+			if (!this.shadowChairs[i].request(person, eventTime)) {
+				this.shadowNoAvailableChair[i]++;
+			}
 		}
-
 	}
 
-	public void doChairDeparture(double eventTime) {
+	public void doChairDeparture(double eventTime, int person) {
 
-		// update counter for chair queue time
-		this.cumQueueChair.incrementBy((eventTime - getCurrentTime()) * this.nChairQueue);
+		updateChairQueueTime(eventTime);
 
 		this.departures.increment();
-		this.nChairsBusy--;
-		if (this.nChairQueue > 0) {
-			this.nChairsBusy++;
-			this.nChairQueue--;
+		this.chairs.release(person, eventTime);
+		for (int i = 0; i < this.shadowChairs.length; i++) {
+			this.shadowChairs[i].release(person, eventTime);
 		}
+		this.cumSojourn.incrementBy(eventTime - this.persons.get(this.arrivedColumn, person));
+		this.persons.free(person);
 
 		this.lastPersonLeftTime = eventTime;
 	}
 
 	@AutoMeasure("p")
-	public Double getP() {
-		return this.cumNoAvailableChair.getValue()/this.arrivals.getValue();
+	public double getP() {
+		return this.cumNoAvailableChair.getValue()/getAdmitted();
+	}
+
+	/**
+	 * @return the number of persons that joined the queue for the booths, and so will leave a chair or stand,
+	 * 			which is the number of arrivals unless persons also come from or go to other locations
+	 */
+	protected double getAdmitted() {
+		return this.arrivals.getValue();
 	}
 
 	@AutoMeasure("if no chair time is")
-	public Double getChairQueueTime() {
+	public double getChairQueueTime() {
 		if (this.cumNoAvailableChair.getValue() == 0) {
 			return 0.0;
 		} else {
@@ -172,36 +304,83 @@ public class CoronaVacLocState extends SystemState<CoronaVacLocState>
 	}
 
 	@AutoMeasure("last person arrived at")
-	public Double getLastPersonArrivalTime() {
+	public double getLastPersonArrivalTime() {
 		return this.lastPersonArrivedTime;
 	}
 
 	@AutoMeasure("last person left at")
-	public Double getLastPersonTime() {
+	public double getLastPersonTime() {
 		return this.lastPersonLeftTime;
 	}
 
 	@AutoMeasure("Arrivals")
-	public Double getArrivals() {
+	public double getArrivals() {
 		return this.arrivals.getValue();
 	}
 
 	@AutoMeasure("cumQueueTime")
-	public Double getCumQueueTime() {
+	public double getCumQueueTime() {
 		return this.cumQueueChair.getValue();
 	}
 
 	@AutoMeasure("cumNoAvailableChair")
-	public Double getCumNoAvailableChair() {
+	public double getCumNoAvailableChair() {
 		return this.cumNoAvailableChair.getValue();
 	}
 
+	/**
+	 * @return the number of chairs that are in use
+	 */
+	public int getChairsInUse() {
+		return this.chairs.getBusy();
+	}
+
+	/**
+	 * @return the number of persons waiting for a booth
+	 */
+	public int getServerQueueLength() {
+		return this.servers.getQueueLength();
+	}
+
+	/**
+	 * @return the mean time persons waited for a booth in the last replication
+	 */
+	public double getMeanServerWait() {
+		return this.servers.getMeanWait();
+	}
+
+	/**
+	 * @return the mean time persons stood waiting for a chair in the last replication
+	 */
+	public double getMeanChairWait() {
+		return this.chairs.getMeanWait();
+	}
+
+	/**
+	 * @return the mean time from arrival until departure of the persons in the last replication
+	 */
+	public double getMeanSojourn() {
+		return this.departures.getValue() == 0 ? 0 : this.cumSojourn.getValue() / this.departures.getValue();
+	}
+
+	/**
+	 * @return the time average of the fraction of busy booths in the last replication
+	 */
+	public double getServerUtilization() {
+		return this.servers.getUtilization(getCurrentTime());
+	}
+
 	@Override
 	public void reset() {
-		this.nServersBusy = 0;
-		this.nServerQueue = 0;
-		this.nChairsBusy = 0;
-		this.nChairQueue = 0;
+		this.servers.reset(0);
+		this.chairs.reset(0);
+		for (int i = 0; i < this.shadowChairs.length; i++) {
+			this.shadowChairs[i].reset(0);
+		}
+		Arrays.fill(this.shadowNoAvailableChair, 0);
+		Arrays.fill(this.shadowQueueChair, 0);
+		this.persons.clear();
+		this.processes.reset();
 
 		this.lastPerson = false;
 	}
@@ -0,0 +1,96 @@
+package Assignment1;
+
+import general.annotations.AutoMeasure;
+import general.parallel.SiteNetwork;
+
+/**
+ * A vaccination location that is one of the sites of a {@link SiteNetwork}. A person that arrives while
+ * too many persons are waiting for a booth is sent to the next site, where the person arrives after a
+ * fixed travel time, which is the lookahead of the network. A person is sent on only once, so persons
+ * that arrive from another site always join the queue.
+ *
+ * A site does not know whether persons are still on their way to it, so it does not stop when its own
+ * last person left, but runs until only events after the time horizon are left.
+ *
+ * The arrivals of a site are the persons that arrived there first, but p is the fraction of the persons
+ * that were served at the site, so those sent on are left out and those received from another site are
+ * counted, as they all find a chair or stand at this site.
+ */
+public class CoronaVacNetworkState extends CoronaVacLocState {
+
+	private final SiteNetwork<CoronaVacLocState> network;
+	private final int site;
+	private final int nextSite;
+	private final int maxQueue;
+
+	private final int transferEvent;
+
+	private int sent;
+	private int received;
+
+	/**
+	 * @param network	the network the site belongs to, of which the lookahead is the travel time
+	 * @param site		the id of this site in the network
+	 * @param nextSite	the id of the site persons are sent to
+	 * @param maxQueue	the number of persons waiting for a booth at which arriving persons are sent on
+	 */
+	public CoronaVacNetworkState(SiteNetwork<CoronaVacLocState> network, int site, int nextSite, int maxQueue,
+								 double timeHorizon, long seed,
+								 int nServers,
+								 int nChairs,
+								 int lambda,
+								 int mu,
+								 double chairSittingTime,
+								 int maxArrivals,
+								 double rejectionHour) {
+		super(timeHorizon, seed, nServers, nChairs, lambda, mu, chairSittingTime, maxArrivals, rejectionHour);
+		this.network = network;
+		this.site = site;
+		this.nextSite = nextSite;
+		this.maxQueue = maxQueue;
+		this.transferEvent = registerHandler("doTransfer", this::doTransfer);
+	}
+
+	@Override
+	public boolean shouldTerminate() {
+		return false;
+	}
+
+	@Override
+	protected void admit(double eventTime) {
+		if (this.network != null && getServerQueueLength() >= this.maxQueue) {
+			this.sent++;
+			this.network.send(this.site, this.nextSite, eventTime + this.network.getLookahead(), this.transferEvent, 0);
+		} else {
+			super.admit(eventTime);
+		}
+	}
+
+	public void doTransfer(double eventTime) {
+		updateChairQueueTime(eventTime);
+		this.received++;
+		super.admit(eventTime);
+	}
+
+	@AutoMeasure("sent to the next site")
+	public double getSent() {
+		return this.sent;
+	}
+
+	@AutoMeasure("received from another site")
+	public double getReceived() {
+		return this.received;
+	}
+
+	@Override
+	protected double getAdmitted() {
+		return super.getAdmitted() - this.sent + this.received;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		this.sent = 0;
+		this.received = 0;
+	}
+}
@@ -5,20 +5,31 @@ package general;
  * 
  * As it is the most prevalent, this class models an accumulating statistical counter. 
  * 
+ * Once a counter is used by a {@link SystemState}, its value is kept in the contiguous array of
+ * counter values of the state, and the counter is a view of a fixed index in that array, such that
+ * the state can reset or copy all counters at once. A counter must therefore belong to one state only.
+ * 
  * @author Nemanja Milovanovic
  *
  */
 public class Counter {
 
 	private double initialValue;
-	private double accumSum;
 	private String name;
 	
+	// the accumulated sum is values[index], in the array of the state once the counter is bound to it
+	private double[] values;
+	private int index;
+	
+	// the state whose stop criteria depend on this counter, if any
+	private SystemState<?> watcher;
+	
 	public Counter(
 			double initialValue, 
 			String name) {
 		this.initialValue = initialValue;
-		accumSum = initialValue;
+		this.values = new double[] { initialValue };
+		this.index = 0;
 		this.name = name;
 	}
 	
@@ -28,7 +39,10 @@ public class Counter {
 	 * @param x Value to add
 	 */
 	public void incrementBy(double x) {
-		accumSum += x;
+		values[index] += x;
+		if (watcher != null) {
+			watcher.requestTerminationCheck();
+		}
 	}
 	
 	/**
@@ -43,19 +57,55 @@ public class Counter {
 	 * @return Returns the current value of the accumulated sum
 	 */
 	public double getValue() {
-		return accumSum;
+		return values[index];
+	}
+	
+	/**
+	 * Sets the accumulated sum to <code>x</code>, for example when a state is restored from a checkpoint.
+	 * 
+	 * @param x New value of the accumulated sum
+	 */
+	public void setValue(double x) {
+		values[index] = x;
+		if (watcher != null) {
+			watcher.requestTerminationCheck();
+		}
 	}
 	
 	/**
 	 * Resets the counter to its initial value.
 	 */
 	public void reset() {
-		accumSum = initialValue;
+		values[index] = initialValue;
+	}
+	
+	/**
+	 * 
+	 * @return Returns the value the counter is reset to
+	 */
+	public double getInitialValue() {
+		return initialValue;
+	}
+	
+	/**
+	 * Moves the value of this counter into an element of the array of counter values of a state.
+	 * 
+	 * @param values	The array of counter values
+	 * @param index		The index of this counter in the array
+	 */
+	void bind(double[] values, int index) {
+		values[index] = this.values[this.index];
+		this.values = values;
+		this.index = index;
+	}
+	
+	void watch(SystemState<?> state) {
+		watcher = state;
 	}
 	
 	@Override
 	public String toString() {
-		return "[" + name + ": " + accumSum + "]";
+		return "[" + name + ": " + getValue() + "]";
 	}
 
 	@Override
@@ -63,7 +113,7 @@ public class Counter {
 		final int prime = 31;
 		int result = 1;
 		long temp;
-		temp = Double.doubleToLongBits(accumSum);
+		temp = Double.doubleToLongBits(getValue());
 		result = prime * result + (int) (temp ^ (temp >>> 32));
 		result = prime * result + ((name == null) ? 0 : name.hashCode());
 		return result;
@@ -78,7 +128,7 @@ public class Counter {
 		if (!(obj instanceof Counter))
 			return false;
 		Counter other = (Counter) obj;
-		if (Double.doubleToLongBits(accumSum) != Double.doubleToLongBits(other.accumSum))
+		if (Double.doubleToLongBits(getValue()) != Double.doubleToLongBits(other.getValue()))
 			return false;
 		if (name == null) {
 			if (other.name != null)
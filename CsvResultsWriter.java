@@ -0,0 +1,104 @@
+package general.results;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import general.results.ResultsFormat.ResultsWriter;
+
+/**
+ * Writes rows in the text format of {@link ResultsFormat#CSV}. The first two columns are
+ * always <code>scenario</code> and <code>replication</code>. A new header line is only written
+ * when the measures of a scenario differ from those of the previous scenario. Lines are always
+ * written completely, so a partially written file can be read up to the last line break.
+ *
+ */
+class CsvResultsWriter implements ResultsWriter {
+
+	private final WritableByteChannel channel;
+	private final CharsetEncoder encoder;
+	private final ByteBuffer buffer;
+	private final StringBuilder line;
+
+	private List<String> header;
+	private String scenario;
+
+	CsvResultsWriter(WritableByteChannel channel, int bufferSize) {
+		this.channel = channel;
+		this.encoder = StandardCharsets.UTF_8.newEncoder();
+		this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, 1024));
+		this.line = new StringBuilder();
+	}
+
+	@Override
+	public void beginScenario(String scenario, List<String> measures) {
+		this.scenario = quote(scenario);
+		if (!measures.equals(header)) {
+			header = measures;
+			line.setLength(0);
+			line.append("scenario,replication");
+			for (String m : measures) {
+				line.append(',').append(quote(m));
+			}
+			writeLine();
+		}
+	}
+
+	@Override
+	public void row(long replication, double[] values) {
+		line.setLength(0);
+		line.append(scenario).append(',').append(replication);
+		for (double d : values) {
+			line.append(',').append(d);
+		}
+		writeLine();
+	}
+
+	@Override
+	public void endScenario() {
+		flush();
+	}
+
+	@Override
+	public void flush() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to write simulation results", ex);
+		}
+		buffer.clear();
+	}
+
+	private void writeLine() {
+		line.append('\n');
+		if (buffer.remaining() < line.length() * 3) {
+			// flush before, rather than halfway through, the line whenever possible
+			flush();
+		}
+		CharBuffer chars = CharBuffer.wrap(line);
+		encoder.reset();
+		while (true) {
+			CoderResult cr = encoder.encode(chars, buffer, true);
+			if (cr.isUnderflow()) {
+				break;
+			}
+			flush();
+		}
+	}
+
+	private static String quote(String s) {
+		if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) {
+			return s;
+		}
+		return '"' + s.replace("\"", "\"\"") + '"';
+	}
+}
@@ -0,0 +1,18 @@
+package general;
+
+/**
+ * Action of an event that concerns a single entity, such as a person in a queue. Handlers of this
+ * type are registered with {@link SystemState#registerEntityHandler(String, EntityHandler)}, and
+ * receive both the time of the event and the id of the entity it was scheduled for, without
+ * creating an event object per entity.
+ *
+ */
+@FunctionalInterface
+public interface EntityHandler {
+
+	/**
+	 * @param time		the time of the event
+	 * @param entity	the id of the entity, or {@link general.automagic.HandlerEvent#NO_ENTITY}
+	 */
+	void handle(double time, int entity);
+}
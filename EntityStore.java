@@ -0,0 +1,183 @@
+package general.resources;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Store of entities, such as persons, that are identified by an integer id instead of being
+ * represented by an object. Attributes of entities are kept in columns of primitive values, one
+ * array per attribute, indexed by the id of the entity. Ids of entities that are freed are
+ * recycled through a free list, so allocating and freeing an entity takes constant time and does
+ * not create any objects once the store has grown to the largest number of entities alive at the
+ * same time.
+ *
+ * Ids can be passed along with events using {@link general.SystemState#addEvent(double, int, int)}.
+ *
+ */
+public class EntityStore implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Id that does not refer to any entity
+	 */
+	public static final int NONE = -1;
+
+	private static final int LIVE = -2;
+
+	private final ArrayList<String> columnNames;
+	private double[][] columns;
+	private int[] next;
+	private int freeHead;
+	private int highWater;
+	private int size;
+
+	/**
+	 * @param initialCapacity	The number of entities for which space is reserved initially
+	 */
+	public EntityStore(int initialCapacity) {
+		if (initialCapacity < 1) {
+			throw new IllegalArgumentException("The capacity of an entity store must be >= 1");
+		}
+		this.columnNames = new ArrayList<>();
+		this.columns = new double[0][];
+		this.next = new int[initialCapacity];
+		this.freeHead = NONE;
+	}
+
+	/**
+	 * Adds an attribute to all entities, with value 0 for the entities that already exist.
+	 *
+	 * @param name	The name of the attribute
+	 * @return		The index of the column, to be passed to {@link #get(int, int)} and {@link #set(int, int, double)}
+	 */
+	public int addColumn(String name) {
+		if (columnNames.contains(name)) {
+			throw new IllegalArgumentException("A column with name '"+name+"' already exists.");
+		}
+		columnNames.add(name);
+		columns = Arrays.copyOf(columns, columns.length + 1);
+		columns[columns.length - 1] = new double[next.length];
+		return columns.length - 1;
+	}
+
+	/**
+	 * @param name	The name of an attribute
+	 * @return		The index of its column
+	 */
+	public int getColumn(String name) {
+		int column = columnNames.indexOf(name);
+		if (column < 0) {
+			throw new IllegalArgumentException("There is no column with name '"+name+"'");
+		}
+		return column;
+	}
+
+	/**
+	 * Allocates a new entity, of which all attributes are 0.
+	 *
+	 * @return The id of the entity
+	 */
+	public int allocate() {
+		int id;
+		if (freeHead != NONE) {
+			id = freeHead;
+			freeHead = next[id];
+		}
+		else {
+			if (highWater == next.length) {
+				grow();
+			}
+			id = highWater++;
+		}
+		next[id] = LIVE;
+		for (double[] column : columns) {
+			column[id] = 0;
+		}
+		size++;
+		return id;
+	}
+
+	/**
+	 * Frees an entity, such that its id can be reused.
+	 *
+	 * @param id	The id of a live entity
+	 */
+	public void free(int id) {
+		if (!isLive(id)) {
+			throw new IllegalArgumentException("Entity "+id+" does not exist.");
+		}
+		next[id] = freeHead;
+		freeHead = id;
+		size--;
+	}
+
+	/**
+	 * @param id	An entity id
+	 * @return		True if the entity has been allocated and not yet freed
+	 */
+	public boolean isLive(int id) {
+		return id >= 0 && id < highWater && next[id] == LIVE;
+	}
+
+	/**
+	 * Frees all entities at once, typically when a replication is reset.
+	 */
+	public void clear() {
+		freeHead = NONE;
+		highWater = 0;
+		size = 0;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of live entities
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of entities that fit in the store before it has to grow
+	 */
+	public int getCapacity() {
+		return next.length;
+	}
+
+	/**
+	 *
+	 * @return Returns an upper bound on the ids of all live entities, which can be used to scan them
+	 *         sequentially together with {@link #isLive(int)}
+	 */
+	public int getHighWaterMark() {
+		return highWater;
+	}
+
+	/**
+	 * @param column	The index of a column
+	 * @param id		The id of a live entity
+	 * @return			The value of the attribute of the entity
+	 */
+	public double get(int column, int id) {
+		return columns[column][id];
+	}
+
+	/**
+	 * @param column	The index of a column
+	 * @param id		The id of a live entity
+	 * @param value		The new value of the attribute of the entity
+	 */
+	public void set(int column, int id, double value) {
+		columns[column][id] = value;
+	}
+
+	private void grow() {
+		int capacity = next.length * 2;
+		next = Arrays.copyOf(next, capacity);
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = Arrays.copyOf(columns[i], capacity);
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package general.equivalence;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import general.Simulation;
+import general.distributed.Welford;
+import general.results.ResultsSink;
+
+/**
+ * Checks that candidate engines of a model give the same results as a reference engine, for example an
+ * optimized event loop, a different way to draw the random numbers or a way to run several scenarios at
+ * once. Every engine runs a number of replications with a seed, and returns the values of the performance
+ * measures in every replication. The measures that the reference and a candidate have in common are compared
+ * in one of two ways:
+ * <ul>
+ * <li>{@link Mode#EXACT}: the candidate promises to draw the same random numbers and do the same arithmetic,
+ * so the values of every replication must be bit-identical;</li>
+ * <li>{@link Mode#STATISTICAL}: the candidate only promises the same distribution, so the values of the
+ * replications are compared with the two-sample Kolmogorov-Smirnov and Anderson-Darling tests, and the
+ * confidence interval of the difference of the means must contain 0.</li>
+ * </ul>
+ * As the engines are run with fixed seeds, a check always gives the same verdict, so it can run as part of
+ * every build. The significance level is small, as every measure of every candidate is a separate test.
+ *
+ */
+public class EquivalenceCheck {
+
+	/**
+	 * How the results of a candidate are compared with those of the reference.
+	 */
+	public enum Mode {
+		EXACT,
+		STATISTICAL
+	}
+
+	/**
+	 * Runs replications of a model.
+	 */
+	public interface Engine {
+
+		/**
+		 * @param n		The number of replications
+		 * @param seed	The seed of the random numbers
+		 * @return		The values of the performance measures in every replication, by the name of the measure
+		 */
+		Map<String,double[]> run(int n, long seed);
+	}
+
+	private final String name;
+	private final Engine reference;
+	private final List<String> candidateNames = new ArrayList<>();
+	private final List<Engine> candidates = new ArrayList<>();
+	private final List<Mode> modes = new ArrayList<>();
+
+	private double alpha = 0.001;
+	private double z = 3.29;
+
+	/**
+	 * @param name		The name of the model, used in the report
+	 * @param reference	The engine of which the results are taken to be right
+	 */
+	public EquivalenceCheck(String name, Engine reference) {
+		this.name = name;
+		this.reference = reference;
+	}
+
+	/**
+	 * @param name		The name of the candidate, used in the report
+	 * @param candidate	The engine that is compared with the reference
+	 * @param mode		How its results are compared
+	 */
+	public void addCandidate(String name, Engine candidate, Mode mode) {
+		candidateNames.add(name);
+		candidates.add(candidate);
+		modes.add(mode);
+	}
+
+	/**
+	 * Sets the significance level of the statistical tests, the default is 0.001.
+	 *
+	 * @param alpha	The significance level, between 0.001 and 0.25, the range of the Anderson-Darling test
+	 */
+	public void setAlpha(double alpha) {
+		if (alpha < 0.001 || alpha > 0.25) {
+			throw new IllegalArgumentException("The significance level must be between 0.001 and 0.25");
+		}
+		this.alpha = alpha;
+	}
+
+	/**
+	 * Sets the quantile of the standard normal distribution of the confidence intervals of the differences of the
+	 * means, the default is 3.29, which gives intervals of 99.9%.
+	 *
+	 * @param z	The quantile
+	 */
+	public void setZ(double z) {
+		if (!(z > 0)) {
+			throw new IllegalArgumentException("The quantile must be > 0");
+		}
+		this.z = z;
+	}
+
+	/**
+	 * Runs the reference and all candidates, and prints a line for every compared measure.
+	 *
+	 * @param n		The number of replications of every engine
+	 * @param seed	The seed of every engine
+	 * @param out	The stream to print the report to
+	 * @return		The number of candidates that failed the check
+	 */
+	public int run(int n, long seed, PrintStream out) {
+		long start = System.nanoTime();
+		Map<String,double[]> expected = reference.run(n, seed);
+		out.printf("%s: reference, %d replications in %.0f ms%n", name, n, (System.nanoTime() - start) / 1e6);
+
+		int failed = 0;
+		for (int c = 0; c < candidates.size(); c++) {
+			start = System.nanoTime();
+			Map<String,double[]> actual = candidates.get(c).run(n, seed);
+			double millis = (System.nanoTime() - start) / 1e6;
+
+			Map<String,String> lines = new LinkedHashMap<>();
+			boolean passed = true;
+			for (Map.Entry<String,double[]> e : expected.entrySet()) {
+				double[] y = actual.get(e.getKey());
+				if (y != null) {
+					String line = modes.get(c) == Mode.EXACT ? compareExact(e.getValue(), y) : compareStatistical(e.getValue(), y);
+					passed &= line.startsWith("ok");
+					lines.put(e.getKey(), line);
+				}
+			}
+			if (lines.isEmpty()) {
+				lines.put("-", "FAILED no measures in common with the reference");
+				passed = false;
+			}
+
+			out.printf("%s: %s (%s), %.0f ms, %s%n", name, candidateNames.get(c), modes.get(c).name().toLowerCase(),
+					millis, passed ? "passed" : "FAILED");
+			for (Map.Entry<String,String> e : lines.entrySet()) {
+				out.printf("    %-30s %s%n", e.getKey(), e.getValue());
+			}
+			if (!passed) {
+				failed++;
+			}
+		}
+		return failed;
+	}
+
+	private static String compareExact(double[] x, double[] y) {
+		if (x.length != y.length) {
+			return "FAILED " + y.length + " replications instead of " + x.length;
+		}
+		int first = -1;
+		int count = 0;
+		for (int r = 0; r < x.length; r++) {
+			if (Double.doubleToLongBits(x[r]) != Double.doubleToLongBits(y[r])) {
+				count++;
+				if (first < 0) {
+					first = r;
+				}
+			}
+		}
+		if (count == 0) {
+			return "ok identical";
+		}
+		return "FAILED " + count + " replications differ, the first is #" + first + ": " + y[first] + " instead of " + x[first];
+	}
+
+	private String compareStatistical(double[] x, double[] y) {
+		Welford wx = new Welford();
+		for (double v : x) {
+			wx.add(v);
+		}
+		Welford wy = new Welford();
+		for (double v : y) {
+			wy.add(v);
+		}
+		double ks = TwoSampleTests.ksPValue(y, x);
+		double ad = TwoSampleTests.andersonDarlingPValue(y, x);
+		double[] interval = TwoSampleTests.meanDifferenceInterval(wy, wx, z);
+		boolean passed = ks >= alpha && ad >= alpha && interval[0] <= 0 && interval[1] >= 0;
+		return String.format("%-6s KS p=%.4f  AD p=%.4f  difference of means in [%.4g, %.4g]",
+				passed ? "ok" : "FAILED", ks, ad, interval[0], interval[1]);
+	}
+
+	/**
+	 * Runs a simulation and records the values of its performance measures in every replication, as an engine
+	 * would return them. The first batch is run with {@link Simulation#run(long)}, and the others with
+	 * {@link Simulation#runMore(long)}.
+	 *
+	 * @param simulation	The simulation, of which the results sink is replaced
+	 * @param batches		The numbers of replications of the batches
+	 * @return				The values of the measures by name
+	 */
+	public static Map<String,double[]> record(Simulation<?> simulation, long... batches) {
+		long total = 0;
+		for (long batch : batches) {
+			total += batch;
+		}
+		if (batches.length == 0 || total > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("There must be at least one batch, and at most " + Integer.MAX_VALUE + " replications");
+		}
+		Recorder recorder = new Recorder((int) total);
+		simulation.setResultsSink(recorder, simulation.getScenario());
+		try {
+			for (int b = 0; b < batches.length; b++) {
+				if (b == 0) {
+					simulation.run(batches[b]);
+				}
+				else {
+					simulation.runMore(batches[b]);
+				}
+			}
+		} finally {
+			simulation.setResultsSink(null, simulation.getScenario());
+		}
+		return recorder.values;
+	}
+
+	/**
+	 * Collects the rows of a simulation in a column per measure.
+	 */
+	private static final class Recorder implements ResultsSink {
+
+		private final int n;
+		private final Map<String,double[]> values = new LinkedHashMap<>();
+		private double[][] columns;
+
+		private Recorder(int n) {
+			this.n = n;
+		}
+
+		@Override
+		public void beginScenario(String scenario, List<String> measures) {
+			columns = new double[measures.size()][];
+			for (int j = 0; j < columns.length; j++) {
+				columns[j] = values.computeIfAbsent(measures.get(j), k -> new double[n]);
+			}
+		}
+
+		@Override
+		public void accept(long replication, double[] row) {
+			for (int j = 0; j < row.length; j++) {
+				columns[j][(int) replication] = row[j];
+			}
+		}
+
+		@Override
+		public void endScenario() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -10,6 +10,11 @@ package general;
 
 public abstract class Event<S extends SystemState<S>> implements Comparable<Event<S>> {
 
+	/**
+	 * Handler id of events that were not scheduled for a handler registered with {@link SystemState#registerHandler(String, java.util.function.DoubleConsumer)}
+	 */
+	public static final int NO_HANDLER = -1;
+	
 	private double time;
 	
 	public Event(double time) {
@@ -24,6 +29,24 @@ public abstract class Event<S extends SystemState<S>> implements Comparable<Even
 		return time;
 	}
 	
+	/**
+	 * Changes the time of this event, such that the event object can be reused. This must never be
+	 * called while the event is in the event queue.
+	 * 
+	 * @param time	The new time of the event
+	 */
+	protected void setTime(double time) {
+		this.time = time;
+	}
+	
+	/**
+	 * 
+	 * @return	Returns the id of the registered handler that processes this event, or {@link #NO_HANDLER}
+	 */
+	public int getHandlerId() {
+		return NO_HANDLER;
+	}
+	
 	@Override
 	public int compareTo(Event<S> other) {
 		int res = Double.compare(time, other.time);
@@ -0,0 +1,38 @@
+package general.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event that spans the processing of a single simulation event. As there are
+ * far too many simulation events to record all of them, only one in every
+ * {@link FlightEvents#getDispatchSampleInterval()} events of every handler is recorded.
+ *
+ */
+@Name("general.EventDispatch")
+@Label("Event Dispatch")
+@Category("Simulation")
+@Description("Sampled processing of a simulation event by its handler")
+@Enabled(false)
+@StackTrace(false)
+public class EventDispatchEvent extends Event {
+
+	@Label("Handler")
+	public String handler;
+
+	@Label("Simulation Time")
+	public double simulationTime;
+
+	@Label("Queue Size")
+	@Description("The number of events in the queue, after this event was removed from it")
+	public int queueSize;
+
+	@Label("Sample Weight")
+	@Description("The number of dispatches of this handler represented by this sample")
+	public long weight;
+}
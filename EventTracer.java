@@ -0,0 +1,273 @@
+package general.trace;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.ToDoubleFunction;
+
+import general.Counter;
+import general.SystemState;
+
+/**
+ * Records the most recent events processed by a {@link general.Replication} in a preallocated,
+ * off-heap ring buffer. For every event, the time, the id of the handler (see
+ * {@link SystemState#registerHandler(String, java.util.function.DoubleConsumer)}), the size of the event
+ * queue and the values of a number of selected state variables are recorded, just before the event
+ * is processed. Recording an event only writes a few primitives to the buffer, so tracing can be
+ * used without slowing a simulation down like printing would.
+ *
+ * A tracer is attached using {@link general.Replication#setTracer(EventTracer)}. The contents of the
+ * buffer can be written to a file with {@link #dump(Path)}, or automatically when an exception occurs
+ * during a replication, see {@link #setDumpOnFailure(Path)}. Such a file can be read with the
+ * {@link TraceDecoder}.
+ *
+ * @param <S> the type of the State in this simulation
+ */
+public class EventTracer<S extends SystemState<S>> {
+
+	/**
+	 * Handler id that marks the start of a replication in the trace
+	 */
+	public static final int REPLICATION_START = -2;
+
+	static final int MAGIC = 0x53494D54;
+	static final short VERSION = 1;
+
+	private final S state;
+	private final int capacity;
+	private final int recordSize;
+	private final ByteBuffer buffer;
+	private final List<String> probeNames;
+	private final List<ToDoubleFunction<S>> probes;
+
+	private long recorded;
+	private Path dumpOnFailure;
+
+	/**
+	 * Creates a tracer that records only time, handler and queue size
+	 *
+	 * @param state		the state of the replication that is traced
+	 * @param capacity	the number of events that are kept
+	 */
+	public EventTracer(S state, int capacity) {
+		this(state, capacity, Collections.emptyMap());
+	}
+
+	/**
+	 * @param state		the state of the replication that is traced
+	 * @param capacity	the number of events that are kept
+	 * @param probes	functions that compute the state variables to record, by name
+	 */
+	public EventTracer(S state, int capacity, Map<String,ToDoubleFunction<S>> probes) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity of a tracer must be >= 1");
+		}
+		this.state = state;
+		this.capacity = capacity;
+		this.probeNames = new ArrayList<>();
+		this.probes = new ArrayList<>();
+		for (Entry<String,ToDoubleFunction<S>> e : probes.entrySet()) {
+			probeNames.add(e.getKey());
+			this.probes.add(e.getValue());
+		}
+		this.recordSize = 16 + 8 * this.probes.size();
+		this.buffer = ByteBuffer.allocateDirect(Math.multiplyExact(capacity, recordSize))
+				.order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Creates a tracer that records the values of fields of the state. Supported are fields with
+	 * a primitive numeric type, <code>boolean</code> fields (recorded as 0 or 1) and {@link Counter}
+	 * fields (of which the value is recorded).
+	 *
+	 * @param <S>		the type of the State in this simulation
+	 * @param state		the state of the replication that is traced
+	 * @param capacity	the number of events that are kept
+	 * @param fields	the names of the fields to record
+	 * @return			a tracer that records the given fields
+	 */
+	public static <S extends SystemState<S>> EventTracer<S> ofFields(S state, int capacity, String... fields) {
+		Map<String,ToDoubleFunction<S>> probes = new LinkedHashMap<>();
+		for (String name : fields) {
+			probes.put(name, fieldProbe(state.getClass(), name));
+		}
+		return new EventTracer<>(state, capacity, probes);
+	}
+
+	private static <S> ToDoubleFunction<S> fieldProbe(Class<?> cls, String name) {
+		Field f = null;
+		for (Class<?> c = cls; c != null && f == null; c = c.getSuperclass()) {
+			try {
+				f = c.getDeclaredField(name);
+			} catch (NoSuchFieldException ex) {
+				// look in the superclass
+			}
+		}
+		if (f == null) {
+			throw new IllegalArgumentException("Class "+cls.getName()+" has no field '"+name+"'");
+		}
+		f.setAccessible(true);
+		Field field = f;
+		Class<?> type = f.getType();
+		if (Counter.class.isAssignableFrom(type)) {
+			return s -> {
+				try {
+					Counter c = (Counter) field.get(s);
+					return c == null ? Double.NaN : c.getValue();
+				} catch (IllegalAccessException ex) {
+					throw new RuntimeException("Unexpected error while tracing field "+field, ex);
+				}
+			};
+		}
+		if (type == boolean.class) {
+			return s -> {
+				try {
+					return field.getBoolean(s) ? 1 : 0;
+				} catch (IllegalAccessException ex) {
+					throw new RuntimeException("Unexpected error while tracing field "+field, ex);
+				}
+			};
+		}
+		if (type.isPrimitive() && type != char.class && type != void.class) {
+			return s -> {
+				try {
+					return field.getDouble(s);
+				} catch (IllegalAccessException ex) {
+					throw new RuntimeException("Unexpected error while tracing field "+field, ex);
+				}
+			};
+		}
+		throw new IllegalArgumentException("Field "+f+" can not be traced, as it is not numeric, boolean or a Counter");
+	}
+
+	/**
+	 * Records an event in the ring buffer, overwriting the oldest event if the buffer is full.
+	 *
+	 * @param time		the time of the event
+	 * @param handler	the id of the handler of the event
+	 * @param queueSize	the number of events in the queue
+	 */
+	public void record(double time, int handler, int queueSize) {
+		int pos = (int) (recorded % capacity) * recordSize;
+		buffer.putDouble(pos, time);
+		buffer.putInt(pos + 8, handler);
+		buffer.putInt(pos + 12, queueSize);
+		pos += 16;
+		for (int i = 0; i < probes.size(); i++) {
+			buffer.putDouble(pos, probes.get(i).applyAsDouble(state));
+			pos += 8;
+		}
+		recorded++;
+	}
+
+	/**
+	 * @return the total number of events recorded since the tracer was created or cleared,
+	 *         including those that have been overwritten
+	 */
+	public long getRecorded() {
+		return recorded;
+	}
+
+	/**
+	 * Forgets all recorded events.
+	 */
+	public void clear() {
+		recorded = 0;
+	}
+
+	/**
+	 * @param file the file to dump the trace to when a replication fails with an exception,
+	 *             or <code>null</code> to disable this
+	 */
+	public void setDumpOnFailure(Path file) {
+		this.dumpOnFailure = file;
+	}
+
+	/**
+	 * Called by the replication when an exception occurs while it runs.
+	 *
+	 * @param cause the exception that occurred
+	 */
+	public void failed(Throwable cause) {
+		if (dumpOnFailure != null) {
+			try {
+				dump(dumpOnFailure);
+			} catch (RuntimeException ex) {
+				cause.addSuppressed(ex);
+			}
+		}
+	}
+
+	/**
+	 * Writes the events in the buffer, from oldest to newest, to a file that can be read with
+	 * {@link TraceDecoder}. An existing file is overwritten.
+	 *
+	 * @param file the file to write to
+	 */
+	public void dump(Path file) {
+		int count = (int) Math.min(recorded, capacity);
+		List<String> handlers = state.getHandlerNames();
+		List<byte[]> names = new ArrayList<>();
+		int size = 4 + 2 + 4 + 4 + 8 + 4 + count * recordSize;
+		for (String n : handlers) {
+			names.add(n.getBytes(StandardCharsets.UTF_8));
+		}
+		for (String n : probeNames) {
+			names.add(n.getBytes(StandardCharsets.UTF_8));
+		}
+		for (byte[] n : names) {
+			size += 2 + n.length;
+		}
+		ByteBuffer out = ByteBuffer.allocate(size);
+		out.putInt(MAGIC);
+		out.putShort(VERSION);
+		out.putInt(handlers.size());
+		for (int i = 0; i < handlers.size(); i++) {
+			putUtf(out, names.get(i));
+		}
+		out.putInt(probeNames.size());
+		for (int i = 0; i < probeNames.size(); i++) {
+			putUtf(out, names.get(handlers.size() + i));
+		}
+		out.putLong(recorded);
+		out.putInt(count);
+		for (long r = recorded - count; r < recorded; r++) {
+			int pos = (int) (r % capacity) * recordSize;
+			out.putDouble(buffer.getDouble(pos));
+			out.putInt(buffer.getInt(pos + 8));
+			out.putInt(buffer.getInt(pos + 12));
+			for (int i = 0; i < probes.size(); i++) {
+				out.putDouble(buffer.getDouble(pos + 16 + 8 * i));
+			}
+		}
+		out.flip();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to write trace to " + file, ex);
+		}
+	}
+
+	private static void putUtf(ByteBuffer out, byte[] bytes) {
+		if (bytes.length > 0xFFFF) {
+			throw new IllegalArgumentException("Names can be at most 65535 bytes long");
+		}
+		out.putShort((short) bytes.length);
+		out.put(bytes);
+	}
+}
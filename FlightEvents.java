@@ -0,0 +1,159 @@
+package general.jfr;
+
+import java.util.Arrays;
+
+import general.Event;
+import general.Status;
+import general.SystemState;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Entry point used by the simulation framework to emit JDK Flight Recorder events. All events
+ * are disabled by default, and can be enabled in a recording, for example with
+ * <pre>
+ * java -XX:StartFlightRecording:filename=sweep.jfr,settings=default,settings=simulation.jfc ...
+ * </pre>
+ * where <code>simulation.jfc</code> is the settings file in the root of the project, which enables
+ * <code>general.Replication</code>, <code>general.EventDispatch</code> and <code>general.Simulation</code>
+ * on top of the default JDK events. As long as Flight
+ * Recorder has not been started, the methods of this class return <code>null</code> without
+ * creating any objects.
+ *
+ * Dispatches of simulation events are sampled: for every handler, the first dispatch and then
+ * one in every {@link #getDispatchSampleInterval()} dispatches is recorded. The interval can be
+ * changed with the system property <code>general.jfr.dispatchSampleInterval</code>.
+ *
+ */
+public final class FlightEvents {
+
+	private static final int DISPATCH_SAMPLE_INTERVAL =
+			Math.max(1, Integer.getInteger("general.jfr.dispatchSampleInterval", 1000));
+
+	private FlightEvents() {
+
+	}
+
+	/**
+	 * @return the number of dispatches of a handler that is represented by a single sampled event
+	 */
+	public static int getDispatchSampleInterval() {
+		return DISPATCH_SAMPLE_INTERVAL;
+	}
+
+	/**
+	 * @return a started replication event, or <code>null</code> if the event is disabled
+	 */
+	public static ReplicationEvent beginReplication() {
+		if (!FlightRecorder.isInitialized()) {
+			return null;
+		}
+		ReplicationEvent e = new ReplicationEvent();
+		if (!e.isEnabled()) {
+			return null;
+		}
+		e.begin();
+		return e;
+	}
+
+	/**
+	 * @param e			the event returned by {@link #beginReplication()}
+	 * @param state		the state of the replication
+	 * @param status	the status with which the replication ended
+	 * @param events	the number of events processed in the replication
+	 */
+	public static void endReplication(ReplicationEvent e, SystemState<?> state, Status status, long events) {
+		e.end();
+		if (e.shouldCommit()) {
+			e.state = state.getClass().getName();
+			e.status = String.valueOf(status);
+			e.events = events;
+			e.simulationTime = state.getCurrentTime();
+			e.commit();
+		}
+	}
+
+	/**
+	 * @param scenario	the name of the scenario that is simulated
+	 * @return			a started simulation event, or <code>null</code> if the event is disabled
+	 */
+	public static SimulationEvent beginSimulation(String scenario) {
+		if (!FlightRecorder.isInitialized()) {
+			return null;
+		}
+		SimulationEvent e = new SimulationEvent();
+		if (!e.isEnabled()) {
+			return null;
+		}
+		e.scenario = scenario;
+		e.begin();
+		return e;
+	}
+
+	/**
+	 * @param e				the event returned by {@link #beginSimulation(String)}
+	 * @param status		the status with which the simulation ended
+	 * @param replications	the number of replications that were completed
+	 */
+	public static void endSimulation(SimulationEvent e, Status status, long replications) {
+		e.end();
+		if (e.shouldCommit()) {
+			e.status = String.valueOf(status);
+			e.replications = replications;
+			e.commit();
+		}
+	}
+
+	/**
+	 * @param sampler	a sampler that was used before, or <code>null</code>
+	 * @return			the given sampler, or a new one if it was <code>null</code>, if dispatch
+	 * 					events are enabled, and <code>null</code> otherwise
+	 */
+	public static DispatchSampler dispatchSampler(DispatchSampler sampler) {
+		if (!FlightRecorder.isInitialized()) {
+			return null;
+		}
+		if (sampler != null) {
+			return sampler.type.isEnabled() ? sampler : null;
+		}
+		EventDispatchEvent type = new EventDispatchEvent();
+		return type.isEnabled() ? new DispatchSampler(type) : null;
+	}
+
+	/**
+	 * Decides which dispatches are recorded, keeping a separate count for every handler.
+	 */
+	public static final class DispatchSampler {
+
+		private final EventDispatchEvent type;
+		private long[] counts = new long[8];
+
+		private DispatchSampler(EventDispatchEvent type) {
+			this.type = type;
+		}
+
+		/**
+		 * @param <S>		the type of the state
+		 * @param e			the event that is about to be processed
+		 * @param state		the state in which it is processed
+		 * @param queueSize	the size of the event queue
+		 * @return			a started dispatch event if this dispatch is sampled, <code>null</code> otherwise
+		 */
+		public <S extends SystemState<S>> EventDispatchEvent begin(Event<S> e, S state, int queueSize) {
+			int handler = e.getHandlerId();
+			int slot = handler + 1;
+			if (slot >= counts.length) {
+				counts = Arrays.copyOf(counts, Math.max(slot + 1, counts.length * 2));
+			}
+			if (counts[slot]++ % DISPATCH_SAMPLE_INTERVAL != 0) {
+				return null;
+			}
+			EventDispatchEvent d = new EventDispatchEvent();
+			d.handler = handler == Event.NO_HANDLER ? e.getClass().getSimpleName() : state.getHandlerName(handler);
+			d.simulationTime = e.getTime();
+			d.queueSize = queueSize;
+			d.weight = DISPATCH_SAMPLE_INTERVAL;
+			d.begin();
+			return d;
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package general;
+
+import java.util.Random;
+
+/**
+ * A {@link Random} that generates exactly the same numbers as <code>java.util.Random</code> with the
+ * same seed, but whose position in its stream can be read and set directly. This makes it cheap to fork
+ * a state in the middle of a replication, see {@link general.checkpoint.StateFork}, which would otherwise
+ * have to serialize the generator. It is the generator of every {@link SystemState}.
+ *
+ * Like the rest of a state, it must only be used by one thread at a time.
+ *
+ */
+public class ForkableRandom extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	// the same state as that of java.util.Random
+	private long seed;
+	private double nextNextGaussian;
+	private boolean haveNextNextGaussian;
+
+	/**
+	 * @param seed	The seed, which gives the same numbers as <code>new Random(seed)</code>
+	 */
+	public ForkableRandom(long seed) {
+		super(seed);
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		// also called by the constructor of Random, before the fields of this class are initialized
+		this.seed = (seed ^ MULTIPLIER) & MASK;
+		this.haveNextNextGaussian = false;
+	}
+
+	@Override
+	protected int next(int bits) {
+		seed = (seed * MULTIPLIER + ADDEND) & MASK;
+		return (int) (seed >>> (48 - bits));
+	}
+
+	@Override
+	public double nextGaussian() {
+		// the polar method of java.util.Random, which keeps the second number for the next call
+		if (haveNextNextGaussian) {
+			haveNextNextGaussian = false;
+			return nextNextGaussian;
+		}
+		double v1, v2, s;
+		do {
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+		double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+		nextNextGaussian = v2 * multiplier;
+		haveNextNextGaussian = true;
+		return v1 * multiplier;
+	}
+
+	/**
+	 * @return The position of the generator in its stream, to be passed to {@link #setState(long)}
+	 */
+	public long getState() {
+		return seed;
+	}
+
+	/**
+	 * Moves the generator to a position in its stream obtained from {@link #getState()}. A number that
+	 * was kept by {@link #nextGaussian()} is discarded.
+	 *
+	 * @param state	The position
+	 */
+	public void setState(long state) {
+		this.seed = state & MASK;
+		this.haveNextNextGaussian = false;
+	}
+
+	/**
+	 * @return The number kept by {@link #nextGaussian()} for the next call, or NaN if there is none
+	 */
+	public double getNextGaussian() {
+		return haveNextNextGaussian ? nextNextGaussian : Double.NaN;
+	}
+
+	/**
+	 * Sets the number returned by the next call of {@link #nextGaussian()}, as obtained from {@link #getNextGaussian()}.
+	 *
+	 * @param gaussian	The number, or NaN if there is none
+	 */
+	public void setNextGaussian(double gaussian) {
+		this.nextNextGaussian = gaussian;
+		this.haveNextNextGaussian = !Double.isNaN(gaussian);
+	}
+}
@@ -0,0 +1,196 @@
+package general;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import general.checkpoint.StateFork;
+import general.distributed.Welford;
+
+/**
+ * Runs a sweep over scenarios of a model that behave exactly the same until some point in a
+ * replication, such as the sensor levels of the litter model, which all follow the same arrivals until
+ * the container holds as many bags as the lowest sensor level. Every replication runs the common
+ * prefix once, up to the first event after which the branch condition holds, and is then forked with a
+ * {@link StateFork}: every scenario is applied to a copy of the state at that point, and continues from
+ * there until the replication terminates. So a sweep costs about one replication plus the tails of
+ * the scenarios, instead of a full replication per scenario.
+ *
+ * The scenarios are changes to the state, such as a parameter that is set, which must not matter
+ * before the branch point. Before the prefix, the prefix action can put the state in a neutral setting,
+ * for example with a sensor level that is never reached. If a replication terminates before the branch
+ * point, the scenarios make no difference, and all of them get the measures of the prefix.
+ *
+ * The first replication of every scenario is exactly the one a {@link Simulation} of the scenario with
+ * the same seed runs, but the later replications are not, as the random numbers of a replication follow
+ * those of the previous replication of the last scenario, and not of the same scenario. The scenarios share
+ * their prefixes, so their estimates are positively correlated, like with common random numbers.
+ *
+ * @param <S> the type of the state
+ */
+public class ForkedSweep<S extends SystemState<S>> {
+
+	private final Replication<S> replication;
+	private final Predicate<? super S> branch;
+	private Consumer<? super S> prefix;
+
+	private final List<String> names = new ArrayList<>();
+	private final List<Consumer<? super S>> scenarios = new ArrayList<>();
+	private final List<List<PerformanceMeasure<S>>> measures = new ArrayList<>();
+
+	private long replications;
+	private long branched;
+
+	/**
+	 * @param replication	The replication of which the automatic measures are estimated for every scenario
+	 * @param branch		The condition on the state after an event at which the scenarios start to differ
+	 */
+	public ForkedSweep(Replication<S> replication, Predicate<? super S> branch) {
+		this.replication = replication;
+		this.branch = branch;
+	}
+
+	/**
+	 * Sets an action that is applied to the state before every replication is initialized, which should make
+	 * it behave like every scenario until the branch point.
+	 *
+	 * @param prefix	The action, or <code>null</code> for none
+	 */
+	public void setPrefix(Consumer<? super S> prefix) {
+		this.prefix = prefix;
+	}
+
+	/**
+	 * Adds a scenario to the sweep.
+	 *
+	 * @param name	The name of the scenario
+	 * @param apply	The action that changes the state at the branch point into the scenario
+	 */
+	public void addScenario(String name, Consumer<? super S> apply) {
+		List<PerformanceMeasure<S>> list = replication.getSystemState().getAutomaticMeasures();
+		// Sort the performance measures to make output always consistent
+		list.sort((pm1, pm2) -> pm1.getName().compareTo(pm2.getName()));
+		names.add(name);
+		scenarios.add(apply);
+		measures.add(list);
+	}
+
+	/**
+	 * Runs <code>n</code> replications of every scenario, and sets the means and standard errors of
+	 * their performance measures.
+	 *
+	 * @param n	The number of replications
+	 */
+	public void run(long n) {
+		if (scenarios.isEmpty()) {
+			throw new IllegalStateException("There are no scenarios to run");
+		}
+		if (n < 2) {
+			throw new IllegalArgumentException("At least two replications are needed to estimate the standard error");
+		}
+		S state = replication.getSystemState();
+		Welford[][] estimates = new Welford[scenarios.size()][];
+		for (int s = 0; s < estimates.length; s++) {
+			estimates[s] = new Welford[measures.get(s).size()];
+			for (int j = 0; j < estimates[s].length; j++) {
+				estimates[s][j] = new Welford();
+			}
+		}
+		replications = n;
+		branched = 0;
+		for (long r = 0; r < n; r++) {
+			replication.reset();
+			if (prefix != null) {
+				prefix.accept(state);
+			}
+			replication.initialize();
+			state.requestTerminationCheck();
+
+			StateFork fork = null;
+			if (!replication.advance(Double.POSITIVE_INFINITY, branch)) {
+				if (state.getQueue().isEmpty()) {
+					throw new IllegalStateException("The event queue is empty before the official termination criterion has been satisfied.");
+				}
+				fork = StateFork.of(state);
+				branched++;
+			}
+			for (int s = 0; s < scenarios.size(); s++) {
+				if (fork != null) {
+					if (s > 0) {
+						fork.restore(state);
+					}
+					scenarios.get(s).accept(state);
+					state.requestTerminationCheck();
+					if (!replication.advance(Double.POSITIVE_INFINITY)) {
+						throw new IllegalStateException("The event queue of scenario " + names.get(s)
+								+ " is empty before the official termination criterion has been satisfied.");
+					}
+				}
+				List<PerformanceMeasure<S>> list = measures.get(s);
+				for (int j = 0; j < list.size(); j++) {
+					estimates[s][j].add(list.get(j).compute(state));
+				}
+			}
+		}
+		for (int s = 0; s < estimates.length; s++) {
+			List<PerformanceMeasure<S>> list = measures.get(s);
+			for (int j = 0; j < list.size(); j++) {
+				list.get(j).setMean(estimates[s][j].getMean());
+				list.get(j).setStandardError(estimates[s][j].getStandardError());
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return Returns the number of scenarios
+	 */
+	public int getScenarioCount() {
+		return scenarios.size();
+	}
+
+	/**
+	 * @param scenario	The index of a scenario
+	 * @return			The name of the scenario
+	 */
+	public String getScenarioName(int scenario) {
+		return names.get(scenario);
+	}
+
+	/**
+	 * @param scenario	The index of a scenario
+	 * @return			The performance measures of the scenario, with the estimates of the last run, sorted by name
+	 */
+	public List<PerformanceMeasure<S>> getPerformanceMeasures(int scenario) {
+		return new ArrayList<>(measures.get(scenario));
+	}
+
+	/**
+	 *
+	 * @return Returns the fraction of the replications of the last run that reached the branch point
+	 */
+	public double getBranchFraction() {
+		return replications == 0 ? 0 : (double) branched / replications;
+	}
+
+	public void printEstimates(int scenario) {
+		PrintWriter pw = new PrintWriter(System.out);
+		printEstimates(scenario, pw);
+		pw.flush();
+	}
+
+	public void printEstimates(int scenario, PrintStream out) {
+		for (PerformanceMeasure<S> pm : measures.get(scenario)) {
+			out.println(pm);
+		}
+	}
+
+	public void printEstimates(int scenario, PrintWriter out) {
+		for (PerformanceMeasure<S> pm : measures.get(scenario)) {
+			out.println(pm);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package general.automagic;
+
+import java.util.function.DoubleConsumer;
+
+import general.Event;
+import general.SystemState;
+
+/**
+ * Event that calls a handler that was registered with 
+ * {@link SystemState#registerHandler(String, java.util.function.DoubleConsumer)}
+ * with the time of the event. In contrast to a {@link ConsumerEvent}, the
+ * handler of this event can be identified by its id, and the time is passed
+ * to the handler without boxing it.
+ * 
+ * @param <S> the State used in the simulations
+ */
+public class HandlerEvent<S extends SystemState<S>> extends Event<S> {
+
+	/**
+	 * Entity of events that were not scheduled for a specific entity
+	 */
+	public static final int NO_ENTITY = -1;
+	
+	private int handler;
+	private int entity;
+	
+	public HandlerEvent(double time, int handler) {
+		this(time, handler, NO_ENTITY);
+	}
+	
+	public HandlerEvent(double time, int handler, int entity) {
+		super(time);
+		this.handler = handler;
+		this.entity = entity;
+	}
+	
+	/**
+	 * Changes the handler of this event, such that the event object can be reused. This must
+	 * never be called while the event is in the event queue.
+	 * 
+	 * @param handler	the id of the new handler
+	 */
+	protected void setHandler(int handler) {
+		this.handler = handler;
+	}
+	
+	/**
+	 * Changes the entity of this event, such that the event object can be reused. This must
+	 * never be called while the event is in the event queue.
+	 * 
+	 * @param entity	the id of the new entity
+	 */
+	protected void setEntity(int entity) {
+		this.entity = entity;
+	}
+	
+	@Override
+	public int getHandlerId() {
+		return handler;
+	}
+	
+	/**
+	 * @return the id of the entity this event was scheduled for, or {@link #NO_ENTITY}
+	 */
+	public int getEntity() {
+		return entity;
+	}
+
+	@Override
+	public void process(S state) {
+		// plain handlers are called directly, to avoid a second indirection
+		DoubleConsumer action = state.getHandler(handler);
+		if (action != null) {
+			action.accept(this.getTime());
+		}
+		else {
+			state.getEntityHandler(handler).handle(this.getTime(), entity);
+		}
+	}
+
+}
@@ -0,0 +1,285 @@
+package Assignment1;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import general.PerformanceMeasure;
+import general.Simulation;
+
+/**
+ * Simulates several scenarios of the litter collection model in lockstep, as an alternative to a
+ * {@link general.Simulation} of a {@link LitterCollectionState} per scenario. The scenarios share
+ * the arrival rate, and therefore a single stream of arrivals: every bag is drawn once and then
+ * passed to all scenarios that have not been cleaned up yet. This uses common random numbers,
+ * which makes the differences between the scenarios of a sweep more precise than with independent
+ * streams, and makes the cost of drawing the arrivals independent of the number of scenarios.
+ *
+ * The state of the scenarios is kept in parallel arrays, one per variable, that are updated in a
+ * single loop per arrival, without an event queue: the time of the clean up of every scenario is kept
+ * in an array as well. Scenarios that have been cleaned up are swapped to the back, so the loop only
+ * visits those that are still running.
+ *
+ * An arrival is worked out by {@link LitterCollectionState#addBag}, which the state itself uses as
+ * well, and the performance measures are computed by a {@link LitterCollectionState} per scenario, so
+ * every scenario follows exactly the same logic and arithmetic as a state. Hence the scenario that is
+ * cleaned up last, which consumes the arrivals just like it would on its own, gives exactly the same
+ * results as a simulation of that scenario with the same seed. The other scenarios give the same
+ * results in the first replication, and results with the same distribution in the next ones.
+ *
+ */
+public class LitterCollectionLockstep {
+
+	private final Random random;
+	private final double lambda;
+
+	// parameters, indexed by scenario
+	private final int[] sensor;
+	private final int[] maxCapacity;
+	private final int[] timeDelay;
+	private final int[] costContainer;
+	private final double[] costOutsideBag;
+
+	// the states that compute the measures, the measures and the results, indexed by scenario
+	private final List<LitterCollectionState> states;
+	private final List<List<PerformanceMeasure<LitterCollectionState>>> measures;
+	private final List<List<List<Double>>> results;
+
+	// state and parameters, indexed by slot, where the first nrActive slots hold the scenarios that are running
+	private final int[] scenario;
+	private final int[] slotSensor;
+	private final int[] slotCapacity;
+	private final int[] slotDelay;
+	private final double[] slotCostOutsideBag;
+	private final double[] insideBags;
+	private final double[] outsideBags;
+	private final double[] cost;
+	private final double[] cleanTime;
+	private int nrActive;
+	private boolean estimated;
+
+	/**
+	 * Creates a lockstep simulation of scenarios that can differ in all parameters except the arrival rate.
+	 * The parameters have the same meaning as those of {@link LitterCollectionState}, with one element per
+	 * scenario.
+	 *
+	 * @param seed				The seed of the random number generator of the arrivals
+	 * @param lambda			The arrival rate of bags, shared by all scenarios
+	 * @param sensor			The sensor levels, between 1 and the capacity of the container
+	 * @param maxCapacity		The capacities of the containers
+	 * @param timeDelay			The times between the sensor signal and the clean up
+	 * @param costContainer		The costs of a clean up
+	 * @param costOutsideBag	The costs per bag outside the container per unit of time
+	 */
+	public LitterCollectionLockstep(long seed, double lambda,
+									int[] sensor,
+									int[] maxCapacity,
+									int[] timeDelay,
+									int[] costContainer,
+									double[] costOutsideBag) {
+		int k = sensor.length;
+		if (k == 0 || maxCapacity.length != k || timeDelay.length != k || costContainer.length != k || costOutsideBag.length != k) {
+			throw new IllegalArgumentException("All parameters must have the same number of scenarios, which must be >= 1");
+		}
+		for (int i = 0; i < k; i++) {
+			if (sensor[i] < 1 || sensor[i] > maxCapacity[i]) {
+				throw new IllegalArgumentException("The sensor level of scenario "+i+" must be between 1 and the capacity "
+						+ "of the container, otherwise the container is never cleaned up");
+			}
+		}
+		this.random = new Random(seed);
+		this.lambda = lambda;
+		this.sensor = sensor.clone();
+		this.maxCapacity = maxCapacity.clone();
+		this.timeDelay = timeDelay.clone();
+		this.costContainer = costContainer.clone();
+		this.costOutsideBag = costOutsideBag.clone();
+		this.states = new ArrayList<>();
+		this.measures = new ArrayList<>();
+		this.results = new ArrayList<>();
+		for (int i = 0; i < k; i++) {
+			// the state is not run, it only holds the results of a scenario to compute its measures
+			LitterCollectionState state = new LitterCollectionState(Double.POSITIVE_INFINITY, seed,
+					sensor[i], maxCapacity[i], lambda, timeDelay[i], costContainer[i], costOutsideBag[i]);
+			states.add(state);
+			// sorted by name, like the measures of a simulation
+			List<PerformanceMeasure<LitterCollectionState>> list = state.getAutomaticMeasures();
+			list.sort((pm1, pm2) -> pm1.getName().compareTo(pm2.getName()));
+			measures.add(list);
+			results.add(new ArrayList<>());
+		}
+		this.scenario = new int[k];
+		this.slotSensor = new int[k];
+		this.slotCapacity = new int[k];
+		this.slotDelay = new int[k];
+		this.slotCostOutsideBag = new double[k];
+		this.insideBags = new double[k];
+		this.outsideBags = new double[k];
+		this.cost = new double[k];
+		this.cleanTime = new double[k];
+	}
+
+	/**
+	 * Runs <code>n</code> replications of all scenarios and computes the estimates of the performance measures.
+	 *
+	 * @param n	Number of replications
+	 */
+	public void run(long n) {
+		if (n < 1 || n > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Number of iterations must be >= 1");
+		}
+		for (List<List<Double>> rows : results) {
+			rows.clear();
+		}
+		for (long r = 0; r < n; r++) {
+			runReplication();
+		}
+		for (int s = 0; s < measures.size(); s++) {
+			Simulation.setEstimates(measures.get(s), results.get(s));
+		}
+		estimated = true;
+	}
+
+	private void runReplication() {
+		// similar to the reset of the counters and the Initialize method of the state
+		for (int i = 0; i < scenario.length; i++) {
+			scenario[i] = i;
+			slotSensor[i] = sensor[i];
+			slotCapacity[i] = maxCapacity[i];
+			slotDelay[i] = timeDelay[i];
+			slotCostOutsideBag[i] = costOutsideBag[i];
+			insideBags[i] = 0;
+			outsideBags[i] = 0;
+			cost[i] = 0;
+			cleanTime[i] = Double.POSITIVE_INFINITY;
+		}
+		nrActive = scenario.length;
+		double nextClean = Double.POSITIVE_INFINITY;
+		double currentTime = 0;
+		double eventTime = UtilsLitterCollection.nextInterArrivalTime(random, lambda);
+
+		while (true) {
+			// the clean ups before the next arrival, which the state also handles first when they are at the same time
+			if (nextClean <= eventTime) {
+				nextClean = Double.POSITIVE_INFINITY;
+				for (int i = 0; i < nrActive; i++) {
+					if (cleanTime[i] <= eventTime) {
+						cleanUp(i, currentTime);
+						i--;
+					}
+					else if (cleanTime[i] < nextClean) {
+						nextClean = cleanTime[i];
+					}
+				}
+				if (nrActive == 0) {
+					// the last arrival is drawn but never processed, like the arrival that is scheduled by the state
+					break;
+				}
+			}
+
+			// the arrival, for all scenarios that are running
+			double interval = eventTime - currentTime;
+			for (int i = 0; i < nrActive; i++) {
+				// the state requests a clean up whenever the sensor level is reached, which only happens once
+				if (LitterCollectionState.addBag(cost, insideBags, outsideBags, i, interval,
+						slotCapacity[i], slotSensor[i], slotCostOutsideBag[i])) {
+					cleanTime[i] = eventTime + slotDelay[i];
+					if (cleanTime[i] < nextClean) {
+						nextClean = cleanTime[i];
+					}
+				}
+			}
+			currentTime = eventTime;
+			eventTime = eventTime + UtilsLitterCollection.nextInterArrivalTime(random, lambda);
+		}
+	}
+
+	/**
+	 * Records the results of the scenario in the given slot, like the clean up of the state, and swaps the last
+	 * running scenario into it.
+	 */
+	private void cleanUp(int slot, double currentTime) {
+		int s = scenario[slot];
+		double eventTime = cleanTime[slot];
+		double c = cost[slot];
+		c += LitterCollectionState.outsideCost(outsideBags[slot], eventTime - currentTime, slotCostOutsideBag[slot]);
+		c += costContainer[s];
+
+		LitterCollectionState state = states.get(s);
+		state.setResults(c, eventTime);
+		List<PerformanceMeasure<LitterCollectionState>> list = measures.get(s);
+		List<Double> row = new ArrayList<>(list.size());
+		for (PerformanceMeasure<LitterCollectionState> pm : list) {
+			row.add(pm.compute(state));
+		}
+		results.get(s).add(row);
+
+		int last = --nrActive;
+		scenario[slot] = scenario[last];
+		slotSensor[slot] = slotSensor[last];
+		slotCapacity[slot] = slotCapacity[last];
+		slotDelay[slot] = slotDelay[last];
+		slotCostOutsideBag[slot] = slotCostOutsideBag[last];
+		insideBags[slot] = insideBags[last];
+		outsideBags[slot] = outsideBags[last];
+		cost[slot] = cost[last];
+		cleanTime[slot] = cleanTime[last];
+	}
+
+	/**
+	 *
+	 * @return Returns the number of scenarios
+	 */
+	public int getScenarioCount() {
+		return scenario.length;
+	}
+
+	/**
+	 * @param scenario	The index of a scenario
+	 * @return			The performance measures of the scenario, with the estimates of the last run, sorted by name
+	 */
+	public List<PerformanceMeasure<LitterCollectionState>> getPerformanceMeasures(int scenario) {
+		if (!estimated) {
+			throw new IllegalStateException("The simulation has not been run yet");
+		}
+		return new ArrayList<>(measures.get(scenario));
+	}
+
+	/**
+	 * @param scenario	The index of a scenario
+	 * @param replication	The index of a replication
+	 * @return			The values of the performance measures in the replication, sorted by name
+	 */
+	public double[] getResults(int scenario, int replication) {
+		List<List<Double>> rows = results.get(scenario);
+		if (replication < 0 || replication >= rows.size()) {
+			throw new IndexOutOfBoundsException("Replication "+replication+" has not been run");
+		}
+		List<Double> values = rows.get(replication);
+		double[] row = new double[values.size()];
+		for (int m = 0; m < row.length; m++) {
+			row[m] = values.get(m);
+		}
+		return row;
+	}
+
+	public void printEstimates(int scenario) {
+		PrintWriter pw = new PrintWriter(System.out);
+		printEstimates(scenario, pw);
+		pw.flush();
+	}
+
+	public void printEstimates(int scenario, PrintStream out) {
+		for (PerformanceMeasure<LitterCollectionState> pm : getPerformanceMeasures(scenario)) {
+			out.println(pm);
+		}
+	}
+
+	public void printEstimates(int scenario, PrintWriter out) {
+		for (PerformanceMeasure<LitterCollectionState> pm : getPerformanceMeasures(scenario)) {
+			out.println(pm);
+		}
+	}
+}
@@ -1,8 +1,7 @@
 package Assignment1;
 
-import java.util.Random;
-
 import general.Counter;
+import general.PoissonStream;
 import general.SystemState;
 import general.annotations.AutoCounter;
 import general.annotations.AutoMeasure;
@@ -22,7 +21,21 @@ public class LitterCollectionState extends SystemState<LitterCollectionState>
 
 	boolean runOver;
 
-	private final Random random;
+	// Bulk arrivals
+	private boolean bulkArrivals;
+	private final PoissonStream arrivals;
+	private long pendingInsideBags;
+
+	// Event handlers
+	private final int arrivalEvent;
+	private final int cleanEvent;
+	private final int sensorEvent;
+	private final int fullEvent;
+
+	// the cost and the bags inside and outside the container, as passed to addBag
+	private final double[] bagCost = new double[1];
+	private final double[] bagsInside = new double[1];
+	private final double[] bagsOutside = new double[1];
 
 	// Counter variables
 	@AutoCounter("Outside Bags")
@@ -45,71 +58,229 @@ public class LitterCollectionState extends SystemState<LitterCollectionState>
 								 int costContainer,
 								 double costOutsideBag) {
 		super(timeHorizon, seed);
-		this.random = new Random(seed);
 		this.sensor = sensor;
 		this.maxCapacity = maxCapacity;
 		this.lambda = lambda;
 		this.timeDelay = timeDelay;
 		this.costContainer = costContainer;
 		this.costOutsideBag = costOutsideBag;
+		this.arrivals = new PoissonStream(lambda);
+
+		this.arrivalEvent = registerHandler("doArrival", this::doArrival);
+		this.cleanEvent = registerHandler("doClean", this::doClean);
+		this.sensorEvent = registerHandler("doSensor", this::doSensor);
+		this.fullEvent = registerHandler("doFull", this::doFull);
 
 		reset();
 	}
 
+	/**
+	 * When enabled, the bags are not simulated one by one. Instead, the arrival stream is fast-forwarded
+	 * to the moments at which the sensor level and the capacity of the container are reached, so a
+	 * replication only processes a few events. The results have the same distribution, but are not
+	 * identical to those of a simulation of the individual arrivals, as other random numbers are drawn.
+	 *
+	 * @param bulkArrivals	whether to fast-forward the arrival stream
+	 */
+	public void setBulkArrivals(boolean bulkArrivals) {
+		this.bulkArrivals = bulkArrivals;
+	}
+
+	/**
+	 * Changes the sensor level in the middle of a replication, which lets a {@link general.ForkedSweep}
+	 * start the scenarios of a sweep over sensor levels from a common state. If the container holds
+	 * exactly as many bags as the new level, the clean up is requested right away, as if the last bag
+	 * arrived with this level. This does not work with bulk arrivals, for which the moment the sensor
+	 * level is reached is drawn when the replication starts.
+	 *
+	 * @param sensor	the new sensor level
+	 */
+	void setSensor(int sensor) {
+		if (this.bulkArrivals) {
+			throw new IllegalStateException("The sensor level can not be changed in a replication with bulk arrivals");
+		}
+		this.sensor = sensor;
+		if (insideBags.getValue() == sensor) {
+			addEvent(getCurrentTime() + this.timeDelay, this.cleanEvent);
+		}
+	}
+
+	/**
+	 * @return the number of bags in the container
+	 */
+	double getInsideBags() {
+		return insideBags.getValue();
+	}
+
 	@Initialize
 	public void initReplication() {
-		double nextArrivalTime = UtilsLitterCollection.nextInterArrivalTime(this.random, this.lambda);
-		addEvent(nextArrivalTime, this::doArrival);
+		if (this.bulkArrivals) {
+			this.arrivals.reset(getCurrentTime());
+			long toSensor = this.sensor - (long) this.insideBags.getValue();
+			if (toSensor <= 0) {
+				addEvent(getCurrentTime(), this.sensorEvent);
+			} else {
+				addEvent(this.arrivals.nextArrivals(getRandom(), toSensor), this.sensorEvent);
+			}
+			return;
+		}
+		double nextArrivalTime = UtilsLitterCollection.nextInterArrivalTime(getRandom(), this.lambda);
+		addEvent(nextArrivalTime, this.arrivalEvent);
 	}
 
-	@StopCriterium
+	@StopCriterium(handlers = "doClean")
 	public boolean veryDangerousCheck() {
 		return this.runOver;
 	}
 
 	public void doArrival(double eventTime) {
+		arrive(eventTime);
 
-		cost.incrementBy(outsideBags.getValue() * (eventTime - getCurrentTime()) * this.costOutsideBag);
+		double nextInterArrivalTime = UtilsLitterCollection.nextInterArrivalTime(getRandom(), lambda);
+		double nextArrivalTime = eventTime + nextInterArrivalTime;
+		addEvent(nextArrivalTime, this.arrivalEvent);
+	}
 
-		if (this.insideBags.getValue() == this.maxCapacity) {
-			outsideBags.increment();
-		} else {
-			insideBags.increment();
+	/**
+	 * The arrival of a bag, without drawing the next one.
+	 */
+	private void arrive(double eventTime) {
+		bagCost[0] = cost.getValue();
+		bagsInside[0] = insideBags.getValue();
+		bagsOutside[0] = outsideBags.getValue();
+		boolean sensorReached = addBag(bagCost, bagsInside, bagsOutside, 0, eventTime - getCurrentTime(),
+				this.maxCapacity, this.sensor, this.costOutsideBag);
+		cost.setValue(bagCost[0]);
+		insideBags.setValue(bagsInside[0]);
+		outsideBags.setValue(bagsOutside[0]);
+
+		if (sensorReached) {
+			addEvent(eventTime + this.timeDelay, this.cleanEvent);
 		}
+	}
 
-		if (insideBags.getValue() == this.sensor) {
-			addEvent(eventTime + this.timeDelay, this::doClean);
+	/**
+	 * The arrival of a bag at a container, which is the only place where an arrival is worked out, both for this
+	 * state and for the scenarios of a {@link LitterCollectionLockstep}. The variables of the container are the
+	 * elements at index <code>i</code> of the arrays, so the lockstep passes the slot of a scenario in its arrays,
+	 * and the state arrays with its own variables.
+	 *
+	 * @param cost				The costs so far, which are increased by the costs of the bags outside since the last event
+	 * @param insideBags		The numbers of bags in the containers
+	 * @param outsideBags		The numbers of bags next to the containers
+	 * @param i					The index of the container
+	 * @param interval			The time since the last event
+	 * @param maxCapacity		The capacity of the container
+	 * @param sensor			The sensor level of the container
+	 * @param costOutsideBag	The costs per bag outside the container per unit of time
+	 * @return					true if the bag brings the container to the sensor level, upon which a clean up is requested
+	 */
+	static boolean addBag(double[] cost, double[] insideBags, double[] outsideBags, int i, double interval,
+			int maxCapacity, int sensor, double costOutsideBag) {
+		cost[i] += outsideCost(outsideBags[i], interval, costOutsideBag);
+		if (insideBags[i] == maxCapacity) {
+			outsideBags[i]++;
+		} else {
+			insideBags[i]++;
 		}
+		return insideBags[i] == sensor;
+	}
 
-		double nextInterArrivalTime = UtilsLitterCollection.nextInterArrivalTime(random, lambda);
-		double nextArrivalTime = eventTime + nextInterArrivalTime;
-		addEvent(nextArrivalTime, this::doArrival);
+	/**
+	 * @param outsideBags		The number of bags outside the container
+	 * @param interval			The time since the last event
+	 * @param costOutsideBag	The costs per bag outside the container per unit of time
+	 * @return					The costs of the bags outside the container since the last event
+	 */
+	static double outsideCost(double outsideBags, double interval, double costOutsideBag) {
+		return outsideBags * interval * costOutsideBag;
+	}
+
+	/**
+	 * Sets the results of a replication that was simulated without this state, so its measures can be computed,
+	 * as {@link LitterCollectionLockstep} does.
+	 *
+	 * @param cost		The total costs
+	 * @param cleanTime	The time of the clean up
+	 */
+	void setResults(double cost, double cleanTime) {
+		this.cost.setValue(cost);
+		this.time.setValue(cleanTime);
 	}
 
 	public void doClean(double eventTime) {
-		cost.incrementBy(outsideBags.getValue() * (eventTime - getCurrentTime()) * this.costOutsideBag);
+		cost.incrementBy(outsideCost(outsideBags.getValue(), eventTime - getCurrentTime(), this.costOutsideBag));
+		if (this.bulkArrivals) {
+			bulkArrivalsUntilClean(eventTime);
+		}
 		cost.incrementBy(this.costContainer);
 		time.incrementBy(eventTime);
 		runOver = true;
 	}
 
+	/**
+	 * Bulk arrivals: the bag that brings the container to the sensor level arrives.
+	 */
+	public void doSensor(double eventTime) {
+		insideBags.incrementBy(this.sensor - insideBags.getValue());
+		double cleanTime = eventTime + this.timeDelay;
+		addEvent(cleanTime, this.cleanEvent);
+
+		// skip to the moment the container is full, if that happens before it is cleaned
+		long space = this.maxCapacity - (long) insideBags.getValue();
+		long n = this.arrivals.advance(getRandom(), cleanTime, space);
+		if (n == space) {
+			addEvent(this.arrivals.getTime(), this.fullEvent);
+		} else {
+			this.pendingInsideBags = n;
+		}
+	}
+
+	/**
+	 * Bulk arrivals: the bag that fills the container arrives.
+	 */
+	public void doFull(double eventTime) {
+		insideBags.incrementBy(this.maxCapacity - insideBags.getValue());
+	}
+
+	private void bulkArrivalsUntilClean(double cleanTime) {
+		insideBags.incrementBy(this.pendingInsideBags);
+		this.pendingInsideBags = 0;
+		if (insideBags.getValue() < this.maxCapacity) {
+			this.arrivals.advanceTo(getRandom(), cleanTime);
+		} else {
+			// the bags arriving after the container is full are uniformly distributed over the remaining time
+			double from = this.arrivals.getTime();
+			long n = this.arrivals.advanceTo(getRandom(), cleanTime);
+			double waiting = 0;
+			for (long i = 0; i < n; i++) {
+				waiting += getRandom().nextDouble();
+			}
+			outsideBags.incrementBy(n);
+			cost.incrementBy(waiting * (cleanTime - from) * this.costOutsideBag);
+		}
+		// the next arrival, which is never processed as the replication stops after the clean up
+		addEvent(cleanTime + UtilsLitterCollection.nextInterArrivalTime(getRandom(), this.lambda), this.arrivalEvent);
+	}
+
 	@AutoMeasure("Time till clean up (days)")
-	public Double getTime() {
+	public double getTime() {
 		return this.time.getValue() / 24;
 	}
 
 	@AutoMeasure("Cost")
-	public Double getCost() {
+	public double getCost() {
 		return this.cost.getValue();
 	}
 
 	@AutoMeasure("Yearly Cost")
-	public Double getYearlyCost() {
+	public double getYearlyCost() {
 		return this.getCost() / this.time.getValue() * 24 * 365;
 	}
 
 	@Override
 	public void reset() {
 		runOver = false;
+		pendingInsideBags = 0;
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
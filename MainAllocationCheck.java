@@ -0,0 +1,136 @@
+package Assignment1;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import general.PerformanceMeasure;
+import general.Replication;
+import general.SystemState;
+import general.automagic.AutoReplication;
+
+/**
+ * Checks that replications of the standard models do not allocate once they are warmed up. The
+ * bytes allocated by the running thread are measured with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)} while replications are
+ * reset, initialized, run and their measures computed, exactly as {@link general.Simulation} does,
+ * but without storing the results.
+ *
+ * This runs in the test phase of every build, which fails if a model allocates more than the budget,
+ * and can be run by hand with
+ * <pre>
+ * java -cp target/classes Assignment1.MainAllocationCheck [options]
+ *
+ *   --warmup n         replications before measuring (default 2000)
+ *   --replications n   replications that are measured (default 1000)
+ *   --budget b         allowed number of allocated bytes per event (default 0.001)
+ * </pre>
+ *
+ * The budget is not zero, as the pool of events and the event queue still grow when a replication
+ * has more events scheduled at the same time than any replication before it.
+ *
+ * The process exits with status 1 if a model allocates more than the budget.
+ *
+ */
+public class MainAllocationCheck {
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private int warmup = 2000;
+	private int replications = 1000;
+	private double budget = 0.001;
+
+	public static void main(String[] args) {
+		MainAllocationCheck check = new MainAllocationCheck();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--warmup": check.warmup = Integer.parseInt(args[++i]); break;
+			case "--replications": check.replications = Integer.parseInt(args[++i]); break;
+			case "--budget": check.budget = Double.parseDouble(args[++i]); break;
+			default:
+				System.err.println("Unknown option " + args[i]);
+				System.exit(2);
+			}
+		}
+		if (!THREADS.isThreadAllocatedMemorySupported()) {
+			System.err.println("This JVM does not support measuring allocated memory");
+			System.exit(2);
+		}
+		THREADS.setThreadAllocatedMemoryEnabled(true);
+
+		List<Model<?>> models = new ArrayList<>();
+		for (int nBooths = 1; nBooths <= 10; nBooths++) {
+			models.add(new Model<>("coronaVacLoc nBooths=" + nBooths,
+					new CoronaVacLocState(100, 0, nBooths, 25, 50, 12, 0.25, 450, 9)));
+		}
+		for (int sensor = 850; sensor <= 950; sensor += 50) {
+			models.add(new Model<>("litterCollection sensorLevel=" + sensor,
+					new LitterCollectionState(Double.POSITIVE_INFINITY, 0, sensor, 1000, 2d, 48, 100, 10.0 / 24.0)));
+		}
+		// warm up all models before measuring, as the code is recompiled when it sees a new state class
+		for (Model<?> model : models) {
+			model.run(check.warmup);
+		}
+		boolean ok = true;
+		for (Model<?> model : models) {
+			ok &= check.check(model);
+		}
+		System.out.println(ok ? "OK" : "FAILED");
+		System.exit(ok ? 0 : 1);
+	}
+
+	private boolean check(Model<?> model) {
+		long thread = Thread.currentThread().getId();
+		// the cost of measuring itself
+		long overhead = -THREADS.getThreadAllocatedBytes(thread) + THREADS.getThreadAllocatedBytes(thread);
+		long before = THREADS.getThreadAllocatedBytes(thread);
+		long events = model.run(replications);
+		long bytes = THREADS.getThreadAllocatedBytes(thread) - before - overhead;
+
+		double perEvent = (double) bytes / events;
+		boolean ok = perEvent <= budget;
+		System.out.printf("%-32s %10d events %10d bytes %8.4f bytes/event%s%n", model.name, events, bytes, perEvent,
+				ok ? "" : "  OVER BUDGET");
+		return ok;
+	}
+
+	/**
+	 * A replication of a model, with its measures
+	 */
+	private static final class Model<S extends SystemState<S>> {
+
+		private final String name;
+		private final Replication<S> replication;
+		private final List<PerformanceMeasure<S>> measures;
+		private final double[] row;
+
+		private Model(String name, S state) {
+			this.name = name;
+			this.replication = new AutoReplication<>(state);
+			this.measures = state.getAutomaticMeasures();
+			this.row = new double[measures.size()];
+		}
+
+		/**
+		 * Runs replications like {@link general.Simulation} does, but without storing the results
+		 *
+		 * @param n	the number of replications
+		 * @return	the number of processed events
+		 */
+		private long run(int n) {
+			long events = 0;
+			for (int r = 0; r < n; r++) {
+				replication.reset();
+				replication.initialize();
+				replication.run();
+				events += replication.getEventCount();
+				S state = replication.getSystemState();
+				for (int i = 0; i < row.length; i++) {
+					row[i] = measures.get(i).compute(state);
+				}
+			}
+			return events;
+		}
+	}
+}
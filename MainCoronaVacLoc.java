@@ -1,35 +1,140 @@
 package Assignment1;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import general.PerformanceMeasure;
 import general.Replication;
 import general.Simulation;
 import general.automagic.AutoReplication;
+import general.distributed.SimulationFactory;
 
 public class MainCoronaVacLoc {
 
+	/**
+	 * Runs the sweep over the number of booths, or if the argument <code>--chairs</code> is given, a
+	 * single simulation with 5 booths that evaluates every number of chairs from 15 to 40 with shadow
+	 * chair stages. The number of replications per scenario is 1000, or the number after
+	 * <code>--replications</code>.
+	 *
+	 * @param args	the arguments
+	 */
 	public static void main(String[] args) {
-		// parameters
-
-		int mu = 12;
-		int nChairs = 25;
-		double rejectionHour = 9;
-
-		double chairSittingTime = 0.25;
-
-		double timeHorizon = 100;
 		long n = 1000;
 		long seed = 0;
 
+		int option = Arrays.asList(args).indexOf("--replications");
+		if (option >= 0) {
+			n = Long.parseLong(args[option + 1]);
+		}
+
+		if (Arrays.asList(args).contains("--chairs")) {
+			int nBooths = 5;
+			int[] chairs = new int[26];
+			for (int c = 0; c < chairs.length; c++) {
+				chairs[c] = 15 + c;
+			}
+			Simulation<CoronaVacLocState> simulation = createShadowSimulation(nBooths, chairs, seed);
+			simulation.run(n);
+			Map<String, PerformanceMeasure<CoronaVacLocState>> measures = new HashMap<>();
+			for (PerformanceMeasure<CoronaVacLocState> pm : simulation.getPerformanceMeasures()) {
+				measures.put(pm.getName(), pm);
+			}
+			System.out.println("nBooths: " + nBooths);
+			for (int nChairs : chairs) {
+				System.out.println("nChairs: " + nChairs);
+				System.out.println(measures.get("p with " + nChairs + " chairs"));
+				System.out.println(measures.get("if no chair time is with " + nChairs + " chairs"));
+				System.out.println("--------------------------------------------------------------------------------------------------------");
+			}
+			return;
+		}
+
 		for (int i = 1; i <= 10; i++) {
 			int nBooths = i;
-			int maxArrivals = nBooths * 10 * 9;
-			int lambda = nBooths * 10;
-			CoronaVacLocState state = new CoronaVacLocState(timeHorizon, seed, nBooths, nChairs, lambda, mu, chairSittingTime, maxArrivals, rejectionHour);
-			Replication<CoronaVacLocState> replication = new AutoReplication<CoronaVacLocState>(state);
-			Simulation<CoronaVacLocState> simulation = new Simulation<>(replication);
+			Simulation<CoronaVacLocState> simulation = createSimulation(nBooths, seed);
 			simulation.run(n);
 			System.out.println("nBooths: " + nBooths);
 			simulation.printEstimates();
 			System.out.println("--------------------------------------------------------------------------------------------------------");
 		}
 	}
+
+	/**
+	 * Creates the simulation of a single scenario of the sweep in {@link #main(String[])}.
+	 *
+	 * @param nBooths	the number of vaccination booths
+	 * @param seed		the seed of the random number generators
+	 * @return			the simulation of the scenario
+	 */
+	public static Simulation<CoronaVacLocState> createSimulation(int nBooths, long seed) {
+		CoronaVacLocState state = createState(nBooths, seed);
+		Replication<CoronaVacLocState> replication = new AutoReplication<CoronaVacLocState>(state);
+		Simulation<CoronaVacLocState> simulation = new Simulation<>(replication);
+		simulation.setScenario("nBooths=" + nBooths);
+		return simulation;
+	}
+
+	/**
+	 * Creates the simulation of a scenario of the sweep in {@link #main(String[])} with another number of chairs.
+	 *
+	 * @param nBooths	the number of vaccination booths
+	 * @param nChairs	the number of chairs, which may be 0
+	 * @param seed		the seed of the random number generators
+	 * @return			the simulation of the scenario
+	 */
+	public static Simulation<CoronaVacLocState> createSimulation(int nBooths, int nChairs, long seed) {
+		CoronaVacLocState state = createState(nBooths, nChairs, seed);
+		Replication<CoronaVacLocState> replication = new AutoReplication<CoronaVacLocState>(state);
+		Simulation<CoronaVacLocState> simulation = new Simulation<>(replication);
+		simulation.setScenario("nBooths=" + nBooths + ",nChairs=" + nChairs);
+		return simulation;
+	}
+
+	private static CoronaVacLocState createState(int nBooths, long seed) {
+		return createState(nBooths, 25, seed);
+	}
+
+	private static CoronaVacLocState createState(int nBooths, int nChairs, long seed) {
+		// parameters
+
+		int mu = 12;
+		double rejectionHour = 9;
+
+		double chairSittingTime = 0.25;
+
+		double timeHorizon = 100;
+
+		int maxArrivals = nBooths * 10 * 9;
+		int lambda = nBooths * 10;
+		return new CoronaVacLocState(timeHorizon, seed, nBooths, nChairs, lambda, mu, chairSittingTime, maxArrivals, rejectionHour);
+	}
+
+	/**
+	 * Creates a simulation of the location with the default number of chairs and shadow chair stages
+	 * with the given numbers of chairs, of which only the measures of the shadow stages are estimated.
+	 *
+	 * @param nBooths	the number of vaccination booths
+	 * @param chairs	the numbers of chairs to evaluate
+	 * @param seed		the seed of the random number generators
+	 * @return			the simulation
+	 */
+	public static Simulation<CoronaVacLocState> createShadowSimulation(int nBooths, int[] chairs, long seed) {
+		CoronaVacLocState state = createState(nBooths, seed);
+		state.setShadowChairs(chairs);
+		return new Simulation<>(new AutoReplication<CoronaVacLocState>(state), state.getShadowMeasures());
+	}
+
+	/**
+	 * Creates the simulations of the scenarios of the sweep in {@link #main(String[])} for a
+	 * {@link general.distributed.Coordinator}, where the scenario is the number of booths.
+	 */
+	public static class Factory implements SimulationFactory {
+
+		@Override
+		public Simulation<CoronaVacLocState> create(String scenario, long seed) {
+			return createSimulation(Integer.parseInt(scenario), seed);
+		}
+	}
 }
@@ -0,0 +1,59 @@
+package Assignment1;
+
+import java.util.List;
+
+import general.PerformanceMeasure;
+import general.Simulation;
+import general.automagic.AutoReplication;
+import general.rare.SplittingSimulation;
+
+/**
+ * Estimates the fraction of persons that find no free chair at a location with many chairs, where
+ * this fraction is tiny, once with plain replications and once with splitting on the number of chairs
+ * in use. For both, the product of the squared standard error and the run time is printed, which is
+ * lower for the method that needs less time for the same precision.
+ */
+public class MainCoronaVacLocSplitting {
+
+	public static void main(String[] args) {
+		long seed = 0;
+
+		// parameters
+		int nBooths = 5;
+		int mu = 12;
+		int nChairs = 32;
+		double rejectionHour = 9;
+		double chairSittingTime = 0.25;
+		double timeHorizon = 100;
+		int maxArrivals = nBooths * 10 * 9;
+		int lambda = nBooths * 10;
+
+		// a path that reaches a level reaches the next one about once in three times
+		double[] levels = { 20, 23, 26, 29 };
+		int splitting = 3;
+
+		long start = System.nanoTime();
+		Simulation<CoronaVacLocState> plain = new Simulation<>(new AutoReplication<CoronaVacLocState>(
+				new CoronaVacLocState(timeHorizon, seed, nBooths, nChairs, lambda, mu, chairSittingTime, maxArrivals, rejectionHour)));
+		plain.run(4000);
+		print("plain", plain.getPerformanceMeasures(), System.nanoTime() - start);
+
+		start = System.nanoTime();
+		SplittingSimulation<CoronaVacLocState> split = new SplittingSimulation<>(new AutoReplication<CoronaVacLocState>(
+				new CoronaVacLocState(timeHorizon, seed, nBooths, nChairs, lambda, mu, chairSittingTime, maxArrivals, rejectionHour)),
+				CoronaVacLocState::getChairsInUse, levels, splitting, seed);
+		split.run(800);
+		print("splitting", split.getPerformanceMeasures(), System.nanoTime() - start);
+		System.out.println("paths per replication: " + split.getMeanPaths());
+	}
+
+	private static void print(String method, List<PerformanceMeasure<CoronaVacLocState>> measures, long nanos) {
+		for (PerformanceMeasure<CoronaVacLocState> pm : measures) {
+			if (pm.getName().equals("p")) {
+				double seconds = nanos / 1e9;
+				System.out.println(method + ": " + pm + " in " + seconds + " s, work-normalized variance "
+						+ pm.getStandardError() * pm.getStandardError() * seconds);
+			}
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package Assignment1;
+
+import java.util.Arrays;
+
+import general.automagic.AutoReplication;
+import general.parallel.SiteNetwork;
+
+/**
+ * Simulates a network of vaccination locations, where persons that find a long queue are sent to the
+ * next location, once on the calling thread and once with a thread per location, and checks that
+ * both give identical results.
+ */
+public class MainCoronaVacNetwork {
+
+	public static void main(String[] args) {
+		long n = 1000;
+		long seed = 0;
+		int[] booths = { 2, 4, 6 };
+
+		double[][] sequential = run(booths, seed, n, 1);
+		double[][] parallel = run(booths, seed, n, booths.length);
+
+		for (int site = 0; site < booths.length; site++) {
+			System.out.println("site " + site + ", nBooths: " + booths[site]);
+			System.out.println("arrivals: " + sequential[site][0] / n);
+			System.out.println("sent to the next site: " + sequential[site][1] / n);
+			System.out.println("received from another site: " + sequential[site][2] / n);
+			System.out.println("mean sojourn time: " + sequential[site][3] / n);
+			System.out.println("last person left at: " + sequential[site][4] / n);
+			System.out.println("p: " + sequential[site][5] / n);
+			System.out.println("--------------------------------------------------------------------------------------------------------");
+		}
+		System.out.println("identical with " + booths.length + " threads: " + Arrays.deepEquals(sequential, parallel));
+	}
+
+	/**
+	 * Creates a network where every site sends persons to the next one, and the last site to the first.
+	 *
+	 * @param booths	the number of vaccination booths of every site
+	 * @param seed		the seed of the first site, which is incremented for every next site
+	 * @return			the network
+	 */
+	public static SiteNetwork<CoronaVacLocState> createNetwork(int[] booths, long seed) {
+		// parameters
+
+		int mu = 12;
+		int nChairs = 25;
+		double rejectionHour = 9;
+
+		double chairSittingTime = 0.25;
+		double travelTime = 0.5;
+		int maxQueue = 5;
+
+		double timeHorizon = 100;
+
+		SiteNetwork<CoronaVacLocState> network = new SiteNetwork<>(travelTime);
+		for (int site = 0; site < booths.length; site++) {
+			int nBooths = booths[site];
+			int maxArrivals = 12 * 9 * 4;
+			int lambda = 12 * 4;
+			CoronaVacNetworkState state = new CoronaVacNetworkState(network, site, (site + 1) % booths.length, maxQueue,
+					timeHorizon, seed + site, nBooths, nChairs, lambda, mu, chairSittingTime, maxArrivals, rejectionHour);
+			network.addSite(new AutoReplication<CoronaVacLocState>(state));
+		}
+		return network;
+	}
+
+	/**
+	 * Runs replications of a network and sums a number of results of every site.
+	 */
+	private static double[][] run(int[] booths, long seed, long n, int threads) {
+		SiteNetwork<CoronaVacLocState> network = createNetwork(booths, seed);
+		network.setThreads(threads);
+		double[][] sums = new double[booths.length][6];
+		for (long r = 0; r < n; r++) {
+			network.reset();
+			network.initialize();
+			network.run();
+			for (int site = 0; site < booths.length; site++) {
+				CoronaVacNetworkState state = (CoronaVacNetworkState) network.getSite(site).getSystemState();
+				sums[site][0] += state.getArrivals();
+				sums[site][1] += state.getSent();
+				sums[site][2] += state.getReceived();
+				sums[site][3] += state.getMeanSojourn();
+				sums[site][4] += state.getLastPersonTime();
+				sums[site][5] += state.getP();
+			}
+		}
+		return sums;
+	}
+}
@@ -0,0 +1,156 @@
+package Assignment1;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import general.PerformanceMeasure;
+import general.Simulation;
+import general.equivalence.EquivalenceCheck;
+import general.equivalence.EquivalenceCheck.Mode;
+
+public class MainEquivalence {
+
+	private static final int SENSOR_LEVEL = 900;
+	private static final int N_BOOTHS = 5;
+	private static final int N_CHAIRS = 25;
+
+	/**
+	 * Checks that the optimized engines of the litter collection and vaccination location models give the
+	 * same results as a plain {@link Simulation} of the model, the reference, with a {@link EquivalenceCheck}.
+	 * The engines that promise the same random numbers must give bit-identical replications, and the others
+	 * the same distributions of the measures. As a control, the reference with another seed is compared
+	 * statistically. This runs in every build, and throws an exception if any candidate fails.
+	 *
+	 * <pre>
+	 *   --replications n   replications per engine (default 1000)
+	 *   --seed s           the seed of the engines (default 0)
+	 *   --alpha a          the significance level of the statistical tests (default 0.001)
+	 *   --z z              the quantile of the confidence intervals of the differences of the means (default 3.29)
+	 * </pre>
+	 *
+	 * @param args	the arguments
+	 */
+	public static void main(String[] args) {
+		int n = 1000;
+		long seed = 0;
+		double alpha = 0.001;
+		double z = 3.29;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--replications": n = Integer.parseInt(args[++i]); break;
+			case "--seed": seed = Long.parseLong(args[++i]); break;
+			case "--alpha": alpha = Double.parseDouble(args[++i]); break;
+			case "--z": z = Double.parseDouble(args[++i]); break;
+			default:
+				System.err.println("Unknown option " + args[i]);
+				System.exit(2);
+			}
+		}
+
+		int failed = 0;
+		for (EquivalenceCheck check : new EquivalenceCheck[] { createLitterCheck(), createCoronaCheck(), createCoronaWithoutChairsCheck() }) {
+			check.setAlpha(alpha);
+			check.setZ(z);
+			failed += check.run(n, seed, System.out);
+		}
+		if (failed > 0) {
+			throw new IllegalStateException(failed + " engines are not equivalent to the reference");
+		}
+	}
+
+	/**
+	 * @return	the check of the engines of the litter collection model with the sensor level 900
+	 */
+	public static EquivalenceCheck createLitterCheck() {
+		EquivalenceCheck check = new EquivalenceCheck("litter",
+				(n, seed) -> EquivalenceCheck.record(MainLitterCollection.createSimulation(SENSOR_LEVEL, seed), n));
+		check.addCandidate("run and runMore",
+				(n, seed) -> EquivalenceCheck.record(MainLitterCollection.createSimulation(SENSOR_LEVEL, seed), n / 2, n - n / 2), Mode.EXACT);
+		check.addCandidate("reused simulation", (n, seed) -> {
+			Simulation<LitterCollectionState> simulation = MainLitterCollection.createSimulation(SENSOR_LEVEL, seed + 1);
+			simulation.run(10);
+			simulation.getReplication().getSystemState().getRandom().setSeed(seed);
+			return EquivalenceCheck.record(simulation, n);
+		}, Mode.EXACT);
+		check.addCandidate("lockstep", (n, seed) -> {
+			LitterCollectionLockstep lockstep = MainLitterCollection.createLockstep(new int[] { SENSOR_LEVEL }, seed);
+			lockstep.run(n);
+			return lockstepValues(lockstep, 0, n);
+		}, Mode.EXACT);
+		check.addCandidate("lockstep with sensor level 950", (n, seed) -> {
+			LitterCollectionLockstep lockstep = MainLitterCollection.createLockstep(new int[] { SENSOR_LEVEL, 950 }, seed);
+			lockstep.run(n);
+			return lockstepValues(lockstep, 0, n);
+		}, Mode.STATISTICAL);
+		check.addCandidate("bulk arrivals", (n, seed) -> {
+			Simulation<LitterCollectionState> simulation = MainLitterCollection.createSimulation(SENSOR_LEVEL, seed);
+			simulation.getReplication().getSystemState().setBulkArrivals(true);
+			return EquivalenceCheck.record(simulation, n);
+		}, Mode.STATISTICAL);
+		check.addCandidate("other seed",
+				(n, seed) -> EquivalenceCheck.record(MainLitterCollection.createSimulation(SENSOR_LEVEL, seed + 1), n), Mode.STATISTICAL);
+		return check;
+	}
+
+	/**
+	 * @return	the check of the engines of the vaccination location with 5 booths
+	 */
+	public static EquivalenceCheck createCoronaCheck() {
+		EquivalenceCheck check = new EquivalenceCheck("corona",
+				(n, seed) -> EquivalenceCheck.record(MainCoronaVacLoc.createSimulation(N_BOOTHS, seed), n));
+		check.addCandidate("run and runMore",
+				(n, seed) -> EquivalenceCheck.record(MainCoronaVacLoc.createSimulation(N_BOOTHS, seed), n / 2, n - n / 2), Mode.EXACT);
+		check.addCandidate("reused simulation", (n, seed) -> {
+			Simulation<CoronaVacLocState> simulation = MainCoronaVacLoc.createSimulation(N_BOOTHS, seed + 1);
+			simulation.run(10);
+			simulation.getReplication().getSystemState().getRandom().setSeed(seed);
+			return EquivalenceCheck.record(simulation, n);
+		}, Mode.EXACT);
+		// the shadow stage with the default number of chairs must behave exactly like the real one
+		check.addCandidate("shadow chair stage", (n, seed) -> shadowValues(N_CHAIRS, n, seed), Mode.EXACT);
+		check.addCandidate("other seed",
+				(n, seed) -> EquivalenceCheck.record(MainCoronaVacLoc.createSimulation(N_BOOTHS, seed + 1), n), Mode.STATISTICAL);
+		return check;
+	}
+
+	/**
+	 * @return	the check of the engines of the vaccination location with 5 booths and no chairs, where every
+	 * 			person stands and leaves the chair queue without ever getting a chair
+	 */
+	public static EquivalenceCheck createCoronaWithoutChairsCheck() {
+		EquivalenceCheck check = new EquivalenceCheck("corona without chairs",
+				(n, seed) -> EquivalenceCheck.record(MainCoronaVacLoc.createSimulation(N_BOOTHS, 0, seed), n));
+		check.addCandidate("run and runMore",
+				(n, seed) -> EquivalenceCheck.record(MainCoronaVacLoc.createSimulation(N_BOOTHS, 0, seed), n / 2, n - n / 2), Mode.EXACT);
+		// no statistical control, as the time without a chair is 0 up to rounding errors that differ between seeds
+		check.addCandidate("shadow chair stage", (n, seed) -> shadowValues(0, n, seed), Mode.EXACT);
+		return check;
+	}
+
+	/**
+	 * Runs a simulation with the default number of chairs and a shadow chair stage, and names the values of the
+	 * stage like the measures of the real chairs.
+	 */
+	private static Map<String,double[]> shadowValues(int nChairs, int n, long seed) {
+		Map<String,double[]> values = EquivalenceCheck.record(MainCoronaVacLoc.createShadowSimulation(N_BOOTHS, new int[] { nChairs }, seed), n);
+		Map<String,double[]> renamed = new LinkedHashMap<>();
+		for (Map.Entry<String,double[]> e : values.entrySet()) {
+			renamed.put(e.getKey().replace(" with " + nChairs + " chairs", ""), e.getValue());
+		}
+		return renamed;
+	}
+
+	private static Map<String,double[]> lockstepValues(LitterCollectionLockstep lockstep, int scenario, int n) {
+		List<PerformanceMeasure<LitterCollectionState>> measures = lockstep.getPerformanceMeasures(scenario);
+		Map<String,double[]> values = new LinkedHashMap<>();
+		for (int j = 0; j < measures.size(); j++) {
+			double[] column = new double[n];
+			for (int r = 0; r < n; r++) {
+				column[r] = lockstep.getResults(scenario, r)[j];
+			}
+			values.put(measures.get(j).getName(), column);
+		}
+		return values;
+	}
+}
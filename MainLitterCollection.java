@@ -1,34 +1,152 @@
 package Assignment1;
 
+import java.util.Arrays;
+
+import general.ForkedSweep;
 import general.Replication;
 import general.Simulation;
 import general.automagic.AutoReplication;
+import general.distributed.SimulationFactory;
 
 public class MainLitterCollection {
 
-	public static void main(String[] args) {
-		// parameters
-		// time unit is hour
-		int maxCapacity = 1000;
-		double lambda = 2d;
-		int timeDelay = 2 * 24;
-		int costContainer = 100;
-		double costOutsideBag = 10.0/24.0;
+	// parameters
+	// time unit is hour
+	private static final int MAX_CAPACITY = 1000;
+	private static final double LAMBDA = 2d;
+	private static final int TIME_DELAY = 2 * 24;
+	private static final int COST_CONTAINER = 100;
+	private static final double COST_OUTSIDE_BAG = 10.0/24.0;
 
-		double timeHorizon = Double.POSITIVE_INFINITY;
+	/**
+	 * Runs the sweep over the sensor levels, with a simulation per scenario, or with all scenarios in
+	 * lockstep on common random numbers if the argument <code>--lockstep</code> is given, or with every
+	 * replication forked into the scenarios when the lowest sensor level is reached if the argument
+	 * <code>--fork</code> is given. The number of replications per scenario is 1000, or the number after
+	 * <code>--replications</code>.
+	 *
+	 * @param args	the arguments
+	 */
+	public static void main(String[] args) {
 		long n = 1000;
 		long seed = 0;
 		
+		int option = Arrays.asList(args).indexOf("--replications");
+		if (option >= 0) {
+			n = Long.parseLong(args[option + 1]);
+		}
+		
+		if (Arrays.asList(args).contains("--lockstep")) {
+			int[] sensorLevels = new int[21];
+			for (int s = 0; s < sensorLevels.length; s++) {
+				sensorLevels[s] = 850 + 5 * s;
+			}
+			LitterCollectionLockstep lockstep = createLockstep(sensorLevels, seed);
+			lockstep.run(n);
+			for (int s = 0; s < sensorLevels.length; s++) {
+				System.out.println("SensorLevel: " + sensorLevels[s]);
+				lockstep.printEstimates(s);
+				System.out.println("--------------------------------------------------------------------------------------------------------");
+			}
+			return;
+		}
+		
+		if (Arrays.asList(args).contains("--fork")) {
+			int[] sensorLevels = new int[21];
+			for (int s = 0; s < sensorLevels.length; s++) {
+				sensorLevels[s] = 850 + 5 * s;
+			}
+			ForkedSweep<LitterCollectionState> sweep = createForkedSweep(sensorLevels, seed);
+			sweep.run(n);
+			for (int s = 0; s < sensorLevels.length; s++) {
+				System.out.println("SensorLevel: " + sensorLevels[s]);
+				sweep.printEstimates(s);
+				System.out.println("--------------------------------------------------------------------------------------------------------");
+			}
+			return;
+		}
+		
 		for (int i = 850; i <= 950; i= i + 5) {
 			int sensorLevel = i;
-			LitterCollectionState state = new LitterCollectionState(timeHorizon, seed, sensorLevel, maxCapacity, lambda, timeDelay, costContainer, costOutsideBag);
-			Replication<LitterCollectionState> replication = new AutoReplication<LitterCollectionState>(state);
-
-			Simulation<LitterCollectionState> simulation = new Simulation<>(replication);
+			Simulation<LitterCollectionState> simulation = createSimulation(sensorLevel, seed);
 			simulation.run(n);
 			System.out.println("SensorLevel: " + sensorLevel);
 			simulation.printEstimates();
 			System.out.println("--------------------------------------------------------------------------------------------------------");
 		}
 	}
+
+	/**
+	 * Creates the simulation of a single scenario of the sweep in {@link #main(String[])}.
+	 *
+	 * @param sensorLevel	the number of bags at which the sensor requests a clean up
+	 * @param seed			the seed of the random number generators
+	 * @return				the simulation of the scenario
+	 */
+	public static Simulation<LitterCollectionState> createSimulation(int sensorLevel, long seed) {
+		double timeHorizon = Double.POSITIVE_INFINITY;
+
+		LitterCollectionState state = new LitterCollectionState(timeHorizon, seed, sensorLevel, MAX_CAPACITY, LAMBDA, TIME_DELAY, COST_CONTAINER, COST_OUTSIDE_BAG);
+		Replication<LitterCollectionState> replication = new AutoReplication<LitterCollectionState>(state);
+
+		Simulation<LitterCollectionState> simulation = new Simulation<>(replication);
+		simulation.setScenario("sensorLevel=" + sensorLevel);
+		return simulation;
+	}
+
+	/**
+	 * Creates the simulations of the scenarios of the sweep in {@link #main(String[])} for a
+	 * {@link general.distributed.Coordinator}, where the scenario is the sensor level.
+	 */
+	public static class Factory implements SimulationFactory {
+
+		@Override
+		public Simulation<LitterCollectionState> create(String scenario, long seed) {
+			return createSimulation(Integer.parseInt(scenario), seed);
+		}
+	}
+
+	/**
+	 * Creates a lockstep simulation of the scenarios with the given sensor levels, which share their arrivals.
+	 *
+	 * @param sensorLevels	the numbers of bags at which the sensor requests a clean up, one per scenario
+	 * @param seed			the seed of the random number generator
+	 * @return				the lockstep simulation of the scenarios
+	 */
+	public static LitterCollectionLockstep createLockstep(int[] sensorLevels, long seed) {
+		int k = sensorLevels.length;
+		int[] maxCapacity = new int[k];
+		int[] timeDelay = new int[k];
+		int[] costContainer = new int[k];
+		double[] costOutsideBag = new double[k];
+		Arrays.fill(maxCapacity, MAX_CAPACITY);
+		Arrays.fill(timeDelay, TIME_DELAY);
+		Arrays.fill(costContainer, COST_CONTAINER);
+		Arrays.fill(costOutsideBag, COST_OUTSIDE_BAG);
+		return new LitterCollectionLockstep(seed, LAMBDA, sensorLevels, maxCapacity, timeDelay, costContainer, costOutsideBag);
+	}
+
+	/**
+	 * Creates a sweep over the given sensor levels, of which every replication runs with a sensor level
+	 * that is never reached until the container holds as many bags as the lowest level, and is then forked
+	 * into the scenarios.
+	 *
+	 * @param sensorLevels	the numbers of bags at which the sensor requests a clean up, one per scenario
+	 * @param seed			the seed of the random number generator
+	 * @return				the forked sweep over the scenarios
+	 */
+	public static ForkedSweep<LitterCollectionState> createForkedSweep(int[] sensorLevels, long seed) {
+		double timeHorizon = Double.POSITIVE_INFINITY;
+		int lowest = Arrays.stream(sensorLevels).min().getAsInt();
+
+		LitterCollectionState state = new LitterCollectionState(timeHorizon, seed, lowest, MAX_CAPACITY, LAMBDA, TIME_DELAY, COST_CONTAINER, COST_OUTSIDE_BAG);
+		Replication<LitterCollectionState> replication = new AutoReplication<LitterCollectionState>(state);
+
+		ForkedSweep<LitterCollectionState> sweep = new ForkedSweep<>(replication, s -> s.getInsideBags() >= lowest);
+		sweep.setPrefix(s -> s.setSensor(Integer.MAX_VALUE));
+		for (int sensorLevel : sensorLevels) {
+			sweep.addScenario("sensorLevel=" + sensorLevel, s -> s.setSensor(sensorLevel));
+		}
+		return sweep;
+	}
 }
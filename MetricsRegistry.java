@@ -0,0 +1,91 @@
+package general.metrics;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Keeps the {@link ReplicationMetrics} of all scenarios of a parameter sweep. A registry is
+ * attached to a {@link general.Simulation} with {@link general.Simulation#setMetrics(MetricsRegistry)},
+ * after which the simulation records its metrics under its scenario name. Metrics are not recorded
+ * unless a registry is attached.
+ *
+ * When {@link #registerMBeans()} has been called, the metrics of every scenario are also
+ * available over JMX, under the name <code>general:type=ReplicationMetrics,scenario=...</code>.
+ *
+ */
+public class MetricsRegistry {
+
+	public static final String DEFAULT_SCENARIO = "default";
+
+	private final Map<String,ReplicationMetrics> metrics = new LinkedHashMap<>();
+	private boolean registerMBeans;
+
+	/**
+	 * @param scenario	the name of a scenario, or <code>null</code> for {@link #DEFAULT_SCENARIO}
+	 * @return			the metrics of the scenario, which are created if they do not exist yet
+	 */
+	public synchronized ReplicationMetrics get(String scenario) {
+		String name = scenario == null ? DEFAULT_SCENARIO : scenario;
+		ReplicationMetrics m = metrics.get(name);
+		if (m == null) {
+			m = new ReplicationMetrics(name);
+			metrics.put(name, m);
+			if (registerMBeans) {
+				register(m);
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * @return the metrics of all scenarios, in the order in which they were first used
+	 */
+	public synchronized List<ReplicationMetrics> getAll() {
+		return new ArrayList<>(metrics.values());
+	}
+
+	/**
+	 * Registers the metrics of all current and future scenarios with the platform MBean server.
+	 */
+	public synchronized void registerMBeans() {
+		if (!registerMBeans) {
+			registerMBeans = true;
+			for (ReplicationMetrics m : metrics.values()) {
+				register(m);
+			}
+		}
+	}
+
+	private static void register(ReplicationMetrics m) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName("general:type=ReplicationMetrics,scenario="
+					+ ObjectName.quote(m.getScenario()));
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(m, name);
+		} catch (JMException ex) {
+			throw new RuntimeException("Unable to register metrics of scenario "+m.getScenario()+" over JMX", ex);
+		}
+	}
+
+	/**
+	 * Prints the metrics of all scenarios.
+	 *
+	 * @param out	the stream to print to
+	 */
+	public void printSummary(PrintStream out) {
+		for (ReplicationMetrics m : getAll()) {
+			out.println(m);
+		}
+	}
+}
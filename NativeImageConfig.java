@@ -0,0 +1,112 @@
+package general;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import general.distributed.SimulationFactory;
+
+/**
+ * Generates the reflection metadata that a GraalVM native image of the simulations needs, see the
+ * <code>native</code> profile of the build. The framework finds the parts of a model by reflection:
+ * {@link SystemState} looks up the {@link general.annotations.AutoCounter} fields and
+ * {@link general.annotations.AutoMeasure} methods, {@link general.automagic.AutoReplication} the
+ * {@link general.annotations.StopCriterium} and {@link general.annotations.Initialize} methods, checkpoints
+ * and forks read and write the fields of the state and the objects in it, and workers create a
+ * {@link SimulationFactory} by the name of its class. A native image only supports this for the classes
+ * and members listed in its metadata, so the generator lists, for all classes in a directory of
+ * compiled classes:
+ * <ul>
+ * <li>the declared fields of every class,</li>
+ * <li>the public methods of every state, and the methods of every annotation,</li>
+ * <li>the public constructors of every simulation factory.</li>
+ * </ul>
+ * Usage:
+ * <pre>
+ * java -cp target/classes general.NativeImageConfig target/classes target/classes/META-INF/native-image/reflect-config.json
+ * </pre>
+ *
+ */
+public final class NativeImageConfig {
+
+	private NativeImageConfig() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: NativeImageConfig <classes directory> <output file>");
+			System.exit(2);
+		}
+		Path classes = Paths.get(args[0]);
+		Path output = Paths.get(args[1]);
+		List<String> entries = generate(classes);
+		if (output.getParent() != null) {
+			Files.createDirectories(output.getParent());
+		}
+		try (Writer out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+			out.write("[\n");
+			out.write(String.join(",\n", entries));
+			out.write("\n]\n");
+		}
+		System.out.println("Wrote reflection metadata of " + entries.size() + " classes to " + output);
+	}
+
+	/**
+	 * @param classes	A directory of compiled classes, which must be on the class path. Classes that can
+	 * 					not be loaded are skipped with a warning.
+	 * @return			The entries of the reflection metadata of the classes, as JSON objects
+	 * @throws IOException if the directory can not be read
+	 */
+	public static List<String> generate(Path classes) throws IOException {
+		List<String> names;
+		try (Stream<Path> files = Files.walk(classes)) {
+			names = files
+					.filter(p -> p.toString().endsWith(".class") && !p.getFileName().toString().equals("module-info.class"))
+					.map(p -> {
+						String name = classes.relativize(p).toString();
+						return name.substring(0, name.length() - ".class".length()).replace(p.getFileSystem().getSeparator(), ".");
+					})
+					.sorted()
+					.collect(Collectors.toList());
+		}
+		List<String> entries = new ArrayList<>();
+		ClassLoader loader = NativeImageConfig.class.getClassLoader();
+		for (String name : names) {
+			Class<?> cls;
+			try {
+				cls = Class.forName(name, false, loader);
+			} catch (ClassNotFoundException | LinkageError ex) {
+				// for example a benchmark of which the dependencies are not on the class path
+				System.err.println("Skipping class " + name + ", which can not be loaded: " + ex);
+				continue;
+			}
+			entries.add(entry(cls));
+		}
+		return entries;
+	}
+
+	private static String entry(Class<?> cls) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("  {\n    \"name\": \"").append(cls.getName()).append("\",\n");
+		sb.append("    \"allDeclaredFields\": true");
+		if (SystemState.class.isAssignableFrom(cls)) {
+			sb.append(",\n    \"allPublicMethods\": true");
+		}
+		if (cls.isAnnotation()) {
+			sb.append(",\n    \"allDeclaredMethods\": true");
+		}
+		if (SimulationFactory.class.isAssignableFrom(cls) && !cls.isInterface() && !Modifier.isAbstract(cls.getModifiers())) {
+			sb.append(",\n    \"allPublicConstructors\": true");
+		}
+		sb.append("\n  }");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,466 @@
+package general.resources;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.IntConsumer;
+
+/**
+ * Store of entities with a fixed schema of primitive attributes, kept outside the Java heap. This
+ * is meant for models with millions of entities, such as all persons in a vaccination campaign,
+ * for which an object per entity would fill the heap and keep the garbage collector busy.
+ *
+ * Like the {@link EntityStore}, entities are identified by integer ids that are recycled through a
+ * free list, so allocating and freeing an entity takes constant time. Every attribute is stored in
+ * its own column, so a sequential scan over one attribute reads contiguous memory. The columns are
+ * split into chunks of {@link MemorySegment}s of a fixed number of entities, such that the store
+ * can grow by adding a chunk, without copying the existing entities.
+ *
+ * The segments are allocated in an automatic {@link Arena}, so the memory of a store is released by
+ * the garbage collector once the store is no longer referenced. The store can be checkpointed with
+ * the rest of a state, in which case the contents of the columns are written as raw bytes.
+ *
+ * The foreign memory API is a preview API in Java 21, so classes that use the store must be run with
+ * <code>--enable-preview</code>, like the build compiles them.
+ *
+ */
+@SuppressWarnings("preview")
+public class OffHeapEntityStore implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The primitive types of the columns
+	 */
+	public enum Type {
+		BYTE(1), INT(4), LONG(8), DOUBLE(8);
+
+		private final int width;
+
+		Type(int width) {
+			this.width = width;
+		}
+
+		/**
+		 * @return the number of bytes a value of this type takes
+		 */
+		public int getWidth() {
+			return width;
+		}
+	}
+
+	/**
+	 * Action that is called for every chunk of entities during a scan with {@link OffHeapEntityStore#forEachChunk(ChunkAction)}
+	 */
+	@FunctionalInterface
+	public interface ChunkAction {
+		/**
+		 * The value of an attribute of the entity with id <code>first + i</code> is at index <code>i</code>
+		 * of the segment of its column, read with {@link MemorySegment#getAtIndex(ValueLayout.OfInt, long)}
+		 * and the layout of its type, for example {@link ValueLayout#JAVA_INT}. Reading the segments into
+		 * local variables before looping over the entities lets the compiler keep them in registers, which
+		 * makes such a loop several times faster than calling the getters of the store for every id.
+		 *
+		 * @param first		The id of the first entity in the chunk
+		 * @param length	The number of entities in the chunk, including those that are not live
+		 * @param live		The segment that tells which entities are live, see {@link OffHeapEntityStore#isLive(MemorySegment, int)}
+		 * @param columns	The segments of the columns for this chunk, indexed by column
+		 */
+		void accept(int first, int length, MemorySegment live, MemorySegment[] columns);
+	}
+
+	private static final int LIVE = -2;
+
+	private final ArrayList<String> names;
+	private final Type[] types;
+	private final int chunkShift;
+	private final int chunkMask;
+
+	// per column, a list of chunks, with the links of the free list in the last column
+	private transient Arena arena;
+	private transient MemorySegment[][] chunks;
+	private int nrChunks;
+	private int freeHead;
+	private int highWater;
+	private int size;
+
+	/**
+	 * Creates a store with chunks of 2^20 entities
+	 *
+	 * @param schema	The names and types of the attributes, in the order of their column indices
+	 */
+	public OffHeapEntityStore(Map<String,Type> schema) {
+		this(schema, 20);
+	}
+
+	/**
+	 * @param schema		The names and types of the attributes, in the order of their column indices
+	 * @param chunkShift	The base 2 logarithm of the number of entities per chunk, between 4 and 24
+	 */
+	public OffHeapEntityStore(Map<String,Type> schema, int chunkShift) {
+		if (chunkShift < 4 || chunkShift > 24) {
+			throw new IllegalArgumentException("The chunk shift must be between 4 and 24");
+		}
+		ArrayList<String> names = new ArrayList<>();
+		Type[] types = new Type[schema.size()];
+		for (Entry<String,Type> e : schema.entrySet()) {
+			if (e.getKey() == null || e.getValue() == null) {
+				throw new IllegalArgumentException("The names and types of columns cannot be null.");
+			}
+			types[names.size()] = e.getValue();
+			names.add(e.getKey());
+		}
+		this.names = names;
+		this.types = types;
+		this.chunkShift = chunkShift;
+		this.chunkMask = (1 << chunkShift) - 1;
+		this.arena = Arena.ofAuto();
+		this.chunks = new MemorySegment[types.length + 1][0];
+		this.freeHead = EntityStore.NONE;
+	}
+
+	/**
+	 * @return a new, empty schema, to which columns can be added in order
+	 */
+	public static Map<String,Type> schema() {
+		return new LinkedHashMap<>();
+	}
+
+	/**
+	 * @param name	The name of an attribute
+	 * @return		The index of its column
+	 */
+	public int getColumn(String name) {
+		int column = names.indexOf(name);
+		if (column < 0) {
+			throw new IllegalArgumentException("There is no column with name '"+name+"'");
+		}
+		return column;
+	}
+
+	/**
+	 * @return the names of the columns, where the index in the list is the index of the column
+	 */
+	public List<String> getColumnNames() {
+		return Collections.unmodifiableList(names);
+	}
+
+	/**
+	 * Allocates a new entity, of which all attributes are 0.
+	 *
+	 * @return The id of the entity
+	 */
+	public int allocate() {
+		int id;
+		if (freeHead != EntityStore.NONE) {
+			id = freeHead;
+			freeHead = link(id);
+		}
+		else {
+			if (highWater == Integer.MAX_VALUE) {
+				throw new IllegalStateException("The store is full.");
+			}
+			if ((highWater >>> chunkShift) == nrChunks) {
+				addChunk();
+			}
+			id = highWater++;
+		}
+		setLink(id, LIVE);
+		int chunk = id >>> chunkShift;
+		int index = id & chunkMask;
+		for (int c = 0; c < types.length; c++) {
+			MemorySegment m = chunks[c][chunk];
+			switch (types[c]) {
+			case BYTE: m.setAtIndex(ValueLayout.JAVA_BYTE, index, (byte) 0); break;
+			case INT: m.setAtIndex(ValueLayout.JAVA_INT, index, 0); break;
+			default: m.setAtIndex(ValueLayout.JAVA_LONG, index, 0); break;
+			}
+		}
+		size++;
+		return id;
+	}
+
+	/**
+	 * Frees an entity, such that its id can be reused.
+	 *
+	 * @param id	The id of a live entity
+	 */
+	public void free(int id) {
+		if (!isLive(id)) {
+			throw new IllegalArgumentException("Entity "+id+" does not exist.");
+		}
+		setLink(id, freeHead);
+		freeHead = id;
+		size--;
+	}
+
+	/**
+	 * @param id	An entity id
+	 * @return		True if the entity has been allocated and not yet freed
+	 */
+	public boolean isLive(int id) {
+		return id >= 0 && id < highWater && link(id) == LIVE;
+	}
+
+	/**
+	 * Frees all entities at once, typically when a replication is reset. The memory is kept for
+	 * the entities that are allocated next.
+	 */
+	public void clear() {
+		freeHead = EntityStore.NONE;
+		highWater = 0;
+		size = 0;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of live entities
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @return Returns an upper bound on the ids of all live entities
+	 */
+	public int getHighWaterMark() {
+		return highWater;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of bytes of off-heap memory used by the store
+	 */
+	public long getMemoryUsage() {
+		long perEntity = 4;
+		for (Type t : types) {
+			perEntity += t.width;
+		}
+		return perEntity * ((long) nrChunks << chunkShift);
+	}
+
+	/**
+	 * Calls an action for the ids of all live entities, in increasing order.
+	 *
+	 * @param action	The action to call
+	 */
+	public void forEach(IntConsumer action) {
+		forEachChunk((first, length, live, columns) -> {
+			for (int i = 0; i < length; i++) {
+				if (isLive(live, i)) {
+					action.accept(first + i);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Calls an action for every chunk that contains entities, in increasing order of the ids, which is
+	 * the fastest way to scan all entities.
+	 *
+	 * <pre>
+	 * store.forEachChunk((first, length, live, columns) -&gt; {
+	 *     MemorySegment ages = columns[ageGroup];
+	 *     for (int i = 0; i &lt; length; i++) {
+	 *         if (OffHeapEntityStore.isLive(live, i) &amp;&amp; ages.getAtIndex(ValueLayout.JAVA_BYTE, i) == 5) {
+	 *             count++;
+	 *         }
+	 *     }
+	 * });
+	 * </pre>
+	 *
+	 * @param action	The action to call
+	 */
+	public void forEachChunk(ChunkAction action) {
+		MemorySegment[] columns = new MemorySegment[types.length];
+		for (int first = 0, chunk = 0; first < highWater; first += chunkMask + 1, chunk++) {
+			for (int c = 0; c < types.length; c++) {
+				columns[c] = chunks[c][chunk];
+			}
+			action.accept(first, Math.min(chunkMask + 1, highWater - first), chunks[types.length][chunk], columns);
+		}
+	}
+
+	/**
+	 * @param live		The segment passed to a {@link ChunkAction}
+	 * @param index		The index of an entity in the chunk
+	 * @return			True if the entity is live
+	 */
+	public static boolean isLive(MemorySegment live, int index) {
+		return live.getAtIndex(ValueLayout.JAVA_INT, index) == LIVE;
+	}
+
+	/**
+	 * @param column	The index of a column of type {@link Type#BYTE}
+	 * @param id		The id of a live entity
+	 * @return			The value of the attribute of the entity
+	 */
+	public byte getByte(int column, int id) {
+		return segment(column, id, Type.BYTE).getAtIndex(ValueLayout.JAVA_BYTE, id & chunkMask);
+	}
+
+	/**
+	 * @param column	The index of a column of type {@link Type#BYTE}
+	 * @param id		The id of a live entity
+	 * @param value		The new value of the attribute of the entity
+	 */
+	public void setByte(int column, int id, byte value) {
+		segment(column, id, Type.BYTE).setAtIndex(ValueLayout.JAVA_BYTE, id & chunkMask, value);
+	}
+
+	/**
+	 * @param column	The index of a column of type {@link Type#INT}
+	 * @param id		The id of a live entity
+	 * @return			The value of the attribute of the entity
+	 */
+	public int getInt(int column, int id) {
+		return segment(column, id, Type.INT).getAtIndex(ValueLayout.JAVA_INT, id & chunkMask);
+	}
+
+	/**
+	 * @param column	The index of a column of type {@link Type#INT}
+	 * @param id		The id of a live entity
+	 * @param value		The new value of the attribute of the entity
+	 */
+	public void setInt(int column, int id, int value) {
+		segment(column, id, Type.INT).setAtIndex(ValueLayout.JAVA_INT, id & chunkMask, value);
+	}
+
+	/**
+	 * @param column	The index of a column of type {@link Type#LONG}
+	 * @param id		The id of a live entity
+	 * @return			The value of the attribute of the entity
+	 */
+	public long getLong(int column, int id) {
+		return segment(column, id, Type.LONG).getAtIndex(ValueLayout.JAVA_LONG, id & chunkMask);
+	}
+
+	/**
+	 * @param column	The index of a column of type {@link Type#LONG}
+	 * @param id		The id of a live entity
+	 * @param value		The new value of the attribute of the entity
+	 */
+	public void setLong(int column, int id, long value) {
+		segment(column, id, Type.LONG).setAtIndex(ValueLayout.JAVA_LONG, id & chunkMask, value);
+	}
+
+	/**
+	 * @param column	The index of a column of type {@link Type#DOUBLE}
+	 * @param id		The id of a live entity
+	 * @return			The value of the attribute of the entity
+	 */
+	public double getDouble(int column, int id) {
+		return segment(column, id, Type.DOUBLE).getAtIndex(ValueLayout.JAVA_DOUBLE, id & chunkMask);
+	}
+
+	/**
+	 * @param column	The index of a column of type {@link Type#DOUBLE}
+	 * @param id		The id of a live entity
+	 * @param value		The new value of the attribute of the entity
+	 */
+	public void setDouble(int column, int id, double value) {
+		segment(column, id, Type.DOUBLE).setAtIndex(ValueLayout.JAVA_DOUBLE, id & chunkMask, value);
+	}
+
+	private MemorySegment segment(int column, int id, Type type) {
+		if (types[column] != type) {
+			throw new IllegalArgumentException("Column "+names.get(column)+" has type "+types[column]+", not "+type);
+		}
+		if (id < 0 || id >= highWater) {
+			throw new IndexOutOfBoundsException("Entity "+id+" does not exist.");
+		}
+		return chunks[column][id >>> chunkShift];
+	}
+
+	private int link(int id) {
+		return chunks[types.length][id >>> chunkShift].getAtIndex(ValueLayout.JAVA_INT, id & chunkMask);
+	}
+
+	private void setLink(int id, int value) {
+		chunks[types.length][id >>> chunkShift].setAtIndex(ValueLayout.JAVA_INT, id & chunkMask, value);
+	}
+
+	private void addChunk() {
+		int entities = 1 << chunkShift;
+		for (int c = 0; c <= types.length; c++) {
+			MemorySegment[] column = Arrays.copyOf(chunks[c], nrChunks + 1);
+			// aligned to the width of the values, which the layouts of the getters require
+			column[nrChunks] = arena.allocate((long) entities * width(c), width(c));
+			chunks[c] = column;
+		}
+		nrChunks++;
+	}
+
+	private int width(int column) {
+		return column < types.length ? types[column].width : 4;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeBoolean(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN);
+		byte[] bytes = new byte[8192];
+		for (int c = 0; c <= types.length; c++) {
+			long remaining = (long) highWater * width(c);
+			for (int chunk = 0; remaining > 0; chunk++) {
+				MemorySegment m = chunks[c][chunk];
+				long n = Math.min(remaining, m.byteSize());
+				remaining -= n;
+				for (long offset = 0; offset < n; offset += bytes.length) {
+					int len = (int) Math.min(n - offset, bytes.length);
+					MemorySegment.copy(m, ValueLayout.JAVA_BYTE, offset, bytes, 0, len);
+					out.write(bytes, 0, len);
+				}
+			}
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int restoredChunks = nrChunks;
+		nrChunks = 0;
+		arena = Arena.ofAuto();
+		chunks = new MemorySegment[types.length + 1][0];
+		for (int i = 0; i < restoredChunks; i++) {
+			addChunk();
+		}
+		// the store may have been written on a machine with a different native byte order
+		boolean swap = in.readBoolean() != (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN);
+		byte[] bytes = new byte[8192];
+		for (int c = 0; c <= types.length; c++) {
+			int width = width(c);
+			long remaining = (long) highWater * width;
+			for (int chunk = 0; remaining > 0; chunk++) {
+				MemorySegment m = chunks[c][chunk];
+				long n = Math.min(remaining, m.byteSize());
+				remaining -= n;
+				for (long offset = 0; offset < n; offset += bytes.length) {
+					int len = (int) Math.min(n - offset, bytes.length);
+					in.readFully(bytes, 0, len);
+					if (swap) {
+						for (int i = 0; i < len; i += width) {
+							for (int lo = i, hi = i + width - 1; lo < hi; lo++, hi--) {
+								byte t = bytes[lo];
+								bytes[lo] = bytes[hi];
+								bytes[hi] = t;
+							}
+						}
+					}
+					MemorySegment.copy(bytes, 0, m, ValueLayout.JAVA_BYTE, offset, len);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package general;
+
+import java.io.Serializable;
+import java.util.Random;
+
+/**
+ * A Poisson arrival stream that can be fast-forwarded in bulk. Models in which the individual arrivals of
+ * a stream do nothing but increase a count can use this instead of an event per arrival: the stream jumps
+ * directly to the arrival at which a threshold is crossed, or to a later point in time, in constant expected
+ * time regardless of the number of arrivals it skips. As a Poisson process is memoryless, the resulting
+ * arrival times and counts have exactly the same distribution as when every arrival is simulated.
+ *
+ * The stream keeps its own position in time, which is the time up to which arrivals have been generated.
+ *
+ */
+public class PoissonStream implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double rate;
+	private double time;
+	private long count;
+
+	/**
+	 * @param rate	The arrival rate of the stream
+	 */
+	public PoissonStream(double rate) {
+		if (!(rate > 0) || Double.isInfinite(rate)) {
+			throw new IllegalArgumentException("The rate of a Poisson stream must be positive and finite");
+		}
+		this.rate = rate;
+	}
+
+	/**
+	 * Moves the stream to the given time and sets the number of arrivals to zero, typically at the start of
+	 * a replication.
+	 *
+	 * @param time	The time from which new arrivals are generated
+	 */
+	public void reset(double time) {
+		this.time = time;
+		this.count = 0;
+	}
+
+	/**
+	 * Advances the stream to the <code>k</code>-th next arrival, by drawing the time until it from an Erlang
+	 * distribution.
+	 *
+	 * @param random	{@link Random} object used to draw pseudo-random numbers
+	 * @param k			The number of arrivals to advance, must be >= 1
+	 * @return			Returns the time of the <code>k</code>-th arrival, which is the new position of the stream
+	 */
+	public double nextArrivals(Random random, long k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("The number of arrivals to advance must be >= 1");
+		}
+		time += Utils.nextGamma(random, k, rate);
+		count += k;
+		return time;
+	}
+
+	/**
+	 * Advances the stream until either <code>k</code> more arrivals have occurred or time <code>until</code>
+	 * is reached, whichever comes first. If the threshold of <code>k</code> arrivals is crossed, the stream
+	 * stops exactly at the time of the <code>k</code>-th arrival, which is then available from {@link #getTime()}.
+	 * Otherwise the stream is moved to time <code>until</code>.
+	 *
+	 * The number of arrivals in the interval is drawn from a Poisson distribution. If it is at least
+	 * <code>k</code>, the time of the <code>k</code>-th arrival is drawn as the <code>k</code>-th order
+	 * statistic of the uniformly distributed arrival times in the interval.
+	 *
+	 * @param random	{@link Random} object used to draw pseudo-random numbers
+	 * @param until		The time up to which the stream is advanced at most
+	 * @param k			The threshold on the number of arrivals, where 0 means that the threshold is crossed immediately
+	 * @return			Returns the number of arrivals, which is <code>k</code> if and only if the threshold was crossed
+	 */
+	public long advance(Random random, double until, long k) {
+		if (until < time) {
+			throw new IllegalArgumentException("A Poisson stream can not travel back in time.");
+		}
+		if (k <= 0) {
+			return 0;
+		}
+		long n = Utils.nextPoisson(random, rate * (until - time));
+		if (n < k) {
+			time = until;
+			count += n;
+			return n;
+		}
+		time += (until - time) * Utils.nextBeta(random, k, n - k + 1);
+		count += k;
+		return k;
+	}
+
+	/**
+	 * Advances the stream to time <code>until</code>.
+	 *
+	 * @param random	{@link Random} object used to draw pseudo-random numbers
+	 * @param until		The time to advance the stream to
+	 * @return			Returns the number of arrivals until that time
+	 */
+	public long advanceTo(Random random, double until) {
+		return advance(random, until, Long.MAX_VALUE);
+	}
+
+	/**
+	 *
+	 * @return Returns the position of the stream, i.e. the time up to which arrivals have been generated
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of arrivals since the last call to {@link #reset(double)}
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 *
+	 * @return Returns the arrival rate of the stream
+	 */
+	public double getRate() {
+		return rate;
+	}
+}
@@ -0,0 +1,220 @@
+package general.process;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import general.SystemState;
+import general.resources.EntityStore;
+
+/**
+ * Runs {@link Script}s of entities on the event queue of a state, which allows a model to be written
+ * in the process-interaction style instead of as separate event handlers. An entity that waits is
+ * not a thread or an object, but only the index of its next step: a hold is a single event of the
+ * state for the entity, and a request that has to wait puts the entity in the queue of the resource.
+ * Hence a process costs a few bytes per entity and a switch between processes costs about as much as
+ * a plain event, so models can have millions of entities that are waiting at the same time.
+ *
+ * Everything happens on the thread of {@link general.Replication#run()}, in a fixed order: an entity
+ * runs its steps until it has to wait or finishes, and only then do the entities that seized a server
+ * it released continue, in the order in which they seized it. So processes are as reproducible as
+ * the rest of the model.
+ *
+ * The scheduler is meant to be a final field of the state, next to the resources its scripts use, such
+ * that it is checkpointed with the state. Its scripts are not part of a checkpoint, but are kept when
+ * a checkpoint is restored.
+ *
+ * @param <S> the type of the state
+ */
+public class ProcessScheduler<S extends SystemState<S>> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient S state;
+	private transient Script.Step[][] scripts;
+	// the handler that continues an entity after a hold, indexed by script and the index of the hold
+	private transient int[][] handlers;
+
+	// the script and next step of every entity, indexed by entity id
+	private int[] scriptOf;
+	private int[] stepOf;
+
+	// entities that seized a server while another entity was running
+	private int[] ready;
+	private int readyHead;
+	private int readySize;
+	private transient boolean running;
+
+	/**
+	 * @param state	The state on whose event queue the processes run
+	 */
+	public ProcessScheduler(S state) {
+		this(state, 16);
+	}
+
+	/**
+	 * @param state		The state on whose event queue the processes run
+	 * @param capacity	The number of entity ids for which space is reserved initially, typically the
+	 *                  capacity of the {@link EntityStore} the entities come from
+	 */
+	public ProcessScheduler(S state, int capacity) {
+		this.state = state;
+		this.scripts = new Script.Step[0][];
+		this.handlers = new int[0][];
+		this.scriptOf = new int[Math.max(capacity, 1)];
+		this.stepOf = new int[this.scriptOf.length];
+		this.ready = new int[16];
+	}
+
+	/**
+	 * Defines a script, which registers an event handler on the state for every hold in the script. The
+	 * handler is named after the script and the step that follows the hold: the name of the action of a
+	 * {@link Script#run(String, general.EntityHandler)} step, <code>end</code> if the hold is the last
+	 * step, and otherwise <code>step</code> followed by the index of the step. For example, the hold
+	 * before a step <code>run("leave", ...)</code> of a script <code>person</code> is continued by the
+	 * handler <code>person.leave</code>. So the traces, flight events and metrics of the handlers tell
+	 * the steps apart, as they do for hand-written handlers. Like other handlers, scripts must be defined
+	 * in the constructor of the state.
+	 *
+	 * @param name		The name of the script, which starts the names of its event handlers
+	 * @param script	The script
+	 * @return			The id of the script, to be passed to {@link #start(int, int, double)}
+	 */
+	public int define(String name, Script script) {
+		if (script.size() == 0) {
+			throw new IllegalArgumentException("A script must have at least one step.");
+		}
+		Script.Step[] steps = script.toArray();
+		int[] holds = new int[steps.length];
+		for (int i = 0; i < steps.length; i++) {
+			if (steps[i].kind == Script.HOLD) {
+				String next = i + 1 == steps.length ? "end"
+						: steps[i + 1].kind == Script.ACTION && steps[i + 1].name != null ? steps[i + 1].name
+						: "step" + (i + 1);
+				holds[i] = state.registerEntityHandler(name + "." + next, this::resume);
+			}
+		}
+		scripts = Arrays.copyOf(scripts, scripts.length + 1);
+		scripts[scripts.length - 1] = steps;
+		handlers = Arrays.copyOf(handlers, handlers.length + 1);
+		handlers[handlers.length - 1] = holds;
+		return scripts.length - 1;
+	}
+
+	/**
+	 * Lets an entity start running a script at the current time. The entity runs its steps until it
+	 * has to wait, before this method returns. If it is called from a step of another entity, the new
+	 * entity starts as soon as the other entity has to wait.
+	 *
+	 * @param script	The id of the script
+	 * @param entity	The id of the entity, typically allocated from an {@link EntityStore}
+	 * @param time		The current time
+	 */
+	public void start(int script, int entity, double time) {
+		if (script < 0 || script >= scripts.length) {
+			throw new IllegalArgumentException("Unknown script "+script);
+		}
+		if (entity < 0) {
+			throw new IllegalArgumentException("Entity ids must be >= 0");
+		}
+		if (entity >= scriptOf.length) {
+			int capacity = Math.max(entity + 1, scriptOf.length * 2);
+			scriptOf = Arrays.copyOf(scriptOf, capacity);
+			stepOf = Arrays.copyOf(stepOf, capacity);
+		}
+		scriptOf[entity] = script;
+		stepOf[entity] = 0;
+		if (running) {
+			enqueue(entity);
+		}
+		else {
+			resume(time, entity);
+		}
+	}
+
+	/**
+	 * Forgets the entities that were about to continue, typically when a replication is reset. The
+	 * entities that are waiting in the queue of a resource or for an event are forgotten together with
+	 * the resource and the event queue.
+	 */
+	public void reset() {
+		readyHead = 0;
+		readySize = 0;
+	}
+
+	/**
+	 * @param entity	The id of an entity
+	 * @return			The index of the next step of the entity in its script
+	 */
+	public int getStep(int entity) {
+		return stepOf[entity];
+	}
+
+	/**
+	 * Continues an entity at its next step, followed by the entities that became ready in the meantime.
+	 */
+	private void resume(double time, int entity) {
+		running = true;
+		try {
+			runSteps(time, entity);
+			while (readySize > 0) {
+				int next = ready[readyHead];
+				readyHead = (readyHead + 1) & (ready.length - 1);
+				readySize--;
+				runSteps(time, next);
+			}
+		} finally {
+			running = false;
+		}
+	}
+
+	private void runSteps(double time, int entity) {
+		int script = scriptOf[entity];
+		Script.Step[] steps = scripts[script];
+		int step = stepOf[entity];
+		while (step < steps.length) {
+			Script.Step s = steps[step++];
+			stepOf[entity] = step;
+			switch (s.kind) {
+			case Script.ACTION:
+				s.action.handle(time, entity);
+				if (stepOf[entity] != step || scriptOf[entity] != script) {
+					// the action started a script for this entity, which continues after this one
+					return;
+				}
+				break;
+			case Script.HOLD:
+				double duration = s.duration.of(time, entity);
+				if (!(duration >= 0)) {
+					throw new IllegalStateException("Entity "+entity+" cannot hold for "+duration);
+				}
+				state.addEvent(time + duration, handlers[script][step - 1], entity);
+				return;
+			case Script.REQUEST:
+				if (!s.resource.request(entity, time)) {
+					// continued by the entity that releases a server to it
+					return;
+				}
+				break;
+			default:
+				int next = s.resource.release(entity, time);
+				if (next != EntityStore.NONE) {
+					enqueue(next);
+				}
+				break;
+			}
+		}
+	}
+
+	private void enqueue(int entity) {
+		if (readySize == ready.length) {
+			int[] grown = new int[ready.length * 2];
+			for (int i = 0; i < readySize; i++) {
+				grown[i] = ready[(readyHead + i) & (ready.length - 1)];
+			}
+			ready = grown;
+			readyHead = 0;
+		}
+		ready[(readyHead + readySize) & (ready.length - 1)] = entity;
+		readySize++;
+	}
+}
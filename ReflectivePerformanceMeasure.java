@@ -1,5 +1,8 @@
 package general.automagic;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -17,6 +20,11 @@ import general.SystemState;
  * rather than to force the programmer to create explicit
  * subclasses of PerformanceMeasure.
  * 
+ * Methods with a primitive return type are called through a
+ * {@link MethodHandle}, which does not box the result. Methods that return
+ * a {@link Number} are called by reflection, where <code>null</code> is
+ * measured as 0.
+ * 
  * @author Paul Bouman
  *
  * @param <S> the typ e of the state in the simulation
@@ -24,6 +32,7 @@ import general.SystemState;
 public class ReflectivePerformanceMeasure<S extends SystemState<S>> extends PerformanceMeasure<S>
 {
 	private Method m;
+	private MethodHandle handle;
 	
 	public ReflectivePerformanceMeasure(String name, Method m)
 	{
@@ -36,6 +45,14 @@ public class ReflectivePerformanceMeasure<S extends SystemState<S>> extends Perf
 					+ "subclass of Number, such as Integer or Double, can be measured automatically");
 		}
 		this.m = m;
+		if (m.getReturnType().isPrimitive()) {
+			try {
+				this.handle = MethodHandles.lookup().unreflect(m)
+						.asType(MethodType.methodType(double.class, SystemState.class));
+			} catch (IllegalAccessException ex) {
+				// not accessible from here, so fall back to reflection
+			}
+		}
 	}
 
 	public static boolean isNumericType(Class<?> cls) {
@@ -54,6 +71,15 @@ public class ReflectivePerformanceMeasure<S extends SystemState<S>> extends Perf
 	@Override
 	public double compute(S state)
 	{
+		if (handle != null) {
+			try {
+				return (double) handle.invokeExact((SystemState<?>) state);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new RuntimeException("An error occurred while calling an automated performance measure", e);
+			}
+		}
 		try {
 			Object o = m.invoke(state);
 			if (o == null) {
@@ -1,6 +1,14 @@
 package general;
 
 import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+import general.jfr.EventDispatchEvent;
+import general.jfr.FlightEvents;
+import general.jfr.FlightEvents.DispatchSampler;
+import general.jfr.ReplicationEvent;
+import general.metrics.ReplicationMetrics;
+import general.trace.EventTracer;
 
 /**
  * This class represents one replication of a Discrete-Event Simulation (DES).
@@ -14,6 +22,13 @@ public abstract class Replication<S extends SystemState<S>> {
 	
 	private final S state;
 	private Status status;
+	private long eventCount;
+	private EventTracer<S> tracer;
+	private DispatchSampler dispatchSampler;
+	private ReplicationMetrics metrics;
+	private Runnable checkpointHook;
+	private long checkpointInterval;
+	private boolean trackTermination;
 	
 	public Replication(S state) {
 		this.state = state;
@@ -31,34 +46,235 @@ public abstract class Replication<S extends SystemState<S>> {
 	 * First we extract the next <code>Event</code> form the queue, we process it, then extract the next one, and so on. 
 	 * The simulation is terminated when <code>shouldTerminate</code> evaluates to true. Note that <code>shouldTerminate</code> 
 	 * is run after the event is retrieved, but before it is processed. After we process an event, we set the current time to the time of the event. 
+	 * The simulation is also terminated at that point when the state called {@link SystemState#signalTermination()}.
 	 */
 	public void run() {
+		eventCount = 0;
+		if (tracer != null) {
+			tracer.record(state.getCurrentTime(), EventTracer.REPLICATION_START, state.getQueue().size());
+		}
+		processEvents();
+	}
+	
+	/**
+	 * Continues a replication of which the state was restored halfway, for example from a checkpoint,
+	 * without resetting or initializing it.
+	 * 
+	 * @param eventCount	The number of events that were processed before the replication was interrupted
+	 */
+	public void resume(long eventCount) {
+		this.eventCount = eventCount;
+		processEvents();
+	}
+	
+	/**
+	 * Processes the events of an initialized replication up to a time bound, which lets
+	 * {@link general.parallel.SiteNetwork} run a replication in windows of time. Before every event
+	 * the same termination checks are made as by {@link #run()}, but an event that terminates the
+	 * replication stays in the queue, such that the replication can be continued when an earlier
+	 * event is added, for example a message from another replication. The metrics, flight events and
+	 * checkpoint hook of {@link #run()} are not used.
+	 * 
+	 * @param bound	The replication stops before the first event at or after this time
+	 * @return		True if the replication terminated, false if the queue is empty or the next
+	 * 				event is at or after the bound
+	 */
+	public boolean advance(double bound) {
+		return advance(bound, null);
+	}
+	
+	/**
+	 * Like {@link #advance(double)}, but also stops after the first event after which a condition on
+	 * the state holds, which lets {@link general.rare.SplittingSimulation} copy the state at that point.
+	 * 
+	 * @param bound	The replication stops before the first event at or after this time
+	 * @param until	The condition, or <code>null</code> to only stop at the bound
+	 * @return		True if the replication terminated, false if the queue is empty, the next event
+	 * 				is at or after the bound, or the condition holds
+	 */
+	public boolean advance(double bound, Predicate<? super S> until) {
 		PriorityQueue<Event<S>> queue = state.getQueue();
-		while (true) {
-			Event<S> e = queue.poll();
-			if (e == null) {
-				status = Status.FAILED;
-				throw new IllegalStateException("The event queue is empty before the official termination criterion has been satisfied.");
+		boolean trackTermination = this.trackTermination;
+		boolean trackHandlers = trackTermination && state.hasTerminationHandlers();
+		status = Status.ACTIVE;
+		try {
+			while (true) {
+				Event<S> e = queue.peek();
+				if (e == null) {
+					return false;
+				}
+				if (state.passedTimeHorizon(e)) {
+					status = Status.TIME_TERMINATED;
+					return true;
+				}
+				if (state.isTerminationSignalled()
+						|| (!trackTermination || state.takeTerminationCheck()) && shouldTerminate(state)) {
+					status = Status.USER_TERMINATED;
+					return true;
+				}
+				if (e.getTime() >= bound) {
+					return false;
+				}
+				queue.poll();
+				
+				if (tracer != null) {
+					tracer.record(e.getTime(), e.getHandlerId(), queue.size());
+				}
+				if (trackHandlers) {
+					state.beforeEvent(e);
+				}
+				e.process(state);
+				eventCount++;
+				state.updateCurrentTime(e.getTime());
+				state.recycle(e);
+				if (until != null && until.test(state)) {
+					return false;
+				}
 			}
-			
-			// check if we should terminate due to time
-			if (state.passedTimeHorizon(e)) {
-				status = Status.TIME_TERMINATED;
-				break;
+		} catch (RuntimeException | Error ex) {
+			status = Status.FAILED;
+			if (tracer != null) {
+				tracer.failed(ex);
 			}
-			
-			// check if we should terminate by user
-			if (shouldTerminate(state)) {
-				status = Status.USER_TERMINATED;
-				break;
+			throw ex;
+		}
+	}
+	
+	private void processEvents() {
+		PriorityQueue<Event<S>> queue = state.getQueue();
+		ReplicationEvent jfrReplication = FlightEvents.beginReplication();
+		DispatchSampler sampler = FlightEvents.dispatchSampler(dispatchSampler);
+		dispatchSampler = sampler;
+		ReplicationMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.begin(state);
+		}
+		boolean trackTermination = this.trackTermination;
+		boolean trackHandlers = trackTermination && state.hasTerminationHandlers();
+		state.requestTerminationCheck();
+		try {
+			while (true) {
+				Event<S> e = queue.poll();
+				if (e == null) {
+					status = Status.FAILED;
+					throw new IllegalStateException("The event queue is empty before the official termination criterion has been satisfied.");
+				}
+				
+				// check if we should terminate due to time
+				if (state.passedTimeHorizon(e)) {
+					status = Status.TIME_TERMINATED;
+					state.recycle(e);
+					break;
+				}
+				
+				// check if we should terminate by user, only if something the criteria depend on changed
+				if (state.isTerminationSignalled()
+						|| (!trackTermination || state.takeTerminationCheck()) && shouldTerminate(state)) {
+					status = Status.USER_TERMINATED;
+					state.recycle(e);
+					break;
+				}
+				
+				if (tracer != null) {
+					tracer.record(e.getTime(), e.getHandlerId(), queue.size());
+				}
+				if (trackHandlers) {
+					state.beforeEvent(e);
+				}
+				EventDispatchEvent jfrDispatch = sampler == null ? null : sampler.begin(e, state, queue.size());
+				long dispatchStart = metrics == null ? 0 : System.nanoTime();
+				e.process(state);
+				if (metrics != null) {
+					metrics.dispatched(e.getHandlerId(), System.nanoTime() - dispatchStart, queue.size());
+				}
+				if (jfrDispatch != null) {
+					jfrDispatch.commit();
+				}
+				eventCount++;
+				double newTime = e.getTime();
+				state.updateCurrentTime(newTime);
+				state.recycle(e);
+				
+				if (checkpointHook != null && eventCount % checkpointInterval == 0) {
+					checkpointHook.run();
+				}
+			}
+		} catch (RuntimeException | Error ex) {
+			status = Status.FAILED;
+			if (tracer != null) {
+				tracer.failed(ex);
+			}
+			throw ex;
+		} finally {
+			if (metrics != null) {
+				metrics.end();
+			}
+			if (jfrReplication != null) {
+				FlightEvents.endReplication(jfrReplication, state, status, eventCount);
 			}
-			
-			e.process(state);
-			double newTime = e.getTime();
-			state.updateCurrentTime(newTime);
 		}
 	}
 	
+	/**
+	 * Attaches metrics that record the throughput of the event loop. Metrics are disabled by
+	 * default and can be disabled again by passing <code>null</code>.
+	 * 
+	 * @param metrics	The metrics to update
+	 */
+	public void setMetrics(ReplicationMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * 
+	 * @return Returns the attached metrics, or <code>null</code> if metrics are disabled
+	 */
+	public ReplicationMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Sets a hook that is called after every <code>interval</code> events, at which point the state
+	 * is consistent and the clock has been updated to the time of the last event. This is used by
+	 * {@link Simulation} to checkpoint long replications.
+	 * 
+	 * @param interval	The number of events between two calls of the hook
+	 * @param hook		The hook, or <code>null</code> to disable it
+	 */
+	public void setCheckpointHook(long interval, Runnable hook) {
+		if (hook != null && interval < 1) {
+			throw new IllegalArgumentException("The checkpoint interval must be >= 1");
+		}
+		this.checkpointInterval = interval;
+		this.checkpointHook = hook;
+	}
+	
+	/**
+	 * 
+	 * @return	Returns the number of events processed by the last call to {@link #run()}
+	 */
+	public long getEventCount() {
+		return eventCount;
+	}
+	
+	/**
+	 * Attaches a tracer that records every event just before it is processed. Tracing is disabled
+	 * by default and can be disabled again by passing <code>null</code>.
+	 * 
+	 * @param tracer	The tracer to record events with
+	 */
+	public void setTracer(EventTracer<S> tracer) {
+		this.tracer = tracer;
+	}
+	
+	/**
+	 * 
+	 * @return Returns the attached tracer, or <code>null</code> if tracing is disabled
+	 */
+	public EventTracer<S> getTracer() {
+		return tracer;
+	}
+	
 	/**
 	 * This method allows the user to specify some own termination criterion, in addition to surpassing the simulation time horizon.
 	 * 
@@ -67,6 +283,28 @@ public abstract class Replication<S extends SystemState<S>> {
 	 */
 	public abstract boolean shouldTerminate(S state);
 	
+	/**
+	 * By default, {@link #shouldTerminate(SystemState)} is evaluated before every event. A replication
+	 * whose criteria only depend on the counters and handlers registered with
+	 * {@link SystemState#addTerminationDependency(Counter)} and {@link SystemState#addTerminationDependency(int)}
+	 * can enable tracking, after which the criteria are only evaluated before the first event and
+	 * after one of these dependencies changed, or the state called {@link SystemState#requestTerminationCheck()}.
+	 * The replication then terminates before the same event as without tracking.
+	 * 
+	 * @param trackTermination	True to evaluate the criteria only when a dependency changed
+	 */
+	protected void setTerminationTracking(boolean trackTermination) {
+		this.trackTermination = trackTermination;
+	}
+	
+	/**
+	 * 
+	 * @return True if the termination criteria are only evaluated when one of their dependencies changed
+	 */
+	public boolean isTerminationTracking() {
+		return trackTermination;
+	}
+	
 	/**
 	 * 
 	 * @return	Returns the simulation status. See {@link general.Status}
@@ -89,10 +327,10 @@ public abstract class Replication<S extends SystemState<S>> {
 	public void reset() {
 		// This step slow down the replication, but is more safe
 		state.injectCounters();
+		state.clearQueue();
 		state.updateCurrentTime(0);
-		for (Counter c : state.getCounters()) {
-			c.reset();
-		}
+		state.resetCounters();
+		state.resetTermination();
 		state.reset();
 	}
 }
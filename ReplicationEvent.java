@@ -0,0 +1,36 @@
+package general.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event that spans a single run of a {@link general.Replication}.
+ *
+ */
+@Name("general.Replication")
+@Label("Replication")
+@Category("Simulation")
+@Description("A single replication of a discrete-event simulation")
+@Enabled(false)
+@StackTrace(false)
+public class ReplicationEvent extends Event {
+
+	@Label("State")
+	public String state;
+
+	@Label("Status")
+	public String status;
+
+	@Label("Events")
+	@Description("The number of events processed in the replication")
+	public long events;
+
+	@Label("Simulation Time")
+	@Description("The simulation clock at the end of the replication")
+	public double simulationTime;
+}
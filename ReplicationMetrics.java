@@ -0,0 +1,200 @@
+package general.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import general.Event;
+import general.SystemState;
+
+/**
+ * Throughput metrics of the event loop of a {@link general.Replication}, which can be attached
+ * with {@link general.Replication#setMetrics(ReplicationMetrics)}. During a replication the event
+ * loop only updates plain counters owned by the simulation thread; these are added to the totals
+ * when the replication ends, so the totals can safely be read from other threads, for example
+ * through JMX, while a simulation is running.
+ *
+ * Per-handler metrics use the names of handlers registered with
+ * {@link SystemState#registerHandler(String, java.util.function.DoubleConsumer)}. Events that were scheduled
+ * in a different way are counted under the name {@link #UNREGISTERED}.
+ *
+ */
+public class ReplicationMetrics implements ReplicationMetricsMXBean {
+
+	public static final String UNREGISTERED = "<unregistered>";
+
+	private final String scenario;
+
+	// owned by the simulation thread, for the replication that is running
+	private long runStart;
+	private long runEvents;
+	private int runHighWater;
+	private long[] runCalls = new long[8];
+	private long[] runNanos = new long[8];
+	private List<String> runHandlers;
+
+	// totals, guarded by this
+	private long replications;
+	private long events;
+	private int highWater;
+	private long wallNanos;
+	private long lastWallNanos;
+	private final Map<String,long[]> handlers = new LinkedHashMap<>();
+
+	public ReplicationMetrics(String scenario) {
+		this.scenario = scenario;
+	}
+
+	/**
+	 * Called by the replication before it processes its first event.
+	 *
+	 * @param state	the state of the replication
+	 */
+	public void begin(SystemState<?> state) {
+		runHandlers = state.getHandlerNames();
+		runEvents = 0;
+		runHighWater = state.getQueue().size();
+		Arrays.fill(runCalls, 0);
+		Arrays.fill(runNanos, 0);
+		runStart = System.nanoTime();
+	}
+
+	/**
+	 * Called by the replication after it processed an event.
+	 *
+	 * @param handler	the handler id of the event
+	 * @param nanos		the time it took to process the event
+	 * @param queueSize	the size of the queue after the event was processed
+	 */
+	public void dispatched(int handler, long nanos, int queueSize) {
+		int slot = handler + 1;
+		if (slot >= runCalls.length) {
+			int length = Math.max(slot + 1, runCalls.length * 2);
+			runCalls = Arrays.copyOf(runCalls, length);
+			runNanos = Arrays.copyOf(runNanos, length);
+		}
+		runCalls[slot]++;
+		runNanos[slot] += nanos;
+		runEvents++;
+		if (queueSize > runHighWater) {
+			runHighWater = queueSize;
+		}
+	}
+
+	/**
+	 * Called by the replication when it has ended, successfully or not.
+	 */
+	public void end() {
+		long nanos = System.nanoTime() - runStart;
+		synchronized (this) {
+			replications++;
+			events += runEvents;
+			highWater = Math.max(highWater, runHighWater);
+			wallNanos += nanos;
+			lastWallNanos = nanos;
+			for (int slot = 0; slot < runCalls.length; slot++) {
+				if (runCalls[slot] == 0) {
+					continue;
+				}
+				String name;
+				if (slot == Event.NO_HANDLER + 1) {
+					name = UNREGISTERED;
+				}
+				else if (slot - 1 < runHandlers.size()) {
+					name = runHandlers.get(slot - 1);
+				}
+				else {
+					// registered after the replication started
+					name = "handler " + (slot - 1);
+				}
+				long[] totals = handlers.computeIfAbsent(name, k -> new long[2]);
+				totals[0] += runCalls[slot];
+				totals[1] += runNanos[slot];
+			}
+		}
+	}
+
+	@Override
+	public String getScenario() {
+		return scenario;
+	}
+
+	@Override
+	public synchronized long getReplications() {
+		return replications;
+	}
+
+	@Override
+	public synchronized long getEventsProcessed() {
+		return events;
+	}
+
+	@Override
+	public synchronized double getEventsPerSecond() {
+		if (wallNanos == 0) {
+			return 0;
+		}
+		return events / (wallNanos / 1e9);
+	}
+
+	@Override
+	public synchronized int getQueueHighWaterMark() {
+		return highWater;
+	}
+
+	@Override
+	public synchronized long getWallTimeNanos() {
+		return wallNanos;
+	}
+
+	@Override
+	public synchronized long getLastWallTimeNanos() {
+		return lastWallNanos;
+	}
+
+	@Override
+	public synchronized Map<String,Long> getHandlerCalls() {
+		Map<String,Long> result = new LinkedHashMap<>();
+		for (Map.Entry<String,long[]> e : handlers.entrySet()) {
+			result.put(e.getKey(), e.getValue()[0]);
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized Map<String,Long> getHandlerTimeNanos() {
+		Map<String,Long> result = new LinkedHashMap<>();
+		for (Map.Entry<String,long[]> e : handlers.entrySet()) {
+			result.put(e.getKey(), e.getValue()[1]);
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized void reset() {
+		replications = 0;
+		events = 0;
+		highWater = 0;
+		wallNanos = 0;
+		lastWallNanos = 0;
+		handlers.clear();
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(scenario).append(": ").append(replications).append(" replications, ")
+		  .append(events).append(" events, ")
+		  .append(String.format("%.0f", getEventsPerSecond())).append(" events/s, ")
+		  .append(String.format("%.3f", wallNanos / 1e9)).append(" s, queue high-water mark ")
+		  .append(highWater);
+		List<String> names = new ArrayList<>(handlers.keySet());
+		for (String name : names) {
+			long[] totals = handlers.get(name);
+			sb.append(String.format("%n  %s: %d calls, %.1f ns/call", name, totals[0], (double) totals[1] / totals[0]));
+		}
+		return sb.toString();
+	}
+}
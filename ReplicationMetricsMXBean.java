@@ -0,0 +1,60 @@
+package general.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface through which {@link ReplicationMetrics} are exposed over JMX.
+ *
+ */
+public interface ReplicationMetricsMXBean {
+
+	/**
+	 * @return the name of the scenario these metrics belong to
+	 */
+	String getScenario();
+
+	/**
+	 * @return the number of completed replications
+	 */
+	long getReplications();
+
+	/**
+	 * @return the total number of processed events over all completed replications
+	 */
+	long getEventsProcessed();
+
+	/**
+	 * @return the number of events processed per second of wall-clock time spent in replications
+	 */
+	double getEventsPerSecond();
+
+	/**
+	 * @return the largest number of events that was in the queue at any point
+	 */
+	int getQueueHighWaterMark();
+
+	/**
+	 * @return the total wall-clock time spent in replications, in nanoseconds
+	 */
+	long getWallTimeNanos();
+
+	/**
+	 * @return the wall-clock time of the last completed replication, in nanoseconds
+	 */
+	long getLastWallTimeNanos();
+
+	/**
+	 * @return the number of processed events per handler name
+	 */
+	Map<String,Long> getHandlerCalls();
+
+	/**
+	 * @return the cumulative wall-clock time spent in each handler, in nanoseconds
+	 */
+	Map<String,Long> getHandlerTimeNanos();
+
+	/**
+	 * Sets all metrics back to zero.
+	 */
+	void reset();
+}
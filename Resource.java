@@ -0,0 +1,251 @@
+package general.resources;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A resource with a number of identical servers, such as vaccination booths or chairs, in front
+ * of which entities wait in a {@link WaitQueue} when all servers are busy. Entities are identified
+ * by their ids in an {@link EntityStore}. The resource automatically records the waiting time of
+ * every entity, the sojourn time from request until release, and the time average of the number
+ * of busy servers.
+ *
+ * The time of each request, and whether the entity holds a server, are kept in arrays indexed by
+ * entity id, so using a resource costs a few array operations per request and release, and creates
+ * no objects once its arrays have grown to the largest entity id.
+ *
+ */
+public class Resource implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String name;
+	private final int servers;
+	private final WaitQueue queue;
+	private double[] requested;
+	private boolean[] holding;
+	private int busy;
+
+	private double startTime;
+	private double lastTime;
+	private double busyArea;
+	private long started;
+	private long completed;
+	private double totalSojourn;
+	private double maxSojourn;
+
+	/**
+	 * @param name		The name of the resource
+	 * @param servers	The number of servers, must be >= 0
+	 */
+	public Resource(String name, int servers) {
+		this(name, servers, 16);
+	}
+
+	/**
+	 * @param name		The name of the resource
+	 * @param servers	The number of servers, must be >= 0
+	 * @param capacity	The number of entity ids for which space is reserved initially, typically the
+	 *                  capacity of the {@link EntityStore} the entities come from
+	 */
+	public Resource(String name, int servers, int capacity) {
+		if (servers < 0) {
+			throw new IllegalArgumentException("The number of servers must be >= 0");
+		}
+		this.name = name;
+		this.servers = servers;
+		this.queue = new WaitQueue();
+		this.requested = new double[Math.max(capacity, 1)];
+		this.holding = new boolean[this.requested.length];
+	}
+
+	/**
+	 * An entity requests a server. If a server is free, the entity seizes it immediately. Otherwise
+	 * it joins the back of the queue, and will seize a server when it is its turn, see
+	 * {@link #release(int, double)}.
+	 *
+	 * @param entity	The id of the entity
+	 * @param time		The current time
+	 * @return			True if the entity seized a server, false if it has to wait
+	 */
+	public boolean request(int entity, double time) {
+		advance(time);
+		if (entity >= requested.length) {
+			requested = Arrays.copyOf(requested, Math.max(entity + 1, requested.length * 2));
+			holding = Arrays.copyOf(holding, requested.length);
+		}
+		requested[entity] = time;
+		if (busy < servers) {
+			busy++;
+			started++;
+			holding[entity] = true;
+			return true;
+		}
+		queue.add(entity, time);
+		return false;
+	}
+
+	/**
+	 * An entity releases its server. If entities are waiting, the server is seized by the entity at
+	 * the front of the queue, which is returned such that the model can schedule the end of its service.
+	 * An entity that is still waiting leaves the queue instead, see {@link WaitQueue#abandon(int, double)},
+	 * which for example happens to all persons at a stage without chairs. It is not counted in the
+	 * sojourn times, as it never held a server.
+	 *
+	 * @param entity	The id of the entity that holds or waits for a server
+	 * @param time		The current time
+	 * @return			The id of the entity that seized the server, or {@link EntityStore#NONE}
+	 */
+	public int release(int entity, double time) {
+		if (entity >= holding.length || !holding[entity]) {
+			if (!queue.abandon(entity, time)) {
+				throw new IllegalStateException("Entity "+entity+" does not hold or wait for a server of resource "+name+".");
+			}
+			advance(time);
+			return EntityStore.NONE;
+		}
+		advance(time);
+		holding[entity] = false;
+		double sojourn = time - requested[entity];
+		completed++;
+		totalSojourn += sojourn;
+		if (sojourn > maxSojourn) {
+			maxSojourn = sojourn;
+		}
+		if (queue.isEmpty()) {
+			busy--;
+			return EntityStore.NONE;
+		}
+		started++;
+		int next = queue.remove(time);
+		holding[next] = true;
+		return next;
+	}
+
+	/**
+	 * Frees all servers, empties the queue and clears the statistics.
+	 *
+	 * @param time	The time from which statistics are recorded
+	 */
+	public void reset(double time) {
+		queue.reset(time);
+		Arrays.fill(holding, false);
+		busy = 0;
+		startTime = time;
+		lastTime = time;
+		busyArea = 0;
+		started = 0;
+		completed = 0;
+		totalSojourn = 0;
+		maxSojourn = 0;
+	}
+
+	private void advance(double time) {
+		if (time < lastTime) {
+			throw new IllegalArgumentException("The simulation can not travel back in time.");
+		}
+		busyArea += busy * (time - lastTime);
+		lastTime = time;
+	}
+
+	/**
+	 *
+	 * @return Returns the name of the resource
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of servers
+	 */
+	public int getServers() {
+		return servers;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of busy servers
+	 */
+	public int getBusy() {
+		return busy;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of waiting entities
+	 */
+	public int getQueueLength() {
+		return queue.size();
+	}
+
+	/**
+	 *
+	 * @return Returns the queue in front of the servers
+	 */
+	public WaitQueue getQueue() {
+		return queue;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of entities that seized a server since the last reset
+	 */
+	public long getStarted() {
+		return started;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of entities that released a server since the last reset
+	 */
+	public long getCompleted() {
+		return completed;
+	}
+
+	/**
+	 *
+	 * @return Returns the mean waiting time of the entities that seized a server, including those
+	 *         that did not have to wait, or 0 if there are none
+	 */
+	public double getMeanWait() {
+		return started == 0 ? 0 : queue.getTotalWait() / started;
+	}
+
+	/**
+	 *
+	 * @return Returns the longest waiting time of an entity that seized a server
+	 */
+	public double getMaxWait() {
+		return queue.getMaxWait();
+	}
+
+	/**
+	 *
+	 * @return Returns the mean time from request until release of the entities that released a server,
+	 *         or 0 if there are none
+	 */
+	public double getMeanSojourn() {
+		return completed == 0 ? 0 : totalSojourn / completed;
+	}
+
+	/**
+	 *
+	 * @return Returns the longest time from request until release of an entity
+	 */
+	public double getMaxSojourn() {
+		return maxSojourn;
+	}
+
+	/**
+	 * @param time	The current time
+	 * @return		The time average of the fraction of busy servers since the last reset
+	 */
+	public double getUtilization(double time) {
+		if (servers == 0 || time <= startTime) {
+			return 0;
+		}
+		return (busyArea + busy * (time - lastTime)) / (time - startTime) / servers;
+	}
+}
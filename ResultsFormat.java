@@ -0,0 +1,48 @@
+package general.results;
+
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * The file formats supported by {@link AsyncResultsSink}.
+ *
+ */
+public enum ResultsFormat {
+
+	/**
+	 * Columnar binary format that can be read with {@link BinaryResultsReader}. Rows are grouped
+	 * in blocks, and within a block all values of a single measure are stored consecutively.
+	 */
+	BINARY {
+		@Override
+		ResultsWriter createWriter(WritableByteChannel channel, int bufferSize) {
+			return new BinaryResultsWriter(channel, bufferSize);
+		}
+	},
+
+	/**
+	 * Plain text with one line per replication, preceded by a header line for every scenario
+	 * of which the measures differ from the previous one.
+	 */
+	CSV {
+		@Override
+		ResultsWriter createWriter(WritableByteChannel channel, int bufferSize) {
+			return new CsvResultsWriter(channel, bufferSize);
+		}
+	};
+
+	abstract ResultsWriter createWriter(WritableByteChannel channel, int bufferSize);
+
+	/**
+	 * Encodes rows to a channel. Writers are used by a single thread only.
+	 */
+	interface ResultsWriter {
+		void beginScenario(String scenario, List<String> measures);
+		void row(long replication, double[] values);
+		void endScenario();
+		/**
+		 * Writes everything that is buffered to the channel, such that a reader sees only complete rows.
+		 */
+		void flush();
+	}
+}
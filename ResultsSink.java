@@ -0,0 +1,44 @@
+package general.results;
+
+import java.util.List;
+
+/**
+ * A destination for the raw value of every performance measure in every replication of a
+ * {@link general.Simulation}. The simulation calls {@link #beginScenario(String, List)} once
+ * before the first replication, {@link #accept(long, double[])} once for every replication and
+ * {@link #endScenario()} after the last replication. The same sink can be used by multiple
+ * simulations one after another, for example by all scenarios of a parameter sweep.
+ *
+ * Implementations may not keep a reference to the array passed to {@link #accept(long, double[])},
+ * as the simulation is allowed to reuse it for the next replication.
+ *
+ */
+public interface ResultsSink extends AutoCloseable {
+
+	/**
+	 * Signals that the rows that follow belong to the given scenario.
+	 *
+	 * @param scenario	Key of the scenario, for example a description of its parameters
+	 * @param measures	Names of the performance measures, in the order of the values of each row
+	 */
+	void beginScenario(String scenario, List<String> measures);
+
+	/**
+	 * Records the values of the performance measures of a single replication.
+	 *
+	 * @param replication	Index of the replication within the current scenario, starting at 0
+	 * @param values		Values of the performance measures, in the order passed to {@link #beginScenario(String, List)}
+	 */
+	void accept(long replication, double[] values);
+
+	/**
+	 * Signals that all replications of the current scenario have been recorded.
+	 */
+	void endScenario();
+
+	/**
+	 * Writes all pending rows and releases the resources held by this sink.
+	 */
+	@Override
+	void close();
+}
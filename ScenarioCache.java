@@ -0,0 +1,238 @@
+package general.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import general.Replication;
+import general.SystemState;
+import general.checkpoint.StateSnapshot;
+
+/**
+ * A content-addressed cache of scenario results on disk, which is used by a {@link general.Simulation}
+ * after {@link general.Simulation#setCache(ScenarioCache)}. When a simulation is run, the cache is
+ * consulted with a key that is computed from
+ * <ul>
+ * <li>a snapshot of the system state before the first replication, which contains the class and
+ *     all parameters of the model as well as the seeds of its random number generators,</li>
+ * <li>the class of the replication and the names of the performance measures,</li>
+ * <li>the bytecode of the state class, so a changed model never reuses old results, and</li>
+ * <li>the model version that is passed to the constructor of the cache.</li>
+ * </ul>
+ * The number of replications is not part of the key. Instead, the cache keeps the values of the
+ * performance measures of every replication together with the state after the last replication.
+ * A simulation that asks for at most as many replications as are cached is answered from the
+ * cache, and a simulation that asks for more only simulates the missing replications, continuing
+ * from the cached state. In both cases the estimates are exactly the same as without a cache.
+ *
+ * The total size of the cache is bounded. When it is exceeded, the least recently used entries
+ * are removed.
+ *
+ */
+public class ScenarioCache {
+
+	private static final int MAGIC = 0x53494D4B;
+	private static final short VERSION = 1;
+	private static final String EXTENSION = ".simcache";
+
+	private final Path directory;
+	private final long maxBytes;
+	private final String modelVersion;
+
+	/**
+	 * @param directory		the directory in which cache entries are stored, which is created if needed
+	 * @param maxBytes		the maximum total size of all entries
+	 * @param modelVersion	a version that should be changed whenever the meaning of results changes
+	 * 						in a way that is not visible in the bytecode of the state class
+	 */
+	public ScenarioCache(Path directory, long maxBytes, String modelVersion) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.modelVersion = modelVersion;
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to create cache directory " + directory, ex);
+		}
+	}
+
+	/**
+	 * Computes the key of a scenario. This must be called before the first replication is run.
+	 *
+	 * @param replication	the replication of the scenario
+	 * @param measures		the names of the performance measures
+	 * @return				the key of the scenario
+	 */
+	public String key(Replication<?> replication, List<String> measures) {
+		SystemState<?> state = replication.getSystemState();
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 is not available", ex);
+		}
+		update(digest, modelVersion);
+		update(digest, replication.getClass().getName());
+		update(digest, String.join("\u0000", measures));
+		digest.update(StateSnapshot.of(state).toByteArray());
+		Class<?> cls = state.getClass();
+		try (InputStream in = cls.getResourceAsStream(cls.getSimpleName() + ".class")) {
+			if (in != null) {
+				digest.update(in.readAllBytes());
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to read the bytecode of " + cls.getName(), ex);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	private static void update(MessageDigest digest, String s) {
+		byte[] bytes = String.valueOf(s).getBytes(StandardCharsets.UTF_8);
+		digest.update((byte) (bytes.length >>> 24));
+		digest.update((byte) (bytes.length >>> 16));
+		digest.update((byte) (bytes.length >>> 8));
+		digest.update((byte) bytes.length);
+		digest.update(bytes);
+	}
+
+	/**
+	 * @param key	the key of a scenario
+	 * @return		the cached results, or <code>null</code> if the scenario is not in the cache
+	 */
+	public CachedScenario get(String key) {
+		Path file = directory.resolve(key + EXTENSION);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+				return null;
+			}
+			int nrMeasures = in.readInt();
+			List<String> measures = new ArrayList<>();
+			for (int j = 0; j < nrMeasures; j++) {
+				measures.add(in.readUTF());
+			}
+			int nrRows = in.readInt();
+			List<List<Double>> rows = new ArrayList<>(nrRows);
+			for (int i = 0; i < nrRows; i++) {
+				List<Double> row = new ArrayList<>(nrMeasures);
+				for (int j = 0; j < nrMeasures; j++) {
+					row.add(in.readDouble());
+				}
+				rows.add(row);
+			}
+			byte[] state = new byte[in.readInt()];
+			in.readFully(state);
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			return new CachedScenario(measures, rows, StateSnapshot.fromByteArray(state));
+		} catch (NoSuchFileException ex) {
+			return null;
+		} catch (IOException ex) {
+			// a damaged entry is treated as missing, and will be overwritten
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the results of a scenario, replacing a previous entry with the same key, and evicts
+	 * the least recently used entries if the cache has become too large.
+	 *
+	 * @param key		the key of the scenario
+	 * @param measures	the names of the performance measures
+	 * @param rows		the values of the performance measures of every replication
+	 * @param state		the state after the last replication
+	 */
+	public void put(String key, List<String> measures, List<List<Double>> rows, StateSnapshot state) {
+		Path file = directory.resolve(key + EXTENSION);
+		Path temp = directory.resolve(key + EXTENSION + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeShort(VERSION);
+				out.writeInt(measures.size());
+				for (String m : measures) {
+					out.writeUTF(m);
+				}
+				out.writeInt(rows.size());
+				for (List<Double> row : rows) {
+					for (double d : row) {
+						out.writeDouble(d);
+					}
+				}
+				byte[] bytes = state.toByteArray();
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			evict(file);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to store scenario " + key + " in the cache", ex);
+		}
+	}
+
+	private void evict(Path keep) throws IOException {
+		List<Path> entries = new ArrayList<>();
+		long total = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+			for (Path p : stream) {
+				entries.add(p);
+				total += Files.size(p);
+			}
+		}
+		if (total <= maxBytes) {
+			return;
+		}
+		List<FileTime> times = new ArrayList<>();
+		for (Path p : entries) {
+			times.add(Files.getLastModifiedTime(p));
+		}
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < entries.size(); i++) {
+			order.add(i);
+		}
+		order.sort(Comparator.comparing(times::get));
+		for (int i : order) {
+			if (total <= maxBytes) {
+				break;
+			}
+			Path p = entries.get(i);
+			if (p.equals(keep)) {
+				continue;
+			}
+			long size = Files.size(p);
+			Files.deleteIfExists(p);
+			total -= size;
+		}
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public void clear() {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+			for (Path p : stream) {
+				Files.deleteIfExists(p);
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to clear the cache", ex);
+		}
+	}
+}
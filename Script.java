@@ -0,0 +1,164 @@
+package general.process;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import general.EntityHandler;
+import general.resources.Resource;
+
+/**
+ * The life of an entity written as a sequence of steps, in the process-interaction style: the
+ * entity requests a resource, holds it for a while, releases it, and so on. A script is defined
+ * once and is run by any number of entities with a {@link ProcessScheduler}, for example
+ * <pre>
+ * Script person = new Script()
+ *         .request(booths)
+ *         .hold((time, p) -&gt; nextServiceTime(random, mu))
+ *         .release(booths)
+ *         .run("leave", this::leave);
+ * </pre>
+ * Every hold is continued by an event handler of its own, named after the script and the step that
+ * follows the hold, such as <code>person.leave</code>, so traces and metrics of the handlers show
+ * where the entities are.
+ * A script does not hold any state of the entities that run it, so its steps should not be changed
+ * once entities have started running it.
+ *
+ */
+public class Script {
+
+	/**
+	 * The duration of a {@link Script#hold(Duration)} step, which is typically drawn at random.
+	 */
+	@FunctionalInterface
+	public interface Duration {
+		/**
+		 * @param time		The current time
+		 * @param entity	The id of the entity that holds
+		 * @return			The time until the entity continues with the next step, must be >= 0
+		 */
+		double of(double time, int entity);
+	}
+
+	static final int ACTION = 0;
+	static final int HOLD = 1;
+	static final int REQUEST = 2;
+	static final int RELEASE = 3;
+
+	/**
+	 * A single step of a script.
+	 */
+	static final class Step {
+
+		final int kind;
+		final String name;
+		final EntityHandler action;
+		final Duration duration;
+		final Resource resource;
+
+		Step(int kind, String name, EntityHandler action, Duration duration, Resource resource) {
+			this.kind = kind;
+			this.name = name;
+			this.action = action;
+			this.duration = duration;
+			this.resource = resource;
+		}
+	}
+
+	private final List<Step> steps = new ArrayList<>();
+
+	/**
+	 * Adds a step that performs an action and continues immediately with the next step.
+	 *
+	 * @param action	The action, which receives the current time and the id of the entity
+	 * @return			This script
+	 */
+	public Script run(EntityHandler action) {
+		return run(null, action);
+	}
+
+	/**
+	 * Adds a step that performs an action and continues immediately with the next step. If the step
+	 * follows a hold, the event handler that continues the entity is named after it.
+	 *
+	 * @param name		The name of the action, typically the name of the method, or <code>null</code>
+	 * @param action	The action, which receives the current time and the id of the entity
+	 * @return			This script
+	 */
+	public Script run(String name, EntityHandler action) {
+		if (action == null) {
+			throw new IllegalArgumentException("The action of a step cannot be null.");
+		}
+		steps.add(new Step(ACTION, name, action, null, null));
+		return this;
+	}
+
+	/**
+	 * Adds a step in which the entity waits for a fixed time.
+	 *
+	 * @param duration	The time to wait, must be >= 0
+	 * @return			This script
+	 */
+	public Script hold(double duration) {
+		if (!(duration >= 0)) {
+			throw new IllegalArgumentException("The duration of a hold must be >= 0");
+		}
+		return hold((time, entity) -> duration);
+	}
+
+	/**
+	 * Adds a step in which the entity waits for a time that is computed when the step starts.
+	 *
+	 * @param duration	The function that computes the time to wait
+	 * @return			This script
+	 */
+	public Script hold(Duration duration) {
+		if (duration == null) {
+			throw new IllegalArgumentException("The duration of a step cannot be null.");
+		}
+		steps.add(new Step(HOLD, null, null, duration, null));
+		return this;
+	}
+
+	/**
+	 * Adds a step in which the entity requests a server of a resource. If all servers are busy, the
+	 * entity waits in the queue of the resource until another entity releases a server.
+	 *
+	 * @param resource	The resource
+	 * @return			This script
+	 */
+	public Script request(Resource resource) {
+		if (resource == null) {
+			throw new IllegalArgumentException("The resource of a step cannot be null.");
+		}
+		steps.add(new Step(REQUEST, null, null, null, resource));
+		return this;
+	}
+
+	/**
+	 * Adds a step in which the entity releases its server of a resource. If other entities are waiting
+	 * for the resource, the first of them seizes the server and continues with its next step as soon
+	 * as this entity starts to wait, or has finished its script.
+	 *
+	 * @param resource	The resource
+	 * @return			This script
+	 */
+	public Script release(Resource resource) {
+		if (resource == null) {
+			throw new IllegalArgumentException("The resource of a step cannot be null.");
+		}
+		steps.add(new Step(RELEASE, null, null, null, resource));
+		return this;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of steps
+	 */
+	public int size() {
+		return steps.size();
+	}
+
+	Step[] toArray() {
+		return steps.toArray(new Step[0]);
+	}
+}
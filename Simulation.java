@@ -3,9 +3,20 @@ package general;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
+import general.cache.CachedScenario;
+import general.cache.ScenarioCache;
+import general.checkpoint.Checkpointer;
+import general.checkpoint.SimulationCheckpoint;
+import general.checkpoint.StateSnapshot;
+import general.jfr.FlightEvents;
+import general.jfr.SimulationEvent;
+import general.metrics.MetricsRegistry;
+import general.results.ResultsSink;
+
 /**
  * The main class of the template. <code>Simulation</code> allows the user to run multiple {@link Replication} instances and compute the simulation 
  * estimates of the performance measures. Furthermore it is possible to print the results to the {@link OutputStream} of choice, be it the standard 
@@ -19,6 +30,23 @@ public class Simulation<S extends SystemState<S>> {
 	private List<PerformanceMeasure<S>> measures;
 	private Replication<S> replication;
 	private Status status;
+	private ResultsSink sink;
+	private String scenario;
+	private MetricsRegistry metrics;
+	
+	// the performance measures of all completed replications of the current run
+	private List<List<Double>> results;
+	private long target;
+	
+	private Path checkpointBase;
+	private long checkpointReplications;
+	private long checkpointEvents;
+	private Checkpointer checkpointer;
+	private long resumeEventCount;
+	private ScenarioCache cache;
+	private String cacheKey;
+	// cached results of which not all rows have been used yet
+	private CachedScenario pendingCache;
 	
 	public Simulation(Replication<S> replication) {
 		this(replication, replication.getSystemState().getAutomaticMeasures());
@@ -33,6 +61,75 @@ public class Simulation<S extends SystemState<S>> {
 		this.measures.sort((pm1, pm2) -> pm1.getName().compareTo(pm2.getName()));
 	}
 	
+	/**
+	 * Sets a sink that receives the values of all performance measures in every replication of
+	 * subsequent calls to {@link #run(long)}. The sink is not closed by the simulation, so it can be
+	 * shared by the simulations of multiple scenarios.
+	 * 
+	 * @param sink		The sink to send the results to, or <code>null</code> to disable this
+	 * @param scenario	The key under which the rows of this simulation are recorded
+	 */
+	public void setResultsSink(ResultsSink sink, String scenario) {
+		this.sink = sink;
+		this.scenario = scenario;
+	}
+	
+	/**
+	 * Enables the recording of engine metrics, such as the number of events per second, in the
+	 * given registry under the name of the scenario of this simulation. See {@link #setScenario(String)}.
+	 * 
+	 * @param metrics	The registry to record metrics in, or <code>null</code> to disable this
+	 */
+	public void setMetrics(MetricsRegistry metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Sets the name of the scenario that is simulated, which is used to identify this simulation
+	 * in results and profiling data.
+	 * 
+	 * @param scenario	The name of the scenario
+	 */
+	public void setScenario(String scenario) {
+		this.scenario = scenario;
+	}
+	
+	/**
+	 * 
+	 * @return Returns the name of the scenario that is simulated, or <code>null</code> if none was set
+	 */
+	public String getScenario() {
+		return scenario;
+	}
+	
+	/**
+	 * Enables checkpointing of subsequent calls to {@link #run(long)}, such that an interrupted simulation
+	 * can be continued with {@link #resume(Path)}. See {@link Checkpointer} for the files that are written.
+	 * 
+	 * @param base				The path of the checkpoint files without extension, or <code>null</code> to disable checkpointing
+	 * @param everyReplications	The number of replications between two checkpoints, or 0 to only checkpoint within replications
+	 * @param everyEvents		The number of events between two checkpoints within a replication, or 0 to only checkpoint between replications
+	 */
+	public void setCheckpointing(Path base, long everyReplications, long everyEvents) {
+		if (everyReplications < 0 || everyEvents < 0) {
+			throw new IllegalArgumentException("Checkpoint intervals must be >= 0");
+		}
+		this.checkpointBase = base;
+		this.checkpointReplications = everyReplications;
+		this.checkpointEvents = everyEvents;
+	}
+	
+	/**
+	 * Enables a cache of scenario results for subsequent calls to {@link #run(long)}. If the results
+	 * of this scenario are in the cache, they are used instead of simulating the replications again,
+	 * and new results are stored in the cache. See {@link ScenarioCache} for details.
+	 * 
+	 * @param cache	The cache to use, or <code>null</code> to disable caching
+	 */
+	public void setCache(ScenarioCache cache) {
+		this.cache = cache;
+	}
+	
 	/**
 	 * Runs the simulation that the user specified in {@link Replication} <code>n</code> times.
 	 * 
@@ -43,30 +140,226 @@ public class Simulation<S extends SystemState<S>> {
 			status = Status.FAILED;
 			throw new IllegalArgumentException("Number of iterations must be >= 1");
 		}
-		
-		// initialize matrix of performance measures
-		List<List<Double>> measures = new ArrayList<>();
-		
-		long currentIteration = 0;
-		while (currentIteration < n) {
-			replication.reset();
-			replication.initialize();
-			replication.run();
+		results = new ArrayList<>();
+		target = n;
+		cacheKey = null;
+		pendingCache = null;
+		if (cache != null) {
+			cacheKey = cache.key(replication, getMeasureNames());
+			CachedScenario cached = cache.get(cacheKey);
+			if (cached != null && cached.getMeasures().equals(getMeasureNames())) {
+				pendingCache = cached;
+			}
+		}
+		runAndCache(0);
+	}
+	
+	/**
+	 * Runs <code>k</code> more replications after the simulation has been run, and updates the
+	 * estimates of the performance measures. The replications continue exactly where the previous
+	 * ones stopped, so <code>run(n)</code> followed by <code>runMore(k)</code> gives exactly the same
+	 * estimates as <code>run(n + k)</code>. This also holds for a simulation that was continued in
+	 * a different JVM from a file written by {@link #exportState(Path)}.
+	 * 
+	 * @param k Number of additional simulation iterations
+	 */
+	public void runMore(long k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("Number of additional iterations must be >= 1");
+		}
+		if (results == null || status != Status.SUCCESS) {
+			throw new IllegalStateException("Only a simulation that completed successfully can be extended");
+		}
+		target += k;
+		runAndCache(results.size());
+	}
+	
+	private void runAndCache(int replayFrom) {
+		if (pendingCache != null) {
+			// take rows from the cache, and continue from its state if we need more than it has
+			int from = results.size();
+			int to = (int) Math.min(target, pendingCache.size());
+			results.addAll(pendingCache.getRows().subList(from, to));
+			if (target >= pendingCache.size()) {
+				pendingCache.getState().restore(replication.getSystemState());
+				pendingCache = null;
+			}
+		}
+		int known = results.size();
+		checkpointer = checkpointBase == null ? null : new Checkpointer(checkpointBase, measures.size());
+		runReplications(false, replayFrom);
+		if (cache != null && cacheKey != null && results.size() > known) {
+			cache.put(cacheKey, getMeasureNames(), results, StateSnapshot.of(replication.getSystemState()));
+		}
+	}
+	
+	/**
+	 * Writes the results of all completed replications and the state after the last one to disk, such
+	 * that the simulation can be continued in a later JVM by calling {@link #resume(Path)} on a
+	 * simulation of the same scenario, followed by {@link #runMore(long)}. The files are the same as
+	 * those of a checkpoint, see {@link Checkpointer}.
+	 * 
+	 * @param base	The path of the files without extension
+	 */
+	public void exportState(Path base) {
+		if (results == null || status != Status.SUCCESS) {
+			throw new IllegalStateException("Only a simulation that completed successfully can be exported");
+		}
+		if (pendingCache != null) {
+			throw new IllegalStateException("The state after the last replication is not available, as the "
+					+ "replications were taken from a cache entry with more replications");
+		}
+		try (Checkpointer exporter = new Checkpointer(base, measures.size())) {
+			exporter.save(scenario, target, getMeasureNames(), results, false, 0, replication.getSystemState());
+		}
+	}
+	
+	/**
+	 * Continues a simulation from the last checkpoint that was written while it was running. The
+	 * replication of this simulation must use a state of the same class, constructed with the same
+	 * parameters, as the simulation that wrote the checkpoint. The result is exactly the same as if
+	 * the original simulation had not been interrupted. If checkpointing is enabled for this simulation,
+	 * it continues in the same files when they are those of the checkpoint, and otherwise starts a new
+	 * series of checkpoints, of which the first holds the restored replications and state.
+	 * 
+	 * @param base	The path of the checkpoint files, without extension
+	 */
+	public void resume(Path base) {
+		SimulationCheckpoint checkpoint = Checkpointer.load(base);
+		if (!checkpoint.getMeasures().equals(getMeasureNames())) {
+			throw new IllegalStateException("The checkpoint has measures "+checkpoint.getMeasures()
+					+", but this simulation has "+getMeasureNames());
+		}
+		checkpoint.restore(replication.getSystemState());
+		if (scenario == null) {
+			scenario = checkpoint.getScenario();
+		}
+		results = new ArrayList<>(checkpoint.getRows());
+		target = checkpoint.getTarget();
+		checkpointer = null;
+		if (checkpointBase != null) {
+			if (checkpointBase.toAbsolutePath().normalize().equals(base.toAbsolutePath().normalize())) {
+				checkpointer = new Checkpointer(checkpointBase, checkpoint);
+			}
+			else {
+				checkpointer = new Checkpointer(checkpointBase, measures.size());
+				checkpointer.save(scenario, target, getMeasureNames(), results, checkpoint.isInReplication(),
+						checkpoint.getEventCount(), replication.getSystemState());
+			}
+		}
+		resumeEventCount = checkpoint.getEventCount();
+		cacheKey = null;
+		pendingCache = null;
+		runReplications(checkpoint.isInReplication(), results.size());
+	}
+	
+	/**
+	 * Runs replications until {@link #target} replications have been completed.
+	 * 
+	 * @param inReplication	Whether the state is halfway a replication that should be resumed
+	 * @param replayFrom	The first row in {@link #results} that has not been sent to the results sink,
+	 * 						because it was obtained without simulating it
+	 */
+	private void runReplications(boolean inReplication, int replayFrom) {
+		SimulationEvent jfrSimulation = FlightEvents.beginSimulation(scenario);
+		if (metrics != null) {
+			replication.setMetrics(metrics.get(scenario));
+		}
+		if (checkpointer != null && checkpointEvents > 0) {
+			replication.setCheckpointHook(checkpointEvents, () -> checkpoint(true));
+		}
+		status = Status.ACTIVE;
+		try {
+			double[] row = null;
+			if (sink != null) {
+				sink.beginScenario(scenario, getMeasureNames());
+				row = new double[measures.size()];
+				for (int i = replayFrom; i < results.size(); i++) {
+					for (int j = 0; j < row.length; j++) {
+						row[j] = results.get(i).get(j);
+					}
+					sink.accept(i, row);
+				}
+			}
 			
-			if (replication.getStatus() == Status.FAILED) {
-				throw new IllegalStateException("Replication #" + (currentIteration + 1) + " failed.");
+			while (results.size() < target) {
+				if (inReplication) {
+					replication.resume(resumeEventCount);
+					inReplication = false;
+				}
+				else {
+					replication.reset();
+					replication.initialize();
+					replication.run();
+				}
+				
+				if (replication.getStatus() == Status.FAILED) {
+					throw new IllegalStateException("Replication #" + (results.size() + 1) + " failed.");
+				}
+				
+				// compute the performance measures
+				List<Double> rowMeasures = computePerformanceMeasures();
+				results.add(rowMeasures);
+				if (sink != null) {
+					for (int j = 0; j < row.length; j++) {
+						row[j] = rowMeasures.get(j);
+					}
+					sink.accept(results.size() - 1, row);
+				}
+				if (checkpointer != null && checkpointReplications > 0 && results.size() % checkpointReplications == 0) {
+					checkpoint(false);
+				}
+			}
+			if (sink != null) {
+				sink.endScenario();
 			}
 			
-			// compute the performance measures
-			List<Double> rowMeasures = computePerformanceMeasures();
-			measures.add(rowMeasures);
-			currentIteration++;
+			// compute estimations of performance measures
+			computePerformanceMeasureEstimates(results);
+			
+			status = Status.SUCCESS;
+		} catch (RuntimeException | Error ex) {
+			status = Status.FAILED;
+			throw ex;
+		} finally {
+			if (checkpointer != null) {
+				replication.setCheckpointHook(0, null);
+				checkpointer.close();
+				checkpointer = null;
+			}
+			if (jfrSimulation != null) {
+				FlightEvents.endSimulation(jfrSimulation, status, results.size());
+			}
+		}
+	}
+	
+	private void checkpoint(boolean inReplication) {
+		checkpointer.save(scenario, target, getMeasureNames(), results, inReplication,
+				replication.getEventCount(), replication.getSystemState());
+	}
+	
+	private List<String> getMeasureNames() {
+		List<String> names = new ArrayList<>();
+		for (PerformanceMeasure<S> pm : measures) {
+			names.add(pm.getName());
 		}
-		
-		// compute estimations of performance measures
-		computePerformanceMeasureEstimates(measures);
-		
-		status = Status.SUCCESS;
+		return names;
+	}
+	
+	/**
+	 * 
+	 * @return Returns the performance measures of this simulation, sorted by name
+	 */
+	public List<PerformanceMeasure<S>> getPerformanceMeasures() {
+		return new ArrayList<>(measures);
+	}
+	
+	/**
+	 * 
+	 * @return Returns the replication that is run by this simulation
+	 */
+	public Replication<S> getReplication() {
+		return replication;
 	}
 	
 	/**
@@ -88,6 +381,18 @@ public class Simulation<S extends SystemState<S>> {
 	}
 	
 	private void computePerformanceMeasureEstimates(List<List<Double>> estimates) {
+		setEstimates(measures, estimates);
+	}
+	
+	/**
+	 * Sets the means and standard errors of performance measures from their values in every replication,
+	 * such that other ways to run replications, like several scenarios in lockstep, give the same estimates
+	 * for the same values.
+	 * 
+	 * @param measures	The performance measures, in the order of the values of a replication
+	 * @param estimates	The values of the performance measures, one list per replication
+	 */
+	public static void setEstimates(List<? extends PerformanceMeasure<?>> measures, List<List<Double>> estimates) {
 		List<Double> first = estimates.get(0);
 		int nrMeasures = first.size();
 		for (int j = 0; j < nrMeasures; j++) {
@@ -106,7 +411,7 @@ public class Simulation<S extends SystemState<S>> {
 			double std = Math.sqrt(sum/(estimates.size()-1));
 			std = std/Math.sqrt(estimates.size());
 			
-			PerformanceMeasure<S> pm = measures.get(j);
+			PerformanceMeasure<?> pm = measures.get(j);
 			pm.setMean(mean);
 			pm.setStandardError(std);
 		}
@@ -0,0 +1,101 @@
+package general.checkpoint;
+
+import java.util.Collections;
+import java.util.List;
+
+import general.SystemState;
+
+/**
+ * A checkpoint of a {@link general.Simulation} that was read by {@link Checkpointer#load(java.nio.file.Path)}.
+ * It contains the progress of the simulation, the performance measures of all completed
+ * replications, and a snapshot of the system state, either between two replications or
+ * halfway through a replication.
+ *
+ */
+public class SimulationCheckpoint {
+
+	private final String scenario;
+	private final long target;
+	private final List<String> measures;
+	private final List<List<Double>> rows;
+	private final boolean inReplication;
+	private final long eventCount;
+	private final StateSnapshot state;
+
+	SimulationCheckpoint(String scenario, long target, List<String> measures, List<List<Double>> rows,
+			boolean inReplication, long eventCount, StateSnapshot state) {
+		this.scenario = scenario;
+		this.target = target;
+		this.measures = Collections.unmodifiableList(measures);
+		this.rows = rows;
+		this.inReplication = inReplication;
+		this.eventCount = eventCount;
+		this.state = state;
+	}
+
+	/**
+	 * @return the scenario of the simulation, or <code>null</code> if it had none
+	 */
+	public String getScenario() {
+		return scenario;
+	}
+
+	/**
+	 * @return the number of replications the simulation was asked to run
+	 */
+	public long getTarget() {
+		return target;
+	}
+
+	/**
+	 * @return the number of completed replications
+	 */
+	public long getCompleted() {
+		return rows.size();
+	}
+
+	/**
+	 * @return the names of the performance measures, in the order of the rows
+	 */
+	public List<String> getMeasures() {
+		return measures;
+	}
+
+	/**
+	 * @return the values of the performance measures of every completed replication
+	 */
+	public List<List<Double>> getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return true if the checkpoint was made while a replication was running
+	 */
+	public boolean isInReplication() {
+		return inReplication;
+	}
+
+	/**
+	 * @return the number of events processed by the running replication, if any
+	 */
+	public long getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * Restores the snapshot into a state, which must be of the same class and be constructed with
+	 * the same parameters as the state of which the checkpoint was made.
+	 *
+	 * @param target the state to restore
+	 */
+	public void restore(SystemState<?> target) {
+		state.restore(target);
+	}
+	
+	/**
+	 * @return the snapshot of the system state
+	 */
+	public StateSnapshot getState() {
+		return state;
+	}
+}
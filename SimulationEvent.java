@@ -0,0 +1,32 @@
+package general.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event that spans a call to {@link general.Simulation#run(long)}, which in a
+ * parameter sweep typically corresponds to a single scenario.
+ *
+ */
+@Name("general.Simulation")
+@Label("Simulation")
+@Category("Simulation")
+@Description("All replications of a single scenario")
+@Enabled(false)
+@StackTrace(false)
+public class SimulationEvent extends Event {
+
+	@Label("Scenario")
+	public String scenario;
+
+	@Label("Replications")
+	public long replications;
+
+	@Label("Status")
+	public String status;
+}
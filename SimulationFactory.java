@@ -0,0 +1,19 @@
+package general.distributed;
+
+import general.Simulation;
+
+/**
+ * Creates the simulation of a scenario in a {@link Worker}. Workers instantiate the factory by the
+ * name of its class, so an implementation must be a public class with a public constructor without
+ * arguments, and must be on the class path of the workers.
+ *
+ */
+public interface SimulationFactory {
+
+	/**
+	 * @param scenario	The description of the scenario, as passed to {@link Coordinator#run(Class, String, long, long, long)}
+	 * @param seed		The seed of the random number generators
+	 * @return			A new simulation of the scenario that has not been run yet
+	 */
+	Simulation<?> create(String scenario, long seed);
+}
@@ -0,0 +1,291 @@
+package general.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import general.distributed.SimulationFactory;
+
+/**
+ * A local HTTP front end of a {@link SimulationService}. It answers
+ * <pre>
+ * GET /models
+ * GET /run?model=litter&amp;scenario=900&amp;replications=1000&amp;batch=100&amp;precision=0.01&amp;measure=Cost&amp;seed=0
+ * GET /status
+ * </pre>
+ * where only <code>model</code> and <code>scenario</code> are required. A run streams its estimates
+ * as one JSON object per line, after every batch of replications, for example
+ * <pre>
+ * {"replications":100,"last":false,"measures":{"Cost":{"mean":100.0,"standardError":0.0}, ...}}
+ * </pre>
+ * and ends with a line with <code>"last":true</code>, or a line with an <code>"error"</code> if the
+ * run failed. A run stops after the batch it is running when the client disconnects. When the queue of the service is full, a run is answered with status 503 and a
+ * <code>Retry-After</code> header. The server is started with
+ * <pre>
+ * java -cp target/classes general.service.SimulationServer [options]
+ *
+ *   --port n          the port to listen on (default 8080)
+ *   --bind address    the address to listen on (default the loopback address)
+ *   --threads n       the number of runs at the same time (default the number of processors)
+ *   --queue n         the number of runs that can wait (default 16)
+ *   --idle n          the number of idle simulations kept for later runs (default 64)
+ *   --model name=class  registers a model with the name of its {@link SimulationFactory}
+ * </pre>
+ * The litter collection model is registered as <code>litter</code>, with the sensor level as scenario,
+ * and the vaccination location as <code>corona</code>, with the number of booths as scenario.
+ *
+ */
+public class SimulationServer implements AutoCloseable {
+
+	private final SimulationService service;
+	private final HttpServer server;
+	private final ExecutorService connections;
+
+	/**
+	 * @param service	The service that runs the requests
+	 * @param address	The address to listen on, with port 0 for any free port
+	 * @throws IOException if the server can not listen on the address
+	 */
+	public SimulationServer(SimulationService service, InetSocketAddress address) throws IOException {
+		this.service = service;
+		this.server = HttpServer.create(address, 0);
+		// the connections mostly wait for estimates of the service, which limits the number of runs
+		this.connections = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "simulation-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(connections);
+		server.createContext("/models", this::models);
+		server.createContext("/status", this::status);
+		server.createContext("/run", this::run);
+		server.start();
+	}
+
+	/**
+	 * @return Returns the port the server listens on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		connections.shutdownNow();
+	}
+
+	private void models(HttpExchange exchange) throws IOException {
+		StringBuilder sb = new StringBuilder("[");
+		List<String> models = service.getModels();
+		for (int i = 0; i < models.size(); i++) {
+			sb.append(i == 0 ? "" : ",").append(quote(models.get(i)));
+		}
+		respond(exchange, 200, sb.append("]\n").toString());
+	}
+
+	private void status(HttpExchange exchange) throws IOException {
+		respond(exchange, 200, "{\"active\":" + service.getActiveCount() + ",\"queued\":" + service.getQueueLength()
+				+ ",\"idle\":" + service.getIdleCount() + "}\n");
+	}
+
+	private void run(HttpExchange exchange) throws IOException {
+		SimulationService.Request request;
+		try {
+			Map<String,String> query = parseQuery(exchange.getRequestURI());
+			String model = query.get("model");
+			String scenario = query.get("scenario");
+			if (model == null || scenario == null) {
+				throw new IllegalArgumentException("The parameters model and scenario are required");
+			}
+			request = new SimulationService.Request(model, scenario,
+					Long.parseLong(query.getOrDefault("seed", "0")),
+					Long.parseLong(query.getOrDefault("replications", "1000")),
+					Long.parseLong(query.getOrDefault("batch", "100")),
+					Double.parseDouble(query.getOrDefault("precision", "0")),
+					query.get("measure"));
+		} catch (IllegalArgumentException ex) {
+			respond(exchange, 400, error(ex));
+			return;
+		}
+
+		// the estimates are passed from the thread of the service, followed by an empty line after the last,
+		// until the client is gone, after which the request stops and nothing is queued anymore
+		BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+		AtomicBoolean cancelled = new AtomicBoolean();
+		try {
+			service.submit(request, new SimulationService.Listener() {
+				@Override
+				public void estimates(SimulationService.Estimates estimates) {
+					if (cancelled.get()) {
+						return;
+					}
+					lines.add(toJson(estimates));
+					if (estimates.isLast()) {
+						lines.add("");
+					}
+				}
+
+				@Override
+				public void failed(Throwable failure) {
+					if (cancelled.get()) {
+						return;
+					}
+					lines.add(error(failure));
+					lines.add("");
+				}
+
+				@Override
+				public boolean isCancelled() {
+					return cancelled.get();
+				}
+			});
+		} catch (IllegalArgumentException ex) {
+			respond(exchange, 404, error(ex));
+			return;
+		} catch (RejectedExecutionException ex) {
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			respond(exchange, 503, "{\"error\":\"The queue is full\"}\n");
+			return;
+		}
+
+		exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+		exchange.sendResponseHeaders(200, 0);
+		try (OutputStream out = exchange.getResponseBody()) {
+			while (true) {
+				String line = lines.take();
+				if (line.isEmpty()) {
+					break;
+				}
+				out.write(line.getBytes(StandardCharsets.UTF_8));
+				out.flush();
+			}
+		} catch (IOException ex) {
+			// the client disconnected
+			cancelled.set(true);
+			lines.clear();
+		} catch (InterruptedException ex) {
+			cancelled.set(true);
+			lines.clear();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static Map<String,String> parseQuery(URI uri) {
+		Map<String,String> result = new HashMap<>();
+		String query = uri.getRawQuery();
+		if (query == null) {
+			return result;
+		}
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			String key = eq < 0 ? pair : pair.substring(0, eq);
+			String value = eq < 0 ? "" : pair.substring(eq + 1);
+			result.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+		return result;
+	}
+
+	private static String toJson(SimulationService.Estimates estimates) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"replications\":").append(estimates.getReplications());
+		sb.append(",\"last\":").append(estimates.isLast());
+		sb.append(",\"measures\":{");
+		List<String> names = estimates.getNames();
+		for (int j = 0; j < names.size(); j++) {
+			sb.append(j == 0 ? "" : ",").append(quote(names.get(j)));
+			sb.append(":{\"mean\":").append(number(estimates.getMean(j)));
+			sb.append(",\"standardError\":").append(number(estimates.getStandardError(j))).append('}');
+		}
+		return sb.append("}}\n").toString();
+	}
+
+	private static String error(Throwable failure) {
+		return "{\"error\":" + quote(String.valueOf(failure.getMessage() != null ? failure.getMessage() : failure)) + "}\n";
+	}
+
+	private static String number(double x) {
+		// JSON has no NaN or infinity, for example the standard error of a single replication
+		return Double.isFinite(x) ? Double.toString(x) : "null";
+	}
+
+	private static String quote(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			}
+			else if (c < 0x20) {
+				sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	public static void main(String[] args) throws Exception {
+		int port = 8080;
+		InetAddress bind = InetAddress.getLoopbackAddress();
+		int threads = Runtime.getRuntime().availableProcessors();
+		int queue = 16;
+		int idle = 64;
+		Map<String,String> models = new HashMap<>();
+		models.put("litter", "Assignment1.MainLitterCollection$Factory");
+		models.put("corona", "Assignment1.MainCoronaVacLoc$Factory");
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--port": port = Integer.parseInt(args[++i]); break;
+			case "--bind": bind = InetAddress.getByName(args[++i]); break;
+			case "--threads": threads = Integer.parseInt(args[++i]); break;
+			case "--queue": queue = Integer.parseInt(args[++i]); break;
+			case "--idle": idle = Integer.parseInt(args[++i]); break;
+			case "--model":
+				String[] model = args[++i].split("=", 2);
+				if (model.length != 2) {
+					System.err.println("A model must be given as name=class");
+					System.exit(2);
+				}
+				models.put(model[0], model[1]);
+				break;
+			default:
+				System.err.println("Unknown option " + args[i]);
+				System.exit(2);
+			}
+		}
+		SimulationService service = new SimulationService(threads, queue, idle);
+		for (Map.Entry<String,String> e : models.entrySet()) {
+			service.register(e.getKey(), Class.forName(e.getValue()).asSubclass(SimulationFactory.class).getConstructor().newInstance());
+		}
+		SimulationServer server = new SimulationServer(service, new InetSocketAddress(bind, port));
+		System.err.println("Simulation server listening on " + bind.getHostAddress() + ":" + server.getPort());
+	}
+}
@@ -0,0 +1,352 @@
+package general.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import general.PerformanceMeasure;
+import general.Simulation;
+import general.Status;
+import general.distributed.SimulationFactory;
+
+/**
+ * Answers requests for the estimates of a scenario of a model in a long-running JVM, such that
+ * routine questions do not pay for starting a JVM and warming up its compiler. The models are
+ * registered as {@link SimulationFactory}s under a name. Requests are queued for a fixed pool of
+ * threads, and a request is rejected with a {@link RejectedExecutionException} when the queue is
+ * full, which lets the caller retry later instead of piling up work.
+ *
+ * The simulations are kept in a pool per model and scenario after a request, so a later request of
+ * the same scenario reuses the state, its replication and the compiled code. Before it is used again,
+ * the random number generator of the state is seeded with the seed of the request, so the estimates
+ * are exactly those of a new simulation created by the factory with that seed. This requires that the
+ * model resets all of its state in {@link general.SystemState#reset()} and draws all random numbers from
+ * {@link general.SystemState#getRandom()}, as the models in this repository do.
+ *
+ * A request runs its replications in batches, and passes the estimates to its listener after every
+ * batch. It stops after the maximum number of replications, or as soon as the standard error of the
+ * target measure, or of all measures if no measure is given, is at most the precision target. As the
+ * batches are run with {@link Simulation#runMore(long)}, the estimates after <code>n</code> replications
+ * are those of <code>run(n)</code>. A request also stops between batches when its listener is cancelled,
+ * for example because the client that asked for it went away, and is skipped if that happens while it
+ * waits in the queue.
+ *
+ */
+public class SimulationService implements AutoCloseable {
+
+	private final Map<String,SimulationFactory> models = new LinkedHashMap<>();
+	private final ThreadPoolExecutor executor;
+	private final int maxIdle;
+
+	// idle simulations per model and scenario
+	private final Map<String,Deque<Simulation<?>>> pool = new HashMap<>();
+	private int idle;
+
+	/**
+	 * @param threads	The number of requests that are run at the same time
+	 * @param queue		The number of requests that can wait for a thread
+	 * @param maxIdle	The maximum number of idle simulations that are kept for later requests
+	 */
+	public SimulationService(int threads, int queue, int maxIdle) {
+		if (threads < 1 || queue < 1 || maxIdle < 0) {
+			throw new IllegalArgumentException("There must be at least one thread and one place in the queue, and maxIdle must be >= 0");
+		}
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue));
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Registers a model, which must be done before requests of it are submitted.
+	 *
+	 * @param name		The name of the model in requests
+	 * @param factory	The factory of the simulations of the model
+	 */
+	public synchronized void register(String name, SimulationFactory factory) {
+		models.put(name, factory);
+	}
+
+	/**
+	 * @return Returns the names of the registered models
+	 */
+	public synchronized List<String> getModels() {
+		return new ArrayList<>(models.keySet());
+	}
+
+	/**
+	 * Queues a request. The listener is called from the thread that runs the request.
+	 *
+	 * @param request	The request
+	 * @param listener	The listener that receives the estimates
+	 * @throws RejectedExecutionException if the queue is full or the service is closed
+	 */
+	public void submit(Request request, Listener listener) {
+		SimulationFactory factory;
+		synchronized (this) {
+			factory = models.get(request.model);
+		}
+		if (factory == null) {
+			throw new IllegalArgumentException("Unknown model " + request.model);
+		}
+		executor.execute(() -> {
+			try {
+				run(factory, request, listener);
+			} catch (RuntimeException | Error ex) {
+				listener.failed(ex);
+			}
+		});
+	}
+
+	/**
+	 * @return Returns the number of requests that are waiting for a thread
+	 */
+	public int getQueueLength() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return Returns the number of requests that are being run
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * @return Returns the number of idle simulations in the pool
+	 */
+	public synchronized int getIdleCount() {
+		return idle;
+	}
+
+	private void run(SimulationFactory factory, Request request, Listener listener) {
+		if (listener.isCancelled()) {
+			return;
+		}
+		String key = request.model + '\u0000' + request.scenario;
+		Simulation<?> simulation = borrow(key);
+		if (simulation == null) {
+			simulation = factory.create(request.scenario, request.seed);
+		}
+		else {
+			simulation.getReplication().getSystemState().getRandom().setSeed(request.seed);
+		}
+		boolean reusable = false;
+		try {
+			long done = 0;
+			while (!listener.isCancelled()) {
+				long batch = Math.min(request.batch, request.replications - done);
+				if (done == 0) {
+					simulation.run(batch);
+				}
+				else {
+					simulation.runMore(batch);
+				}
+				done += batch;
+				boolean last = done >= request.replications || done >= 2 && isPrecise(simulation, request);
+				listener.estimates(new Estimates(done, simulation.getPerformanceMeasures(), last));
+				if (last) {
+					break;
+				}
+			}
+			reusable = simulation.getStatus() == Status.SUCCESS;
+		} finally {
+			if (reusable) {
+				giveBack(key, simulation);
+			}
+		}
+	}
+
+	private static boolean isPrecise(Simulation<?> simulation, Request request) {
+		if (!(request.precision > 0)) {
+			return false;
+		}
+		boolean found = false;
+		boolean precise = true;
+		for (PerformanceMeasure<?> pm : simulation.getPerformanceMeasures()) {
+			if (request.measure == null || request.measure.equals(pm.getName())) {
+				found = true;
+				precise &= pm.getStandardError() <= request.precision;
+			}
+		}
+		if (!found) {
+			throw new IllegalArgumentException("Unknown measure " + request.measure);
+		}
+		return precise;
+	}
+
+	private synchronized Simulation<?> borrow(String key) {
+		Deque<Simulation<?>> idleSimulations = pool.get(key);
+		if (idleSimulations == null || idleSimulations.isEmpty()) {
+			return null;
+		}
+		idle--;
+		return idleSimulations.pop();
+	}
+
+	private synchronized void giveBack(String key, Simulation<?> simulation) {
+		if (idle >= maxIdle) {
+			return;
+		}
+		pool.computeIfAbsent(key, k -> new ArrayDeque<>()).push(simulation);
+		idle++;
+	}
+
+	/**
+	 * Stops accepting requests, and waits for the queued requests to complete. If the calling thread is
+	 * interrupted, it stops waiting and its interrupt flag is set again.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * A request for the estimates of a scenario of a model.
+	 */
+	public static final class Request {
+
+		private final String model;
+		private final String scenario;
+		private final long seed;
+		private final long replications;
+		private final long batch;
+		private final double precision;
+		private final String measure;
+
+		/**
+		 * @param model			The name of the model
+		 * @param scenario		The scenario, as passed to {@link SimulationFactory#create(String, long)}
+		 * @param seed			The seed of the random numbers
+		 * @param replications	The maximum number of replications, must be >= 1
+		 * @param batch			The number of replications after which estimates are reported, must be >= 1
+		 * @param precision		The standard error at which the simulation stops, or 0 to run all replications
+		 * @param measure		The name of the measure of which the standard error must reach the precision, or
+		 * 						<code>null</code> for all measures
+		 */
+		public Request(String model, String scenario, long seed, long replications, long batch, double precision, String measure) {
+			if (replications < 1 || batch < 1) {
+				throw new IllegalArgumentException("The number of replications and the batch size must be >= 1");
+			}
+			if (precision < 0) {
+				throw new IllegalArgumentException("The precision must be >= 0");
+			}
+			this.model = model;
+			this.scenario = scenario;
+			this.seed = seed;
+			this.replications = replications;
+			this.batch = batch;
+			this.precision = precision;
+			this.measure = measure;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + model + " " + scenario + ", seed " + seed + ", " + replications + " replications]";
+		}
+	}
+
+	/**
+	 * The estimates of the measures of a request after a number of replications.
+	 */
+	public static final class Estimates {
+
+		private final long replications;
+		private final List<String> names;
+		private final double[] means;
+		private final double[] standardErrors;
+		private final boolean last;
+
+		private Estimates(long replications, List<? extends PerformanceMeasure<?>> measures, boolean last) {
+			this.replications = replications;
+			this.names = new ArrayList<>();
+			this.means = new double[measures.size()];
+			this.standardErrors = new double[measures.size()];
+			for (int j = 0; j < means.length; j++) {
+				names.add(measures.get(j).getName());
+				means[j] = measures.get(j).getMean();
+				standardErrors[j] = measures.get(j).getStandardError();
+			}
+			this.last = last;
+		}
+
+		/**
+		 * @return Returns the number of replications the estimates are based on
+		 */
+		public long getReplications() {
+			return replications;
+		}
+
+		/**
+		 * @return Returns the names of the measures, sorted by name
+		 */
+		public List<String> getNames() {
+			return Collections.unmodifiableList(names);
+		}
+
+		/**
+		 * @param j	The index of a measure
+		 * @return	The estimate of its mean
+		 */
+		public double getMean(int j) {
+			return means[j];
+		}
+
+		/**
+		 * @param j	The index of a measure
+		 * @return	The standard error of the estimate
+		 */
+		public double getStandardError(int j) {
+			return standardErrors[j];
+		}
+
+		/**
+		 * @return Returns true if these are the final estimates of the request
+		 */
+		public boolean isLast() {
+			return last;
+		}
+	}
+
+	/**
+	 * Receives the estimates of a request.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called after every batch of replications.
+		 *
+		 * @param estimates	The estimates after the batch
+		 */
+		void estimates(Estimates estimates);
+
+		/**
+		 * Called instead of further estimates when the request fails.
+		 *
+		 * @param failure	The cause
+		 */
+		void failed(Throwable failure);
+
+		/**
+		 * Checked before the request starts and after every batch, the request stops without further calls
+		 * of the listener as soon as it returns true.
+		 *
+		 * @return Returns true if the estimates are no longer needed, by default false
+		 */
+		default boolean isCancelled() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,377 @@
+package general.parallel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import general.Event;
+import general.Replication;
+import general.SystemState;
+
+/**
+ * A single replication of a network of sites, such as vaccination locations, where every site is a
+ * {@link Replication} with its own state and event queue, and sites affect each other only through
+ * timestamped messages. The sites are run in parallel with conservative synchronization: a site never
+ * processes an event before it has received every message with an earlier time.
+ *
+ * The network declares a lookahead, the minimum time between sending a message and the time at which
+ * it is received, for example the travel time between two sites. Time is divided into windows, in the
+ * style of YAWNS: a window starts at the time of the earliest event of all sites and ends one lookahead
+ * later. Within a window every site processes its own events independently, as no message sent in the
+ * window can be received before it ends. Between two windows, the messages are added to the queues of
+ * the sites they are sent to, in the order of their time, sending site and the order in which they were
+ * sent. As this order does not depend on how the sites were divided over threads, the network gives
+ * identical results with any number of threads, including one, when every site has its own random
+ * number generator. Without messages, every site behaves exactly like its replication run on its own.
+ *
+ * A site terminates like its replication would, before the first event after the time horizon or when
+ * its termination criteria are satisfied. If it receives a message later on, it continues with it, and
+ * the network terminates when all sites have terminated and no messages are left. Hence a site that
+ * may receive messages should not use termination criteria that are already satisfied while messages
+ * to it are underway.
+ *
+ * @param <S> the type of the states of the sites
+ */
+public class SiteNetwork<S extends SystemState<S>> {
+
+	private final double lookahead;
+	private final List<Replication<S>> sites = new ArrayList<>();
+	private final List<Outbox> outboxes = new ArrayList<>();
+	private int threads = 1;
+
+	private boolean[] terminated;
+	private double bound;
+	private boolean finished;
+	private long windows;
+	private long messages;
+
+	// failures of the worker threads, by thread, and of the run itself
+	private Throwable[] failures;
+	private RuntimeException failure;
+
+	/**
+	 * @param lookahead	The minimum time between sending and receiving a message, must be > 0
+	 */
+	public SiteNetwork(double lookahead) {
+		if (!(lookahead > 0) || Double.isInfinite(lookahead)) {
+			throw new IllegalArgumentException("The lookahead must be > 0 and finite");
+		}
+		this.lookahead = lookahead;
+	}
+
+	/**
+	 * Adds a site to the network.
+	 *
+	 * @param replication	The replication of the site, with a state that has its own random number generator
+	 * @return				The id of the site, which is used to send messages to it
+	 */
+	public int addSite(Replication<S> replication) {
+		if (replication == null) {
+			throw new IllegalArgumentException("The replication of a site cannot be null.");
+		}
+		sites.add(replication);
+		outboxes.add(new Outbox());
+		return sites.size() - 1;
+	}
+
+	/**
+	 * Sets the number of threads that run the sites, where site <code>i</code> is run by thread
+	 * <code>i % threads</code>. The results do not depend on the number of threads.
+	 *
+	 * @param threads	The number of threads, 1 to run the sites on the thread that calls {@link #run()}
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads must be >= 1");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Sends a message from one site to another, which is received as an event of a handler of the
+	 * receiving state, see {@link SystemState#addEvent(double, int, int)}. This may only be called
+	 * while the sending site processes an event.
+	 *
+	 * @param from		The id of the sending site
+	 * @param to		The id of the receiving site
+	 * @param time		The time at which the message is received, at least the lookahead after the
+	 * 					time of the event that sends it
+	 * @param handler	The id of a handler registered by the state of the receiving site
+	 * @param entity	The id of the entity passed to the handler
+	 */
+	public void send(int from, int to, double time, int handler, int entity) {
+		if (to < 0 || to >= sites.size()) {
+			throw new IllegalArgumentException("Unknown site "+to);
+		}
+		if (!(time >= bound)) {
+			throw new IllegalArgumentException("A message from site "+from+" at time "+time
+					+" does not respect the lookahead of "+lookahead);
+		}
+		outboxes.get(from).add(to, time, handler, entity);
+	}
+
+	/**
+	 * Resets all sites, see {@link Replication#reset()}.
+	 */
+	public void reset() {
+		for (int i = 0; i < sites.size(); i++) {
+			sites.get(i).reset();
+			outboxes.get(i).clear();
+		}
+	}
+
+	/**
+	 * Initializes all sites, see {@link Replication#initialize()}.
+	 */
+	public void initialize() {
+		for (Replication<S> site : sites) {
+			site.initialize();
+		}
+	}
+
+	/**
+	 * Runs the network until all sites have terminated and no messages are left, assuming all sites
+	 * have been initialized.
+	 */
+	public void run() {
+		int n = sites.size();
+		terminated = new boolean[n];
+		windows = 0;
+		messages = 0;
+		finished = false;
+		failures = null;
+		failure = null;
+		bound = Double.NEGATIVE_INFINITY;
+		deliver();
+		int nThreads = Math.min(threads, n);
+		if (nThreads <= 1) {
+			while (!finished) {
+				advance(0, 1);
+				deliver();
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			return;
+		}
+		failures = new Throwable[nThreads];
+		CyclicBarrier barrier = new CyclicBarrier(nThreads, this::deliver);
+		Thread[] workers = new Thread[nThreads];
+		for (int t = 0; t < nThreads; t++) {
+			int index = t;
+			workers[t] = new Thread(() -> work(index, nThreads, barrier), "site-worker-" + t);
+			workers[t].setDaemon(true);
+			workers[t].start();
+		}
+		boolean interrupted = false;
+		for (Thread worker : workers) {
+			while (true) {
+				try {
+					worker.join();
+					break;
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		for (Throwable t : failures) {
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+			if (t instanceof Error) {
+				throw (Error) t;
+			}
+			if (t != null) {
+				throw new RuntimeException("A site worker failed", t);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void work(int index, int nThreads, CyclicBarrier barrier) {
+		while (true) {
+			try {
+				advance(index, nThreads);
+			} catch (RuntimeException | Error ex) {
+				failures[index] = ex;
+			}
+			try {
+				// the last thread to arrive delivers the messages and starts the next window
+				barrier.await();
+			} catch (InterruptedException | BrokenBarrierException ex) {
+				failures[index] = ex;
+				return;
+			}
+			if (finished) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Processes the events of the current window of every <code>step</code>-th site, from site <code>first</code>.
+	 */
+	private void advance(int first, int step) {
+		for (int i = first; i < sites.size(); i += step) {
+			if (!terminated[i]) {
+				terminated[i] = sites.get(i).advance(bound);
+			}
+		}
+	}
+
+	/**
+	 * Adds the messages sent in the last window to the queues of the sites they were sent to, and
+	 * starts the next window, or finishes the run if all sites terminated.
+	 */
+	private void deliver() {
+		if (failures != null) {
+			for (Throwable failure : failures) {
+				if (failure != null) {
+					finished = true;
+					return;
+				}
+			}
+		}
+		int count = 0;
+		for (Outbox outbox : outboxes) {
+			count += outbox.size;
+		}
+		if (count > 0) {
+			// concatenate the outboxes, which orders the messages by sending site and order of sending
+			int[] to = new int[count];
+			double[] time = new double[count];
+			int[] handler = new int[count];
+			int[] entity = new int[count];
+			int k = 0;
+			for (Outbox outbox : outboxes) {
+				System.arraycopy(outbox.to, 0, to, k, outbox.size);
+				System.arraycopy(outbox.time, 0, time, k, outbox.size);
+				System.arraycopy(outbox.handler, 0, handler, k, outbox.size);
+				System.arraycopy(outbox.entity, 0, entity, k, outbox.size);
+				k += outbox.size;
+				outbox.clear();
+			}
+			Integer[] order = new Integer[count];
+			for (int j = 0; j < count; j++) {
+				order[j] = j;
+			}
+			Arrays.sort(order, (a, b) -> {
+				int res = Integer.compare(to[a], to[b]);
+				if (res == 0) {
+					res = Double.compare(time[a], time[b]);
+				}
+				return res == 0 ? Integer.compare(a, b) : res;
+			});
+			for (int j : order) {
+				S state = sites.get(to[j]).getSystemState();
+				state.addEvent(time[j], handler[j], entity[j]);
+				state.requestTerminationCheck();
+				terminated[to[j]] = false;
+			}
+			messages += count;
+		}
+
+		double start = Double.POSITIVE_INFINITY;
+		boolean active = false;
+		for (int i = 0; i < sites.size(); i++) {
+			if (terminated[i]) {
+				continue;
+			}
+			active = true;
+			Event<S> next = sites.get(i).getSystemState().getQueue().peek();
+			if (next != null) {
+				start = Math.min(start, next.getTime());
+			}
+		}
+		if (!active) {
+			finished = true;
+			return;
+		}
+		if (start == Double.POSITIVE_INFINITY) {
+			finished = true;
+			failure = new IllegalStateException("The sites have no more events before infinity, "
+					+ "but not all of them satisfied their termination criteria.");
+			return;
+		}
+		bound = start + lookahead;
+		windows++;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of sites
+	 */
+	public int getSiteCount() {
+		return sites.size();
+	}
+
+	/**
+	 * @param site	The id of a site
+	 * @return		The replication of the site
+	 */
+	public Replication<S> getSite(int site) {
+		return sites.get(site);
+	}
+
+	/**
+	 *
+	 * @return Returns the lookahead of the network
+	 */
+	public double getLookahead() {
+		return lookahead;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of windows of the last run
+	 */
+	public long getWindowCount() {
+		return windows;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of messages delivered in the last run
+	 */
+	public long getMessageCount() {
+		return messages;
+	}
+
+	/**
+	 * Messages sent by one site in the current window, written only by the thread that runs the site.
+	 */
+	private static final class Outbox {
+
+		private int[] to = new int[16];
+		private double[] time = new double[16];
+		private int[] handler = new int[16];
+		private int[] entity = new int[16];
+		private int size;
+
+		private void add(int to, double time, int handler, int entity) {
+			if (size == this.to.length) {
+				int capacity = size * 2;
+				this.to = Arrays.copyOf(this.to, capacity);
+				this.time = Arrays.copyOf(this.time, capacity);
+				this.handler = Arrays.copyOf(this.handler, capacity);
+				this.entity = Arrays.copyOf(this.entity, capacity);
+			}
+			this.to[size] = to;
+			this.time[size] = time;
+			this.handler[size] = handler;
+			this.entity[size] = entity;
+			size++;
+		}
+
+		private void clear() {
+			size = 0;
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package general.rare;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+import general.PerformanceMeasure;
+import general.Replication;
+import general.SystemState;
+import general.checkpoint.StateFork;
+import general.distributed.Welford;
+
+/**
+ * Estimates performance measures that depend on rare events, such as the fraction of persons that
+ * find no free chair when there are many chairs, with multilevel splitting. The user defines an
+ * importance function of the state, which grows as the rare event comes closer, for example the
+ * number of chairs in use, and a number of increasing levels of it. Whenever the importance of a path
+ * reaches the next level for the first time, the state and its event queue are copied into a number of
+ * paths that continue independently with new random numbers, and the weight of the path is divided over
+ * them. Hence many more paths get close to the rare event than in a plain replication.
+ *
+ * Every path runs until its replication terminates, and the measures of all paths of a replication are
+ * added up, multiplied by their weights. As the weights of the copies of a path add up to the weight of
+ * the path, this sum has the same expected value as the measure of a plain replication, so the estimate
+ * is unbiased, and the standard error is computed from the sums of independent replications, just like
+ * {@link general.Simulation} does. Note that the number of paths per replication grows with the number of
+ * levels that are reached, so the splitting factor should be about the inverse of the probability that a
+ * path that reached one level also reaches the next.
+ *
+ * The states are copied with {@link StateFork}, so they must satisfy about the same rules as checkpoints,
+ * and all random numbers of the model must be drawn from {@link SystemState#getRandom()}, which is
+ * reseeded for every copy.
+ *
+ * @param <S> the type of the state
+ */
+public class SplittingSimulation<S extends SystemState<S>> {
+
+	private final Replication<S> replication;
+	private final List<PerformanceMeasure<S>> measures;
+	private final ToDoubleFunction<? super S> importance;
+	private final double[] levels;
+	private final int splitting;
+	private final Random seeds;
+
+	private long paths;
+	private long replications;
+
+	/**
+	 * @param replication	The replication to estimate the automatic measures of
+	 * @param importance	The importance function of the state
+	 * @param levels		The levels of the importance function at which paths are split, in increasing order
+	 * @param splitting		The number of paths a path is split into at every level, must be >= 2
+	 * @param seed			The seed of the random numbers of the copies
+	 */
+	public SplittingSimulation(Replication<S> replication, ToDoubleFunction<? super S> importance,
+			double[] levels, int splitting, long seed) {
+		this(replication, replication.getSystemState().getAutomaticMeasures(), importance, levels, splitting, seed);
+	}
+
+	/**
+	 * @param replication	The replication to estimate measures of
+	 * @param measures		The performance measures
+	 * @param importance	The importance function of the state
+	 * @param levels		The levels of the importance function at which paths are split, in increasing order
+	 * @param splitting		The number of paths a path is split into at every level, must be >= 2
+	 * @param seed			The seed of the random numbers of the copies
+	 */
+	public SplittingSimulation(Replication<S> replication, List<PerformanceMeasure<S>> measures,
+			ToDoubleFunction<? super S> importance, double[] levels, int splitting, long seed) {
+		if (splitting < 2) {
+			throw new IllegalArgumentException("The splitting factor must be >= 2");
+		}
+		for (int i = 1; i < levels.length; i++) {
+			if (!(levels[i] > levels[i - 1])) {
+				throw new IllegalArgumentException("The levels must be increasing");
+			}
+		}
+		this.replication = replication;
+		// Copy and sort the performance measures to make output always consistent
+		this.measures = new ArrayList<>(measures);
+		this.measures.sort((pm1, pm2) -> pm1.getName().compareTo(pm2.getName()));
+		this.importance = importance;
+		this.levels = levels.clone();
+		this.splitting = splitting;
+		this.seeds = new Random(seed);
+	}
+
+	/**
+	 * Runs <code>n</code> independent replications, each of which is split into many paths, and sets the
+	 * means and standard errors of the performance measures.
+	 *
+	 * @param n	The number of replications
+	 */
+	public void run(long n) {
+		if (n < 2) {
+			throw new IllegalArgumentException("At least two replications are needed to estimate the standard error");
+		}
+		S state = replication.getSystemState();
+		Welford[] estimates = new Welford[measures.size()];
+		for (int j = 0; j < estimates.length; j++) {
+			estimates[j] = new Welford();
+		}
+		double[] sums = new double[measures.size()];
+		Deque<Branch> branches = new ArrayDeque<>();
+		paths = 0;
+		replications = n;
+		for (long r = 0; r < n; r++) {
+			replication.reset();
+			replication.initialize();
+			Arrays.fill(sums, 0);
+
+			double weight = 1;
+			int level = 0;
+			while (true) {
+				// continue the current path until it terminates, or reaches the next level
+				boolean terminated;
+				if (level < levels.length) {
+					double next = levels[level];
+					terminated = replication.advance(Double.POSITIVE_INFINITY, s -> importance.applyAsDouble(s) >= next);
+				}
+				else {
+					terminated = replication.advance(Double.POSITIVE_INFINITY);
+				}
+				if (!terminated) {
+					if (state.getQueue().isEmpty()) {
+						throw new IllegalStateException("The event queue is empty before the official termination criterion has been satisfied.");
+					}
+					// split at every level that was reached by this event
+					double value = importance.applyAsDouble(state);
+					int copies = 1;
+					while (level < levels.length && value >= levels[level]) {
+						copies *= splitting;
+						level++;
+					}
+					weight /= copies;
+					StateFork fork = StateFork.of(state);
+					for (int c = 1; c < copies; c++) {
+						branches.push(new Branch(fork, level, weight, seeds.nextLong()));
+					}
+					continue;
+				}
+				paths++;
+				for (int j = 0; j < sums.length; j++) {
+					sums[j] += weight * measures.get(j).compute(state);
+				}
+				Branch branch = branches.poll();
+				if (branch == null) {
+					break;
+				}
+				branch.fork.restore(state);
+				state.getRandom().setSeed(branch.seed);
+				state.requestTerminationCheck();
+				weight = branch.weight;
+				level = branch.level;
+			}
+			for (int j = 0; j < sums.length; j++) {
+				estimates[j].add(sums[j]);
+			}
+		}
+		for (int j = 0; j < measures.size(); j++) {
+			measures.get(j).setMean(estimates[j].getMean());
+			measures.get(j).setStandardError(estimates[j].getStandardError());
+		}
+	}
+
+	/**
+	 *
+	 * @return Returns the performance measures, with the estimates of the last run
+	 */
+	public List<PerformanceMeasure<S>> getPerformanceMeasures() {
+		return new ArrayList<>(measures);
+	}
+
+	/**
+	 *
+	 * @return Returns the mean number of paths per replication in the last run, which is the cost of a
+	 * 			replication relative to a plain one
+	 */
+	public double getMeanPaths() {
+		return replications == 0 ? 0 : (double) paths / replications;
+	}
+
+	public void printEstimates() {
+		printEstimates(System.out);
+	}
+
+	public void printEstimates(PrintStream out) {
+		for (int i = 0; i < measures.size(); i++) {
+			out.println(measures.get(i));
+		}
+	}
+
+	/**
+	 * A copy of a path that still has to be run.
+	 */
+	private static final class Branch {
+
+		private final StateFork fork;
+		private final int level;
+		private final double weight;
+		private final long seed;
+
+		private Branch(StateFork fork, int level, double weight, long seed) {
+			this.fork = fork;
+			this.level = level;
+			this.weight = weight;
+			this.seed = seed;
+		}
+	}
+}
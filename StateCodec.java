@@ -0,0 +1,343 @@
+package general.checkpoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import general.Counter;
+import general.Event;
+import general.SystemState;
+import general.automagic.HandlerEvent;
+
+/**
+ * Writes the complete dynamic state of a {@link SystemState} to a stream, and restores it into
+ * another instance of the same class that was constructed with the same parameters.
+ *
+ * All non-static, non-transient fields of the state class and its superclasses are written by
+ * reflection, except for those of {@link SystemState} that are managed by the framework itself.
+ * Primitive fields and {@link Counter}s are written as their values, and all other fields must
+ * hold {@link Serializable} objects. This includes {@link java.util.Random}, whose serialized
+ * form contains the exact position in its stream of random numbers. Final fields that hold a
+ * primitive or a String are considered to be parameters of the model: they are not restored, but
+ * checked to be equal to the value in the checkpoint. Final fields that hold an object of a class of
+ * the model, such as a {@link general.resources.Resource}, are restored in place: the non-transient
+ * fields of the restored object are copied into the object in the field. So other objects of the
+ * state that refer to it, such as a {@link general.process.ProcessScheduler}, keep referring to
+ * the restored object, and the transient fields of the object itself are kept.
+ *
+ * Events in the queue must either be {@link HandlerEvent}s, which are written as their time,
+ * handler id and entity, or be {@link Serializable}. Events are written in the internal order of the queue,
+ * which is reproduced exactly when they are added again in that order, so events at equal times
+ * are processed in the same order after a restore.
+ *
+ */
+final class StateCodec {
+
+	static final Set<String> MANAGED = new HashSet<>(Arrays.asList(
+			"queue", "counters", "autoCounters", "handlers", "entityHandlers", "handlerNames", "eventPool",
+			"counterValues", "counterInitialValues"));
+
+	private static final byte NULL = 0;
+	private static final byte BOOLEAN = 1;
+	private static final byte BYTE = 2;
+	private static final byte CHAR = 3;
+	private static final byte SHORT = 4;
+	private static final byte INT = 5;
+	private static final byte LONG = 6;
+	private static final byte FLOAT = 7;
+	private static final byte DOUBLE = 8;
+	private static final byte COUNTER = 9;
+	private static final byte STRING = 10;
+	private static final byte OBJECT = 11;
+
+	private static final byte HANDLER_EVENT = 0;
+	private static final byte SERIALIZED_EVENT = 1;
+	private static final byte ENTITY_EVENT = 2;
+
+	private StateCodec() {
+
+	}
+
+	static void write(DataOutputStream out, SystemState<?> state) throws IOException {
+		out.writeUTF(state.getClass().getName());
+		out.writeDouble(state.getCurrentTime());
+
+		List<Counter> counters = state.getCounters();
+		out.writeInt(counters.size());
+		for (Counter c : counters) {
+			out.writeDouble(c.getValue());
+		}
+
+		List<Field> fields = fields(state.getClass());
+		out.writeInt(fields.size());
+		for (Field f : fields) {
+			out.writeUTF(f.getDeclaringClass().getName() + "." + f.getName());
+			writeValue(out, f, get(f, state));
+		}
+
+		PriorityQueue<? extends Event<?>> queue = state.getQueue();
+		out.writeInt(queue.size());
+		for (Event<?> e : queue) {
+			if (e instanceof HandlerEvent && ((HandlerEvent<?>) e).getEntity() != HandlerEvent.NO_ENTITY) {
+				out.writeByte(ENTITY_EVENT);
+				out.writeDouble(e.getTime());
+				out.writeInt(e.getHandlerId());
+				out.writeInt(((HandlerEvent<?>) e).getEntity());
+			}
+			else if (e instanceof HandlerEvent) {
+				out.writeByte(HANDLER_EVENT);
+				out.writeDouble(e.getTime());
+				out.writeInt(e.getHandlerId());
+			}
+			else if (e instanceof Serializable) {
+				out.writeByte(SERIALIZED_EVENT);
+				writeObject(out, e);
+			}
+			else {
+				throw new IllegalStateException("Event "+e+" of type "+e.getClass().getName()+" can not be checkpointed. "
+						+ "Schedule events through SystemState.registerHandler and addEvent(double, int), "
+						+ "or make the event Serializable.");
+			}
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static void read(DataInputStream in, SystemState<?> state) throws IOException {
+		String cls = in.readUTF();
+		if (!cls.equals(state.getClass().getName())) {
+			throw new IllegalStateException("The checkpoint contains a state of type "+cls
+					+", but the simulation uses "+state.getClass().getName());
+		}
+		state.updateCurrentTime(in.readDouble());
+
+		List<Counter> counters = state.getCounters();
+		int nrCounters = in.readInt();
+		if (nrCounters != counters.size()) {
+			throw new IllegalStateException("The checkpoint contains "+nrCounters+" counters, but the state has "+counters.size());
+		}
+		for (Counter c : counters) {
+			c.setValue(in.readDouble());
+		}
+
+		List<Field> fields = fields(state.getClass());
+		int nrFields = in.readInt();
+		if (nrFields != fields.size()) {
+			throw new IllegalStateException("The checkpoint contains "+nrFields+" fields, but the state has "+fields.size());
+		}
+		for (Field f : fields) {
+			String name = in.readUTF();
+			if (!name.equals(f.getDeclaringClass().getName() + "." + f.getName())) {
+				throw new IllegalStateException("Expected field "+f.getName()+" in the checkpoint, but found "+name);
+			}
+			readValue(in, f, state);
+		}
+
+		PriorityQueue queue = state.getQueue();
+		queue.clear();
+		int nrEvents = in.readInt();
+		for (int i = 0; i < nrEvents; i++) {
+			byte kind = in.readByte();
+			if (kind == HANDLER_EVENT) {
+				double time = in.readDouble();
+				queue.add(new HandlerEvent(time, in.readInt()));
+			}
+			else if (kind == ENTITY_EVENT) {
+				double time = in.readDouble();
+				int handler = in.readInt();
+				queue.add(new HandlerEvent(time, handler, in.readInt()));
+			}
+			else {
+				queue.add((Event) readObject(in));
+			}
+		}
+	}
+
+	private static List<Field> fields(Class<?> cls) {
+		List<Field> result = new ArrayList<>();
+		for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field f : c.getDeclaredFields()) {
+				int mod = f.getModifiers();
+				if (Modifier.isStatic(mod) || Modifier.isTransient(mod) || f.isSynthetic()) {
+					continue;
+				}
+				if (c == SystemState.class && MANAGED.contains(f.getName())) {
+					continue;
+				}
+				f.setAccessible(true);
+				result.add(f);
+			}
+		}
+		return result;
+	}
+
+	private static Object get(Field f, Object target) {
+		try {
+			return f.get(target);
+		} catch (IllegalAccessException ex) {
+			throw new RuntimeException("Unexpected error while reading field "+f, ex);
+		}
+	}
+
+	private static void set(Field f, Object target, Object value) {
+		try {
+			f.set(target, value);
+		} catch (IllegalAccessException ex) {
+			throw new RuntimeException("Unexpected error while restoring field "+f, ex);
+		}
+	}
+
+	private static void writeValue(DataOutputStream out, Field f, Object value) throws IOException {
+		Class<?> type = f.getType();
+		if (value == null) {
+			out.writeByte(NULL);
+		}
+		else if (type == boolean.class) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if (type == byte.class) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		}
+		else if (type == char.class) {
+			out.writeByte(CHAR);
+			out.writeChar((Character) value);
+		}
+		else if (type == short.class) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		}
+		else if (type == int.class) {
+			out.writeByte(INT);
+			out.writeInt((Integer) value);
+		}
+		else if (type == long.class) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		}
+		else if (type == float.class) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		}
+		else if (type == double.class) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (value instanceof Counter) {
+			out.writeByte(COUNTER);
+			out.writeDouble(((Counter) value).getValue());
+		}
+		else if (value instanceof String) {
+			out.writeByte(STRING);
+			out.writeUTF((String) value);
+		}
+		else if (value instanceof Serializable) {
+			out.writeByte(OBJECT);
+			writeObject(out, value);
+		}
+		else {
+			throw new IllegalStateException("Field "+f+" holds a "+value.getClass().getName()
+					+" which is not Serializable, so the state can not be checkpointed. Mark the field transient "
+					+"if it does not need to be restored.");
+		}
+	}
+
+	private static void readValue(DataInputStream in, Field f, Object target) throws IOException {
+		byte tag = in.readByte();
+		Object value;
+		switch (tag) {
+		case NULL: value = null; break;
+		case BOOLEAN: value = in.readBoolean(); break;
+		case BYTE: value = in.readByte(); break;
+		case CHAR: value = in.readChar(); break;
+		case SHORT: value = in.readShort(); break;
+		case INT: value = in.readInt(); break;
+		case LONG: value = in.readLong(); break;
+		case FLOAT: value = in.readFloat(); break;
+		case DOUBLE: value = in.readDouble(); break;
+		case COUNTER:
+			Counter c = (Counter) get(f, target);
+			if (c == null) {
+				throw new IllegalStateException("Counter field "+f+" has not been initialized");
+			}
+			c.setValue(in.readDouble());
+			return;
+		case STRING: value = in.readUTF(); break;
+		case OBJECT: value = readObject(in); break;
+		default:
+			throw new IllegalStateException("Corrupt checkpoint: unknown value of field "+f);
+		}
+		boolean parameter = Modifier.isFinal(f.getModifiers())
+				&& (f.getType().isPrimitive() || f.getType() == String.class);
+		if (parameter) {
+			Object current = get(f, target);
+			if (!Objects.equals(current, value)) {
+				throw new IllegalStateException("Parameter "+f.getName()+" is "+current
+						+", but the checkpoint was made with value "+value);
+			}
+		}
+		else if (tag == OBJECT && Modifier.isFinal(f.getModifiers()) && restoreInPlace(get(f, target), value)) {
+			return;
+		}
+		else {
+			set(f, target, value);
+		}
+	}
+
+	/**
+	 * Copies the non-transient fields of a restored object into the current object, if both are of
+	 * the same class outside of the JDK.
+	 *
+	 * @return true if the fields were copied
+	 */
+	private static boolean restoreInPlace(Object current, Object value) {
+		if (current == null || value == null || current.getClass() != value.getClass()
+				|| current.getClass().getModule().isNamed()) {
+			return false;
+		}
+		for (Class<?> c = current.getClass(); c != null && !c.getModule().isNamed(); c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				int mod = field.getModifiers();
+				if (Modifier.isStatic(mod) || Modifier.isTransient(mod)) {
+					continue;
+				}
+				field.setAccessible(true);
+				set(field, current, get(field, value));
+			}
+		}
+		return true;
+	}
+
+	private static void writeObject(DataOutputStream out, Object o) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+			oos.writeObject(o);
+		}
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	private static Object readObject(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return ois.readObject();
+		} catch (ClassNotFoundException ex) {
+			throw new IOException("The checkpoint contains an object of an unknown class", ex);
+		}
+	}
+}
@@ -0,0 +1,397 @@
+package general.checkpoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import general.Counter;
+import general.Event;
+import general.ForkableRandom;
+import general.SystemState;
+import general.automagic.HandlerEvent;
+
+/**
+ * A copy of the dynamic state of a {@link SystemState} in memory, like a {@link StateSnapshot}, but
+ * meant to fork a replication many times in the middle of a run rather than to store it. Instead of
+ * serializing the state, the values of its fields are copied by reflection, and restored into the
+ * objects that are already in the state:
+ * <ul>
+ * <li>primitive fields and {@link Counter}s are copied as their values, while final primitive and
+ * String fields are parameters of the model and are not copied at all,</li>
+ * <li>arrays are copied, and restored into the array that is in the field if it has the same length,</li>
+ * <li>objects of classes of the model, such as a {@link general.resources.Resource}, are copied field
+ * by field and restored in place, so other objects that refer to them keep doing so,</li>
+ * <li>a {@link ForkableRandom}, the generator of every state, is copied as its position in its stream,</li>
+ * <li>immutable objects and lambdas are kept as they are, and other objects of the JDK are serialized.</li>
+ * </ul>
+ * Events in the queue are copied like in a snapshot, so they must either be {@link HandlerEvent}s or be
+ * {@link Serializable}. An object that is referred to more than once is
+ * copied once. A fork can only be restored into the state it was taken from, or a state of the same
+ * class with the same parameters and the same objects in its final fields.
+ *
+ */
+public final class StateFork {
+
+	private static final ClassValue<Plan> PLANS = new ClassValue<Plan>() {
+		@Override
+		protected Plan computeValue(Class<?> type) {
+			return new Plan(type);
+		}
+	};
+
+	private final Class<?> type;
+	private final double[] counters;
+	private final ObjectCopy fields;
+	private final double[] times;
+	private final int[] handlers;
+	private final int[] entities;
+	private final SerializedCopy[] others;
+
+	private StateFork(SystemState<?> state) {
+		this.type = state.getClass();
+		this.counters = new double[state.getCounterCount()];
+		state.copyCounterValues(counters, 0);
+		Map<Object,Boolean> seen = new IdentityHashMap<>();
+		seen.put(state, Boolean.TRUE);
+		this.fields = new ObjectCopy(PLANS.get(type), state, seen);
+
+		PriorityQueue<? extends Event<?>> queue = state.getQueue();
+		int n = queue.size();
+		this.times = new double[n];
+		this.handlers = new int[n];
+		this.entities = new int[n];
+		this.others = new SerializedCopy[n];
+		int i = 0;
+		// the internal order of the queue, which is reproduced exactly when the events are added in this order
+		for (Event<?> e : queue) {
+			times[i] = e.getTime();
+			if (e instanceof HandlerEvent) {
+				handlers[i] = e.getHandlerId();
+				entities[i] = ((HandlerEvent<?>) e).getEntity();
+			}
+			else if (e instanceof Serializable) {
+				others[i] = serialize(e);
+			}
+			else {
+				throw new IllegalStateException("Event "+e+" of type "+e.getClass().getName()+" can not be forked. "
+						+ "Schedule events through SystemState.registerHandler and addEvent(double, int), "
+						+ "or make the event Serializable.");
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * Forks a state, which must not be processing an event.
+	 *
+	 * @param state	The state
+	 * @return		The fork
+	 */
+	public static StateFork of(SystemState<?> state) {
+		return new StateFork(state);
+	}
+
+	/**
+	 * Restores the fork into a state, replacing its events, after which the replication continues exactly
+	 * as it would have from the moment the fork was taken.
+	 *
+	 * @param state	The state the fork was taken from, or one of the same class with the same parameters
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void restore(SystemState<?> state) {
+		if (state.getClass() != type) {
+			throw new IllegalStateException("The fork contains a state of type "+type.getName()
+					+", but it is restored into a "+state.getClass().getName());
+		}
+		if (state.getCounterCount() != counters.length) {
+			throw new IllegalStateException("The fork contains "+counters.length+" counters, but the state has "+state.getCounterCount());
+		}
+		state.setCounterValues(counters, 0);
+		fields.restoreInto(state);
+
+		PriorityQueue queue = state.getQueue();
+		queue.clear();
+		for (int i = 0; i < times.length; i++) {
+			if (others[i] != null) {
+				queue.add(others[i].restoreInto(null));
+			}
+			else {
+				queue.add(new HandlerEvent(times[i], handlers[i], entities[i]));
+			}
+		}
+	}
+
+	/**
+	 * Copies a value of a field, given the objects that have already been copied.
+	 */
+	private static Object copy(Object value, Map<Object,Boolean> seen) {
+		if (value == null || isImmutable(value.getClass())) {
+			return value;
+		}
+		if (seen.put(value, Boolean.TRUE) != null) {
+			return Alias.INSTANCE;
+		}
+		Class<?> cls = value.getClass();
+		if (value instanceof Counter) {
+			return new CounterCopy(((Counter) value).getValue());
+		}
+		if (value instanceof ForkableRandom) {
+			ForkableRandom random = (ForkableRandom) value;
+			return new RandomCopy(random.getState(), random.getNextGaussian());
+		}
+		if (cls.isArray()) {
+			if (cls.getComponentType().isPrimitive()) {
+				return new ArrayCopy(null, cloneArray(value));
+			}
+			Object[] array = (Object[]) value;
+			Object[] elements = new Object[array.length];
+			for (int i = 0; i < array.length; i++) {
+				elements[i] = copy(array[i], seen);
+			}
+			return new ArrayCopy(cls, elements);
+		}
+		if (!cls.getModule().isNamed()) {
+			return new ObjectCopy(PLANS.get(cls), value, seen);
+		}
+		if (value instanceof Serializable) {
+			return serialize(value);
+		}
+		throw new IllegalStateException("The state holds a "+cls.getName()+" which is not Serializable, so the state can not be forked. "
+				+ "Mark the field transient if it does not need to be restored.");
+	}
+
+	private static SerializedCopy serialize(Object value) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+			oos.writeObject(value);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to fork an object of type "+value.getClass().getName(), ex);
+		}
+		return new SerializedCopy(bytes.toByteArray());
+	}
+
+	/**
+	 * Restores a copied value, preferably into the current value of the field.
+	 *
+	 * @return the value the field should have
+	 */
+	private static Object restore(Object copy, Object current) {
+		if (copy instanceof Copy) {
+			return ((Copy) copy).restoreInto(current);
+		}
+		// null, or an immutable value
+		return copy;
+	}
+
+	private static boolean isImmutable(Class<?> cls) {
+		return cls == String.class || cls == Integer.class || cls == Long.class || cls == Double.class
+				|| cls == Boolean.class || cls == Character.class || cls == Byte.class || cls == Short.class
+				|| cls == Float.class || cls == Class.class || cls.isEnum() || cls.isHidden() || cls.isSynthetic();
+	}
+
+	private static Object cloneArray(Object array) {
+		int length = Array.getLength(array);
+		Object clone = Array.newInstance(array.getClass().getComponentType(), length);
+		System.arraycopy(array, 0, clone, 0, length);
+		return clone;
+	}
+
+	/**
+	 * The fields of a class that are copied, which are those of the class and its superclasses outside
+	 * the JDK, except for static and transient fields, final primitive and String fields, and the fields
+	 * of {@link SystemState} that are managed by the framework.
+	 */
+	private static final class Plan {
+
+		private final Field[] fields;
+
+		private Plan(Class<?> type) {
+			List<Field> result = new ArrayList<>();
+			for (Class<?> c = type; c != null && !c.getModule().isNamed(); c = c.getSuperclass()) {
+				for (Field f : c.getDeclaredFields()) {
+					int mod = f.getModifiers();
+					if (Modifier.isStatic(mod) || Modifier.isTransient(mod) || f.isSynthetic()) {
+						continue;
+					}
+					if (Modifier.isFinal(mod) && (f.getType().isPrimitive() || f.getType() == String.class)) {
+						continue;
+					}
+					if (c == SystemState.class && StateCodec.MANAGED.contains(f.getName())) {
+						continue;
+					}
+					f.setAccessible(true);
+					result.add(f);
+				}
+			}
+			this.fields = result.toArray(new Field[0]);
+		}
+	}
+
+	/**
+	 * A copied value that is restored into the current value of a field.
+	 */
+	private interface Copy {
+		Object restoreInto(Object current);
+	}
+
+	/**
+	 * An object that was already copied through another field, which keeps its current value.
+	 */
+	private static final class Alias implements Copy {
+
+		private static final Alias INSTANCE = new Alias();
+
+		@Override
+		public Object restoreInto(Object current) {
+			return current;
+		}
+	}
+
+	private static final class CounterCopy implements Copy {
+
+		private final double value;
+
+		private CounterCopy(double value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object restoreInto(Object current) {
+			if (!(current instanceof Counter)) {
+				throw new IllegalStateException("A counter of the state was replaced after it was forked");
+			}
+			((Counter) current).setValue(value);
+			return current;
+		}
+	}
+
+	private static final class RandomCopy implements Copy {
+
+		private final long state;
+		private final double gaussian;
+
+		private RandomCopy(long state, double gaussian) {
+			this.state = state;
+			this.gaussian = gaussian;
+		}
+
+		@Override
+		public Object restoreInto(Object current) {
+			ForkableRandom random = current instanceof ForkableRandom ? (ForkableRandom) current : new ForkableRandom(0);
+			random.setState(state);
+			random.setNextGaussian(gaussian);
+			return random;
+		}
+	}
+
+	private static final class ArrayCopy implements Copy {
+
+		// the array type of an array of objects, or null if values holds a copy of an array of primitives
+		private final Class<?> type;
+		private final Object values;
+
+		private ArrayCopy(Class<?> type, Object values) {
+			this.type = type;
+			this.values = values;
+		}
+
+		@Override
+		public Object restoreInto(Object current) {
+			if (type == null) {
+				int length = Array.getLength(values);
+				if (current != null && current.getClass() == values.getClass() && Array.getLength(current) == length) {
+					System.arraycopy(values, 0, current, 0, length);
+					return current;
+				}
+				return cloneArray(values);
+			}
+			Object[] elements = (Object[]) values;
+			Object[] array = current != null && current.getClass() == type && ((Object[]) current).length == elements.length
+					? (Object[]) current
+					: (Object[]) Array.newInstance(type.getComponentType(), elements.length);
+			for (int i = 0; i < elements.length; i++) {
+				Object element = array == current ? array[i] : null;
+				array[i] = restore(elements[i], element);
+			}
+			return array;
+		}
+	}
+
+	private static final class ObjectCopy implements Copy {
+
+		private final Plan plan;
+		private final Class<?> type;
+		private final Object[] values;
+
+		private ObjectCopy(Plan plan, Object object, Map<Object,Boolean> seen) {
+			this.plan = plan;
+			this.type = object.getClass();
+			this.values = new Object[plan.fields.length];
+			for (int i = 0; i < values.length; i++) {
+				Field f = plan.fields[i];
+				try {
+					values[i] = f.getType().isPrimitive() ? f.get(object) : copy(f.get(object), seen);
+				} catch (IllegalAccessException ex) {
+					throw new RuntimeException("Unexpected error while forking field "+f, ex);
+				}
+			}
+		}
+
+		@Override
+		public Object restoreInto(Object current) {
+			if (current == null || current.getClass() != type) {
+				throw new IllegalStateException("An object of type "+type.getName()+" of the state was replaced after it was forked");
+			}
+			for (int i = 0; i < values.length; i++) {
+				Field f = plan.fields[i];
+				try {
+					if (f.getType().isPrimitive()) {
+						f.set(current, values[i]);
+					}
+					else {
+						Object now = f.get(current);
+						Object restored = restore(values[i], now);
+						if (restored != now) {
+							f.set(current, restored);
+						}
+					}
+				} catch (IllegalAccessException ex) {
+					throw new RuntimeException("Unexpected error while restoring field "+f, ex);
+				}
+			}
+			return current;
+		}
+	}
+
+	private static final class SerializedCopy implements Copy {
+
+		private final byte[] bytes;
+
+		private SerializedCopy(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public Object restoreInto(Object current) {
+			try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+				return ois.readObject();
+			} catch (IOException ex) {
+				throw new UncheckedIOException("Unable to restore a forked object", ex);
+			} catch (ClassNotFoundException ex) {
+				throw new IllegalStateException("Unable to restore a forked object", ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package general.checkpoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import general.SystemState;
+
+/**
+ * An immutable snapshot of the complete dynamic state of a {@link SystemState}, including its
+ * event queue, counters and random number generators. A snapshot can be restored into any state
+ * of the same class that was constructed with the same parameters. See {@link StateCodec} for what
+ * is captured and which requirements the state has to satisfy.
+ *
+ */
+public final class StateSnapshot {
+
+	private final byte[] bytes;
+
+	private StateSnapshot(byte[] bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 * @param state	the state to take a snapshot of
+	 * @return		a snapshot of the current state
+	 */
+	public static StateSnapshot of(SystemState<?> state) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (DataOutputStream data = new DataOutputStream(out)) {
+			StateCodec.write(data, state);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to take a snapshot of the state", ex);
+		}
+		return new StateSnapshot(out.toByteArray());
+	}
+
+	/**
+	 * @param bytes	bytes obtained from {@link #toByteArray()}
+	 * @return		the snapshot represented by the bytes
+	 */
+	public static StateSnapshot fromByteArray(byte[] bytes) {
+		return new StateSnapshot(bytes.clone());
+	}
+
+	/**
+	 * @return the serialized form of this snapshot
+	 */
+	public byte[] toByteArray() {
+		return bytes.clone();
+	}
+
+	/**
+	 * Restores this snapshot into a state.
+	 *
+	 * @param target the state to restore, which must be of the same class and parameters
+	 */
+	public void restore(SystemState<?> target) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			StateCodec.read(in, target);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Corrupt state snapshot", ex);
+		}
+	}
+
+	/**
+	 * @param out the stream to write the serialized form of this snapshot to
+	 * @throws IOException if writing fails
+	 */
+	void writeTo(DataOutputStream out) throws IOException {
+		out.write(bytes);
+	}
+}
@@ -14,6 +14,22 @@ import java.lang.annotation.Target;
  * <code>boolean</code> or @{link Boolean} as a return type. If multiple annotated
  * methods, the simulation stops if any of the methods returns true.
  * 
+ * By default an annotated method is called before every event. A method can instead declare the
+ * {@link #counters()} and {@link #handlers()} its result depends on, for example
+ * <pre>
+ * &#64;StopCriterium(handlers = "doClean")
+ * public boolean veryDangerousCheck() {
+ *     return this.runOver;
+ * }
+ * </pre>
+ * in which case it is only called before the first event and after an event in which one of these
+ * counters changed or one of these handlers ran. If the method also reads a field that changes
+ * elsewhere, the state should call {@link general.SystemState#requestTerminationCheck()} after
+ * changing it. As long as the declared dependencies are complete, the replication terminates before
+ * the same event as it would when the method is called before every event. Only when all annotated
+ * methods declare their dependencies is the check before every event skipped.
+ * A state can also stop without any criterion by calling {@link general.SystemState#signalTermination()}.
+ * 
  * @author Paul Bouman
  *
  */
@@ -21,4 +37,21 @@ import java.lang.annotation.Target;
 @Target(METHOD)
 public @interface StopCriterium {
 
+	/**
+	 * @return the names of the {@link general.Counter} fields of the state the criterion depends on
+	 */
+	String[] counters() default {};
+	
+	/**
+	 * @return the names of the registered handlers after whose events the criterion is checked,
+	 * 			typically because they change a field it reads
+	 */
+	String[] handlers() default {};
+	
+	/**
+	 * @return true if the criterion is only checked before the first event and when the state calls
+	 * 			{@link general.SystemState#requestTerminationCheck()}, in addition to the declared
+	 * 			counters and handlers
+	 */
+	boolean requested() default false;
 }
@@ -4,6 +4,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,10 +12,12 @@ import java.util.Map.Entry;
 import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 
 import general.annotations.AutoCounter;
 import general.annotations.AutoMeasure;
 import general.automagic.ConsumerEvent;
+import general.automagic.HandlerEvent;
 import general.automagic.ReflectivePerformanceMeasure;
 import general.automagic.RunnableEvent;
 
@@ -33,10 +36,22 @@ public abstract class SystemState<S extends SystemState<S>> {
 	private final PriorityQueue<Event<S>> queue;
 	
 	private final List<Counter> counters;
+	// the values of the counters, in the order of the list, and the values they are reset to
+	private final double[] counterValues;
+	private final double[] counterInitialValues;
 	private final Random random;
 
 	private Map<Field,Counter> autoCounters;
 	
+	private final List<DoubleConsumer> handlers;
+	private final List<EntityHandler> entityHandlers;
+	private final List<String> handlerNames;
+	private final List<PooledEvent<S>> eventPool;
+	
+	private boolean terminationSignalled;
+	private boolean terminationCheckPending = true;
+	private boolean[] terminationHandlers = new boolean[0];
+	
 	public SystemState(double timeHorizon, long seed) {
 		this(timeHorizon, null, seed);
 	}
@@ -46,15 +61,26 @@ public abstract class SystemState<S extends SystemState<S>> {
 			List<Counter> counters, 
 			long seed) {
 		currentTime = 0;
-		random = new Random(seed);
+		random = new ForkableRandom(seed);
 		queue = new PriorityQueue<>();
+		handlers = new ArrayList<>();
+		entityHandlers = new ArrayList<>();
+		handlerNames = new ArrayList<>();
+		eventPool = new ArrayList<>();
 		
 		this.timeHorizon = timeHorizon;
 		if (counters == null) {
 			this.counters = getAutoCounters();
 		}
 		else {
-			this.counters = counters;
+			this.counters = new ArrayList<>(counters);
+		}
+		counterValues = new double[this.counters.size()];
+		counterInitialValues = new double[this.counters.size()];
+		for (int i = 0; i < counterValues.length; i++) {
+			Counter c = this.counters.get(i);
+			counterInitialValues[i] = c.getInitialValue();
+			c.bind(counterValues, i);
 		}
 	}
 	
@@ -122,6 +148,179 @@ public abstract class SystemState<S extends SystemState<S>> {
 		addEvent(event);
 	}
 	
+	/**
+	 * Registers an event handler under a name, such that events for this handler can be scheduled
+	 * with {@link #addEvent(double, int)}. Events created this way can be identified by tools that
+	 * observe the simulation, for example an {@link general.trace.EventTracer}. Handlers are typically
+	 * registered once in the constructor of a subclass.
+	 * 
+	 * Events scheduled this way are reused once they have been processed, and the time is passed to
+	 * the handler as a primitive, so a model that schedules all its events through handlers does
+	 * not allocate any objects while it runs.
+	 * 
+	 * @param name		The name of the handler, for example the name of the method it calls
+	 * @param action	The action to perform at the time of the event
+	 * @return			The id of the handler, to be passed to {@link #addEvent(double, int)}
+	 */
+	public int registerHandler(String name, DoubleConsumer action) {
+		if (action == null) {
+			throw new IllegalArgumentException("The name and action of a handler cannot be null.");
+		}
+		int handler = registerEntityHandler(name, (time, entity) -> action.accept(time));
+		handlers.set(handler, action);
+		return handler;
+	}
+	
+	/**
+	 * Registers an event handler that acts on a single entity, such as a person that leaves a server.
+	 * Events for this handler are scheduled with {@link #addEvent(double, int, int)}, which passes the
+	 * id of the entity to the handler. Entity ids are typically allocated from a
+	 * {@link general.resources.EntityStore}.
+	 * 
+	 * @param name		The name of the handler, for example the name of the method it calls
+	 * @param action	The action to perform at the time of the event
+	 * @return			The id of the handler, to be passed to {@link #addEvent(double, int, int)}
+	 */
+	public int registerEntityHandler(String name, EntityHandler action) {
+		if (name == null || action == null) {
+			throw new IllegalArgumentException("The name and action of a handler cannot be null.");
+		}
+		if (handlerNames.contains(name)) {
+			throw new IllegalArgumentException("A handler with name '"+name+"' has already been registered.");
+		}
+		handlers.add(null);
+		entityHandlers.add(action);
+		handlerNames.add(name);
+		return handlers.size() - 1;
+	}
+	
+	/**
+	 * Schedules an event for a handler that was registered using {@link #registerHandler(String, DoubleConsumer)}.
+	 * 
+	 * @param time		the time at which the event takes place
+	 * @param handler	the id of the handler
+	 */
+	public void addEvent(double time, int handler) {
+		addEvent(time, handler, HandlerEvent.NO_ENTITY);
+	}
+	
+	/**
+	 * Schedules an event for an entity, for a handler that was registered using 
+	 * {@link #registerEntityHandler(String, EntityHandler)}.
+	 * 
+	 * @param time		the time at which the event takes place
+	 * @param handler	the id of the handler
+	 * @param entity	the id of the entity that is passed to the handler
+	 */
+	public void addEvent(double time, int handler, int entity) {
+		if (handler < 0 || handler >= handlers.size()) {
+			throw new IllegalArgumentException("Unknown event handler "+handler);
+		}
+		PooledEvent<S> e;
+		if (eventPool.isEmpty()) {
+			e = new PooledEvent<>(time, handler, entity);
+		}
+		else {
+			e = eventPool.remove(eventPool.size() - 1);
+			e.reuse(time, handler, entity);
+		}
+		addEvent(e);
+	}
+	
+	/**
+	 * Returns an event to the pool of events, if it was created by {@link #addEvent(double, int, int)}.
+	 * This is called by {@link Replication} when an event has been removed from the queue and is
+	 * no longer used.
+	 * 
+	 * @param e	the event that is no longer used
+	 */
+	void recycle(Event<S> e) {
+		if (e instanceof PooledEvent) {
+			eventPool.add((PooledEvent<S>) e);
+		}
+	}
+	
+	/**
+	 * Removes all events from the event queue, and recycles them.
+	 */
+	void clearQueue() {
+		Event<S> e;
+		while ((e = queue.poll()) != null) {
+			recycle(e);
+		}
+	}
+	
+	/**
+	 * Resets all counters to their initial value at once, as their values are kept in one array.
+	 */
+	void resetCounters() {
+		System.arraycopy(counterInitialValues, 0, counterValues, 0, counterValues.length);
+	}
+	
+	/**
+	 * Copies the values of all counters, in the order of {@link #getCounters()}, into an array, for
+	 * example a row of results or a copy of the state.
+	 * 
+	 * @param dest		The array to copy the values into
+	 * @param offset	The index in the array of the value of the first counter
+	 */
+	public void copyCounterValues(double[] dest, int offset) {
+		System.arraycopy(counterValues, 0, dest, offset, counterValues.length);
+	}
+	
+	/**
+	 * Sets the values of all counters, in the order of {@link #getCounters()}, for example when the
+	 * state is restored from a copy.
+	 * 
+	 * @param src		The array with the values
+	 * @param offset	The index in the array of the value of the first counter
+	 */
+	public void setCounterValues(double[] src, int offset) {
+		System.arraycopy(src, offset, counterValues, 0, counterValues.length);
+		requestTerminationCheck();
+	}
+	
+	/**
+	 * 
+	 * @return Returns the number of counters
+	 */
+	public int getCounterCount() {
+		return counterValues.length;
+	}
+	
+	/**
+	 * @param handler	the id of a registered handler
+	 * @return			the action of the handler, or <code>null</code> if it was registered with
+	 * 					{@link #registerEntityHandler(String, EntityHandler)}
+	 */
+	public DoubleConsumer getHandler(int handler) {
+		return handlers.get(handler);
+	}
+	
+	/**
+	 * @param handler	the id of a registered handler
+	 * @return			the action of the handler, which ignores the entity if the handler was
+	 * 					registered with {@link #registerHandler(String, DoubleConsumer)}
+	 */
+	public EntityHandler getEntityHandler(int handler) {
+		return entityHandlers.get(handler);
+	}
+	
+	/**
+	 * @param handler	the id of a registered handler
+	 * @return			the name under which the handler was registered
+	 */
+	public String getHandlerName(int handler) {
+		return handlerNames.get(handler);
+	}
+	
+	/**
+	 * @return the names of all registered handlers, where the index in the list is the id of the handler
+	 */
+	public List<String> getHandlerNames() {
+		return new ArrayList<>(handlerNames);
+	}
+	
 	/**
 	 * @param e	Current event to be processed
 	 * @return	True if <code>Event e</code> passed the simulation horizon, false otherwise
@@ -131,6 +330,92 @@ public abstract class SystemState<S extends SystemState<S>> {
 		return eventTime > timeHorizon;
 	}
 	
+	/**
+	 * Terminates the replication before the next event is processed, with status
+	 * {@link Status#USER_TERMINATED}, exactly as if a termination criterion had become true. This is
+	 * the cheapest way to stop, as nothing has to be checked before the other events.
+	 */
+	public void signalTermination() {
+		terminationSignalled = true;
+	}
+	
+	/**
+	 * @return	True if {@link #signalTermination()} was called since the last reset, false otherwise
+	 */
+	public boolean isTerminationSignalled() {
+		return terminationSignalled;
+	}
+	
+	/**
+	 * Lets the replication check its termination criteria before the next event. Only needed when
+	 * the criteria declare their dependencies, see {@link general.annotations.StopCriterium}, and a
+	 * value they read changed outside the counters and handlers they depend on.
+	 */
+	public void requestTerminationCheck() {
+		terminationCheckPending = true;
+	}
+	
+	/**
+	 * Makes a counter request a check of the termination criteria whenever its value changes.
+	 * 
+	 * @param counter	A counter the termination criteria depend on
+	 */
+	public void addTerminationDependency(Counter counter) {
+		counter.watch(this);
+	}
+	
+	/**
+	 * Makes every event of a handler request a check of the termination criteria, typically because
+	 * the handler changes a field the criteria read.
+	 * 
+	 * @param handler	The id of a registered handler the termination criteria depend on
+	 */
+	public void addTerminationDependency(int handler) {
+		if (handler < 0 || handler >= handlerNames.size()) {
+			throw new IllegalArgumentException("Unknown handler "+handler);
+		}
+		if (handler >= terminationHandlers.length) {
+			terminationHandlers = Arrays.copyOf(terminationHandlers, handlerNames.size());
+		}
+		terminationHandlers[handler] = true;
+	}
+	
+	/**
+	 * @return	True if some handler was registered with {@link #addTerminationDependency(int)}
+	 */
+	boolean hasTerminationHandlers() {
+		return terminationHandlers.length > 0;
+	}
+	
+	/**
+	 * Called before an event is processed, to request a check of the termination criteria if its
+	 * handler is one they depend on.
+	 */
+	void beforeEvent(Event<S> e) {
+		int handler = e.getHandlerId();
+		if (handler >= 0 && handler < terminationHandlers.length && terminationHandlers[handler]) {
+			terminationCheckPending = true;
+		}
+	}
+	
+	/**
+	 * @return	True if a check of the termination criteria was requested since the last call
+	 */
+	boolean takeTerminationCheck() {
+		boolean pending = terminationCheckPending;
+		terminationCheckPending = false;
+		return pending;
+	}
+	
+	/**
+	 * Forgets a signalled termination and requests a check of the termination criteria, at the
+	 * start of a replication.
+	 */
+	void resetTermination() {
+		terminationSignalled = false;
+		terminationCheckPending = true;
+	}
+	
 	/**
 	 * The counters appear in the list in the same order they were passed to the constructor.
 	 * In case the counters were generated automatically based on {@link AutoCounter} annotations,
@@ -195,18 +480,17 @@ public abstract class SystemState<S extends SystemState<S>> {
 		}
 		for (Entry<Field,Counter> e : autoCounters.entrySet()) {
 			try {
+				// the fields were made accessible when the counters were created
 				Field f = e.getKey();
 				Counter c = e.getValue();
-				boolean acc = f.isAccessible();
-				f.setAccessible(true);
 				Object cur = f.get(this);
 				if (cur != null && cur != c) {
 					throw new RuntimeException("It seems that @AutoCounter annotated field '"+f.getName()+"' in "+f.getDeclaringClass().getName()+" was assigned a new unmanaged value. "
 							+ "Please make sure you never assign a value to an automatically managed Counter yourself.");
 				}
-				f.set(this, c);
-				f.setAccessible(acc);
-				autoCounters.put(f, c);
+				if (cur == null) {
+					f.set(this, c);
+				}
 			} catch (IllegalArgumentException | IllegalAccessException ex) {
 				throw new RuntimeException("Unexpected error while injecting @AutoCounter fields.", ex);
 			}
@@ -216,18 +500,25 @@ public abstract class SystemState<S extends SystemState<S>> {
 	private List<Counter> getAutoCounters() {
 		if (autoCounters == null) {
 			autoCounters = new LinkedHashMap<>();
-			Class<?> clz = this.getClass();
-			for (Field f : clz.getDeclaredFields()) {
-				if (f.isAnnotationPresent(AutoCounter.class)) {
-					if (!Counter.class.isAssignableFrom(f.getType())) {
-						throw new IllegalStateException("Field "+f+" has an @AutoCounter annotation but is not of type Counter.");
-					}
-					if (Modifier.isFinal(f.getModifiers())) {
-						throw new IllegalStateException("Field "+f+" has an @AutoCounter annotation but is also final.");
+			// the counters of superclasses come first, such that a model can be extended
+			List<Class<?>> classes = new ArrayList<>();
+			for (Class<?> clz = this.getClass(); clz != SystemState.class; clz = clz.getSuperclass()) {
+				classes.add(0, clz);
+			}
+			for (Class<?> clz : classes) {
+				for (Field f : clz.getDeclaredFields()) {
+					if (f.isAnnotationPresent(AutoCounter.class)) {
+						if (!Counter.class.isAssignableFrom(f.getType())) {
+							throw new IllegalStateException("Field "+f+" has an @AutoCounter annotation but is not of type Counter.");
+						}
+						if (Modifier.isFinal(f.getModifiers())) {
+							throw new IllegalStateException("Field "+f+" has an @AutoCounter annotation but is also final.");
+						}
+						AutoCounter ac = f.getAnnotation(AutoCounter.class);
+						Counter c = new Counter(ac.initialValue(), ac.value());
+						f.setAccessible(true);
+						autoCounters.put(f, c);
 					}
-					AutoCounter ac = f.getAnnotation(AutoCounter.class);
-					Counter c = new Counter(ac.initialValue(), ac.value());
-					autoCounters.put(f, c);
 				}
 			}
 		}
@@ -235,4 +526,19 @@ public abstract class SystemState<S extends SystemState<S>> {
 		return new ArrayList<>(autoCounters.values());
 	}
 	
+	/**
+	 * Event created by {@link SystemState#addEvent(double, int, int)}, which is reused after it has been processed
+	 */
+	private static final class PooledEvent<S extends SystemState<S>> extends HandlerEvent<S> {
+
+		private PooledEvent(double time, int handler, int entity) {
+			super(time, handler, entity);
+		}
+
+		private void reuse(double time, int handler, int entity) {
+			setTime(time);
+			setHandler(handler);
+			setEntity(entity);
+		}
+	}
 }
@@ -0,0 +1,167 @@
+package general.trace;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads a trace that was written by {@link EventTracer#dump(Path)}. The trace can also be
+ * printed as tab separated text by running this class with the file as its only argument.
+ *
+ */
+public class TraceDecoder {
+
+	private final List<String> handlers;
+	private final List<String> probes;
+	private final long recorded;
+	private final List<TraceRecord> records;
+
+	public TraceDecoder(Path file) {
+		ByteBuffer in;
+		try {
+			in = ByteBuffer.wrap(Files.readAllBytes(file));
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Unable to read trace from " + file, ex);
+		}
+		if (in.getInt() != EventTracer.MAGIC) {
+			throw new IllegalStateException(file + " does not contain an event trace");
+		}
+		short version = in.getShort();
+		if (version != EventTracer.VERSION) {
+			throw new IllegalStateException("Unsupported version " + version + " of the trace format");
+		}
+		handlers = readNames(in);
+		probes = readNames(in);
+		recorded = in.getLong();
+		int count = in.getInt();
+		List<TraceRecord> list = new ArrayList<>(count);
+		for (int r = 0; r < count; r++) {
+			double time = in.getDouble();
+			int handler = in.getInt();
+			int queueSize = in.getInt();
+			double[] values = new double[probes.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = in.getDouble();
+			}
+			list.add(new TraceRecord(time, handler, queueSize, values));
+		}
+		records = Collections.unmodifiableList(list);
+	}
+
+	private static List<String> readNames(ByteBuffer in) {
+		int n = in.getInt();
+		List<String> names = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			byte[] bytes = new byte[in.getShort() & 0xFFFF];
+			in.get(bytes);
+			names.add(new String(bytes, StandardCharsets.UTF_8));
+		}
+		return Collections.unmodifiableList(names);
+	}
+
+	/**
+	 * @return the recorded events, from oldest to newest
+	 */
+	public List<TraceRecord> getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return the names of the recorded state variables, in the order of {@link TraceRecord#getValues()}
+	 */
+	public List<String> getProbeNames() {
+		return probes;
+	}
+
+	/**
+	 * @return the total number of events recorded by the tracer, including those that were overwritten
+	 */
+	public long getRecorded() {
+		return recorded;
+	}
+
+	/**
+	 * @param handler	the id of a handler
+	 * @return			a readable name of the handler
+	 */
+	public String getHandlerName(int handler) {
+		if (handler == EventTracer.REPLICATION_START) {
+			return "<replication start>";
+		}
+		if (handler < 0 || handler >= handlers.size()) {
+			return "<unregistered>";
+		}
+		return handlers.get(handler);
+	}
+
+	/**
+	 * Prints the trace as tab separated text, with a header line.
+	 *
+	 * @param out the stream to print to
+	 */
+	public void print(PrintStream out) {
+		StringBuilder sb = new StringBuilder("time\thandler\tqueue");
+		for (String p : probes) {
+			sb.append('\t').append(p);
+		}
+		out.println(sb);
+		for (TraceRecord r : records) {
+			sb.setLength(0);
+			sb.append(r.getTime()).append('\t').append(getHandlerName(r.getHandler())).append('\t').append(r.getQueueSize());
+			for (double d : r.getValues()) {
+				sb.append('\t').append(d);
+			}
+			out.println(sb);
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length != 1) {
+			System.err.println("Usage: TraceDecoder <trace file>");
+			System.exit(1);
+		}
+		new TraceDecoder(Paths.get(args[0])).print(System.out);
+	}
+
+	/**
+	 * A single event in a trace
+	 */
+	public static class TraceRecord {
+
+		private final double time;
+		private final int handler;
+		private final int queueSize;
+		private final double[] values;
+
+		private TraceRecord(double time, int handler, int queueSize, double[] values) {
+			this.time = time;
+			this.handler = handler;
+			this.queueSize = queueSize;
+			this.values = values;
+		}
+
+		public double getTime() {
+			return time;
+		}
+
+		public int getHandler() {
+			return handler;
+		}
+
+		public int getQueueSize() {
+			return queueSize;
+		}
+
+		public double[] getValues() {
+			return values.clone();
+		}
+	}
+}
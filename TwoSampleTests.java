@@ -0,0 +1,247 @@
+package general.equivalence;
+
+import java.util.Arrays;
+
+import general.distributed.Welford;
+
+/**
+ * Tests of whether two samples come from the same distribution, used to compare the values of a
+ * performance measure in the replications of two simulations. The samples may contain ties, as
+ * many measures are counts or are often exactly zero.
+ *
+ */
+public final class TwoSampleTests {
+
+	// critical values of the standardized k-sample Anderson-Darling statistic, from Scholz and Stephens (1987),
+	// as b0 + b1 / sqrt(k - 1) + b2 / (k - 1) at the significance levels below
+	private static final double[] AD_LEVELS = { 0.25, 0.1, 0.05, 0.025, 0.01, 0.005, 0.001 };
+	private static final double[] AD_B0 = { 0.675, 1.281, 1.645, 1.96, 2.326, 2.573, 3.085 };
+	private static final double[] AD_B1 = { -0.245, 0.25, 0.678, 1.149, 1.822, 2.364, 3.615 };
+	private static final double[] AD_B2 = { -0.105, -0.305, -0.362, -0.391, -0.396, -0.345, -0.154 };
+
+	private TwoSampleTests() {
+	}
+
+	/**
+	 * @param x	The first sample
+	 * @param y	The second sample
+	 * @return	The two-sample Kolmogorov-Smirnov statistic, the largest difference of the empirical distribution functions
+	 */
+	public static double ksStatistic(double[] x, double[] y) {
+		double[] a = sorted(x);
+		double[] b = sorted(y);
+		int i = 0;
+		int j = 0;
+		double d = 0;
+		while (i < a.length && j < b.length) {
+			// step over all values equal to the smallest one left, so ties do not count as a difference
+			double z = Math.min(a[i], b[j]);
+			while (i < a.length && a[i] == z) {
+				i++;
+			}
+			while (j < b.length && b[j] == z) {
+				j++;
+			}
+			d = Math.max(d, Math.abs((double) i / a.length - (double) j / b.length));
+		}
+		return d;
+	}
+
+	/**
+	 * Computes the p-value of the Kolmogorov-Smirnov test with the asymptotic distribution of the statistic,
+	 * with the correction of Stephens for small samples. With ties the test is conservative.
+	 *
+	 * @param x	The first sample
+	 * @param y	The second sample
+	 * @return	The p-value
+	 */
+	public static double ksPValue(double[] x, double[] y) {
+		double en = Math.sqrt((double) x.length * y.length / (x.length + y.length));
+		return kolmogorov((en + 0.12 + 0.11 / en) * ksStatistic(x, y));
+	}
+
+	private static double kolmogorov(double lambda) {
+		// P(K > lambda) = 2 sum (-1)^(k-1) exp(-2 k^2 lambda^2)
+		if (lambda < 0.2) {
+			return 1;
+		}
+		double sum = 0;
+		double sign = 1;
+		for (int k = 1; k <= 100; k++) {
+			double term = sign * Math.exp(-2 * k * k * lambda * lambda);
+			sum += term;
+			if (Math.abs(term) < 1e-12) {
+				break;
+			}
+			sign = -sign;
+		}
+		return Math.max(0, Math.min(1, 2 * sum));
+	}
+
+	/**
+	 * Computes the standardized two-sample Anderson-Darling statistic of Scholz and Stephens (1987), in the version
+	 * for samples with ties (their A<sup>2</sup><sub>akN</sub>), minus its mean and divided by its standard deviation
+	 * under the hypothesis that both samples come from the same distribution.
+	 *
+	 * @param x	The first sample
+	 * @param y	The second sample
+	 * @return	The standardized statistic
+	 */
+	public static double andersonDarlingStatistic(double[] x, double[] y) {
+		if (x.length < 2 || y.length < 2) {
+			throw new IllegalArgumentException("Both samples must have at least two values");
+		}
+		double[] a = sorted(x);
+		double[] b = sorted(y);
+		int n = a.length + b.length;
+
+		// A2akN = (N - 1) / N^2 * sum_i 1 / n_i * sum_j l_j (N Maij - n_i Baj)^2 / (Baj (N - Baj) - N l_j / 4)
+		double sumA = 0;
+		double sumB = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.length || j < b.length) {
+			double z = j == b.length || i < a.length && a[i] <= b[j] ? a[i] : b[j];
+			int fa = 0;
+			while (i < a.length && a[i] == z) {
+				i++;
+				fa++;
+			}
+			int fb = 0;
+			while (j < b.length && b[j] == z) {
+				j++;
+				fb++;
+			}
+			int l = fa + fb;
+			double bj = i + j - l / 2.0;
+			double denominator = bj * (n - bj) - n * l / 4.0;
+			if (denominator <= 0) {
+				// only when all values are equal
+				continue;
+			}
+			double ma = i - fa / 2.0;
+			double mb = j - fb / 2.0;
+			sumA += l * sq(n * ma - a.length * bj) / denominator;
+			sumB += l * sq(n * mb - b.length * bj) / denominator;
+		}
+		double a2 = (n - 1.0) / ((double) n * n) * (sumA / a.length + sumB / b.length);
+
+		// the variance of the statistic under the hypothesis, for k = 2 samples
+		int k = 2;
+		double hh = 1.0 / a.length + 1.0 / b.length;
+		double h = 0;
+		for (int m = 1; m < n; m++) {
+			h += 1.0 / m;
+		}
+		// g = sum_{m=1}^{N-2} sum_{q=m+1}^{N-1} 1 / ((N - m) q), with the inner sum as a difference of harmonic numbers
+		double g = 0;
+		double harmonic = 0;
+		for (int m = 1; m <= n - 2; m++) {
+			harmonic += 1.0 / m;
+			g += (h - harmonic) / (n - m);
+		}
+		double ca = (4 * g - 6) * (k - 1) + (10 - 6 * g) * hh;
+		double cb = (2 * g - 4) * k * k + 8 * h * k + (2 * g - 14 * h - 4) * hh - 8 * h + 4 * g - 6;
+		double cc = (6 * h + 2 * g - 2) * k * k + (4 * h - 4 * g + 6) * k + (2 * h - 6) * hh + 4 * h;
+		double cd = (2 * h + 6) * k * k - 4 * h * k;
+		double nn = n;
+		double variance = ((ca * nn + cb) * nn + cc) * nn + cd;
+		variance /= (nn - 1) * (nn - 2) * (nn - 3);
+		return (a2 - (k - 1)) / Math.sqrt(variance);
+	}
+
+	/**
+	 * Computes the p-value of the two-sample Anderson-Darling test by interpolating the table of critical values of
+	 * Scholz and Stephens, like <code>scipy.stats.anderson_ksamp</code>. The table covers p-values between 0.001 and
+	 * 0.25, and p-values outside this range are clipped to it.
+	 *
+	 * @param x	The first sample
+	 * @param y	The second sample
+	 * @return	The approximate p-value, between 0.001 and 0.25
+	 */
+	public static double andersonDarlingPValue(double[] x, double[] y) {
+		double t = andersonDarlingStatistic(x, y);
+		// fit log(level) as a quadratic function of the critical value by least squares
+		double[] critical = new double[AD_LEVELS.length];
+		double[][] normal = new double[3][4];
+		for (int l = 0; l < AD_LEVELS.length; l++) {
+			critical[l] = AD_B0[l] + AD_B1[l] + AD_B2[l];
+			double[] powers = { 1, critical[l], critical[l] * critical[l] };
+			for (int r = 0; r < 3; r++) {
+				for (int c = 0; c < 3; c++) {
+					normal[r][c] += powers[r] * powers[c];
+				}
+				normal[r][3] += powers[r] * Math.log(AD_LEVELS[l]);
+			}
+		}
+		double[] coefficients = solve(normal);
+		if (t < critical[0]) {
+			return AD_LEVELS[0];
+		}
+		if (t > critical[critical.length - 1]) {
+			return AD_LEVELS[AD_LEVELS.length - 1];
+		}
+		double p = Math.exp(coefficients[0] + coefficients[1] * t + coefficients[2] * t * t);
+		return Math.max(AD_LEVELS[AD_LEVELS.length - 1], Math.min(AD_LEVELS[0], p));
+	}
+
+	/**
+	 * Computes the confidence interval of the difference of the means of two independent samples, with the
+	 * normal approximation, so it should be used with at least a few dozen values per sample.
+	 *
+	 * @param x	The statistics of the first sample
+	 * @param y	The statistics of the second sample
+	 * @param z	The quantile of the standard normal distribution of the confidence level, for example 1.96 for 95%
+	 * @return	The lower and upper bound of the interval of the mean of <code>x</code> minus the mean of <code>y</code>
+	 */
+	public static double[] meanDifferenceInterval(Welford x, Welford y, double z) {
+		double difference = x.getMean() - y.getMean();
+		double standardError = Math.sqrt(sq(x.getStandardError()) + sq(y.getStandardError()));
+		if (x.getM2() == 0 && y.getM2() == 0) {
+			// both samples are constant, the standard error is 0 and not NaN
+			standardError = 0;
+		}
+		return new double[] { difference - z * standardError, difference + z * standardError };
+	}
+
+	private static double[] solve(double[][] m) {
+		// Gaussian elimination with partial pivoting of an augmented matrix
+		int n = m.length;
+		for (int c = 0; c < n; c++) {
+			int pivot = c;
+			for (int r = c + 1; r < n; r++) {
+				if (Math.abs(m[r][c]) > Math.abs(m[pivot][c])) {
+					pivot = r;
+				}
+			}
+			double[] swap = m[c];
+			m[c] = m[pivot];
+			m[pivot] = swap;
+			for (int r = c + 1; r < n; r++) {
+				double f = m[r][c] / m[c][c];
+				for (int q = c; q <= n; q++) {
+					m[r][q] -= f * m[c][q];
+				}
+			}
+		}
+		double[] x = new double[n];
+		for (int r = n - 1; r >= 0; r--) {
+			double s = m[r][n];
+			for (int q = r + 1; q < n; q++) {
+				s -= m[r][q] * x[q];
+			}
+			x[r] = s / m[r][r];
+		}
+		return x;
+	}
+
+	private static double[] sorted(double[] values) {
+		double[] copy = values.clone();
+		Arrays.sort(copy);
+		return copy;
+	}
+
+	private static double sq(double x) {
+		return x * x;
+	}
+}
@@ -38,4 +38,119 @@ public final class Utils {
 	public static double nextServiceTime(Random random, double mu) {
 		return nextInterArrivalTime(random, mu);
 	}
+	
+	/**
+	 * Draws from a gamma distribution with the given shape and rate. For an integer shape <code>k</code>, this is the
+	 * Erlang distribution of the time until the <code>k</code>-th arrival of a Poisson process with rate {@code rate},
+	 * which is drawn in constant time rather than as the sum of <code>k</code> inter-arrival times.
+	 * Uses the method of Marsaglia and Tsang (2000).
+	 * 
+	 * @param random	{@link Random} object used to draw pseudo-random numbers
+	 * @param shape		Shape parameter, must be positive
+	 * @param rate		Rate parameter, must be positive
+	 * @return			Returns a realization drawn from a gamma distribution
+	 */
+	public static double nextGamma(Random random, double shape, double rate) {
+		if (!(shape > 0) || !(rate > 0)) {
+			throw new IllegalArgumentException("The shape and rate of a gamma distribution must be positive");
+		}
+		if (shape < 1) {
+			// boost the shape above 1, see Marsaglia and Tsang
+			return nextGamma(random, shape + 1, rate) * Math.pow(random.nextDouble(), 1 / shape);
+		}
+		double d = shape - 1.0 / 3;
+		double c = 1 / Math.sqrt(9 * d);
+		while (true) {
+			double x = random.nextGaussian();
+			double v = 1 + c * x;
+			if (v <= 0) {
+				continue;
+			}
+			v = v * v * v;
+			double u = random.nextDouble();
+			double x2 = x * x;
+			if (u < 1 - 0.0331 * x2 * x2 || Math.log(u) < 0.5 * x2 + d * (1 - v + Math.log(v))) {
+				return d * v / rate;
+			}
+		}
+	}
+	
+	/**
+	 * Draws from a beta distribution, as the ratio of two gamma distributed variables. The <code>k</code>-th
+	 * smallest of <code>n</code> independent uniform variables has a beta distribution with parameters 
+	 * <code>k</code> and <code>n - k + 1</code>.
+	 * 
+	 * @param random	{@link Random} object used to draw pseudo-random numbers
+	 * @param a			First shape parameter, must be positive
+	 * @param b			Second shape parameter, must be positive
+	 * @return			Returns a realization drawn from a beta distribution
+	 */
+	public static double nextBeta(Random random, double a, double b) {
+		double x = nextGamma(random, a, 1);
+		double y = nextGamma(random, b, 1);
+		return x / (x + y);
+	}
+	
+	/**
+	 * Draws from a Poisson distribution, for example the number of arrivals of a Poisson process in an interval.
+	 * For small means the multiplication method is used, and for larger means the transformed rejection method 
+	 * PTRS of Hoermann (1993), which takes constant expected time.
+	 * 
+	 * @param random	{@link Random} object used to draw pseudo-random numbers
+	 * @param mean		Mean of the distribution, must be non-negative
+	 * @return			Returns a realization drawn from a Poisson distribution with mean {@code mean}
+	 */
+	public static long nextPoisson(Random random, double mean) {
+		if (!(mean >= 0) || Double.isInfinite(mean)) {
+			throw new IllegalArgumentException("The mean of a Poisson distribution must be finite and non-negative");
+		}
+		if (mean < 10) {
+			double limit = Math.exp(-mean);
+			double p = random.nextDouble();
+			long k = 0;
+			while (p > limit) {
+				p *= random.nextDouble();
+				k++;
+			}
+			return k;
+		}
+		double sqrtMean = Math.sqrt(mean);
+		double logMean = Math.log(mean);
+		double b = 0.931 + 2.53 * sqrtMean;
+		double a = -0.059 + 0.02483 * b;
+		double invAlpha = 1.1239 + 1.1328 / (b - 3.4);
+		double vr = 0.9277 - 3.6224 / (b - 2);
+		while (true) {
+			double u = random.nextDouble() - 0.5;
+			double v = random.nextDouble();
+			double us = 0.5 - Math.abs(u);
+			long k = (long) Math.floor((2 * a / us + b) * u + mean + 0.43);
+			if (us >= 0.07 && v <= vr) {
+				return k;
+			}
+			if (k < 0 || (us < 0.013 && v > us)) {
+				continue;
+			}
+			if (Math.log(v) + Math.log(invAlpha) - Math.log(a / (us * us) + b) <= -mean + k * logMean - logFactorial(k)) {
+				return k;
+			}
+		}
+	}
+	
+	private static final double[] LOG_FACTORIALS = new double[256];
+	
+	static {
+		for (int i = 1; i < LOG_FACTORIALS.length; i++) {
+			LOG_FACTORIALS[i] = LOG_FACTORIALS[i - 1] + Math.log(i);
+		}
+	}
+	
+	private static double logFactorial(long k) {
+		if (k < LOG_FACTORIALS.length) {
+			return LOG_FACTORIALS[(int) k];
+		}
+		// Stirling's series, which is accurate to double precision from here on
+		double x = k;
+		return x * Math.log(x) - x + 0.5 * Math.log(2 * Math.PI * x) + 1 / (12 * x) - 1 / (360 * x * x * x);
+	}
 }
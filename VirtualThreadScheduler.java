@@ -0,0 +1,374 @@
+package general.process;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import general.SystemState;
+import general.resources.EntityStore;
+import general.resources.Resource;
+
+/**
+ * Runs the processes of entities as virtual threads on the event queue of a state, for processes
+ * that are easier to write as plain code with loops and conditions than as a {@link Script}. Every
+ * entity runs a {@link Body} on a virtual thread of its own, which calls {@link VirtualProcess#hold(double)},
+ * {@link VirtualProcess#request(Resource)} and {@link VirtualProcess#release(Resource)}, for example
+ * <pre>
+ * processes.define("person", p -&gt; {
+ *     p.request(booths);
+ *     p.hold(nextServiceTime(random, mu));
+ *     p.release(booths);
+ *     leave(p.getTime(), p.getEntity());
+ * });
+ * </pre>
+ * Only one thread runs at a time. The thread of {@link general.Replication#run()} hands control to an
+ * entity and waits until the entity holds, waits for a resource or finishes, and only then do the
+ * entities that seized a server it released continue, in the order in which they seized it, exactly
+ * like with a {@link ProcessScheduler}. So the processes are as reproducible as the rest of the model.
+ *
+ * A blocked virtual thread only keeps its stack on the heap, about a kilobyte, so a model can have
+ * hundreds of thousands of entities that wait at the same time, but a switch between threads costs
+ * much more than a step of a script, see <code>benchmarks/ProcessBenchmark.java</code>. Switches are
+ * cheapest when the replication itself runs on a virtual thread, as control then moves between virtual
+ * threads on the same carrier instead of waking up a platform thread. The threads can not be
+ * checkpointed or forked, so the scheduler must be a transient field of the state, and its replications
+ * can not be checkpointed halfway.
+ *
+ * A hold is continued by an event handler with the name of the process, or, like the holds of a
+ * {@link Script}, by a handler of its own if the process names its steps, see
+ * {@link #define(String, Body, String...)}, so traces and metrics of the handlers tell the steps apart.
+ *
+ * @param <S> the type of the state
+ */
+public class VirtualThreadScheduler<S extends SystemState<S>> {
+
+	/**
+	 * The life of an entity, which runs on a virtual thread of its own.
+	 */
+	@FunctionalInterface
+	public interface Body {
+		/**
+		 * Runs the process of an entity. The body must not catch the exceptions thrown by the methods
+		 * of the process, which end the thread when the replication is reset.
+		 *
+		 * @param process	The process of the entity
+		 */
+		void run(VirtualProcess process);
+	}
+
+	/**
+	 * Thrown in the thread of an entity that is waiting when the scheduler is reset, to end the thread.
+	 */
+	private static final class Cancelled extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		Cancelled() {
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * The process of an entity, of which the methods may only be called from the thread of the entity.
+	 */
+	public static final class VirtualProcess {
+
+		private final VirtualThreadScheduler<?> scheduler;
+		private final int entity;
+		private final int[] handlers;
+		private volatile boolean turn;
+		private Thread thread;
+		private boolean cancelled;
+
+		private VirtualProcess(VirtualThreadScheduler<?> scheduler, int entity, int[] handlers) {
+			this.scheduler = scheduler;
+			this.entity = entity;
+			this.handlers = handlers;
+		}
+
+		/**
+		 *
+		 * @return Returns the id of the entity
+		 */
+		public int getEntity() {
+			return entity;
+		}
+
+		/**
+		 *
+		 * @return Returns the current time of the simulation
+		 */
+		public double getTime() {
+			return scheduler.time;
+		}
+
+		/**
+		 * Waits for a time, while the other entities and events continue.
+		 *
+		 * @param duration	The time to wait, must be >= 0
+		 */
+		public void hold(double duration) {
+			hold(-1, duration);
+		}
+
+		/**
+		 * Waits for a time before a named step of the process, which is continued by the event handler
+		 * of that step.
+		 *
+		 * @param step		The index of the step in the names passed to {@link VirtualThreadScheduler#define(String, Body, String...)}
+		 * @param duration	The time to wait, must be >= 0
+		 */
+		public void hold(int step, double duration) {
+			if (!(duration >= 0)) {
+				throw new IllegalStateException("Entity "+entity+" cannot hold for "+duration);
+			}
+			scheduler.state.addEvent(scheduler.time + duration, handlers[step + 1], entity);
+			pause();
+		}
+
+		/**
+		 * Requests a server of a resource, and waits in the queue of the resource until another entity
+		 * releases a server if all servers are busy.
+		 *
+		 * @param resource	The resource
+		 */
+		public void request(Resource resource) {
+			if (!resource.request(entity, scheduler.time)) {
+				// continued by the entity that releases a server to it
+				pause();
+			}
+		}
+
+		/**
+		 * Releases the server of a resource. If other entities are waiting for the resource, the first of
+		 * them seizes the server and continues as soon as this entity waits or has finished.
+		 *
+		 * @param resource	The resource
+		 */
+		public void release(Resource resource) {
+			int next = resource.release(entity, scheduler.time);
+			if (next != EntityStore.NONE) {
+				scheduler.ready.add(scheduler.processes[next]);
+			}
+		}
+
+		private void pause() {
+			turn = false;
+			scheduler.handBack();
+			while (!turn) {
+				LockSupport.park(this);
+				if (Thread.interrupted()) {
+					throw new Cancelled();
+				}
+			}
+		}
+	}
+
+	private static final int SPINS = 10000;
+	private static final boolean MULTIPROCESSOR = Runtime.getRuntime().availableProcessors() > 1;
+
+	private final S state;
+	private Body[] bodies;
+	// the handler of the unnamed holds, followed by those of the named steps, indexed by process
+	private int[][] handlers;
+
+	// the process of every entity that has started and not finished, indexed by entity id
+	private VirtualProcess[] processes;
+	private int live;
+
+	// entities that seized a server or were started while another entity was running
+	private final ArrayDeque<VirtualProcess> ready = new ArrayDeque<>();
+	private Thread caller;
+	private volatile boolean handedBack;
+	private double time;
+	private boolean running;
+	private Throwable failure;
+
+	/**
+	 * @param state	The state on whose event queue the processes run
+	 */
+	public VirtualThreadScheduler(S state) {
+		this.state = state;
+		this.bodies = new Body[0];
+		this.handlers = new int[0][];
+		this.processes = new VirtualProcess[16];
+	}
+
+	/**
+	 * Defines a process, which registers an event handler on the state with the name of the process for
+	 * {@link VirtualProcess#hold(double)}, and one for every named step for {@link VirtualProcess#hold(int, double)},
+	 * named after the process and the step, for example <code>person.leave</code>. Like other handlers,
+	 * processes must be defined in the constructor of the state.
+	 *
+	 * @param name	The name of the process
+	 * @param body	The body of the process
+	 * @param steps	The names of the steps that follow a hold, if any
+	 * @return		The id of the process, to be passed to {@link #start(int, int, double)}
+	 */
+	public int define(String name, Body body, String... steps) {
+		if (body == null) {
+			throw new IllegalArgumentException("The body of a process cannot be null.");
+		}
+		int[] holds = new int[steps.length + 1];
+		holds[0] = state.registerEntityHandler(name, this::resume);
+		for (int i = 0; i < steps.length; i++) {
+			holds[i + 1] = state.registerEntityHandler(name + "." + steps[i], this::resume);
+		}
+		bodies = Arrays.copyOf(bodies, bodies.length + 1);
+		bodies[bodies.length - 1] = body;
+		handlers = Arrays.copyOf(handlers, handlers.length + 1);
+		handlers[handlers.length - 1] = holds;
+		return bodies.length - 1;
+	}
+
+	/**
+	 * Lets an entity start running a process at the current time. The entity runs until it has to wait,
+	 * before this method returns. If it is called from the process of another entity, the new entity
+	 * starts as soon as the other entity has to wait.
+	 *
+	 * @param process	The id of the process
+	 * @param entity	The id of the entity, typically allocated from an {@link EntityStore}
+	 * @param time		The current time
+	 */
+	public void start(int process, int entity, double time) {
+		if (process < 0 || process >= bodies.length) {
+			throw new IllegalArgumentException("Unknown process "+process);
+		}
+		if (entity < 0) {
+			throw new IllegalArgumentException("Entity ids must be >= 0");
+		}
+		if (entity >= processes.length) {
+			processes = Arrays.copyOf(processes, Math.max(entity + 1, processes.length * 2));
+		}
+		if (processes[entity] != null) {
+			throw new IllegalStateException("Entity "+entity+" is already running a process.");
+		}
+		VirtualProcess p = new VirtualProcess(this, entity, handlers[process]);
+		Body body = bodies[process];
+		p.thread = Thread.ofVirtual().unstarted(() -> runBody(p, body));
+		processes[entity] = p;
+		live++;
+		if (running) {
+			ready.add(p);
+		}
+		else {
+			resume(time, p);
+		}
+	}
+
+	/**
+	 * Ends the threads of all entities that have not finished, typically when a replication is reset.
+	 * The entities that are waiting in the queue of a resource or for an event are forgotten together
+	 * with the resource and the event queue.
+	 */
+	public void reset() {
+		ready.clear();
+		for (int entity = 0; entity < processes.length && live > 0; entity++) {
+			VirtualProcess p = processes[entity];
+			if (p == null) {
+				continue;
+			}
+			if (p.thread.isAlive()) {
+				p.cancelled = true;
+				p.thread.interrupt();
+				boolean interrupted = false;
+				while (true) {
+					try {
+						p.thread.join();
+						break;
+					} catch (InterruptedException ex) {
+						interrupted = true;
+					}
+				}
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			processes[entity] = null;
+			live--;
+		}
+	}
+
+	/**
+	 *
+	 * @return Returns the number of entities that have started a process and not finished it
+	 */
+	public int getLiveCount() {
+		return live;
+	}
+
+	private void resume(double time, int entity) {
+		resume(time, processes[entity]);
+	}
+
+	/**
+	 * Continues an entity, followed by the entities that became ready in the meantime.
+	 */
+	private void resume(double time, VirtualProcess p) {
+		this.time = time;
+		this.caller = Thread.currentThread();
+		running = true;
+		try {
+			switchTo(p);
+			while (!ready.isEmpty()) {
+				switchTo(ready.poll());
+			}
+		} finally {
+			running = false;
+		}
+	}
+
+	private void switchTo(VirtualProcess p) {
+		handedBack = false;
+		if (p.thread.getState() == Thread.State.NEW) {
+			p.thread.start();
+		}
+		else {
+			p.turn = true;
+			LockSupport.unpark(p.thread);
+		}
+		// the entity usually hands back control within microseconds, which is much less than it takes to
+		// wake up a parked platform thread, so spin for a while first, unless that keeps the entity from
+		// running: a virtual thread must park to let the entity run on its carrier, and so must any thread
+		// on a single processor
+		int limit = caller.isVirtual() || !MULTIPROCESSOR ? 0 : SPINS;
+		for (int spins = 0; !handedBack; spins++) {
+			if (spins < limit) {
+				Thread.onSpinWait();
+			}
+			else {
+				LockSupport.park(this);
+			}
+		}
+		if (failure != null) {
+			Throwable t = failure;
+			failure = null;
+			if (t instanceof Error) {
+				throw (Error) t;
+			}
+			throw t instanceof RuntimeException ? (RuntimeException) t
+					: new RuntimeException("The process of entity "+p.entity+" failed", t);
+		}
+	}
+
+	private void runBody(VirtualProcess p, Body body) {
+		try {
+			body.run(p);
+		} catch (Cancelled ex) {
+			return;
+		} catch (Throwable t) {
+			failure = t;
+		}
+		if (p.cancelled) {
+			return;
+		}
+		processes[p.entity] = null;
+		live--;
+		handBack();
+	}
+
+	private void handBack() {
+		handedBack = true;
+		LockSupport.unpark(caller);
+	}
+}
@@ -0,0 +1,215 @@
+package general.resources;
+
+import java.io.Serializable;
+
+/**
+ * First-in-first-out queue of entities, identified by their ids in an {@link EntityStore}. The
+ * queue keeps the ids and the times at which they joined in two parallel ring buffers, and
+ * automatically records the waiting time of every entity that leaves it, as well as the time
+ * average of its length. No objects are created once the buffers have grown to the longest
+ * queue so far.
+ *
+ */
+public class WaitQueue implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private int[] entities;
+	private double[] joined;
+	private int head;
+	private int size;
+
+	private double startTime;
+	private double lastTime;
+	private double lengthArea;
+	private long removed;
+	private long abandoned;
+	private double totalWait;
+	private double maxWait;
+
+	public WaitQueue() {
+		this.entities = new int[16];
+		this.joined = new double[16];
+	}
+
+	/**
+	 * Adds an entity to the back of the queue.
+	 *
+	 * @param entity	The id of the entity
+	 * @param time		The current time
+	 */
+	public void add(int entity, double time) {
+		advance(time);
+		if (size == entities.length) {
+			grow();
+		}
+		// the capacity is always a power of two
+		int tail = (head + size) & (entities.length - 1);
+		entities[tail] = entity;
+		joined[tail] = time;
+		size++;
+	}
+
+	/**
+	 * Removes the entity at the front of the queue, and records how long it waited.
+	 *
+	 * @param time	The current time
+	 * @return		The id of the entity
+	 */
+	public int remove(double time) {
+		if (size == 0) {
+			throw new IllegalStateException("The queue is empty.");
+		}
+		advance(time);
+		int entity = entities[head];
+		double wait = time - joined[head];
+		head = (head + 1) & (entities.length - 1);
+		size--;
+		removed++;
+		totalWait += wait;
+		if (wait > maxWait) {
+			maxWait = wait;
+		}
+		return entity;
+	}
+
+	/**
+	 * Removes an entity from anywhere in the queue without serving it, for example because it stops
+	 * waiting. Its waiting time is not recorded, as it did not reach the front of the queue, but it is
+	 * counted in {@link #getAbandoned()}. This is cheapest for the entity at the front of the queue.
+	 *
+	 * @param entity	The id of the entity
+	 * @param time		The current time
+	 * @return			True if the entity was in the queue
+	 */
+	public boolean abandon(int entity, double time) {
+		int mask = entities.length - 1;
+		for (int i = 0; i < size; i++) {
+			if (entities[(head + i) & mask] == entity) {
+				advance(time);
+				// shift the entities behind it one place to the front
+				for (int j = i; j < size - 1; j++) {
+					int to = (head + j) & mask;
+					int from = (head + j + 1) & mask;
+					entities[to] = entities[from];
+					joined[to] = joined[from];
+				}
+				size--;
+				abandoned++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 * @return Returns the entity at the front of the queue, or {@link EntityStore#NONE} if the queue is empty
+	 */
+	public int peek() {
+		return size == 0 ? EntityStore.NONE : entities[head];
+	}
+
+	/**
+	 *
+	 * @return Returns the number of entities in the queue
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @return Returns true if there are no entities in the queue
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of entities that left the front of the queue since the last reset
+	 */
+	public long getRemoved() {
+		return removed;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of entities that left the queue without being served since the last reset
+	 */
+	public long getAbandoned() {
+		return abandoned;
+	}
+
+	/**
+	 *
+	 * @return Returns the total time waited by the entities that left the front of the queue
+	 */
+	public double getTotalWait() {
+		return totalWait;
+	}
+
+	/**
+	 *
+	 * @return Returns the mean time waited by the entities that left the front of the queue, or 0 if there are none
+	 */
+	public double getMeanWait() {
+		return removed == 0 ? 0 : totalWait / removed;
+	}
+
+	/**
+	 *
+	 * @return Returns the longest time waited by an entity that left the front of the queue
+	 */
+	public double getMaxWait() {
+		return maxWait;
+	}
+
+	/**
+	 * @param time	The current time
+	 * @return		The time average of the length of the queue since the last reset
+	 */
+	public double getMeanLength(double time) {
+		double area = lengthArea + size * (time - lastTime);
+		return time > startTime ? area / (time - startTime) : 0;
+	}
+
+	/**
+	 * Empties the queue and clears its statistics.
+	 *
+	 * @param time	The time from which statistics are recorded
+	 */
+	public void reset(double time) {
+		head = 0;
+		size = 0;
+		startTime = time;
+		lastTime = time;
+		lengthArea = 0;
+		removed = 0;
+		abandoned = 0;
+		totalWait = 0;
+		maxWait = 0;
+	}
+
+	private void advance(double time) {
+		if (time < lastTime) {
+			throw new IllegalArgumentException("The simulation can not travel back in time.");
+		}
+		lengthArea += size * (time - lastTime);
+		lastTime = time;
+	}
+
+	private void grow() {
+		int[] e = new int[entities.length * 2];
+		double[] j = new double[entities.length * 2];
+		for (int i = 0; i < size; i++) {
+			int from = (head + i) & (entities.length - 1);
+			e[i] = entities[from];
+			j[i] = joined[from];
+		}
+		entities = e;
+		joined = j;
+		head = 0;
+	}
+}
@@ -0,0 +1,128 @@
+package general.distributed;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Running mean and variance of a stream of values, computed with Welford's algorithm. Two states
+ * of disjoint parts of the same stream can be merged into the state of the whole stream, which is
+ * how the results of the replication ranges computed by different workers are combined. Merging
+ * the same states in the same order always gives the same result.
+ *
+ */
+public class Welford implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private long count;
+	private double mean;
+	private double m2;
+
+	public Welford() {
+	}
+
+	/**
+	 * @param count	The number of values
+	 * @param mean	The mean of the values
+	 * @param m2	The sum of the squared differences of the values with their mean
+	 */
+	public Welford(long count, double mean, double m2) {
+		if (count < 0) {
+			throw new IllegalArgumentException("The count must be >= 0");
+		}
+		this.count = count;
+		this.mean = mean;
+		this.m2 = m2;
+	}
+
+	/**
+	 * Adds a value to the stream.
+	 *
+	 * @param x	The value
+	 */
+	public void add(double x) {
+		count++;
+		double delta = x - mean;
+		mean += delta / count;
+		m2 += delta * (x - mean);
+	}
+
+	/**
+	 * Adds the values of another state to this one, using the parallel update of Chan, Golub and LeVeque.
+	 *
+	 * @param other	The state of the values that follow the values of this state
+	 */
+	public void merge(Welford other) {
+		if (other.count == 0) {
+			return;
+		}
+		if (count == 0) {
+			count = other.count;
+			mean = other.mean;
+			m2 = other.m2;
+			return;
+		}
+		long n = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / n;
+		m2 += other.m2 + delta * delta * ((double) count * other.count / n);
+		count = n;
+	}
+
+	/**
+	 *
+	 * @return Returns the number of values
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 *
+	 * @return Returns the mean of the values
+	 */
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 *
+	 * @return Returns the sum of the squared differences of the values with their mean
+	 */
+	public double getM2() {
+		return m2;
+	}
+
+	/**
+	 *
+	 * @return Returns the sample variance of the values
+	 */
+	public double getVariance() {
+		return m2 / (count - 1);
+	}
+
+	/**
+	 *
+	 * @return Returns the standard error of the mean, like the one of a {@link general.PerformanceMeasure}
+	 */
+	public double getStandardError() {
+		return Math.sqrt(getVariance()) / Math.sqrt(count);
+	}
+
+	void write(DataOutput out) throws IOException {
+		out.writeLong(count);
+		out.writeDouble(mean);
+		out.writeDouble(m2);
+	}
+
+	static Welford read(DataInput in) throws IOException {
+		return new Welford(in.readLong(), in.readDouble(), in.readDouble());
+	}
+
+	@Override
+	public String toString() {
+		return mean + " (" + getStandardError() + ")";
+	}
+}
@@ -0,0 +1,137 @@
+package general.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import general.Simulation;
+import general.results.ResultsSink;
+
+/**
+ * A worker process of a {@link Coordinator}. The worker connects to the coordinator, and then
+ * repeatedly receives a range of replications of a scenario, runs them and sends back a
+ * {@link Welford} state per performance measure, until the coordinator tells it to stop. A worker
+ * that runs on another machine is started with
+ * <pre>
+ * java -cp &lt;class path&gt; general.distributed.Worker &lt;host of coordinator&gt; &lt;port&gt;
+ * </pre>
+ * where the class path includes the model and its {@link SimulationFactory}.
+ *
+ */
+public class Worker {
+
+	private final Map<String,SimulationFactory> factories = new HashMap<>();
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: Worker <host> <port>");
+			System.exit(2);
+		}
+		new Worker().run(args[0], Integer.parseInt(args[1]));
+	}
+
+	/**
+	 * Connects to a coordinator and runs the replications it sends, until it tells the worker to stop
+	 * or the connection is closed.
+	 *
+	 * @param host	The host of the coordinator
+	 * @param port	The port of the coordinator
+	 * @throws IOException if the connection fails
+	 */
+	public void run(String host, int port) throws IOException {
+		try (Socket socket = new Socket(host, port)) {
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeInt(Coordinator.MAGIC);
+			out.writeShort(Coordinator.VERSION);
+			out.flush();
+			while (true) {
+				byte tag;
+				try {
+					tag = in.readByte();
+				} catch (EOFException ex) {
+					return;
+				}
+				if (tag == Coordinator.SHUTDOWN) {
+					return;
+				}
+				int task = in.readInt();
+				String factory = in.readUTF();
+				String scenario = in.readUTF();
+				long seed = in.readLong();
+				long replications = in.readLong();
+
+				RangeSink sink = new RangeSink();
+				try {
+					Simulation<?> simulation = getFactory(factory).create(scenario, seed);
+					simulation.setResultsSink(sink, scenario);
+					simulation.run(replications);
+				} catch (RuntimeException | ReflectiveOperationException ex) {
+					out.writeByte(Coordinator.FAILURE);
+					out.writeInt(task);
+					out.writeUTF(String.valueOf(ex));
+					out.flush();
+					continue;
+				}
+				out.writeByte(Coordinator.RESULT);
+				out.writeInt(task);
+				out.writeInt(sink.measures.size());
+				for (int j = 0; j < sink.measures.size(); j++) {
+					out.writeUTF(sink.measures.get(j));
+					sink.states[j].write(out);
+				}
+				out.flush();
+			}
+		}
+	}
+
+	private SimulationFactory getFactory(String name) throws ReflectiveOperationException {
+		SimulationFactory factory = factories.get(name);
+		if (factory == null) {
+			factory = Class.forName(name).asSubclass(SimulationFactory.class).getConstructor().newInstance();
+			factories.put(name, factory);
+		}
+		return factory;
+	}
+
+	/**
+	 * Sink that adds the values of every measure to a {@link Welford} state.
+	 */
+	private static class RangeSink implements ResultsSink {
+
+		private List<String> measures = List.of();
+		private Welford[] states = new Welford[0];
+
+		@Override
+		public void beginScenario(String scenario, List<String> measures) {
+			this.measures = measures;
+			this.states = new Welford[measures.size()];
+			for (int j = 0; j < states.length; j++) {
+				states[j] = new Welford();
+			}
+		}
+
+		@Override
+		public void accept(long replication, double[] values) {
+			for (int j = 0; j < states.length; j++) {
+				states[j].add(values[j]);
+			}
+		}
+
+		@Override
+		public void endScenario() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package general.bench;
+
+import general.SystemState;
+
+/**
+ * Minimal state without any behaviour, used to benchmark the event queue in isolation.
+ *
+ */
+public class BenchState extends SystemState<BenchState> {
+
+	final int noop;
+
+	public BenchState(long seed) {
+		super(Double.POSITIVE_INFINITY, seed);
+		noop = registerHandler("noop", t -> { });
+	}
+
+	@Override
+	public void reset() {
+		getQueue().clear();
+	}
+}
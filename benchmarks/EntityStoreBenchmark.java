@@ -0,0 +1,141 @@
+package general.bench;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import general.resources.EntityStore;
+import general.resources.OffHeapEntityStore;
+import general.resources.OffHeapEntityStore.Type;
+
+/**
+ * A population of persons with an age group, a dose number and an appointment time, kept in an
+ * {@link EntityStore} on the heap and in an {@link OffHeapEntityStore}. Measures a sequential scan
+ * over all persons, and the churn of freeing a person and allocating a new one.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g", "--enable-preview"})
+@State(Scope.Thread)
+@SuppressWarnings("preview")
+public class EntityStoreBenchmark {
+
+	@Param({"1000000", "10000000"})
+	public int persons;
+
+	private EntityStore heap;
+	private int heapAge, heapDose, heapAppointment;
+
+	private OffHeapEntityStore offHeap;
+	private int age, dose, appointment;
+
+	private Random random;
+
+	@Setup
+	public void setup() {
+		heap = new EntityStore(persons);
+		heapAge = heap.addColumn("ageGroup");
+		heapDose = heap.addColumn("dose");
+		heapAppointment = heap.addColumn("appointment");
+
+		Map<String,Type> schema = OffHeapEntityStore.schema();
+		schema.put("ageGroup", Type.BYTE);
+		schema.put("dose", Type.BYTE);
+		schema.put("appointment", Type.DOUBLE);
+		offHeap = new OffHeapEntityStore(schema);
+		age = offHeap.getColumn("ageGroup");
+		dose = offHeap.getColumn("dose");
+		appointment = offHeap.getColumn("appointment");
+
+		random = new Random(0);
+		for (int i = 0; i < persons; i++) {
+			int a = random.nextInt(10);
+			int d = random.nextInt(3);
+			double t = random.nextDouble() * 100;
+			int h = heap.allocate();
+			heap.set(heapAge, h, a);
+			heap.set(heapDose, h, d);
+			heap.set(heapAppointment, h, t);
+			int o = offHeap.allocate();
+			offHeap.setByte(age, o, (byte) a);
+			offHeap.setByte(dose, o, (byte) d);
+			offHeap.setDouble(appointment, o, t);
+		}
+	}
+
+	/**
+	 * The mean appointment time of persons in age group 5 without a dose
+	 */
+	@Benchmark
+	public double scanHeap() {
+		double sum = 0;
+		int n = 0;
+		for (int id = 0; id < heap.getHighWaterMark(); id++) {
+			if (heap.isLive(id) && heap.get(heapAge, id) == 5 && heap.get(heapDose, id) == 0) {
+				sum += heap.get(heapAppointment, id);
+				n++;
+			}
+		}
+		return sum / n;
+	}
+
+	@Benchmark
+	public double scanOffHeap() {
+		double sum = 0;
+		int n = 0;
+		for (int id = 0; id < offHeap.getHighWaterMark(); id++) {
+			if (offHeap.isLive(id) && offHeap.getByte(age, id) == 5 && offHeap.getByte(dose, id) == 0) {
+				sum += offHeap.getDouble(appointment, id);
+				n++;
+			}
+		}
+		return sum / n;
+	}
+
+	@Benchmark
+	public double scanOffHeapChunks() {
+		double[] sum = new double[1];
+		int[] n = new int[1];
+		offHeap.forEachChunk((first, length, live, columns) -> {
+			MemorySegment ages = columns[age];
+			MemorySegment doses = columns[dose];
+			MemorySegment appointments = columns[appointment];
+			for (int i = 0; i < length; i++) {
+				if (OffHeapEntityStore.isLive(live, i) && ages.getAtIndex(ValueLayout.JAVA_BYTE, i) == 5 && doses.getAtIndex(ValueLayout.JAVA_BYTE, i) == 0) {
+					sum[0] += appointments.getAtIndex(ValueLayout.JAVA_DOUBLE, i);
+					n[0]++;
+				}
+			}
+		});
+		return sum[0] / n[0];
+	}
+
+	@Benchmark
+	public int churnHeap() {
+		heap.free(random.nextInt(persons));
+		return heap.allocate();
+	}
+
+	@Benchmark
+	public int churnOffHeap() {
+		offHeap.free(random.nextInt(persons));
+		return offHeap.allocate();
+	}
+}
@@ -0,0 +1,70 @@
+package general.bench;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import general.Event;
+import general.Utils;
+
+/**
+ * The classic hold operation on the event queue: remove the first event and schedule a new one
+ * an exponentially distributed time later, at a constant queue size. This is what the event loop
+ * of {@link general.Replication#run()} does for every event, without the cost of the handlers.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventQueueBenchmark {
+
+	@Param({"16", "1024", "65536"})
+	public int queueSize;
+
+	private BenchState state;
+	private Random random;
+
+	@Setup
+	public void setup() {
+		state = new BenchState(0);
+		random = new Random(0);
+		for (int i = 0; i < queueSize; i++) {
+			state.addEvent(Utils.nextInterArrivalTime(random, 1), state.noop);
+		}
+	}
+
+	@Benchmark
+	public double holdRunnableEvent() {
+		PriorityQueue<Event<BenchState>> queue = state.getQueue();
+		Event<BenchState> e = queue.poll();
+		double time = e.getTime();
+		state.updateCurrentTime(time);
+		state.addEvent(time + Utils.nextInterArrivalTime(random, 1), () -> { });
+		return time;
+	}
+
+	@Benchmark
+	public double holdHandlerEvent() {
+		PriorityQueue<Event<BenchState>> queue = state.getQueue();
+		Event<BenchState> e = queue.poll();
+		double time = e.getTime();
+		state.updateCurrentTime(time);
+		state.addEvent(time + Utils.nextInterArrivalTime(random, 1), state.noop);
+		return time;
+	}
+}
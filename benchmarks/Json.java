@@ -0,0 +1,264 @@
+package general.bench;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON to write and read the results of {@link SweepBenchmark}: objects become
+ * {@link LinkedHashMap}s, arrays {@link ArrayList}s and numbers {@link Double}s. Doubles are
+ * written in their shortest exact form, so values survive a round trip bit for bit. As JSON has no
+ * representation for them, NaN and infinities are written as strings.
+ *
+ */
+final class Json {
+
+	private final String text;
+	private int pos;
+
+	private Json(String text) {
+		this.text = text;
+	}
+
+	static Object parse(String text) {
+		Json json = new Json(text);
+		Object value = json.value();
+		json.skipWhitespace();
+		if (json.pos != text.length()) {
+			throw json.error("Unexpected content after the end of the document");
+		}
+		return value;
+	}
+
+	/**
+	 * @param value	a number, either directly or as one of the strings written for non-finite values
+	 * @return		the value as a double
+	 */
+	static double toDouble(Object value) {
+		if (value instanceof String) {
+			return Double.parseDouble((String) value);
+		}
+		return (Double) value;
+	}
+
+	static String write(Object value) {
+		StringBuilder sb = new StringBuilder();
+		write(sb, value, "");
+		return sb.append('\n').toString();
+	}
+
+	private static void write(StringBuilder sb, Object value, String indent) {
+		if (value == null) {
+			sb.append("null");
+		}
+		else if (value instanceof Map) {
+			Map<?,?> map = (Map<?,?>) value;
+			if (map.isEmpty()) {
+				sb.append("{}");
+				return;
+			}
+			String inner = indent + "  ";
+			sb.append("{\n");
+			boolean first = true;
+			for (Map.Entry<?,?> e : map.entrySet()) {
+				if (!first) {
+					sb.append(",\n");
+				}
+				first = false;
+				sb.append(inner);
+				writeString(sb, String.valueOf(e.getKey()));
+				sb.append(": ");
+				write(sb, e.getValue(), inner);
+			}
+			sb.append('\n').append(indent).append('}');
+		}
+		else if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			if (list.isEmpty()) {
+				sb.append("[]");
+				return;
+			}
+			String inner = indent + "  ";
+			sb.append("[\n");
+			for (int i = 0; i < list.size(); i++) {
+				if (i > 0) {
+					sb.append(",\n");
+				}
+				sb.append(inner);
+				write(sb, list.get(i), inner);
+			}
+			sb.append('\n').append(indent).append(']');
+		}
+		else if (value instanceof Number) {
+			double d = ((Number) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				writeString(sb, Double.toString(d));
+			}
+			else if (value instanceof Long || value instanceof Integer) {
+				sb.append(value);
+			}
+			else {
+				sb.append(d);
+			}
+		}
+		else if (value instanceof Boolean) {
+			sb.append(value);
+		}
+		else {
+			writeString(sb, value.toString());
+		}
+	}
+
+	private static void writeString(StringBuilder sb, String s) {
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"': sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				}
+				else {
+					sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+	}
+
+	private Object value() {
+		skipWhitespace();
+		if (pos >= text.length()) {
+			throw error("Unexpected end of the document");
+		}
+		char c = text.charAt(pos);
+		switch (c) {
+		case '{': return object();
+		case '[': return array();
+		case '"': return string();
+		case 't': return literal("true", Boolean.TRUE);
+		case 'f': return literal("false", Boolean.FALSE);
+		case 'n': return literal("null", null);
+		default: return number();
+		}
+	}
+
+	private Map<String,Object> object() {
+		Map<String,Object> map = new LinkedHashMap<>();
+		pos++;
+		skipWhitespace();
+		if (peek('}')) {
+			pos++;
+			return map;
+		}
+		while (true) {
+			skipWhitespace();
+			String key = string();
+			skipWhitespace();
+			expect(':');
+			map.put(key, value());
+			skipWhitespace();
+			if (peek(',')) {
+				pos++;
+				continue;
+			}
+			expect('}');
+			return map;
+		}
+	}
+
+	private List<Object> array() {
+		List<Object> list = new ArrayList<>();
+		pos++;
+		skipWhitespace();
+		if (peek(']')) {
+			pos++;
+			return list;
+		}
+		while (true) {
+			list.add(value());
+			skipWhitespace();
+			if (peek(',')) {
+				pos++;
+				continue;
+			}
+			expect(']');
+			return list;
+		}
+	}
+
+	private String string() {
+		expect('"');
+		StringBuilder sb = new StringBuilder();
+		while (pos < text.length()) {
+			char c = text.charAt(pos++);
+			if (c == '"') {
+				return sb.toString();
+			}
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			char e = text.charAt(pos++);
+			switch (e) {
+			case 'n': sb.append('\n'); break;
+			case 'r': sb.append('\r'); break;
+			case 't': sb.append('\t'); break;
+			case 'b': sb.append('\b'); break;
+			case 'f': sb.append('\f'); break;
+			case 'u':
+				sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+				pos += 4;
+				break;
+			default: sb.append(e);
+			}
+		}
+		throw error("Unterminated string");
+	}
+
+	private Double number() {
+		int start = pos;
+		while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+			pos++;
+		}
+		if (start == pos) {
+			throw error("Unexpected character '" + text.charAt(pos) + "'");
+		}
+		return Double.parseDouble(text.substring(start, pos));
+	}
+
+	private Object literal(String word, Object value) {
+		if (!text.startsWith(word, pos)) {
+			throw error("Unexpected character '" + text.charAt(pos) + "'");
+		}
+		pos += word.length();
+		return value;
+	}
+
+	private boolean peek(char c) {
+		return pos < text.length() && text.charAt(pos) == c;
+	}
+
+	private void expect(char c) {
+		if (!peek(c)) {
+			throw error("Expected '" + c + "'");
+		}
+		pos++;
+	}
+
+	private void skipWhitespace() {
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + pos);
+	}
+}
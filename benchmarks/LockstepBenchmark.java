@@ -0,0 +1,71 @@
+package general.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Assignment1.LitterCollectionLockstep;
+import Assignment1.MainLitterCollection;
+import general.Simulation;
+
+/**
+ * The sweep over the sensor levels of {@link MainLitterCollection}, with a {@link Simulation} per
+ * scenario and with all scenarios in a {@link LitterCollectionLockstep}, for a number of scenarios
+ * that starts at sensor level 850 in steps of 5.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LockstepBenchmark {
+
+	private static final long REPLICATIONS = 100;
+
+	@Param({"1", "5", "21"})
+	public int scenarios;
+
+	private int[] sensorLevels;
+
+	@Setup
+	public void setup() {
+		sensorLevels = new int[scenarios];
+		for (int s = 0; s < scenarios; s++) {
+			sensorLevels[s] = 850 + 5 * s;
+		}
+	}
+
+	@Benchmark
+	public double simulations() {
+		double sum = 0;
+		for (int sensorLevel : sensorLevels) {
+			Simulation<?> simulation = MainLitterCollection.createSimulation(sensorLevel, 0);
+			simulation.run(REPLICATIONS);
+			sum += simulation.getPerformanceMeasures().get(0).getMean();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double lockstep() {
+		LitterCollectionLockstep lockstep = MainLitterCollection.createLockstep(sensorLevels, 0);
+		lockstep.run(REPLICATIONS);
+		double sum = 0;
+		for (int s = 0; s < scenarios; s++) {
+			sum += lockstep.getPerformanceMeasures(s).get(0).getMean();
+		}
+		return sum;
+	}
+}
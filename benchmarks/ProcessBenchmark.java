@@ -0,0 +1,138 @@
+package general.bench;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import general.Event;
+import general.Utils;
+import general.process.ProcessScheduler;
+import general.process.Script;
+import general.process.VirtualThreadScheduler;
+import general.resources.Resource;
+
+/**
+ * The cost of a switch between processes of a {@link ProcessScheduler} and of a {@link VirtualThreadScheduler},
+ * compared with a plain event that does the same work. A number of entities repeatedly request one of a
+ * number of servers, hold it for an exponentially distributed time and release it. Every operation
+ * processes one event, with all entities alive at the same time. The benchmark thread is a platform
+ * thread, so every switch to a virtual thread wakes up a carrier thread, which is the slowest case.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessBenchmark {
+
+	@Param({"1000", "100000"})
+	public int entities;
+
+	private BenchState processState;
+	private BenchState eventState;
+	private Random random;
+	private Resource processServers;
+	private Resource eventServers;
+	private ProcessScheduler<BenchState> scheduler;
+	private int script;
+	private int release;
+	private BenchState threadState;
+	private VirtualThreadScheduler<BenchState> threads;
+
+	@Setup
+	public void setup() {
+		random = new Random(0);
+		int servers = entities / 2;
+
+		processState = new BenchState(0);
+		processServers = new Resource("servers", servers, entities);
+		scheduler = new ProcessScheduler<>(processState);
+		script = scheduler.define("job", new Script()
+				.request(processServers)
+				.hold((time, entity) -> Utils.nextInterArrivalTime(random, 1))
+				.release(processServers)
+				.run((time, entity) -> scheduler.start(script, entity, time)));
+		for (int i = 0; i < entities; i++) {
+			scheduler.start(script, i, 0);
+		}
+
+		threadState = new BenchState(0);
+		Resource threadServers = new Resource("servers", servers, entities);
+		threads = new VirtualThreadScheduler<>(threadState);
+		int job = threads.define("job", p -> {
+			while (true) {
+				p.request(threadServers);
+				p.hold(Utils.nextInterArrivalTime(random, 1));
+				p.release(threadServers);
+			}
+		});
+		for (int i = 0; i < entities; i++) {
+			threads.start(job, i, 0);
+		}
+
+		eventState = new BenchState(0);
+		eventServers = new Resource("servers", servers, entities);
+		release = eventState.registerEntityHandler("release", this::release);
+		for (int i = 0; i < entities; i++) {
+			request(0, i);
+		}
+	}
+
+	private void request(double time, int entity) {
+		if (eventServers.request(entity, time)) {
+			eventState.addEvent(time + Utils.nextInterArrivalTime(random, 1), release, entity);
+		}
+	}
+
+	private void release(double time, int entity) {
+		int next = eventServers.release(entity, time);
+		if (next >= 0) {
+			eventState.addEvent(time + Utils.nextInterArrivalTime(random, 1), release, next);
+		}
+		request(time, entity);
+	}
+
+	@Benchmark
+	public double process() {
+		return step(processState);
+	}
+
+	@TearDown
+	public void tearDown() {
+		threads.reset();
+	}
+
+	@Benchmark
+	public double virtualThread() {
+		return step(threadState);
+	}
+
+	@Benchmark
+	public double event() {
+		return step(eventState);
+	}
+
+	private static double step(BenchState state) {
+		PriorityQueue<Event<BenchState>> queue = state.getQueue();
+		Event<BenchState> e = queue.poll();
+		double time = e.getTime();
+		e.process(state);
+		state.updateCurrentTime(time);
+		return time;
+	}
+}
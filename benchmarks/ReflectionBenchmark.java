@@ -0,0 +1,73 @@
+package general.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import Assignment1.CoronaVacLocState;
+import Assignment1.LitterCollectionState;
+import general.PerformanceMeasure;
+import general.automagic.AutoReplication;
+
+/**
+ * Cost of the annotation driven parts of the framework: {@link AutoReplication#shouldTerminate},
+ * which is called before every event, and {@link general.automagic.ReflectivePerformanceMeasure#compute},
+ * which is called for every measure after every replication.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReflectionBenchmark {
+
+	private CoronaVacLocState corona;
+	private AutoReplication<CoronaVacLocState> coronaReplication;
+	private List<PerformanceMeasure<CoronaVacLocState>> coronaMeasures;
+	private LitterCollectionState litter;
+	private AutoReplication<LitterCollectionState> litterReplication;
+
+	@Setup
+	public void setup() {
+		corona = new CoronaVacLocState(100, 0, 5, 25, 50, 12, 0.25, 450, 9);
+		coronaReplication = new AutoReplication<>(corona);
+		coronaReplication.reset();
+		coronaReplication.initialize();
+		coronaReplication.run();
+		coronaMeasures = corona.getAutomaticMeasures();
+
+		litter = new LitterCollectionState(Double.POSITIVE_INFINITY, 0, 900, 1000, 2d, 48, 100, 10.0 / 24.0);
+		litterReplication = new AutoReplication<>(litter);
+		litterReplication.reset();
+	}
+
+	@Benchmark
+	public boolean shouldTerminateCoronaVacLoc() {
+		return coronaReplication.shouldTerminate(corona);
+	}
+
+	@Benchmark
+	public boolean shouldTerminateLitterCollection() {
+		return litterReplication.shouldTerminate(litter);
+	}
+
+	@Benchmark
+	public void computeMeasures(Blackhole bh) {
+		for (PerformanceMeasure<CoronaVacLocState> pm : coronaMeasures) {
+			bh.consume(pm.compute(corona));
+		}
+	}
+}
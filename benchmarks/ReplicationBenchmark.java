@@ -0,0 +1,93 @@
+package general.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Assignment1.CoronaVacLocState;
+import Assignment1.LitterCollectionState;
+import general.Replication;
+import general.automagic.AutoReplication;
+
+/**
+ * Throughput of complete replications of the two models, including {@link Replication#reset()} and
+ * {@link Replication#initialize()}. The parameters are those of the sweeps in
+ * {@link Assignment1.MainCoronaVacLoc} and {@link Assignment1.MainLitterCollection}. Divide by the
+ * number of events per replication (see {@link Replication#getEventCount()}) for the cost per event.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplicationBenchmark {
+
+	@State(Scope.Thread)
+	public static class CoronaVacLoc {
+
+		@Param({"1", "5", "10"})
+		public int nBooths;
+
+		Replication<CoronaVacLocState> replication;
+
+		@Setup
+		public void setup() {
+			CoronaVacLocState state = new CoronaVacLocState(100, 0, nBooths, 25, nBooths * 10, 12, 0.25,
+					nBooths * 10 * 9, 9);
+			replication = new AutoReplication<>(state);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class LitterCollection {
+
+		@Param({"850", "950"})
+		public int sensorLevel;
+
+		Replication<LitterCollectionState> replication;
+
+		@Setup
+		public void setup() {
+			LitterCollectionState state = new LitterCollectionState(Double.POSITIVE_INFINITY, 0, sensorLevel,
+					1000, 2d, 2 * 24, 100, 10.0 / 24.0);
+			replication = new AutoReplication<>(state);
+		}
+	}
+
+	@Benchmark
+	public double coronaVacLoc(CoronaVacLoc s) {
+		return runReplication(s.replication);
+	}
+
+	@Benchmark
+	public double litterCollection(LitterCollection s) {
+		return runReplication(s.replication);
+	}
+
+	/**
+	 * The fixed cost of a replication, which competes with the simulation itself for tiny replications.
+	 */
+	@Benchmark
+	public double coronaVacLocReset(CoronaVacLoc s) {
+		s.replication.reset();
+		return s.replication.getSystemState().getCurrentTime();
+	}
+
+	private static double runReplication(Replication<?> replication) {
+		replication.reset();
+		replication.initialize();
+		replication.run();
+		return replication.getSystemState().getCurrentTime();
+	}
+}
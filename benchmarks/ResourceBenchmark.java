@@ -0,0 +1,92 @@
+package general.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import general.resources.Resource;
+
+/**
+ * The chair stage of the vaccination location at a constant number of persons: the person that
+ * requested a chair the longest ago leaves, and a new person requests one. This is done with a
+ * {@link Resource}, and with the counters of busy chairs and of the queue that the model had before,
+ * which is what the resource must be as cheap as. The resource also keeps the ids of the waiting
+ * persons and the statistics of the busy time, the waits and the sojourn times, which the counters do
+ * not. With 20 persons all of them sit, and with 40 persons 15 of them stand.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResourceBenchmark {
+
+	private static final int CHAIRS = 25;
+
+	@Param({"20", "40"})
+	public int persons;
+
+	private Resource resource;
+	private int nChairsBusy;
+	private int nChairQueue;
+	private double cumQueue;
+	private int next;
+	private double time;
+
+	@Setup
+	public void setup() {
+		resource = new Resource("chairs", CHAIRS, 2 * persons);
+		for (int person = 0; person < persons; person++) {
+			resource.request(person, 0);
+			if (nChairsBusy == CHAIRS) {
+				nChairQueue++;
+			}
+			else {
+				nChairsBusy++;
+			}
+		}
+		next = persons;
+	}
+
+	@Benchmark
+	public int counters() {
+		double now = time + 1;
+		cumQueue += (now - time) * nChairQueue;
+		time = now;
+		nChairsBusy--;
+		if (nChairQueue > 0) {
+			nChairsBusy++;
+			nChairQueue--;
+		}
+		if (nChairsBusy == CHAIRS) {
+			nChairQueue++;
+		}
+		else {
+			nChairsBusy++;
+		}
+		return nChairsBusy + nChairQueue;
+	}
+
+	@Benchmark
+	public int resource() {
+		time++;
+		// the entity ids are reused like the slots of the entity store of the model
+		int leaving = next >= persons ? next - persons : next + persons;
+		int seized = resource.release(leaving, time);
+		resource.request(next, time);
+		next = next + 1 == 2 * persons ? 0 : next + 1;
+		return seized;
+	}
+}
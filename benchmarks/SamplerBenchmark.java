@@ -0,0 +1,53 @@
+package general.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Assignment1.UtilsCoronaVacLoc;
+import general.Utils;
+
+/**
+ * Cost of drawing a single exponentially distributed inter-arrival time.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SamplerBenchmark {
+
+	private Random random;
+
+	@Setup
+	public void setup() {
+		random = new Random(0);
+	}
+
+	@Benchmark
+	public double utils() {
+		return Utils.nextInterArrivalTime(random, 2d);
+	}
+
+	@Benchmark
+	public double utilsCoronaVacLoc() {
+		return UtilsCoronaVacLoc.nextInterArrivalTime(random, 2d);
+	}
+
+	@Benchmark
+	public double random() {
+		return random.nextDouble();
+	}
+}
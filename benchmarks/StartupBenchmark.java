@@ -0,0 +1,113 @@
+package general.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the wall-clock time of complete short runs of the sweeps, as they are started from
+ * scripts, where the startup and warm-up of the JVM take most of the time. Every entry point is started
+ * as a new process, on a plain JVM, on a JVM with the class data sharing archive of the
+ * <code>appcds</code> profile, both also with only the C1 compiler (<code>-XX:TieredStopAtLevel=1</code>),
+ * which is enough for a run this short, and as the native image of the <code>native</code> profile,
+ * where the archives and images that have not been built are skipped.
+ *
+ * <pre>
+ * mvn -P jmh package
+ * mvn -P appcds package
+ * java -cp target/benchmarks.jar general.bench.StartupBenchmark [options]
+ *
+ *   --runs n           measured runs per entry point and setup (default 10)
+ *   --replications n   replications per scenario of the sweeps (default 10)
+ *   --jar file         the jar of the simulations (default target/simulation-corona-vaccination-1.0-SNAPSHOT.jar)
+ *   --cds dir          the directory of the archives (default target/cds)
+ *   --native dir       the directory of the native images (default target)
+ * </pre>
+ *
+ * Every setup is run once before it is measured, so the files it uses are in the cache of the
+ * operating system.
+ *
+ */
+public class StartupBenchmark {
+
+	private static final String[] MAINS = { "MainLitterCollection", "MainCoronaVacLoc" };
+	private static final String[] IMAGES = { "main-litter-collection", "main-corona-vac-loc" };
+
+	private int runs = 10;
+	private int replications = 10;
+	private String jar = "target/simulation-corona-vaccination-1.0-SNAPSHOT.jar";
+	private String cds = "target/cds";
+	private String images = "target";
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		StartupBenchmark benchmark = new StartupBenchmark();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--runs": benchmark.runs = Integer.parseInt(args[++i]); break;
+			case "--replications": benchmark.replications = Integer.parseInt(args[++i]); break;
+			case "--jar": benchmark.jar = args[++i]; break;
+			case "--cds": benchmark.cds = args[++i]; break;
+			case "--native": benchmark.images = args[++i]; break;
+			default:
+				System.err.println("Unknown option " + args[i]);
+				System.exit(2);
+			}
+		}
+		if (!new File(benchmark.jar).isFile()) {
+			System.err.println("The jar " + benchmark.jar + " does not exist, build it with mvn package");
+			System.exit(2);
+		}
+		benchmark.run();
+	}
+
+	private void run() throws IOException, InterruptedException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		for (int m = 0; m < MAINS.length; m++) {
+			String main = "Assignment1." + MAINS[m];
+			String n = Integer.toString(replications);
+			measure(MAINS[m], "jvm", Arrays.asList(java, "-cp", jar, main, "--replications", n));
+			measure(MAINS[m], "jvm+c1", Arrays.asList(java, "-XX:TieredStopAtLevel=1", "-cp", jar, main, "--replications", n));
+
+			File archive = new File(cds, MAINS[m] + ".jsa");
+			if (archive.isFile()) {
+				String shared = "-XX:SharedArchiveFile=" + archive.getPath();
+				measure(MAINS[m], "jvm+appcds", Arrays.asList(java, shared, "-Xlog:cds=off", "-cp", jar, main, "--replications", n));
+				measure(MAINS[m], "jvm+appcds+c1", Arrays.asList(java, shared, "-Xlog:cds=off", "-XX:TieredStopAtLevel=1",
+						"-cp", jar, main, "--replications", n));
+			}
+
+			File image = new File(images, IMAGES[m]);
+			if (image.canExecute()) {
+				measure(MAINS[m], "native", Arrays.asList(image.getPath(), "--replications", n));
+			}
+		}
+	}
+
+	private void measure(String main, String setup, List<String> command) throws IOException, InterruptedException {
+		List<Double> times = new ArrayList<>();
+		for (int i = -1; i < runs; i++) {
+			long start = System.nanoTime();
+			Process process = new ProcessBuilder(command)
+					.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+					.redirectError(ProcessBuilder.Redirect.INHERIT)
+					.start();
+			int exit = process.waitFor();
+			double millis = (System.nanoTime() - start) / 1e6;
+			if (exit != 0) {
+				throw new IllegalStateException(String.join(" ", command) + " exited with status " + exit);
+			}
+			if (i >= 0) {
+				times.add(millis);
+			}
+		}
+		double sum = 0;
+		double min = Double.POSITIVE_INFINITY;
+		for (double t : times) {
+			sum += t;
+			min = Math.min(min, t);
+		}
+		System.out.printf("%-22s %-14s mean %8.1f ms   min %8.1f ms%n", main, setup, sum / times.size(), min);
+	}
+}
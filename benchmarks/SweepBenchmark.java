@@ -0,0 +1,288 @@
+package general.bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import Assignment1.MainCoronaVacLoc;
+import Assignment1.MainLitterCollection;
+import general.PerformanceMeasure;
+import general.Simulation;
+import general.metrics.MetricsRegistry;
+import general.metrics.ReplicationMetrics;
+
+/**
+ * End-to-end regression check of the sweeps in {@link MainCoronaVacLoc} and {@link MainLitterCollection},
+ * with a fixed seed. For every sweep the wall time, the number of events per second, the peak heap
+ * usage and all estimates are recorded as JSON and compared against a checked-in baseline.
+ *
+ * A sweep fails the comparison when it is slower than the baseline by more than the threshold, or
+ * when any estimate differs from the baseline. If the number of replications differs from the
+ * baseline, only the number of events per second is compared. As the sweeps are seeded, the estimates of an engine
+ * that promises the same results must be identical bit for bit. With <code>--statistical</code>,
+ * estimates only have to lie within <code>z</code> combined standard errors of the baseline, which
+ * is meant for engine changes that deliberately use the random numbers differently.
+ *
+ * <pre>
+ * mvn -P jmh package
+ * java -cp target/benchmarks.jar general.bench.SweepBenchmark [options]
+ *
+ *   --replications n   replications per scenario (default 200)
+ *   --runs r           measured runs per sweep, of which the fastest is reported (default 3)
+ *   --threshold t      allowed relative slowdown, for example 0.15 for 15% (default 0.15)
+ *   --baseline file    baseline to compare with (default benchmarks/sweep-baseline.json)
+ *   --output file      where to write the results (default target/sweep-results.json)
+ *   --write-baseline   write the results to the baseline file instead of comparing
+ *   --statistical [z]  accept estimates within z standard errors (default z = 4)
+ * </pre>
+ *
+ * The process exits with status 1 if any sweep fails the comparison.
+ *
+ */
+public class SweepBenchmark {
+
+	private static final long SEED = 0;
+
+	private int replications = 200;
+	private int runs = 3;
+	private double threshold = 0.15;
+	private Path baseline = Paths.get("benchmarks", "sweep-baseline.json");
+	private Path output = Paths.get("target", "sweep-results.json");
+	private boolean writeBaseline;
+	private double z = Double.NaN;
+
+	public static void main(String[] args) throws IOException {
+		SweepBenchmark bench = new SweepBenchmark();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--replications": bench.replications = Integer.parseInt(args[++i]); break;
+			case "--runs": bench.runs = Integer.parseInt(args[++i]); break;
+			case "--threshold": bench.threshold = Double.parseDouble(args[++i]); break;
+			case "--baseline": bench.baseline = Paths.get(args[++i]); break;
+			case "--output": bench.output = Paths.get(args[++i]); break;
+			case "--write-baseline": bench.writeBaseline = true; break;
+			case "--statistical":
+				bench.z = 4;
+				if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+					bench.z = Double.parseDouble(args[++i]);
+				}
+				break;
+			default:
+				System.err.println("Unknown option " + args[i]);
+				System.exit(2);
+			}
+		}
+		System.exit(bench.execute() ? 0 : 1);
+	}
+
+	private boolean execute() throws IOException {
+		Map<String,Object> results = new LinkedHashMap<>();
+		results.put("java", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+		results.put("replications", replications);
+		List<Object> sweeps = new ArrayList<>();
+		sweeps.add(measure("coronaVacLoc", 1, 10, 1, b -> MainCoronaVacLoc.createSimulation(b, SEED)));
+		sweeps.add(measure("litterCollection", 850, 950, 5, s -> MainLitterCollection.createSimulation(s, SEED)));
+		results.put("sweeps", sweeps);
+
+		Path target = writeBaseline ? baseline : output;
+		if (target.getParent() != null) {
+			Files.createDirectories(target.getParent());
+		}
+		Files.write(target, Json.write(results).getBytes(StandardCharsets.UTF_8));
+		System.out.println("Results written to " + target);
+		if (writeBaseline) {
+			return true;
+		}
+		if (!Files.exists(baseline)) {
+			System.out.println("No baseline found at " + baseline + ", nothing to compare with");
+			return true;
+		}
+		@SuppressWarnings("unchecked")
+		Map<String,Object> base = (Map<String,Object>) Json.parse(new String(Files.readAllBytes(baseline), StandardCharsets.UTF_8));
+		return compare(results, base);
+	}
+
+	private Map<String,Object> measure(String name, int from, int to, int step, IntFunction<Simulation<?>> scenario) {
+		// warm up the JIT with a full sweep before measuring
+		runSweep(from, to, step, scenario);
+		Map<String,Object> best = null;
+		for (int r = 0; r < runs; r++) {
+			Map<String,Object> result = runSweep(from, to, step, scenario);
+			if (best == null || (Double) result.get("wallTimeMillis") < (Double) best.get("wallTimeMillis")) {
+				best = result;
+			}
+		}
+		Map<String,Object> sweep = new LinkedHashMap<>();
+		sweep.put("name", name);
+		sweep.putAll(best);
+		System.out.printf("%-18s %10.1f ms %14.0f events/s %8.1f MB peak heap%n", name,
+				best.get("wallTimeMillis"), best.get("eventsPerSecond"), (Long) best.get("peakHeapBytes") / 1e6);
+		return sweep;
+	}
+
+	private Map<String,Object> runSweep(int from, int to, int step, IntFunction<Simulation<?>> scenario) {
+		MetricsRegistry metrics = new MetricsRegistry();
+		List<MemoryPoolMXBean> pools = new ArrayList<>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				pools.add(pool);
+			}
+		}
+		System.gc();
+		for (MemoryPoolMXBean pool : pools) {
+			pool.resetPeakUsage();
+		}
+
+		List<Object> scenarios = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int p = from; p <= to; p += step) {
+			Simulation<?> simulation = scenario.apply(p);
+			simulation.setMetrics(metrics);
+			simulation.run(replications);
+			scenarios.add(estimates(simulation));
+		}
+		long wall = System.nanoTime() - start;
+
+		long peak = 0;
+		for (MemoryPoolMXBean pool : pools) {
+			peak += pool.getPeakUsage().getUsed();
+		}
+		long events = 0;
+		for (ReplicationMetrics m : metrics.getAll()) {
+			events += m.getEventsProcessed();
+		}
+
+		Map<String,Object> result = new LinkedHashMap<>();
+		result.put("wallTimeMillis", wall / 1e6);
+		result.put("events", events);
+		result.put("eventsPerSecond", events / (wall / 1e9));
+		result.put("peakHeapBytes", peak);
+		result.put("scenarios", scenarios);
+		return result;
+	}
+
+	private static <S extends general.SystemState<S>> Map<String,Object> estimates(Simulation<S> simulation) {
+		Map<String,Object> measures = new LinkedHashMap<>();
+		for (PerformanceMeasure<S> pm : simulation.getPerformanceMeasures()) {
+			Map<String,Object> estimate = new LinkedHashMap<>();
+			estimate.put("mean", pm.getMean());
+			estimate.put("standardError", pm.getStandardError());
+			measures.put(pm.getName(), estimate);
+		}
+		Map<String,Object> result = new LinkedHashMap<>();
+		result.put("scenario", simulation.getScenario());
+		result.put("estimates", measures);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean compare(Map<String,Object> current, Map<String,Object> base) {
+		boolean ok = true;
+		boolean sameReplications = Json.toDouble(base.get("replications")) == replications;
+		if (!sameReplications) {
+			System.out.println("The baseline was made with " + (long) Json.toDouble(base.get("replications"))
+					+ " replications, so only the throughput is compared");
+		}
+		Map<String,Map<String,Object>> baseSweeps = new LinkedHashMap<>();
+		for (Object o : (List<Object>) base.get("sweeps")) {
+			Map<String,Object> sweep = (Map<String,Object>) o;
+			baseSweeps.put((String) sweep.get("name"), sweep);
+		}
+		for (Object o : (List<Object>) current.get("sweeps")) {
+			Map<String,Object> sweep = (Map<String,Object>) o;
+			String name = (String) sweep.get("name");
+			Map<String,Object> b = baseSweeps.get(name);
+			if (b == null) {
+				System.out.println(name + ": not in the baseline");
+				continue;
+			}
+			boolean slow;
+			if (sameReplications) {
+				double wall = Json.toDouble(sweep.get("wallTimeMillis"));
+				double baseWall = Json.toDouble(b.get("wallTimeMillis"));
+				double change = wall / baseWall - 1;
+				slow = change > threshold;
+				System.out.printf("%s: wall time %.1f ms vs %.1f ms baseline (%+.1f%%)%s%n", name, wall, baseWall,
+						100 * change, slow ? "  REGRESSION" : "");
+			}
+			else {
+				// different amounts of work, so only the throughput can be compared
+				double eps = Json.toDouble(sweep.get("eventsPerSecond"));
+				double baseEps = Json.toDouble(b.get("eventsPerSecond"));
+				double change = baseEps / eps - 1;
+				slow = change > threshold;
+				System.out.printf("%s: %.0f events/s vs %.0f events/s baseline (%+.1f%%)%s%n", name, eps, baseEps,
+						100 * (eps / baseEps - 1), slow ? "  REGRESSION" : "");
+			}
+			ok &= !slow;
+			if (sameReplications) {
+				ok &= compareEstimates(name, (List<Object>) sweep.get("scenarios"), (List<Object>) b.get("scenarios"));
+			}
+		}
+		System.out.println(ok ? "OK" : "FAILED");
+		return ok;
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean compareEstimates(String sweep, List<Object> current, List<Object> base) {
+		boolean ok = true;
+		int identical = 0;
+		int equivalent = 0;
+		Map<String,Map<String,Object>> baseScenarios = new LinkedHashMap<>();
+		for (Object o : base) {
+			Map<String,Object> s = (Map<String,Object>) o;
+			baseScenarios.put((String) s.get("scenario"), (Map<String,Object>) s.get("estimates"));
+		}
+		for (Object o : current) {
+			Map<String,Object> s = (Map<String,Object>) o;
+			String scenario = (String) s.get("scenario");
+			Map<String,Object> baseEstimates = baseScenarios.get(scenario);
+			if (baseEstimates == null) {
+				System.out.println("  " + scenario + ": not in the baseline");
+				ok = false;
+				continue;
+			}
+			Map<String,Object> estimates = (Map<String,Object>) s.get("estimates");
+			if (!estimates.keySet().equals(baseEstimates.keySet())) {
+				System.out.println("  " + scenario + ": measures " + estimates.keySet() + " differ from baseline " + baseEstimates.keySet());
+				ok = false;
+				continue;
+			}
+			for (String measure : estimates.keySet()) {
+				Map<String,Object> e = (Map<String,Object>) estimates.get(measure);
+				Map<String,Object> be = (Map<String,Object>) baseEstimates.get(measure);
+				double mean = Json.toDouble(e.get("mean"));
+				double se = Json.toDouble(e.get("standardError"));
+				double baseMean = Json.toDouble(be.get("mean"));
+				double baseSe = Json.toDouble(be.get("standardError"));
+				if (Double.doubleToLongBits(mean) == Double.doubleToLongBits(baseMean)
+						&& Double.doubleToLongBits(se) == Double.doubleToLongBits(baseSe)) {
+					identical++;
+					continue;
+				}
+				double tolerance = z * Math.sqrt(se * se + baseSe * baseSe);
+				boolean close = !Double.isNaN(z) && Math.abs(mean - baseMean) <= tolerance;
+				if (close) {
+					equivalent++;
+				}
+				else {
+					ok = false;
+				}
+				System.out.printf("  %s / %s: %s vs %s baseline (se %s)%s%n", scenario, measure, mean, baseMean, baseSe,
+						close ? "  statistically equivalent" : "  CHANGED");
+			}
+		}
+		System.out.printf("%s: %d estimates identical, %d statistically equivalent%n", sweep, identical, equivalent);
+		return ok;
+	}
+}